@@ -0,0 +1,135 @@
+package org.dljl.config;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of requests handled at once. On virtual threads the server accepts every
+ * request, so without a cap a burst becomes thousands of threads queued on the connection pool,
+ * which time out there after holding their memory for the whole wait. With the cap sized to the
+ * pool, excess requests wait here in arrival order, and are rejected with {@code 503} and a
+ * {@code Retry-After} header if no permit frees up in time. Paths that never touch the database,
+ * such as the metrics endpoints, can be excluded so a scrape is not queued behind bookings.
+ */
+public class ConcurrencyLimitFilter implements Filter {
+
+  private final Semaphore permits;
+  private final int limit;
+  private final long acquireTimeoutMillis;
+  private final List<String> excludedPaths;
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Create the filter.
+   *
+   * @param limit the maximum number of requests handled at once
+   * @param acquireTimeoutMillis how long a request waits for a permit before it is rejected
+   */
+  public ConcurrencyLimitFilter(int limit, long acquireTimeoutMillis) {
+    this(limit, acquireTimeoutMillis, List.of());
+  }
+
+  /**
+   * Create the filter.
+   *
+   * @param limit the maximum number of requests handled at once
+   * @param acquireTimeoutMillis how long a request waits for a permit before it is rejected
+   * @param excludedPaths the paths, with everything below them, that are not capped
+   */
+  public ConcurrencyLimitFilter(int limit, long acquireTimeoutMillis, List<String> excludedPaths) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Concurrency limit must be positive.");
+    }
+    this.permits = new Semaphore(limit, true);
+    this.limit = limit;
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+    this.excludedPaths = List.copyOf(excludedPaths);
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (isExcluded(request)) {
+      chain.doFilter(request, response);
+      return;
+    }
+    boolean acquired;
+    try {
+      acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      acquired = false;
+    }
+    if (!acquired) {
+      rejected.incrementAndGet();
+      HttpServletResponse httpResponse = (HttpServletResponse) response;
+      httpResponse.setIntHeader("Retry-After", 1);
+      httpResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+          "Too many concurrent requests.");
+      return;
+    }
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private boolean isExcluded(ServletRequest request) {
+    if (excludedPaths.isEmpty() || !(request instanceof HttpServletRequest)) {
+      return false;
+    }
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    String path = httpRequest.getRequestURI();
+    if (path == null) {
+      return false;
+    }
+    String contextPath = httpRequest.getContextPath();
+    if (contextPath != null && path.startsWith(contextPath)) {
+      path = path.substring(contextPath.length());
+    }
+    for (String excluded : excludedPaths) {
+      if (path.equals(excluded) || path.startsWith(excluded + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the maximum number of requests handled at once.
+   *
+   * @return the limit
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Gets the number of requests being handled.
+   *
+   * @return the requests in flight
+   */
+  public int getInFlight() {
+    return limit - permits.availablePermits();
+  }
+
+  /**
+   * Gets the number of requests rejected because no permit freed up in time.
+   *
+   * @return the rejected count
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+}
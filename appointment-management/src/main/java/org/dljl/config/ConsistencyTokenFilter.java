@@ -0,0 +1,49 @@
+package org.dljl.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.dljl.service.routing.ReadRouting;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Hands the {@value ReadRouting#TOKEN_HEADER} header of a request to {@link ReadRouting} for the
+ * duration of the request. A malformed token is ignored.
+ */
+public class ConsistencyTokenFilter extends OncePerRequestFilter {
+
+  private final ReadRouting readRouting;
+
+  /**
+   * Create the filter.
+   *
+   * @param readRouting the routing decisions
+   */
+  public ConsistencyTokenFilter(ReadRouting readRouting) {
+    this.readRouting = readRouting;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain chain) throws ServletException, IOException {
+    readRouting.setRequestToken(parseToken(request.getHeader(ReadRouting.TOKEN_HEADER)));
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      readRouting.clearRequestToken();
+    }
+  }
+
+  static Long parseToken(String header) {
+    if (header == null) {
+      return null;
+    }
+    try {
+      return Long.valueOf(header.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+}
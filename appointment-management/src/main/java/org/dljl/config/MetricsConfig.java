@@ -0,0 +1,29 @@
+package org.dljl.config;
+
+import org.dljl.service.metrics.RequestMetrics;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/** Registers the request metrics filter. */
+@Configuration
+public class MetricsConfig {
+
+  /**
+   * Time requests before any other filter, so the time includes waiting for the concurrency cap
+   * and rejected requests are counted.
+   *
+   * @param requestMetrics the request metrics
+   * @return the filter registration
+   */
+  @Bean
+  public FilterRegistrationBean<RequestMetricsFilter> requestMetricsFilterRegistration(
+      RequestMetrics requestMetrics) {
+    FilterRegistrationBean<RequestMetricsFilter> registration =
+        new FilterRegistrationBean<>(new RequestMetricsFilter(requestMetrics));
+    registration.addUrlPatterns("/*");
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return registration;
+  }
+}
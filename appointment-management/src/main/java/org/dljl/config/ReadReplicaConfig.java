@@ -0,0 +1,90 @@
+package org.dljl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import org.dljl.service.routing.ReadRouting;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+
+/**
+ * Read replica mode, enabled by listing replica JDBC URLs in
+ * {@code appointment.read-replica.urls}. The primary keeps the {@code spring.datasource}
+ * settings, and every replica gets a pool of the same size under the replica credentials.
+ */
+@Configuration
+@ConditionalOnExpression("'${appointment.read-replica.urls:}' != ''")
+public class ReadReplicaConfig {
+
+  @Value("${appointment.read-replica.urls}")
+  private String replicaUrls;
+
+  @Value("${appointment.read-replica.username:${spring.datasource.username:}}")
+  private String replicaUsername;
+
+  @Value("${appointment.read-replica.password:${spring.datasource.password:}}")
+  private String replicaPassword;
+
+  /**
+   * The primary pool, configured like the pool Spring Boot would create.
+   *
+   * @param properties the {@code spring.datasource} properties
+   * @return the primary
+   */
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+  }
+
+  /**
+   * The data source used by MyBatis, Flyway and JDBC templates.
+   *
+   * @param primaryDataSource the primary
+   * @param properties the {@code spring.datasource} properties
+   * @param readRouting the routing decisions
+   * @return the routing data source
+   */
+  @Bean
+  @Primary
+  public ReplicaRoutingDataSource dataSource(HikariDataSource primaryDataSource,
+      DataSourceProperties properties, ReadRouting readRouting) {
+    List<HikariDataSource> replicas = new ArrayList<>();
+    for (String url : ReadRouting.parseUrls(replicaUrls)) {
+      HikariDataSource replica = properties.initializeDataSourceBuilder()
+          .type(HikariDataSource.class)
+          .url(url)
+          .username(replicaUsername)
+          .password(replicaPassword)
+          .build();
+      replica.setPoolName("replica-" + replicas.size());
+      replica.setMaximumPoolSize(primaryDataSource.getMaximumPoolSize());
+      replica.setReadOnly(true);
+      replicas.add(replica);
+    }
+    return new ReplicaRoutingDataSource(primaryDataSource, replicas, readRouting);
+  }
+
+  /**
+   * Read the consistency token of every request.
+   *
+   * @param readRouting the routing decisions
+   * @return the filter registration
+   */
+  @Bean
+  public FilterRegistrationBean<ConsistencyTokenFilter> consistencyTokenFilterRegistration(
+      ReadRouting readRouting) {
+    FilterRegistrationBean<ConsistencyTokenFilter> registration =
+        new FilterRegistrationBean<>(new ConsistencyTokenFilter(readRouting));
+    registration.addUrlPatterns("/*");
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+    return registration;
+  }
+}
@@ -0,0 +1,52 @@
+package org.dljl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.dljl.service.routing.ReadRouting;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections of the primary, or of the replica {@link ReadRouting} picked for the
+ * current thread.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+  private final ReadRouting readRouting;
+  private final List<HikariDataSource> replicas;
+
+  /**
+   * Create the data source.
+   *
+   * @param primary the primary
+   * @param replicas the replicas, in the order of the configured URLs
+   * @param readRouting the routing decisions
+   */
+  public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+      ReadRouting readRouting) {
+    this.readRouting = readRouting;
+    this.replicas = replicas;
+    Map<Object, Object> targets = new HashMap<>();
+    for (int i = 0; i < replicas.size(); i++) {
+      targets.put(i, replicas.get(i));
+    }
+    setDefaultTargetDataSource(primary);
+    setTargetDataSources(targets);
+    // A missing key means the primary, an unknown one is a bug
+    setLenientFallback(false);
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return readRouting.currentReplica();
+  }
+
+  /** Close the replica pools, the primary is a bean of its own. */
+  @Override
+  public void close() {
+    for (HikariDataSource replica : replicas) {
+      replica.close();
+    }
+  }
+}
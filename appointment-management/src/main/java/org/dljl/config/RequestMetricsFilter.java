@@ -0,0 +1,50 @@
+package org.dljl.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.dljl.service.metrics.BusinessMetrics;
+import org.dljl.service.metrics.RequestMetrics;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Times every request and records it in {@link RequestMetrics} under the route pattern Spring MVC
+ * matched. Requests no handler matched are grouped under {@code UNMATCHED}, so scans of random
+ * paths cannot create unbounded series.
+ */
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+  static final String UNMATCHED = "UNMATCHED";
+
+  private final RequestMetrics requestMetrics;
+
+  /**
+   * Create the filter.
+   *
+   * @param requestMetrics the metrics to record requests in
+   */
+  public RequestMetricsFilter(RequestMetrics requestMetrics) {
+    this.requestMetrics = requestMetrics;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain chain) throws ServletException, IOException {
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      chain.doFilter(request, response);
+      failed = false;
+    } finally {
+      Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+      // An exception escaping the chain becomes a 500 after this filter has returned
+      int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+      requestMetrics.record(request.getMethod(), route == null ? UNMATCHED : route.toString(),
+          status, request.getAttribute(BusinessMetrics.CONFLICT_ATTRIBUTE) != null,
+          System.nanoTime() - start);
+    }
+  }
+}
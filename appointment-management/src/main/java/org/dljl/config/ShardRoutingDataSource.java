@@ -0,0 +1,61 @@
+package org.dljl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.dljl.service.sharding.ShardRouting;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections of the shard {@link ShardRouting} picked for the current thread, shard 0
+ * when none was picked.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+  private final ShardRouting shardRouting;
+  private final List<HikariDataSource> shards;
+
+  /**
+   * Create the data source.
+   *
+   * @param shardZero shard 0
+   * @param shards the other shards, in the order of the configured URLs
+   * @param shardRouting the routing decisions
+   */
+  public ShardRoutingDataSource(HikariDataSource shardZero, List<HikariDataSource> shards,
+      ShardRouting shardRouting) {
+    this.shardRouting = shardRouting;
+    this.shards = shards;
+    Map<Object, Object> targets = new HashMap<>();
+    for (int i = 0; i < shards.size(); i++) {
+      targets.put(i + 1, shards.get(i));
+    }
+    setDefaultTargetDataSource(shardZero);
+    setTargetDataSources(targets);
+    // A missing key means shard 0, an unknown one is a bug
+    setLenientFallback(false);
+  }
+
+  /**
+   * Gets the shards besides shard 0.
+   *
+   * @return the shards 1 to n
+   */
+  public List<HikariDataSource> getShards() {
+    return shards;
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    return shardRouting.currentShard();
+  }
+
+  /** Close the pools of shards 1 to n, shard 0 is a bean of its own. */
+  @Override
+  public void close() {
+    for (HikariDataSource shard : shards) {
+      shard.close();
+    }
+  }
+}
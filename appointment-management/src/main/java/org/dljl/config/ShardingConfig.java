@@ -0,0 +1,92 @@
+package org.dljl.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import org.dljl.service.routing.ReadRouting;
+import org.dljl.service.sharding.ShardRouting;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Sharded mode, enabled by listing the JDBC URLs of shards 1 to n in
+ * {@code appointment.sharding.urls}. Shard 0 keeps the {@code spring.datasource} settings, and
+ * every other shard gets a pool of the same size under the shard credentials. Flyway migrates
+ * every shard.
+ */
+@Configuration
+@ConditionalOnExpression("'${appointment.sharding.urls:}' != ''")
+public class ShardingConfig {
+
+  @Value("${appointment.sharding.urls}")
+  private String shardUrls;
+
+  @Value("${appointment.sharding.username:${spring.datasource.username:}}")
+  private String shardUsername;
+
+  @Value("${appointment.sharding.password:${spring.datasource.password:}}")
+  private String shardPassword;
+
+  /**
+   * The pool of shard 0, configured like the pool Spring Boot would create.
+   *
+   * @param properties the {@code spring.datasource} properties
+   * @return shard 0
+   */
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource shardZeroDataSource(DataSourceProperties properties) {
+    return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+  }
+
+  /**
+   * The data source used by MyBatis, Flyway and JDBC templates.
+   *
+   * @param shardZeroDataSource shard 0
+   * @param properties the {@code spring.datasource} properties
+   * @param shardRouting the routing decisions
+   * @return the routing data source
+   */
+  @Bean
+  @Primary
+  public ShardRoutingDataSource shardedDataSource(HikariDataSource shardZeroDataSource,
+      DataSourceProperties properties, ShardRouting shardRouting) {
+    List<HikariDataSource> shards = new ArrayList<>();
+    for (String url : ReadRouting.parseUrls(shardUrls)) {
+      HikariDataSource shard = properties.initializeDataSourceBuilder()
+          .type(HikariDataSource.class)
+          .url(url)
+          .username(shardUsername)
+          .password(shardPassword)
+          .build();
+      shard.setPoolName("shard-" + (shards.size() + 1));
+      shard.setMaximumPoolSize(shardZeroDataSource.getMaximumPoolSize());
+      shards.add(shard);
+    }
+    return new ShardRoutingDataSource(shardZeroDataSource, shards, shardRouting);
+  }
+
+  /**
+   * Apply the migrations to shard 0 as usual, then with the same settings to every other shard.
+   *
+   * @param shardedDataSource the routing data source
+   * @return the migration strategy
+   */
+  @Bean
+  public FlywayMigrationStrategy shardMigrationStrategy(ShardRoutingDataSource shardedDataSource) {
+    return flyway -> {
+      flyway.migrate();
+      for (HikariDataSource shard : shardedDataSource.getShards()) {
+        Flyway.configure().configuration(flyway.getConfiguration()).dataSource(shard).load()
+            .migrate();
+      }
+    };
+  }
+}
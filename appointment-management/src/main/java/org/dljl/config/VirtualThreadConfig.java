@@ -0,0 +1,124 @@
+package org.dljl.config;
+
+import jakarta.annotation.PreDestroy;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Opt-in mode that handles every request on its own virtual thread instead of Tomcat's pool of
+ * platform threads, enabled with {@code appointment.virtual-threads.enabled=true}. Requests spend
+ * most of their time blocked on JDBC round trips, which park a virtual thread without holding an
+ * OS thread.
+ *
+ * <p>The build targets Java 17, so the virtual thread executor is looked up reflectively. On a
+ * JDK without virtual threads the mode logs a warning and requests stay on the platform pool.
+ * The concurrency cap is installed either way. It defaults to the connection pool size divided
+ * by the connections one request can hold: two with {@code appointment.locking.db-guard}, where
+ * a batch writes in its own transaction while the provider lock transaction stays open. The
+ * metrics endpoints do not touch the database and are not capped.
+ */
+@Configuration
+@ConditionalOnProperty(name = "appointment.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfig.class);
+
+  @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+  private int connectionPoolSize;
+
+  @Value("${appointment.locking.db-guard:false}")
+  private boolean dbGuard;
+
+  // 0 sizes the cap to the connection pool
+  @Value("${appointment.virtual-threads.max-concurrent-requests:0}")
+  private int maxConcurrentRequests;
+
+  @Value("${appointment.virtual-threads.acquire-timeout-ms:5000}")
+  private long acquireTimeoutMillis;
+
+  private ExecutorService executor;
+
+  /**
+   * Run Tomcat's request processing on virtual threads.
+   *
+   * @return the protocol handler customizer
+   */
+  @Bean
+  public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadExecutorCustomizer() {
+    executor = newVirtualThreadPerTaskExecutor();
+    if (executor == null) {
+      logger.warn("Virtual threads are not available on Java {}, requests stay on the platform "
+          + "thread pool.", Runtime.version().feature());
+      return protocolHandler -> { };
+    }
+    logger.info("Handling requests on virtual threads.");
+    return protocolHandler -> protocolHandler.setExecutor(executor);
+  }
+
+  /**
+   * The cap on requests handled at once.
+   *
+   * @return the filter
+   */
+  @Bean
+  public ConcurrencyLimitFilter concurrencyLimitFilter() {
+    int connectionsPerRequest = dbGuard ? 2 : 1;
+    int limit = maxConcurrentRequests > 0 ? maxConcurrentRequests
+        : Math.max(connectionPoolSize / connectionsPerRequest, 1);
+    return new ConcurrencyLimitFilter(limit, acquireTimeoutMillis, List.of("/metrics"));
+  }
+
+  /**
+   * Apply the cap before any other filter.
+   *
+   * @param filter the filter
+   * @return the filter registration
+   */
+  @Bean
+  public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilterRegistration(
+      ConcurrencyLimitFilter filter) {
+    FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+        new FilterRegistrationBean<>(filter);
+    registration.addUrlPatterns("/*");
+    // Inside the request metrics filter, so rejected requests are counted
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+    return registration;
+  }
+
+  /** Stop the executor once the server has stopped handing it requests. */
+  @PreDestroy
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Gets {@code Executors.newVirtualThreadPerTaskExecutor()} if the running JDK has it.
+   *
+   * @return the executor, or null without virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    } catch (InvocationTargetException e) {
+      // A preview API on Java 19 and 20, unsupported without --enable-preview
+      return null;
+    }
+  }
+}
@@ -1,22 +1,40 @@
 package org.dljl.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
+import org.dljl.dto.AppointmentHistoryEntry;
+import org.dljl.dto.BatchAppointmentResult;
 import org.dljl.dto.CreateAppointmentDto;
 import org.dljl.dto.CreateBlockDto;
 import org.dljl.dto.CreateRecurringBlockDto;
 import org.dljl.dto.CreateRecurringBlockInOneYearDto;
 import org.dljl.dto.UpdateAppointmentDto;
 import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
 import org.dljl.service.AppointmentService;
+import org.dljl.service.idempotency.IdempotencyKeyReusedException;
+import org.dljl.service.idempotency.IdempotencyStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -24,6 +42,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -33,46 +52,92 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/appointments")
 public class AppointmentController {
 
+  /** The request header carrying the idempotency key of a create request. */
+  public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+  // Rows are written to this buffer and sent whenever it fills up, not once per row
+  private static final int EXPORT_BUFFER_BYTES = 64 * 1024;
+
   @Autowired private AppointmentService appointmentService;
 
+  @Autowired private IdempotencyStore idempotencyStore;
+
+  @Autowired private ObjectMapper objectMapper;
+
   /**
    * Create appointment response entity.
    *
    * @param appointmentDto the appointment dto
+   * @param idempotencyKey the optional idempotency key, a retry with the same key gets the
+   *     original response
    * @return the response entity
    */
   // Create a new appointment
   @PostMapping("/createAppointment")
-  public ResponseEntity<?> createAppointment(@RequestBody CreateAppointmentDto appointmentDto) {
-    try {
-      Appointment createdAppointment = appointmentService.createAppointment(appointmentDto);
-      return new ResponseEntity<>(createdAppointment, HttpStatus.CREATED);
-    } catch (IllegalArgumentException e) {
-      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-    } catch (Exception e) {
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-          .body("An unexpected error occurred: " + e.getMessage());
-    }
+  public ResponseEntity<?> createAppointment(@RequestBody CreateAppointmentDto appointmentDto,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+    return idempotent("createAppointment", idempotencyKey, appointmentDto, () -> {
+      try {
+        Appointment createdAppointment = appointmentService.createAppointment(appointmentDto);
+        return new ResponseEntity<>(createdAppointment, HttpStatus.CREATED);
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+      } catch (Exception e) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+            .body("An unexpected error occurred: " + e.getMessage());
+      }
+    });
   }
 
   /**
    * Create block response entity.
    *
    * @param blockDto the block dto
+   * @param idempotencyKey the optional idempotency key, a retry with the same key gets the
+   *     original response
    * @return the response entity
    */
   // Create recurring block in one year
   @PostMapping("/createBlock")
-  public ResponseEntity<String> createBlock(@RequestBody CreateBlockDto blockDto) {
-    try {
-      String result = appointmentService.createBlock(blockDto);
-      return new ResponseEntity<>(result, HttpStatus.CREATED);
-    } catch (IllegalArgumentException e) {
-      return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
-    } catch (Exception e) {
-      return new ResponseEntity<>(
-          "An unexpected error occurred: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
-    }
+  public ResponseEntity<?> createBlock(@RequestBody CreateBlockDto blockDto,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+    return idempotent("createBlock", idempotencyKey, blockDto, () -> {
+      try {
+        String result = appointmentService.createBlock(blockDto);
+        return new ResponseEntity<>(result, HttpStatus.CREATED);
+      } catch (IllegalArgumentException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+      } catch (Exception e) {
+        return new ResponseEntity<>(
+            "An unexpected error occurred: " + e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR);
+      }
+    });
+  }
+
+  /**
+   * Create many appointments at once.
+   *
+   * @param appointmentDtos the appointments to create
+   * @param idempotencyKey the optional idempotency key, a retry with the same key gets the
+   *     original response
+   * @return the response entity with one result per appointment
+   */
+  @PostMapping("/batch")
+  public ResponseEntity<?> createAppointments(
+      @RequestBody List<CreateAppointmentDto> appointmentDtos,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+    return idempotent("batch", idempotencyKey, appointmentDtos, () -> {
+      try {
+        List<BatchAppointmentResult> results = appointmentService.createAppointments(
+            appointmentDtos);
+        return ResponseEntity.ok(results);
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+      } catch (Exception e) {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+            .body("An unexpected error occurred: " + e.getMessage());
+      }
+    });
   }
 
   /**
@@ -110,6 +175,9 @@ public class AppointmentController {
       return ResponseEntity.ok(updatedAppointment);
     } catch (IllegalArgumentException e) {
       return ResponseEntity.badRequest().body(e.getMessage());
+    } catch (IllegalStateException e) {
+      // Lost a race with another write to the appointment, the client may retry
+      return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
     }
   }
 
@@ -150,6 +218,57 @@ public class AppointmentController {
     }
   }
 
+  /**
+   * Cancel every appointment and block of a provider starting in a time range.
+   *
+   * @param providerId the provider id
+   * @param startDateTime the start of the range
+   * @param endDateTime the end of the range (exclusive)
+   * @param status only rows with this status, optional
+   * @return the number and ids of the cancelled rows
+   */
+  @PutMapping("/provider/{providerId}/cancelRange")
+  public ResponseEntity<?> cancelAppointmentsInRange(
+      @PathVariable("providerId") Long providerId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime startDateTime,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime endDateTime,
+      @RequestParam(required = false) String status) {
+    try {
+      return ResponseEntity.ok(appointmentService.cancelAppointmentsInRange(
+          providerId, startDateTime, endDateTime, status));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(e.getMessage());
+    }
+  }
+
+  /**
+   * Permanently delete every appointment and block of a provider starting in a time range. Like
+   * {@link #deleteBlock}, use carefully on appointments as their history is lost.
+   *
+   * @param providerId the provider id
+   * @param startDateTime the start of the range
+   * @param endDateTime the end of the range (exclusive)
+   * @param status only rows with this status, optional
+   * @return the number and ids of the deleted rows
+   */
+  @DeleteMapping("/provider/{providerId}/deleteRange")
+  public ResponseEntity<?> deleteAppointmentsInRange(
+      @PathVariable("providerId") Long providerId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime startDateTime,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime endDateTime,
+      @RequestParam(required = false) String status) {
+    try {
+      return ResponseEntity.ok(appointmentService.deleteAppointmentsInRange(
+          providerId, startDateTime, endDateTime, status));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(e.getMessage());
+    }
+  }
+
   /**
    * Gets appointment.
    *
@@ -171,14 +290,69 @@ public class AppointmentController {
    * Gets appointments by provider id.
    *
    * @param providerId the provider id
-   * @return the appointments by provider id
+   * @param limit the optional page size, returns one page instead of every appointment
+   * @param cursor the optional next cursor of the previous page
+   * @return the appointments by provider id, or one page of them
    */
   // Get appointments by provider ID
   @GetMapping("/provider/{providerId}")
-  public ResponseEntity<List<Appointment>> getAppointmentsByProviderId(
-      @PathVariable Long providerId) {
-    List<Appointment> appointments = appointmentService.getAppointmentsByProviderId(providerId);
-    return ResponseEntity.ok(appointments);
+  public ResponseEntity<?> getAppointmentsByProviderId(@PathVariable Long providerId,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String cursor) {
+    if (limit == null && cursor == null) {
+      List<Appointment> appointments = appointmentService.getAppointmentsByProviderId(providerId);
+      return ResponseEntity.ok(appointments);
+    }
+    try {
+      return ResponseEntity.ok(
+          appointmentService.getAppointmentsByProviderId(providerId, cursor, limit));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+  }
+
+  /**
+   * Export the appointments and blocks of a provider as newline-delimited JSON, one appointment
+   * per line. Rows are written to the response as they are read, so memory use does not grow
+   * with the number of rows.
+   *
+   * @param providerId the provider id
+   * @param startDate only rows starting on or after this day
+   * @param endDate only rows starting before this day
+   * @param status only rows with this status
+   * @param response the response the rows are written to
+   * @throws IOException if the response cannot be written
+   */
+  @GetMapping("/provider/{providerId}/export")
+  public void exportAppointments(@PathVariable Long providerId,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate startDate,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate endDate,
+      @RequestParam(required = false) String status,
+      HttpServletResponse response) throws IOException {
+    ObjectWriter rowWriter = objectMapper.writerFor(Appointment.class);
+    response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+    OutputStream out = new BufferedOutputStream(response.getOutputStream(), EXPORT_BUFFER_BYTES);
+    try {
+      appointmentService.exportAppointments(providerId, startDate, endDate, status,
+          appointment -> {
+            try {
+              out.write(rowWriter.writeValueAsBytes(appointment));
+              out.write('\n');
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (IllegalArgumentException e) {
+      // Arguments are checked before the first row, so nothing has been written yet
+      response.setStatus(HttpStatus.BAD_REQUEST.value());
+      response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+      out.write(e.getMessage().getBytes(StandardCharsets.UTF_8));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    out.flush();
   }
 
   /**
@@ -217,18 +391,113 @@ public class AppointmentController {
     return ResponseEntity.ok(availableTimeIntervals);
   }
 
+  /**
+   * Gets available time intervals for every day of a date range.
+   *
+   * @param providerId the provider id
+   * @param startDate the first day
+   * @param endDate the day after the last day
+   * @return the available time intervals keyed by day
+   */
+  // Get available time intervals for the days in [startDate, endDate) with a single query
+  @GetMapping("/provider/{providerId}/available")
+  public ResponseEntity<?> getAvailableTimeIntervalsInRange(
+      @PathVariable("providerId") Long providerId,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+    try {
+      Map<LocalDate, List<List<LocalDateTime>>> availability =
+          appointmentService.getAvailableTimeIntervalsInRange(providerId, startDate, endDate);
+      return ResponseEntity.ok(availability);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+  }
+
+  /**
+   * Find the next available slots of a provider.
+   *
+   * @param providerId the provider id
+   * @param durationMinutes the slot length in minutes
+   * @param earliestStart the earliest slot start
+   * @param horizonDays the number of days to search, optional
+   * @param count the maximum number of slots, defaults to 1
+   * @return the slots
+   */
+  // Get the first free slots of a given length after a point in time
+  @GetMapping("/provider/{providerId}/nextAvailable")
+  public ResponseEntity<?> findAvailableSlots(
+      @PathVariable("providerId") Long providerId,
+      @RequestParam int durationMinutes,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+          LocalDateTime earliestStart,
+      @RequestParam(required = false) Integer horizonDays,
+      @RequestParam(defaultValue = "1") int count) {
+    try {
+      List<List<LocalDateTime>> slots = appointmentService.findAvailableSlots(
+          providerId, durationMinutes, earliestStart, horizonDays, count);
+      return ResponseEntity.ok(slots);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+  }
+
+  /**
+   * Gets the windows when all of several providers are free.
+   *
+   * @param providerIds the provider ids
+   * @param startDate the first day
+   * @param endDate the day after the last day
+   * @param minDurationMinutes the shortest window to return, optional
+   * @return the common free windows
+   */
+  // Get the time in [startDate, endDate) when every given provider is free
+  @GetMapping("/commonAvailability")
+  public ResponseEntity<?> getCommonAvailability(
+      @RequestParam List<Long> providerIds,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestParam(required = false) Integer minDurationMinutes) {
+    try {
+      List<List<LocalDateTime>> windows = appointmentService.getCommonAvailability(
+          providerIds, startDate, endDate, minDurationMinutes);
+      return ResponseEntity.ok(windows);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+  }
+
   /**
    * Gets appointment history.
    *
    * @param providerId the provider id
    * @param userId the user id
-   * @return the appointment history
+   * @param startDate the optional first day, returns one page of the history
+   * @param endDate the optional day after the last day, returns one page of the history
+   * @param limit the optional page size, returns one page instead of the whole history
+   * @param cursor the optional next cursor of the previous page
+   * @return the appointment history, or one page of it
    */
   @GetMapping("/history")
-  public ResponseEntity<List<Map<String, Object>>> getAppointmentHistory(
-      @RequestParam("provider_id") Long providerId, @RequestParam("user_id") Long userId) {
+  public ResponseEntity<?> getAppointmentHistory(
+      @RequestParam("provider_id") Long providerId, @RequestParam("user_id") Long userId,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate startDate,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate endDate,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String cursor) {
+
+    if (startDate != null || endDate != null || limit != null || cursor != null) {
+      try {
+        return ResponseEntity.ok(appointmentService.getAppointmentHistory(
+            providerId, userId, startDate, endDate, cursor, limit));
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+      }
+    }
 
-    List<Appointment> appointmentHistory =
+    List<AppointmentHistoryEntry> appointmentHistory =
         appointmentService.getAppointmentHistory(providerId, userId);
 
     if (appointmentHistory.isEmpty()) {
@@ -240,23 +509,8 @@ public class AppointmentController {
       return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
-    // Customize the output
-    List<Map<String, Object>> response =
-        appointmentHistory.stream()
-            .map(
-                appointment -> {
-                  Map<String, Object> appointmentDetails = new HashMap<>();
-                  appointmentDetails.put("Appointment ID", appointment.getAppointmentId());
-                  appointmentDetails.put("Start Date and Time", appointment.getStartDateTime());
-                  appointmentDetails.put("End Date and Time", appointment.getEndDateTime());
-                  appointmentDetails.put("Status", appointment.getStatus());
-                  appointmentDetails.put("Service Type", appointment.getServiceType());
-                  appointmentDetails.put("Comments", appointment.getComments());
-                  return appointmentDetails;
-                })
-            .collect(Collectors.toList());
-
-    return new ResponseEntity<>(response, HttpStatus.OK);
+    // The entries serialize with the history field names themselves
+    return new ResponseEntity<>(appointmentHistory, HttpStatus.OK);
   }
 
   /**
@@ -265,14 +519,22 @@ public class AppointmentController {
    * @param providerId the provider id
    * @param startDate the start date of the range
    * @param endDate the end date of the range
-   * @return the appointments within the date range
+   * @param limit the optional page size, returns one page instead of every appointment
+   * @param cursor the optional next cursor of the previous page
+   * @return the appointments within the date range, or one page of them
    */
   @GetMapping("/provider/{providerId}/appointments")
-  public ResponseEntity<List<Appointment>> getAppointmentsWithinDateRange(
+  public ResponseEntity<?> getAppointmentsWithinDateRange(
       @PathVariable Long providerId,
       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestParam(required = false) Integer limit,
+      @RequestParam(required = false) String cursor) {
     try {
+      if (limit != null || cursor != null) {
+        return ResponseEntity.ok(appointmentService.getAppointmentsWithinDateRange(
+            providerId, startDate, endDate, cursor, limit));
+      }
       List<Appointment> appointments =
           appointmentService.getAppointmentsWithinDateRange(providerId, startDate, endDate);
       return ResponseEntity.ok(appointments);
@@ -304,4 +566,82 @@ public class AppointmentController {
     }
   }
 
+  /**
+   * Gets the recurring block rules of a provider.
+   *
+   * @param providerId the provider id
+   * @return the recurring blocks
+   */
+  @GetMapping("/provider/{providerId}/recurringBlocks")
+  public ResponseEntity<List<RecurringBlock>> getRecurringBlocks(@PathVariable Long providerId) {
+    return ResponseEntity.ok(appointmentService.getRecurringBlocks(providerId));
+  }
+
+  /**
+   * Delete a recurring block rule. This removes the block from every day it covers at once.
+   *
+   * @param id the recurring block id
+   * @return the response entity
+   */
+  @DeleteMapping("/deleteRecurringBlock/{id}")
+  public ResponseEntity<String> deleteRecurringBlock(@PathVariable Long id) {
+    boolean isDeleted = appointmentService.deleteRecurringBlock(id);
+    if (isDeleted) {
+      return ResponseEntity.ok("Recurring block deleted successfully.");
+    } else {
+      return ResponseEntity.badRequest().body("Recurring block not found or already deleted.");
+    }
+  }
+
+  /**
+   * Free a single day of a recurring block rule, the counterpart of deleting one daily block.
+   *
+   * @param id the recurring block id
+   * @param date the day to free
+   * @return the response entity
+   */
+  @DeleteMapping("/deleteRecurringBlock/{id}/occurrence/{date}")
+  public ResponseEntity<String> deleteRecurringBlockOccurrence(@PathVariable Long id,
+      @PathVariable("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+    try {
+      if (appointmentService.deleteRecurringBlockOccurrence(id, date)) {
+        return ResponseEntity.ok("Recurring block occurrence deleted successfully.");
+      } else {
+        return ResponseEntity.badRequest().body("Recurring block not found.");
+      }
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(e.getMessage());
+    }
+  }
+
+  /**
+   * Run a create request once per idempotency key. Server errors are not stored, so a retry after
+   * one runs the request again. Reusing a key with a different body is rejected with 422.
+   */
+  private ResponseEntity<?> idempotent(String operation, String idempotencyKey, Object body,
+      Supplier<ResponseEntity<?>> request) {
+    if (idempotencyKey == null) {
+      return request.get();
+    }
+    try {
+      return idempotencyStore.execute(operation + ":" + idempotencyKey, fingerprint(body),
+          request, response -> !response.getStatusCode().is5xxServerError());
+    } catch (IdempotencyKeyReusedException e) {
+      return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(e.getMessage());
+    } catch (IllegalStateException e) {
+      return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+  }
+
+  /** Gets the SHA-256 of a request body as JSON, which identifies it for idempotency. */
+  private String fingerprint(Object body) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(body)));
+    } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 }
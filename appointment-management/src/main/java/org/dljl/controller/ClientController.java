@@ -2,7 +2,8 @@ package org.dljl.controller;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
+import org.dljl.service.id.SnowflakeIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -18,9 +19,12 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("clients")
 public class ClientController {
 
+  @Autowired
+  private SnowflakeIdGenerator idGenerator;
+
   /**
-   * Endpoint to register a new client. This endpoint generates a unique client ID using a
-   * combination of the current timestamp and random numbers to avoid collisions. It returns the
+   * Endpoint to register a new client. This endpoint generates a unique, time-ordered client ID
+   * with {@link SnowflakeIdGenerator}, so concurrent registrations never collide. It returns the
    * client ID as a long and a message instructing the client to save the generated ID.
    *
    * @return ResponseEntity containing a map with the generated client ID and an advisory message.
@@ -28,10 +32,7 @@ public class ClientController {
    */
   @PostMapping("/registerClient")
   public ResponseEntity<Map<String, Object>> registerClient() {
-    // Generate unique client ID using current timestamp and random number
-    long currentTimeMillis = System.currentTimeMillis();
-    long randomPart = ThreadLocalRandom.current().nextLong(1000, 9999);
-    long clientId = currentTimeMillis * 10000 + randomPart;
+    long clientId = idGenerator.nextId();
 
     // Prepare response with client ID and message
     Map<String, Object> response = new HashMap<>();
@@ -0,0 +1,60 @@
+package org.dljl.controller;
+
+import java.util.List;
+import org.dljl.dto.StatementMetricsSnapshot;
+import org.dljl.service.metrics.PrometheusMetrics;
+import org.dljl.service.metrics.StatementMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller exposing runtime metrics of the service, for finding slow database statements in
+ * production without attaching a profiler.
+ */
+@RestController
+@RequestMapping("metrics")
+public class MetricsController {
+
+  @Autowired private StatementMetrics statementMetrics;
+
+  @Autowired private PrometheusMetrics prometheusMetrics;
+
+  /**
+   * Gets every metric of the service in the Prometheus text exposition format, for scraping.
+   *
+   * @return the metrics
+   */
+  @GetMapping("/prometheus")
+  public ResponseEntity<String> getPrometheusMetrics() {
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType(PrometheusMetrics.CONTENT_TYPE))
+        .body(prometheusMetrics.scrape());
+  }
+
+  /**
+   * Gets latency and row counts of every mapped statement executed since startup or the last
+   * reset.
+   *
+   * @return the statements, the one with the most total time first
+   */
+  @GetMapping("/statements")
+  public ResponseEntity<List<StatementMetricsSnapshot>> getStatementMetrics() {
+    return ResponseEntity.ok(statementMetrics.snapshot());
+  }
+
+  /**
+   * Drops the statement metrics collected so far.
+   *
+   * @return a confirmation message
+   */
+  @DeleteMapping("/statements")
+  public ResponseEntity<String> resetStatementMetrics() {
+    statementMetrics.reset();
+    return ResponseEntity.ok("Statement metrics reset.");
+  }
+}
@@ -0,0 +1,86 @@
+package org.dljl.controller;
+
+import java.util.List;
+import org.dljl.dto.ShardMoveResult;
+import org.dljl.entity.ProviderPlacement;
+import org.dljl.service.sharding.ShardRebalancer;
+import org.dljl.service.sharding.ShardRouting;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Controller for operating a sharded deployment: finding the shard of a provider and moving
+ * providers between shards online.
+ */
+@RestController
+@RequestMapping("shards")
+public class ShardController {
+
+  @Autowired private ShardRouting shardRouting;
+
+  @Autowired private ShardRebalancer shardRebalancer;
+
+  /**
+   * Gets the shard holding the rows of a provider.
+   *
+   * @param providerId the provider id
+   * @return the provider and its shard
+   */
+  @GetMapping("/provider/{providerId}")
+  public ResponseEntity<?> getProviderShard(@PathVariable Long providerId) {
+    if (!shardRouting.isEnabled()) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Sharding is not enabled.");
+    }
+    ProviderPlacement placement = new ProviderPlacement();
+    placement.setProviderId(providerId);
+    placement.setShard(shardRouting.shardOf(providerId));
+    return ResponseEntity.ok(placement);
+  }
+
+  /**
+   * Moves the rows of a provider to another shard.
+   *
+   * @param providerId the provider id
+   * @param targetShard the shard to move to
+   * @return the rows moved
+   */
+  @PostMapping("/provider/{providerId}/move")
+  public ResponseEntity<?> moveProvider(@PathVariable Long providerId,
+      @RequestParam int targetShard) {
+    try {
+      ShardMoveResult result = shardRebalancer.moveProvider(providerId, targetShard);
+      return ResponseEntity.ok(result);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body("An unexpected error occurred: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Moves every provider to the shard the ring over all configured shards assigns it to, after
+   * shards were added.
+   *
+   * @return the moves made
+   */
+  @PostMapping("/rebalance")
+  public ResponseEntity<?> rebalance() {
+    try {
+      List<ShardMoveResult> moves = shardRebalancer.rebalance();
+      return ResponseEntity.ok(moves);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body("An unexpected error occurred: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package org.dljl.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.time.LocalDateTime;
+
+/**
+ * One appointment in the history of a provider with a user. Holds only the columns the history
+ * shows, is read straight from the result set and serialized as is, with the field names the
+ * history endpoint has always used.
+ *
+ * @param appointmentId the appointment id
+ * @param startDateTime the start date time
+ * @param endDateTime the end date time
+ * @param status the status
+ * @param serviceType the service type
+ * @param comments the comments
+ */
+public record AppointmentHistoryEntry(
+    @JsonProperty("Appointment ID") Long appointmentId,
+    @JsonProperty("Start Date and Time") LocalDateTime startDateTime,
+    @JsonProperty("End Date and Time") LocalDateTime endDateTime,
+    @JsonProperty("Status") String status,
+    @JsonProperty("Service Type") String serviceType,
+    @JsonProperty("Comments") String comments) {
+}
@@ -0,0 +1,13 @@
+package org.dljl.dto;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+/** One page of an appointment history, with the cursor of the next page or null on the last. */
+@Getter
+@Setter
+public class AppointmentHistoryPage {
+  private List<AppointmentHistoryEntry> items;
+  private String nextCursor;
+}
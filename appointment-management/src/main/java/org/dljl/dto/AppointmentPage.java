@@ -0,0 +1,14 @@
+package org.dljl.dto;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import org.dljl.entity.Appointment;
+
+/** One page of a listing, with the cursor of the next page or null on the last page. */
+@Getter
+@Setter
+public class AppointmentPage {
+  private List<Appointment> items;
+  private String nextCursor;
+}
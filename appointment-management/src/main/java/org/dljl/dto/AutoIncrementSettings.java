@@ -0,0 +1,12 @@
+package org.dljl.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/** The AUTO_INCREMENT step and offset a shard hands out new ids with. */
+@Getter
+@Setter
+public class AutoIncrementSettings {
+  private Integer increment;
+  private Integer offset;
+}
@@ -0,0 +1,13 @@
+package org.dljl.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/** The result of one appointment of a batch: its id if created, otherwise why it was rejected. */
+@Getter
+@Setter
+public class BatchAppointmentResult {
+  private int index;
+  private Long appointmentId;
+  private String error;
+}
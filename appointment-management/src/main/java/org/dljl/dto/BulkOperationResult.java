@@ -0,0 +1,13 @@
+package org.dljl.dto;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+/** The rows changed by a bulk cancel or delete. */
+@Getter
+@Setter
+public class BulkOperationResult {
+  private int affected;
+  private List<Long> appointmentIds;
+}
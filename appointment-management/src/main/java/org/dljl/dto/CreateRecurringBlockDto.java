@@ -1,7 +1,9 @@
 package org.dljl.dto;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -15,5 +17,6 @@ public class CreateRecurringBlockDto {
   private LocalTime endTime;
   private LocalDate startDate;
   private LocalDate endDate;
+  private Set<DayOfWeek> daysOfWeek; // Optional, every day if empty
 
 }
\ No newline at end of file
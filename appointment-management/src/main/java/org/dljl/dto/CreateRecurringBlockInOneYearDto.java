@@ -1,6 +1,8 @@
 package org.dljl.dto;
 
+import java.time.DayOfWeek;
 import java.time.LocalTime;
+import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -12,4 +14,5 @@ public class CreateRecurringBlockInOneYearDto {
   private Long providerId;
   private LocalTime startTime;
   private LocalTime endTime;
+  private Set<DayOfWeek> daysOfWeek; // Optional, every day if empty
 }
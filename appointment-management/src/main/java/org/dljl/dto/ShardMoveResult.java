@@ -0,0 +1,15 @@
+package org.dljl.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/** The rows moved with a provider from one shard to another. */
+@Getter
+@Setter
+public class ShardMoveResult {
+  private Long providerId;
+  private int fromShard;
+  private int toShard;
+  private int appointmentsMoved;
+  private int recurringBlocksMoved;
+}
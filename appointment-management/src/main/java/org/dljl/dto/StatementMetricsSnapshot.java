@@ -0,0 +1,24 @@
+package org.dljl.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Latency and rows of one mapped statement since startup or the last reset. Percentiles are the
+ * upper bound of their histogram bucket.
+ */
+@Getter
+@Setter
+public class StatementMetricsSnapshot {
+  private String statementId;
+  private long count;
+  private long errors;
+  private double totalMillis;
+  private double meanMillis;
+  private double p50Millis;
+  private double p95Millis;
+  private double p99Millis;
+  private double maxMillis;
+  private long rows;
+  private long maxRows;
+}
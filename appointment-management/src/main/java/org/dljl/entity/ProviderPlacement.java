@@ -0,0 +1,20 @@
+package org.dljl.entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Records the shard holding the rows of a provider that was moved off the shard the hash ring
+ * assigns it to.
+ */
+@Setter
+@Getter
+public class ProviderPlacement {
+
+  private Long providerId;
+  private Integer shard;
+  // Set while a move may have left copies of the provider's rows on another shard
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Integer cleanupShard;
+}
@@ -0,0 +1,29 @@
+package org.dljl.entity;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Represents a recurring block stored as a single rule instead of one blocked row per day. The
+ * provider is blocked from {@code startTime} to {@code endTime} on every day between
+ * {@code startDate} and {@code endDate} (inclusive) that matches the weekday mask, except on the
+ * excluded dates that conflicted with existing appointments when the rule was created.
+ *
+ * <p>This class uses Lombok's {@code @Getter} and {@code @Setter} annotations to automatically
+ * generate getter and setter methods for its fields.
+ */
+@Setter
+@Getter
+public class RecurringBlock {
+
+  private Long recurringBlockId; // Auto-generated by the database
+  private Long providerId;
+  private LocalTime startTime;
+  private LocalTime endTime;
+  private LocalDate startDate;
+  private LocalDate endDate;
+  private Integer weekdayMask; // Bit 0 is Monday, bit 6 is Sunday, null means every day
+  private String excludedDates; // Comma separated ISO dates, null if none
+}
@@ -0,0 +1,9 @@
+package org.dljl.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.dljl.storage.ProviderLockStore;
+
+/** The MyBatis implementation of {@link ProviderLockStore}, see ProviderLockMapper.xml. */
+@Mapper
+public interface ProviderLockMapper extends ProviderLockStore {
+}
@@ -0,0 +1,9 @@
+package org.dljl.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.dljl.storage.RecurringBlockStore;
+
+/** The MyBatis implementation of {@link RecurringBlockStore}, see RecurringBlockMapper.xml. */
+@Mapper
+public interface RecurringBlockMapper extends RecurringBlockStore {
+}
@@ -0,0 +1,9 @@
+package org.dljl.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.dljl.storage.ShardStore;
+
+/** The MyBatis implementation of {@link ShardStore}, see ShardMapper.xml. */
+@Mapper
+public interface ShardMapper extends ShardStore {
+}
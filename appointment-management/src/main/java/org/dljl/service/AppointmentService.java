@@ -3,12 +3,20 @@ package org.dljl.service;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.dljl.dto.AppointmentHistoryEntry;
+import org.dljl.dto.AppointmentHistoryPage;
+import org.dljl.dto.AppointmentPage;
+import org.dljl.dto.BatchAppointmentResult;
+import org.dljl.dto.BulkOperationResult;
 import org.dljl.dto.CreateAppointmentDto;
 import org.dljl.dto.CreateBlockDto;
 import org.dljl.dto.CreateRecurringBlockDto;
 import org.dljl.dto.CreateRecurringBlockInOneYearDto;
 import org.dljl.dto.UpdateAppointmentDto;
 import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
 
 /** The interface Appointment service. */
 public interface AppointmentService {
@@ -21,6 +29,16 @@ public interface AppointmentService {
    */
   Appointment createAppointment(CreateAppointmentDto appointmentDto);
 
+  /**
+   * Create many appointments at once. Each appointment is checked against the stored
+   * appointments, blocks and recurring blocks of its provider and against the earlier
+   * appointments of the batch, and is created only if it conflicts with none of them.
+   *
+   * @param appointmentDtos the appointments to create
+   * @return one result per appointment, in request order, with its id or why it was rejected
+   */
+  List<BatchAppointmentResult> createAppointments(List<CreateAppointmentDto> appointmentDtos);
+
   /**
    * Create block string.
    *
@@ -61,6 +79,30 @@ public interface AppointmentService {
    */
   boolean deleteBlock(Long id);
 
+  /**
+   * Cancel every non-cancelled appointment and block of a provider starting in a time range.
+   *
+   * @param providerId the provider id
+   * @param startDateTime the start of the range
+   * @param endDateTime the end of the range (exclusive)
+   * @param status only rows with this status, e.g. {@code blocked}, or null for any status
+   * @return the number and ids of the cancelled rows
+   */
+  BulkOperationResult cancelAppointmentsInRange(Long providerId, LocalDateTime startDateTime,
+      LocalDateTime endDateTime, String status);
+
+  /**
+   * Permanently delete every appointment and block of a provider starting in a time range.
+   *
+   * @param providerId the provider id
+   * @param startDateTime the start of the range
+   * @param endDateTime the end of the range (exclusive)
+   * @param status only rows with this status, e.g. {@code blocked}, or null for any status
+   * @return the number and ids of the deleted rows
+   */
+  BulkOperationResult deleteAppointmentsInRange(Long providerId, LocalDateTime startDateTime,
+      LocalDateTime endDateTime, String status);
+
   /**
    * Gets appointment.
    *
@@ -77,6 +119,30 @@ public interface AppointmentService {
    */
   List<Appointment> getAppointmentsByProviderId(Long providerId);
 
+  /**
+   * Gets one page of the appointments of a provider, ordered by start time and id.
+   *
+   * @param providerId the provider id
+   * @param cursor the next cursor of the previous page, or null for the first page
+   * @param limit the page size, or null for the default
+   * @return the page
+   */
+  AppointmentPage getAppointmentsByProviderId(Long providerId, String cursor, Integer limit);
+
+  /**
+   * Stream the stored appointments and blocks of a provider to a consumer, ordered by start time
+   * and id, without holding them all in memory.
+   *
+   * @param providerId the provider id
+   * @param startDate only rows starting on or after this day, or null
+   * @param endDate only rows starting before this day, or null
+   * @param status only rows with this status, or null for any status
+   * @param consumer the consumer of the rows
+   * @return the number of rows exported
+   */
+  int exportAppointments(Long providerId, LocalDate startDate, LocalDate endDate, String status,
+      Consumer<Appointment> consumer);
+
   /**
    * Gets appointments by provider and date.
    *
@@ -95,14 +161,73 @@ public interface AppointmentService {
    */
   List<List<LocalDateTime>> getAvailableTimeIntervals(Long providerId, LocalDate date);
 
+  /**
+   * Gets available time intervals for every day from {@code startDate} (inclusive) to
+   * {@code endDate} (exclusive). Each day has the same intervals as
+   * {@link #getAvailableTimeIntervals(Long, LocalDate)} would return for it.
+   *
+   * @param providerId the provider id
+   * @param startDate the first day
+   * @param endDate the day after the last day
+   * @return the available time intervals keyed by day, in day order
+   */
+  Map<LocalDate, List<List<LocalDateTime>>> getAvailableTimeIntervalsInRange(
+      Long providerId, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Find the first slots of a given length that are free for a provider, scanning forward from
+   * {@code earliestStart} through the same free intervals as
+   * {@link #getAvailableTimeIntervals(Long, LocalDate)}. Free intervals of consecutive days are
+   * joined, so a slot may cross midnight, and bookings that start before a day and run into it
+   * are also busy.
+   *
+   * @param providerId the provider id
+   * @param durationMinutes the slot length in minutes
+   * @param earliestStart the earliest slot start
+   * @param horizonDays the number of days to search from the day of {@code earliestStart},
+   *     null for the default
+   * @param count the maximum number of slots to return
+   * @return the slots as [start, end] pairs, in time order
+   */
+  List<List<LocalDateTime>> findAvailableSlots(Long providerId, int durationMinutes,
+      LocalDateTime earliestStart, Integer horizonDays, int count);
+
+  /**
+   * Gets the windows from {@code startDate} (inclusive) to {@code endDate} (exclusive) when every
+   * one of the given providers is free. Windows run across midnight, a window that reaches the
+   * end of the range ends at {@code LocalTime.MAX} of its last day.
+   *
+   * @param providerIds the provider ids
+   * @param startDate the first day
+   * @param endDate the day after the last day
+   * @param minDurationMinutes the shortest window to return, null for all windows
+   * @return the common free windows as [start, end] pairs, in time order
+   */
+  List<List<LocalDateTime>> getCommonAvailability(List<Long> providerIds, LocalDate startDate,
+      LocalDate endDate, Integer minDurationMinutes);
+
   /**
    * Gets appointment history.
    *
    * @param providerId the provider id
    * @param userId the user id
-   * @return the appointment history
+   * @return the appointment history ordered by start time
+   */
+  List<AppointmentHistoryEntry> getAppointmentHistory(Long providerId, Long userId);
+
+  /**
+   * Gets one page of the appointment history, ordered by start time and id.
+   *
+   * @param providerId the provider id
+   * @param userId the user id
+   * @param startDate only appointments starting on or after this day, or null
+   * @param endDate only appointments starting before this day, or null
+   * @param cursor the next cursor of the previous page, or null for the first page
+   * @param limit the page size, or null for the default
+   * @return the page
    */
-  List<Appointment> getAppointmentHistory(Long providerId, Long userId);
+  AppointmentHistoryPage getAppointmentHistory(Long providerId, Long userId, LocalDate startDate,
+      LocalDate endDate, String cursor, Integer limit);
 
   /**
    * Gets appointments within a date range for a provider.
@@ -115,6 +240,20 @@ public interface AppointmentService {
   List<Appointment> getAppointmentsWithinDateRange(Long providerId, 
         LocalDate startDate, LocalDate endDate);
 
+  /**
+   * Gets one page of the appointments within a date range for a provider, ordered by start time
+   * and id.
+   *
+   * @param providerId the provider id
+   * @param startDate the start date
+   * @param endDate the end date
+   * @param cursor the next cursor of the previous page, or null for the first page
+   * @param limit the page size, or null for the default
+   * @return the page
+   */
+  AppointmentPage getAppointmentsWithinDateRange(Long providerId, LocalDate startDate,
+      LocalDate endDate, String cursor, Integer limit);
+
   /**
    * Create recurring block.
    *
@@ -122,4 +261,29 @@ public interface AppointmentService {
    * @return the string
    */
   String createRecurringBlock(CreateRecurringBlockDto blockDto);
+
+  /**
+   * Gets the recurring block rules of a provider.
+   *
+   * @param providerId the provider id
+   * @return the recurring blocks
+   */
+  List<RecurringBlock> getRecurringBlocks(Long providerId);
+
+  /**
+   * Delete a recurring block rule.
+   *
+   * @param id the recurring block id
+   * @return the boolean whether the recurring block is deleted
+   */
+  boolean deleteRecurringBlock(Long id);
+
+  /**
+   * Free a single day of a recurring block rule by adding it to the dates the rule skips.
+   *
+   * @param id the recurring block id
+   * @param date the day to free
+   * @return false if the recurring block does not exist
+   */
+  boolean deleteRecurringBlockOccurrence(Long id, LocalDate date);
 }
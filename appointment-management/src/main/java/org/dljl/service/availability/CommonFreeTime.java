@@ -0,0 +1,175 @@
+package org.dljl.service.availability;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.dljl.entity.Appointment;
+
+/**
+ * Computes the time when every one of several providers is free. Each provider's busy intervals
+ * are already sorted by start time, so a k-way merge over the lists visits all intervals in
+ * global start order in O(n log k) without sorting the combined list, and a single sweep over
+ * that order yields the gaps in the union of busy time. When every interval lies on a slot grid
+ * the same windows come from OR-ing one {@link DayBitmap} per provider-day instead.
+ */
+public final class CommonFreeTime {
+
+  private CommonFreeTime() {
+  }
+
+  /**
+   * Intersect the free time of several providers within {@code [from, to)}.
+   *
+   * @param busyByProvider each provider's busy intervals, every list sorted by start time
+   * @param from the start of the range
+   * @param to the end of the range (exclusive)
+   * @param minDuration the shortest window to return, null or zero for all windows
+   * @return the windows when all providers are free as [start, end] pairs, in time order
+   */
+  public static List<List<LocalDateTime>> intersect(Collection<List<Appointment>> busyByProvider,
+      LocalDateTime from, LocalDateTime to, Duration minDuration) {
+    PriorityQueue<Cursor> heads = new PriorityQueue<>(Cursor.ORDER);
+    for (List<Appointment> busy : busyByProvider) {
+      if (!busy.isEmpty()) {
+        heads.add(new Cursor(busy));
+      }
+    }
+
+    List<List<LocalDateTime>> windows = new ArrayList<>();
+    LocalDateTime freeFrom = from;
+    while (!heads.isEmpty()) {
+      Cursor cursor = heads.poll();
+      Appointment appointment = cursor.current();
+      if (cursor.advance()) {
+        heads.add(cursor);
+      }
+      LocalDateTime start = appointment.getStartDateTime().isBefore(from)
+          ? from : appointment.getStartDateTime();
+      LocalDateTime end = appointment.getEndDateTime().isAfter(to)
+          ? to : appointment.getEndDateTime();
+      if (!end.isAfter(start)) {
+        // Empty, or entirely outside of the range
+        continue;
+      }
+      if (start.isAfter(freeFrom)) {
+        addWindow(windows, freeFrom, start, minDuration);
+      }
+      if (end.isAfter(freeFrom)) {
+        freeFrom = end;
+      }
+    }
+    if (to.isAfter(freeFrom)) {
+      addWindow(windows, freeFrom, to, minDuration);
+    }
+    return windows;
+  }
+
+  /**
+   * Intersect the free time of several providers over whole days with one {@link DayBitmap} per
+   * day. Returns null when an interval cannot be represented on the slot grid, starts outside of
+   * the range or runs past the end of its day, so the caller can fall back to
+   * {@link #intersect}.
+   *
+   * @param busyByProvider each provider's busy intervals, every list sorted by start time
+   * @param startDate the first day
+   * @param endDate the day after the last day
+   * @param slotMinutes the slot size in minutes
+   * @param minDuration the shortest window to return, null or zero for all windows
+   * @return the windows when all providers are free as [start, end] pairs, in time order, or
+   *     null
+   */
+  public static List<List<LocalDateTime>> intersectOnGrid(
+      Collection<List<Appointment>> busyByProvider, LocalDate startDate, LocalDate endDate,
+      int slotMinutes, Duration minDuration) {
+    List<List<Appointment>> lists = new ArrayList<>(busyByProvider);
+    int[] positions = new int[lists.size()];
+    List<List<LocalDateTime>> windows = new ArrayList<>();
+    // The free run being extended across day boundaries
+    LocalDateTime runStart = null;
+    LocalDateTime runEnd = null;
+    for (LocalDate date = startDate; date.isBefore(endDate); date = date.plusDays(1)) {
+      LocalDateTime nextDayStart = date.plusDays(1).atStartOfDay();
+      DayBitmap common = new DayBitmap(slotMinutes);
+      for (int i = 0; i < lists.size(); i++) {
+        List<Appointment> busy = lists.get(i);
+        int first = positions[i];
+        while (positions[i] < busy.size()
+            && busy.get(positions[i]).getStartDateTime().isBefore(nextDayStart)) {
+          if (busy.get(positions[i]).getEndDateTime().isAfter(nextDayStart)) {
+            return null;
+          }
+          positions[i]++;
+        }
+        if (positions[i] > first) {
+          DayBitmap day = DayBitmap.of(date, busy.subList(first, positions[i]), slotMinutes);
+          if (day == null) {
+            return null;
+          }
+          common.occupyAll(day);
+        }
+      }
+      for (List<LocalDateTime> interval : common.freeIntervals(date)) {
+        LocalDateTime start = interval.get(0);
+        LocalDateTime end = interval.get(1).toLocalTime().equals(LocalTime.MAX)
+            ? nextDayStart : interval.get(1);
+        if (runEnd != null && runEnd.equals(start)) {
+          runEnd = end;
+          continue;
+        }
+        if (runStart != null) {
+          addWindow(windows, runStart, runEnd, minDuration);
+        }
+        runStart = start;
+        runEnd = end;
+      }
+    }
+    for (int i = 0; i < lists.size(); i++) {
+      if (positions[i] < lists.get(i).size()) {
+        return null;
+      }
+    }
+    if (runStart != null) {
+      addWindow(windows, runStart, runEnd, minDuration);
+    }
+    return windows;
+  }
+
+  private static void addWindow(List<List<LocalDateTime>> windows, LocalDateTime start,
+      LocalDateTime end, Duration minDuration) {
+    if (minDuration != null && Duration.between(start, end).compareTo(minDuration) < 0) {
+      return;
+    }
+    List<LocalDateTime> window = new ArrayList<>(2);
+    window.add(start);
+    window.add(end);
+    windows.add(window);
+  }
+
+  /** The next unvisited interval of one provider. */
+  private static final class Cursor {
+
+    static final Comparator<Cursor> ORDER =
+        Comparator.comparing(cursor -> cursor.current().getStartDateTime());
+
+    private final List<Appointment> busy;
+    private int position;
+
+    Cursor(List<Appointment> busy) {
+      this.busy = busy;
+    }
+
+    Appointment current() {
+      return busy.get(position);
+    }
+
+    boolean advance() {
+      return ++position < busy.size();
+    }
+  }
+}
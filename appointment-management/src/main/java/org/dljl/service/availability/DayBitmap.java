@@ -0,0 +1,212 @@
+package org.dljl.service.availability;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.dljl.entity.Appointment;
+
+/**
+ * Occupancy of one provider-day as a bitmap of fixed-size slots held in {@code long} words, bit
+ * {@code i} set when slot {@code i} is busy. With the default one-minute slots a day is 1440 bits
+ * in 23 words, so finding the free runs of a day and intersecting the free time of several
+ * providers are a few word operations instead of sorting and walking appointment objects.
+ */
+public final class DayBitmap {
+
+  /** Minutes in a day, the slot size must divide it. */
+  public static final int MINUTES_PER_DAY = 24 * 60;
+
+  private static final long ALL_BITS = -1L;
+
+  private final int slotMinutes;
+  private final int slots;
+  private final long[] words;
+
+  /**
+   * Create an all-free day.
+   *
+   * @param slotMinutes the slot size in minutes, must divide a day
+   */
+  public DayBitmap(int slotMinutes) {
+    if (slotMinutes <= 0 || MINUTES_PER_DAY % slotMinutes != 0) {
+      throw new IllegalArgumentException("Slot minutes must divide " + MINUTES_PER_DAY + ".");
+    }
+    this.slotMinutes = slotMinutes;
+    this.slots = MINUTES_PER_DAY / slotMinutes;
+    this.words = new long[(slots + Long.SIZE - 1) / Long.SIZE];
+  }
+
+  /**
+   * Build the occupancy of a day from the appointments starting on it. Returns null when an
+   * appointment cannot be represented exactly, i.e. it does not start and end on a slot boundary
+   * or it is empty, so the caller can fall back to an exact interval sweep.
+   *
+   * @param date the day
+   * @param appointments the non-cancelled appointments starting on the day, in any order
+   * @param slotMinutes the slot size in minutes
+   * @return the bitmap, or null
+   */
+  public static DayBitmap of(LocalDate date, List<Appointment> appointments, int slotMinutes) {
+    DayBitmap bitmap = new DayBitmap(slotMinutes);
+    LocalDateTime dayStart = date.atStartOfDay();
+    LocalDateTime nextDayStart = date.plusDays(1).atStartOfDay();
+    for (Appointment appointment : appointments) {
+      LocalDateTime start = appointment.getStartDateTime();
+      LocalDateTime end = appointment.getEndDateTime();
+      if (start.isBefore(dayStart) || !start.isBefore(nextDayStart) || !end.isAfter(start)) {
+        return null;
+      }
+      int fromSlot = bitmap.slotOf(start.toLocalTime());
+      int toSlot = end.isBefore(nextDayStart) ? bitmap.slotOf(end.toLocalTime()) : bitmap.slots;
+      if (fromSlot < 0 || toSlot < 0) {
+        return null;
+      }
+      bitmap.occupy(fromSlot, toSlot);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Gets the slot size.
+   *
+   * @return the slot size in minutes
+   */
+  public int slotMinutes() {
+    return slotMinutes;
+  }
+
+  /**
+   * Gets the number of slots in the day.
+   *
+   * @return the number of slots
+   */
+  public int slots() {
+    return slots;
+  }
+
+  /**
+   * Mark the slots in {@code [fromSlot, toSlot)} busy.
+   *
+   * @param fromSlot the first slot
+   * @param toSlot the slot after the last slot
+   */
+  public void occupy(int fromSlot, int toSlot) {
+    checkRange(fromSlot, toSlot);
+    if (fromSlot == toSlot) {
+      return;
+    }
+    int firstWord = fromSlot >>> 6;
+    int lastWord = (toSlot - 1) >>> 6;
+    long firstMask = ALL_BITS << fromSlot;
+    long lastMask = ALL_BITS >>> -toSlot;
+    if (firstWord == lastWord) {
+      words[firstWord] |= firstMask & lastMask;
+      return;
+    }
+    words[firstWord] |= firstMask;
+    for (int i = firstWord + 1; i < lastWord; i++) {
+      words[i] = ALL_BITS;
+    }
+    words[lastWord] |= lastMask;
+  }
+
+  /**
+   * Mark busy every slot that is busy in {@code other}. Afterwards the free slots are the ones
+   * free in both days.
+   *
+   * @param other a bitmap with the same slot size
+   */
+  public void occupyAll(DayBitmap other) {
+    if (other.slotMinutes != slotMinutes) {
+      throw new IllegalArgumentException("Bitmaps must have the same slot size.");
+    }
+    for (int i = 0; i < words.length; i++) {
+      words[i] |= other.words[i];
+    }
+  }
+
+  /**
+   * Gets the first free slot at or after {@code fromSlot}.
+   *
+   * @param fromSlot the slot to start from
+   * @return the free slot, or {@link #slots()} if there is none
+   */
+  public int nextFree(int fromSlot) {
+    return next(fromSlot, ALL_BITS);
+  }
+
+  /**
+   * Gets the first busy slot at or after {@code fromSlot}.
+   *
+   * @param fromSlot the slot to start from
+   * @return the busy slot, or {@link #slots()} if there is none
+   */
+  public int nextBusy(int fromSlot) {
+    return next(fromSlot, 0L);
+  }
+
+  /**
+   * Gets the free intervals of the day in the same shape as
+   * {@code AppointmentService#getAvailableTimeIntervals}: a free run that reaches the end of the
+   * day ends at {@link LocalTime#MAX}.
+   *
+   * @param date the day
+   * @return the free intervals
+   */
+  public List<List<LocalDateTime>> freeIntervals(LocalDate date) {
+    List<List<LocalDateTime>> intervals = new ArrayList<>();
+    LocalDateTime dayStart = date.atStartOfDay();
+    int from = nextFree(0);
+    while (from < slots) {
+      int to = nextBusy(from);
+      List<LocalDateTime> interval = new ArrayList<>(2);
+      interval.add(dayStart.plusMinutes((long) from * slotMinutes));
+      interval.add(to == slots ? date.atTime(LocalTime.MAX)
+          : dayStart.plusMinutes((long) to * slotMinutes));
+      intervals.add(interval);
+      from = nextFree(to);
+    }
+    return intervals;
+  }
+
+  /**
+   * Gets the slot starting at a time of day.
+   *
+   * @param time the time
+   * @return the slot, or -1 if the time is not on a slot boundary
+   */
+  public int slotOf(LocalTime time) {
+    if (time.getSecond() != 0 || time.getNano() != 0) {
+      return -1;
+    }
+    int minute = time.getHour() * 60 + time.getMinute();
+    return minute % slotMinutes == 0 ? minute / slotMinutes : -1;
+  }
+
+  /**
+   * Scan for the first slot at or after {@code fromSlot} whose bit differs from the bits of
+   * {@code skip}, i.e. the first free slot when skipping busy words and the other way round.
+   */
+  private int next(int fromSlot, long skip) {
+    if (fromSlot >= slots) {
+      return slots;
+    }
+    int index = fromSlot >>> 6;
+    long word = (words[index] ^ skip) & ALL_BITS << fromSlot;
+    while (word == 0) {
+      if (++index == words.length) {
+        return slots;
+      }
+      word = words[index] ^ skip;
+    }
+    return Math.min(index * Long.SIZE + Long.numberOfTrailingZeros(word), slots);
+  }
+
+  private void checkRange(int fromSlot, int toSlot) {
+    if (fromSlot < 0 || toSlot > slots || fromSlot > toSlot) {
+      throw new IndexOutOfBoundsException("Slot range [" + fromSlot + ", " + toSlot + ")");
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.dljl.service.batch;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import org.dljl.dto.BulkOperationResult;
+import org.dljl.entity.Appointment;
+
+/**
+ * Writes and changes many appointment rows at once. {@link SqlAppointmentBatchWriter} batches the
+ * statements on the database, the {@code memory} profile writes to the in-process store.
+ */
+public interface AppointmentBatchWriter {
+
+  /**
+   * Insert all appointments.
+   *
+   * @param appointments the appointments to insert
+   * @return the number of rows inserted
+   */
+  int insertAll(List<Appointment> appointments);
+
+  /**
+   * Insert all appointments in one transaction, so that every appointment gets its generated id.
+   * Slower than {@link #insertAll} for large lists, which does not return ids, unless every
+   * appointment already has an id.
+   *
+   * @param appointments the appointments to insert, their ids are set on return
+   */
+  void insertAllWithIds(List<Appointment> appointments);
+
+  /**
+   * Cancel the non-cancelled rows of a provider starting in {@code [rangeStart, rangeEnd)}.
+   *
+   * @param providerId the provider id
+   * @param rangeStart the start of the range
+   * @param rangeEnd the end of the range (exclusive)
+   * @param status only rows with this status, or null for any status
+   * @return the number and ids of the cancelled rows
+   */
+  BulkOperationResult cancelInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status);
+
+  /**
+   * Delete the rows of a provider starting in {@code [rangeStart, rangeEnd)} permanently.
+   *
+   * @param providerId the provider id
+   * @param rangeStart the start of the range
+   * @param rangeEnd the end of the range (exclusive)
+   * @param status only rows with this status, or null for any status
+   * @return the number and ids of the deleted rows
+   */
+  BulkOperationResult deleteInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status);
+}
@@ -0,0 +1,129 @@
+package org.dljl.service.batch;
+
+import jakarta.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.dljl.dto.BulkOperationResult;
+import org.dljl.entity.Appointment;
+import org.dljl.mapper.AppointmentMapper;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes many appointment rows with as few round trips as possible. Rows are grouped into
+ * multi-row INSERT statements, the statements are queued on a MyBatis batch executor and every
+ * chunk of rows is flushed and committed in its own transaction.
+ *
+ * <p>Chunks are independent: if a later chunk fails, earlier chunks stay committed.
+ *
+ * <p>Bulk cancels and deletes change every matching row with one set-based statement. The rows are
+ * locked and their ids read first, in the same transaction, so the returned ids are exactly the
+ * rows the statement changed.
+ */
+@Component
+@Profile("!memory")
+public class SqlAppointmentBatchWriter implements AppointmentBatchWriter {
+
+  @Autowired private SqlSessionFactory sqlSessionFactory;
+
+  @Autowired private AppointmentMapper appointmentMapper;
+
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  @Value("${appointment.batch.rows-per-statement:100}")
+  private int rowsPerStatement;
+
+  @Value("${appointment.batch.rows-per-transaction:500}")
+  private int rowsPerTransaction;
+
+  private SqlSessionTemplate batchSession;
+
+  private TransactionTemplate transactionTemplate;
+
+  /** Init the batch session and the chunk transaction template. */
+  @PostConstruct
+  public void init() {
+    batchSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+  }
+
+  @Override
+  public int insertAll(List<Appointment> appointments) {
+    int inserted = 0;
+    for (int from = 0; from < appointments.size(); from += rowsPerTransaction) {
+      List<Appointment> chunk =
+          appointments.subList(from, Math.min(from + rowsPerTransaction, appointments.size()));
+      Integer rows = transactionTemplate.execute(status -> insertChunk(chunk));
+      inserted += rows == null ? 0 : rows;
+    }
+    return inserted;
+  }
+
+  @Override
+  public void insertAllWithIds(List<Appointment> appointments) {
+    if (appointments.stream().allMatch(appointment -> appointment.getAppointmentId() != null)) {
+      // Ids assigned by the service, so no keys to read back and the rows go in multi-row inserts
+      transactionTemplate.execute(status -> insertChunk(appointments));
+      return;
+    }
+    transactionTemplate.execute(status -> {
+      AppointmentMapper batchMapper = batchSession.getMapper(AppointmentMapper.class);
+      for (Appointment appointment : appointments) {
+        batchMapper.createAppointment(appointment);
+      }
+      // The ids are read back from the batch results when the statements are flushed
+      return batchSession.flushStatements();
+    });
+  }
+
+  @Override
+  public BulkOperationResult cancelInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return transactionTemplate.execute(transaction -> {
+      List<Long> ids = appointmentMapper.lockCancellableAppointmentIds(
+          providerId, rangeStart, rangeEnd, status);
+      int affected = ids.isEmpty() ? 0
+          : appointmentMapper.cancelAppointmentsInRange(providerId, rangeStart, rangeEnd, status);
+      return bulkResult(affected, ids);
+    });
+  }
+
+  @Override
+  public BulkOperationResult deleteInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return transactionTemplate.execute(transaction -> {
+      List<Long> ids = appointmentMapper.lockAppointmentIdsInRange(
+          providerId, rangeStart, rangeEnd, status);
+      int affected = ids.isEmpty() ? 0
+          : appointmentMapper.deleteAppointmentsInRange(providerId, rangeStart, rangeEnd, status);
+      return bulkResult(affected, ids);
+    });
+  }
+
+  private int insertChunk(List<Appointment> chunk) {
+    AppointmentMapper batchMapper = batchSession.getMapper(AppointmentMapper.class);
+    for (int from = 0; from < chunk.size(); from += rowsPerStatement) {
+      batchMapper.createAppointments(
+          chunk.subList(from, Math.min(from + rowsPerStatement, chunk.size())));
+    }
+    // Send every queued statement in one JDBC batch before the chunk commits
+    batchSession.flushStatements();
+    return chunk.size();
+  }
+
+  private static BulkOperationResult bulkResult(int affected, List<Long> ids) {
+    BulkOperationResult result = new BulkOperationResult();
+    result.setAffected(affected);
+    result.setAppointmentIds(ids);
+    return result;
+  }
+}
@@ -0,0 +1,329 @@
+package org.dljl.service.cache;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded cache of computed free intervals keyed by provider and day. Entries expire after a TTL,
+ * a rarely used entry is evicted once the cache is full, and the service invalidates exactly the
+ * provider-days a write touches.
+ *
+ * <p>Reads and writes do not take a lock: entries live in a {@link ConcurrentHashMap} and a queue
+ * remembers the order they were stored in. Eviction follows the queue, but gives an entry that
+ * was read since it was queued a second chance (the CLOCK approximation of LRU), and only one
+ * thread evicts at a time while the others carry on.
+ *
+ * <p>Reads take a {@link #version()} before querying the database and pass it to
+ * {@link #put}. A put is dropped if the provider was invalidated after that version was taken, so
+ * a slow read that raced with a write can never store stale intervals. Only writes made through
+ * this instance invalidate entries, other instances are bounded by the TTL.
+ *
+ * <p>A provider's invalidation marker is dropped once it is older than the TTL, by when every
+ * entry stored before it has expired. Its version is folded into a single floor, so a read that
+ * started before a dropped invalidation still cannot store its intervals.
+ */
+@Component
+public class AvailabilityCache {
+
+  private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+  private final Queue<Queued> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private final ConcurrentMap<Long, Invalidation> invalidations = new ConcurrentHashMap<>();
+  private final AtomicLong prunedVersion = new AtomicLong();
+  private final AtomicLong nextPruneAt = new AtomicLong(Long.MIN_VALUE);
+  private final AtomicLong versions = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  @Value("${appointment.availability-cache.enabled:true}")
+  private boolean enabled;
+
+  @Value("${appointment.availability-cache.max-entries:10000}")
+  private int maxEntries;
+
+  @Value("${appointment.availability-cache.ttl-seconds:60}")
+  private long ttlSeconds;
+
+  private LongSupplier clock = System::nanoTime;
+
+  /**
+   * Whether the cache is enabled.
+   *
+   * @return true if enabled
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Take a version before reading the intervals that will be passed to {@link #put}.
+   *
+   * @return the current version
+   */
+  public long version() {
+    return versions.get();
+  }
+
+  /**
+   * Gets the cached free intervals of a provider-day.
+   *
+   * @param providerId the provider id
+   * @param date the day
+   * @return the intervals, or null on a miss
+   */
+  public List<List<LocalDateTime>> get(Long providerId, LocalDate date) {
+    Key key = new Key(providerId, date);
+    Entry entry = entries.get(key);
+    if (entry != null && (entry.expiresAt - clock.getAsLong() <= 0
+        || entry.epoch != epoch(providerId))) {
+      entries.remove(key, entry);
+      entry = null;
+    }
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    if (!entry.referenced) {
+      entry.referenced = true;
+    }
+    hits.incrementAndGet();
+    return entry.intervals;
+  }
+
+  /**
+   * Cache the free intervals of a provider-day, unless the provider was invalidated after
+   * {@code version} was taken.
+   *
+   * @param providerId the provider id
+   * @param date the day
+   * @param version the version taken before the intervals were read
+   * @param intervals the intervals
+   */
+  public void put(Long providerId, LocalDate date, long version,
+      List<List<LocalDateTime>> intervals) {
+    List<List<LocalDateTime>> copy = new ArrayList<>(intervals.size());
+    for (List<LocalDateTime> interval : intervals) {
+      copy.add(List.copyOf(interval));
+    }
+    if (invalidatedVersion(providerId) > version) {
+      return;
+    }
+    Key key = new Key(providerId, date);
+    Entry entry = new Entry(List.copyOf(copy), epoch(providerId),
+        clock.getAsLong() + ttlNanos());
+    entries.put(key, entry);
+    // An invalidation between the check above and the put may have missed the new entry
+    if (invalidatedVersion(providerId) > version) {
+      entries.remove(key, entry);
+      return;
+    }
+    queue.add(new Queued(key, entry));
+    queued.incrementAndGet();
+    evict();
+  }
+
+  /**
+   * Invalidate one provider-day.
+   *
+   * @param providerId the provider id
+   * @param date the day
+   */
+  public void invalidate(Long providerId, LocalDate date) {
+    if (providerId == null || date == null) {
+      return;
+    }
+    markInvalidated(providerId, false);
+    entries.remove(new Key(providerId, date));
+  }
+
+  /**
+   * Invalidate every day of a provider, e.g. after a recurring block changes.
+   *
+   * @param providerId the provider id
+   */
+  public void invalidateProvider(Long providerId) {
+    if (providerId == null) {
+      return;
+    }
+    // Entries of the old epoch are dropped lazily when they are next read or evicted
+    markInvalidated(providerId, true);
+  }
+
+  /** Drop every entry. */
+  public void clear() {
+    // Their queue slots are discarded as stale by the next eviction
+    entries.clear();
+  }
+
+  private void markInvalidated(Long providerId, boolean newEpoch) {
+    long now = clock.getAsLong();
+    invalidations.compute(providerId, (id, previous) -> {
+      long version = versions.incrementAndGet();
+      long epoch = previous == null ? 0L : previous.epoch;
+      return new Invalidation(version, newEpoch ? epoch + 1 : epoch, now);
+    });
+    prune(now);
+  }
+
+  /**
+   * Drop the invalidation markers older than the TTL, at most once per TTL. An entry stored
+   * before such a marker has expired, so the provider may fall back to epoch 0.
+   */
+  private void prune(long now) {
+    long pruneAt = nextPruneAt.get();
+    // Long.MIN_VALUE until the first invalidation, nanoTime values may be negative
+    if ((pruneAt != Long.MIN_VALUE && now - pruneAt < 0)
+        || !nextPruneAt.compareAndSet(pruneAt, now + ttlNanos())) {
+      return;
+    }
+    for (Map.Entry<Long, Invalidation> marker : invalidations.entrySet()) {
+      Invalidation invalidation = marker.getValue();
+      if (now - invalidation.at >= ttlNanos()) {
+        // Raise the floor first, so no put slips through between the two steps
+        prunedVersion.accumulateAndGet(invalidation.version, Math::max);
+        invalidations.remove(marker.getKey(), invalidation);
+      }
+    }
+  }
+
+  private long invalidatedVersion(Long providerId) {
+    Invalidation invalidation = invalidations.get(providerId);
+    long pruned = prunedVersion.get();
+    return invalidation == null ? pruned : Math.max(invalidation.version, pruned);
+  }
+
+  private long epoch(Long providerId) {
+    Invalidation invalidation = invalidations.get(providerId);
+    return invalidation == null ? 0L : invalidation.epoch;
+  }
+
+  private long ttlNanos() {
+    return TimeUnit.SECONDS.toNanos(ttlSeconds);
+  }
+
+  /**
+   * Evict until the cache fits. The queue may also hold slots of entries that were replaced,
+   * invalidated or expired since, which are discarded, and it is trimmed once it holds twice as
+   * many slots as the cache may hold entries.
+   */
+  private void evict() {
+    while (overfull() && evicting.compareAndSet(false, true)) {
+      try {
+        while (overfull()) {
+          Queued eldest = queue.poll();
+          if (eldest == null) {
+            // The slot of a concurrent put is not queued yet, and that put evicts after queueing it
+            return;
+          }
+          if (entries.get(eldest.key) != eldest.entry) {
+            queued.decrementAndGet();
+          } else if (entries.size() > maxEntries && !eldest.entry.referenced) {
+            queued.decrementAndGet();
+            if (entries.remove(eldest.key, eldest.entry)) {
+              evictions.incrementAndGet();
+            }
+          } else {
+            eldest.entry.referenced = false;
+            queue.add(eldest);
+          }
+        }
+      } finally {
+        evicting.set(false);
+      }
+    }
+  }
+
+  private boolean overfull() {
+    return entries.size() > maxEntries || queued.get() > 2L * maxEntries;
+  }
+
+  /**
+   * Gets the number of cache hits since startup.
+   *
+   * @return the hit count
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Gets the number of cache misses since startup.
+   *
+   * @return the miss count
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Gets the number of entries evicted because the cache was full.
+   *
+   * @return the eviction count
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Gets the number of cached entries, including expired ones not yet dropped.
+   *
+   * @return the size
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the number of providers with an invalidation marker.
+   *
+   * @return the marker count
+   */
+  int invalidatedProviders() {
+    return invalidations.size();
+  }
+
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  private record Key(Long providerId, LocalDate date) {
+  }
+
+  /** The intervals of one provider-day, and whether they were read since last queued. */
+  private static final class Entry {
+
+    private final List<List<LocalDateTime>> intervals;
+    private final long epoch;
+    private final long expiresAt;
+    private volatile boolean referenced;
+
+    Entry(List<List<LocalDateTime>> intervals, long epoch, long expiresAt) {
+      this.intervals = intervals;
+      this.epoch = epoch;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private record Queued(Key key, Entry entry) {
+  }
+
+  /** The last invalidation of a provider and the epoch of its entries. */
+  private record Invalidation(long version, long epoch, long at) {
+  }
+}
@@ -0,0 +1,133 @@
+package org.dljl.service.concurrency;
+
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.dljl.service.sharding.ShardRouting;
+import org.dljl.storage.ProviderLockStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Serializes the check-then-write sequence of bookings per provider, so that two concurrent
+ * requests for the same slot cannot both pass the conflict check.
+ *
+ * <p>Within an instance, providers are hashed onto a fixed table of locks (lock striping):
+ * writes for one provider always take the same lock, while writes for providers on different
+ * stripes run in parallel. With {@code appointment.locking.db-guard} enabled the action also runs
+ * in a transaction holding the provider's row in {@code provider_locks} with
+ * {@code SELECT ... FOR UPDATE}, which serializes writes across instances. The stripe is only
+ * released after that transaction has committed. {@link #withProviderLockInTransaction} always
+ * runs the action in such a transaction, for writes that must be atomic on their own.
+ *
+ * <p>With sharding enabled the action runs on the provider's shard, picked after the lock is
+ * taken so that a write waiting for a shard move goes to the shard the provider moved to.
+ */
+@Component
+public class ProviderLocks {
+
+  @Autowired private ProviderLockStore providerLockStore;
+
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  @Autowired private ShardRouting shardRouting;
+
+  @Value("${appointment.locking.stripes:64}")
+  private int stripeCount;
+
+  @Value("${appointment.locking.db-guard:false}")
+  private boolean dbGuard;
+
+  private ReentrantLock[] stripes;
+
+  private TransactionTemplate transactionTemplate;
+
+  /** Init the lock table and the transaction template. */
+  @PostConstruct
+  public void init() {
+    if (stripeCount <= 0) {
+      throw new IllegalArgumentException("Lock stripes must be positive.");
+    }
+    stripes = new ReentrantLock[stripeCount];
+    for (int i = 0; i < stripes.length; i++) {
+      stripes[i] = new ReentrantLock();
+    }
+    transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Run an action while holding the lock of a provider.
+   *
+   * @param providerId the provider id
+   * @param action the check-then-write action
+   * @param <T> the result type
+   * @return the result of the action
+   */
+  public <T> T withProviderLock(Long providerId, Supplier<T> action) {
+    return locked(providerId, dbGuard && providerId != null, action);
+  }
+
+  /**
+   * Run an action while holding the lock of a provider, in a transaction that commits before the
+   * lock is released.
+   *
+   * @param providerId the provider id
+   * @param action the check-then-write action
+   * @param <T> the result type
+   * @return the result of the action
+   */
+  public <T> T withProviderLockInTransaction(Long providerId, Supplier<T> action) {
+    return locked(providerId, true, action);
+  }
+
+  /**
+   * Run an action while holding the lock of a provider on this instance only, never in a
+   * transaction, for actions that query several databases.
+   *
+   * @param providerId the provider id
+   * @param action the action
+   * @param <T> the result type
+   * @return the result of the action
+   */
+  public <T> T withLocalProviderLock(Long providerId, Supplier<T> action) {
+    return locked(providerId, false, action);
+  }
+
+  private <T> T locked(Long providerId, boolean transactional, Supplier<T> action) {
+    ReentrantLock lock = stripes[stripe(providerId)];
+    lock.lock();
+    try {
+      return shardRouting.onProviderShard(providerId, () -> {
+        if (!transactional) {
+          return action.get();
+        }
+        return transactionTemplate.execute(status -> {
+          if (dbGuard && providerId != null) {
+            lockRow(providerId);
+          }
+          return action.get();
+        });
+      });
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void lockRow(Long providerId) {
+    if (providerLockStore.lockProvider(providerId) == null) {
+      // First booking of the provider: create the row, then lock it
+      providerLockStore.createProviderLock(providerId);
+      providerLockStore.lockProvider(providerId);
+    }
+  }
+
+  private int stripe(Long providerId) {
+    int hash = providerId == null ? 0 : Long.hashCode(providerId);
+    // Spread the bits so consecutive ids do not share low bits with the table size
+    hash ^= hash >>> 16;
+    return Math.floorMod(hash * 0x9E3779B9, stripes.length);
+  }
+}
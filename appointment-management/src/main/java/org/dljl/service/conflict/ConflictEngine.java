@@ -0,0 +1,31 @@
+package org.dljl.service.conflict;
+
+/**
+ * The engine used to answer booking conflict checks. Configured through the
+ * {@code appointment.conflict.engine} property.
+ */
+public enum ConflictEngine {
+
+  /** Every check runs the conflict query against the database (default). */
+  SQL,
+
+  /** Checks are answered from the in-memory {@link ProviderIntervalIndex}. */
+  INDEX,
+
+  /** Both engines run, disagreements are logged and the SQL answer wins. */
+  CROSS_CHECK;
+
+  /**
+   * Parse the property value, accepting values such as {@code sql}, {@code index} and
+   * {@code cross-check}. Blank values fall back to {@link #SQL}.
+   *
+   * @param value the configured value
+   * @return the engine
+   */
+  public static ConflictEngine fromProperty(String value) {
+    if (value == null || value.isBlank()) {
+      return SQL;
+    }
+    return valueOf(value.trim().replace('-', '_').toUpperCase());
+  }
+}
@@ -0,0 +1,465 @@
+package org.dljl.service.conflict;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+import org.dljl.storage.AppointmentStore;
+import org.dljl.storage.RecurringBlockStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory, per-provider index of non-cancelled appointment and block intervals. It answers the
+ * same question as {@link AppointmentStore#checkCreateTimeConflict} and
+ * {@link AppointmentStore#checkUpdateTimeConflict} in O(log n) without a database round trip.
+ *
+ * <p>A provider's intervals are loaded lazily from the database the first time the provider is
+ * checked, and are kept current by the service calling {@link #onSaved(Appointment)} and
+ * {@link #onRemoved(Long)} after every write. Writes that arrive while a provider is being loaded
+ * are queued and replayed over the rows read, so a row the query read before it changed does not
+ * stay in the index. The recurring block rules of a provider are cached
+ * next to its intervals and dropped by {@link #onRecurringBlocksChanged(Long)} whenever a rule is
+ * written. The index only sees writes made through this instance, so multi-instance deployments
+ * should keep the {@code sql} engine or run {@code cross-check}.
+ */
+@Component
+public class ProviderIntervalIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(ProviderIntervalIndex.class);
+
+  private static final String CANCELLED = "cancelled";
+
+  private final ConcurrentMap<Long, ProviderTimeline> timelines = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, Long> providerByAppointment = new ConcurrentHashMap<>();
+  private final Set<ProviderTimeline> loading = ConcurrentHashMap.newKeySet();
+  private final AtomicLong crossCheckMismatches = new AtomicLong();
+
+  @Autowired private AppointmentStore appointmentStore;
+
+  @Autowired private RecurringBlockStore recurringBlockStore;
+
+  @Value("${appointment.conflict.engine:sql}")
+  private String engine;
+
+  private ConflictEngine conflictEngine = ConflictEngine.SQL;
+
+  /** Parse the configured engine once, every write consults it. */
+  @PostConstruct
+  public void init() {
+    conflictEngine = ConflictEngine.fromProperty(engine);
+  }
+
+  /**
+   * Gets the configured engine.
+   *
+   * @return the engine
+   */
+  public ConflictEngine getEngine() {
+    return conflictEngine;
+  }
+
+  /**
+   * Whether conflict checks should consult this index.
+   *
+   * @return true unless the engine is {@code sql}
+   */
+  public boolean isEnabled() {
+    return getEngine() != ConflictEngine.SQL;
+  }
+
+  /**
+   * Whether the SQL check should run as well and be compared against the index.
+   *
+   * @return true if the engine is {@code cross-check}
+   */
+  public boolean isCrossCheck() {
+    return getEngine() == ConflictEngine.CROSS_CHECK;
+  }
+
+  /**
+   * Check whether a new interval conflicts with any non-cancelled interval of the provider.
+   *
+   * @param providerId the provider id
+   * @param startDateTime the start date time
+   * @param endDateTime the end date time
+   * @return true if the interval conflicts
+   */
+  public boolean hasConflict(
+      Long providerId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+    return hasConflict(providerId, startDateTime, endDateTime, null);
+  }
+
+  /**
+   * Check whether an interval conflicts with any non-cancelled interval of the provider, ignoring
+   * the appointment being updated.
+   *
+   * @param providerId the provider id
+   * @param startDateTime the start date time
+   * @param endDateTime the end date time
+   * @param excludedAppointmentId the appointment to ignore, may be null
+   * @return true if the interval conflicts
+   */
+  public boolean hasConflict(Long providerId, LocalDateTime startDateTime,
+      LocalDateTime endDateTime, Long excludedAppointmentId) {
+    return timeline(providerId).conflicts(
+        startDateTime.truncatedTo(ChronoUnit.SECONDS),
+        endDateTime.truncatedTo(ChronoUnit.SECONDS),
+        excludedAppointmentId);
+  }
+
+  /**
+   * Gets the recurring block rules of a provider, read from the database on first use and kept
+   * until a rule of the provider is written.
+   *
+   * @param providerId the provider id
+   * @return every rule of the provider
+   */
+  public List<RecurringBlock> recurringBlocks(Long providerId) {
+    return timeline(providerId).rules(
+        () -> recurringBlockStore.getRecurringBlocksByProviderId(providerId));
+  }
+
+  /**
+   * Drop the cached recurring block rules of a provider after a rule was created, changed or
+   * deleted.
+   *
+   * @param providerId the provider id
+   */
+  public void onRecurringBlocksChanged(Long providerId) {
+    ProviderTimeline timeline = providerId == null ? null : timelines.get(providerId);
+    if (timeline != null) {
+      timeline.dropRules();
+    }
+  }
+
+  /**
+   * Record the outcome of a cross-check. On disagreement the provider is evicted so that it is
+   * reloaded from the database on the next check.
+   *
+   * @param providerId the provider id
+   * @param indexConflict the answer of the index
+   * @param sqlConflict the answer of the database
+   */
+  public void recordCrossCheck(Long providerId, boolean indexConflict, boolean sqlConflict) {
+    if (indexConflict != sqlConflict) {
+      crossCheckMismatches.incrementAndGet();
+      logger.warn("Conflict index disagrees with SQL for provider {}: index={}, sql={}",
+          providerId, indexConflict, sqlConflict);
+      invalidate(providerId);
+    }
+  }
+
+  /**
+   * Gets the number of cross-check disagreements seen since startup.
+   *
+   * @return the mismatch count
+   */
+  public long getCrossCheckMismatches() {
+    return crossCheckMismatches.get();
+  }
+
+  /**
+   * Apply a saved appointment or block to the index. Cancelled rows are removed. Providers that
+   * are not loaded or being loaded are ignored, they will read the row from the database.
+   *
+   * @param appointment the persisted appointment
+   */
+  public void onSaved(Appointment appointment) {
+    if (appointment == null || appointment.getAppointmentId() == null
+        || appointment.getProviderId() == null) {
+      return;
+    }
+    ProviderTimeline timeline = timelines.get(appointment.getProviderId());
+    if (timeline == null) {
+      return;
+    }
+    if (isCancelled(appointment.getStatus())) {
+      timeline.remove(appointment.getAppointmentId());
+      providerByAppointment.remove(appointment.getAppointmentId());
+    } else {
+      timeline.put(toInterval(appointment));
+      providerByAppointment.put(appointment.getAppointmentId(), appointment.getProviderId());
+    }
+  }
+
+  /**
+   * Remove a cancelled or deleted appointment from the index.
+   *
+   * @param appointmentId the appointment id
+   */
+  public void onRemoved(Long appointmentId) {
+    if (appointmentId == null) {
+      return;
+    }
+    // The row may be in a provider whose load has not mapped its ids yet. A load maps them before
+    // it leaves this set, so checking the set first leaves no gap.
+    for (ProviderTimeline timeline : loading) {
+      timeline.remove(appointmentId);
+    }
+    Long providerId = providerByAppointment.remove(appointmentId);
+    if (providerId != null) {
+      ProviderTimeline timeline = timelines.get(providerId);
+      if (timeline != null) {
+        timeline.remove(appointmentId);
+      }
+    }
+  }
+
+  /**
+   * Drop a provider from the index so it is reloaded on the next check.
+   *
+   * @param providerId the provider id
+   */
+  public void invalidate(Long providerId) {
+    ProviderTimeline timeline = timelines.remove(providerId);
+    if (timeline != null) {
+      timeline.forEachId(providerByAppointment::remove);
+    }
+  }
+
+  /** Drop every provider from the index. */
+  public void clear() {
+    timelines.clear();
+    providerByAppointment.clear();
+  }
+
+  private ProviderTimeline timeline(Long providerId) {
+    while (true) {
+      ProviderTimeline timeline = timelines.get(providerId);
+      if (timeline == null) {
+        ProviderTimeline placeholder = new ProviderTimeline();
+        timeline = timelines.putIfAbsent(providerId, placeholder);
+        if (timeline == null) {
+          return load(providerId, placeholder);
+        }
+      }
+      if (timeline.awaitLoaded()) {
+        return timeline;
+      }
+      // The load failed, the next caller loads again
+    }
+  }
+
+  /**
+   * Read the intervals of a provider into its registered placeholder. The query runs outside of
+   * the map so that it does not block other providers, while writes to the provider are queued on
+   * the placeholder.
+   */
+  private ProviderTimeline load(Long providerId, ProviderTimeline placeholder) {
+    loading.add(placeholder);
+    try {
+      List<Interval> intervals = new ArrayList<>();
+      for (Appointment appointment : appointmentStore.getAppointmentsByProviderId(providerId)) {
+        if (!isCancelled(appointment.getStatus()) && appointment.getStartDateTime() != null
+            && appointment.getEndDateTime() != null) {
+          intervals.add(toInterval(appointment));
+          providerByAppointment.put(appointment.getAppointmentId(), providerId);
+        }
+      }
+      placeholder.finishLoad(intervals);
+      return placeholder;
+    } catch (RuntimeException e) {
+      timelines.remove(providerId, placeholder);
+      placeholder.failLoad();
+      throw e;
+    } finally {
+      loading.remove(placeholder);
+    }
+  }
+
+  private static boolean isCancelled(String status) {
+    // MySQL compares status with a case-insensitive collation
+    return CANCELLED.equalsIgnoreCase(status);
+  }
+
+  private static Interval toInterval(Appointment appointment) {
+    return new Interval(
+        appointment.getAppointmentId(),
+        appointment.getStartDateTime().truncatedTo(ChronoUnit.SECONDS),
+        appointment.getEndDateTime().truncatedTo(ChronoUnit.SECONDS));
+  }
+
+  /** A stored interval. Ordered by start time, then id. */
+  record Interval(long id, LocalDateTime start, LocalDateTime end) {
+
+    static final Comparator<Interval> ORDER =
+        Comparator.comparing(Interval::start).thenComparingLong(Interval::id);
+
+    boolean conflictsWith(LocalDateTime otherStart, LocalDateTime otherEnd) {
+      return TimeConflicts.conflicts(start, end, otherStart, otherEnd);
+    }
+  }
+
+  /**
+   * The sorted intervals of one provider. Only intervals starting within
+   * {@code [start - longestDuration, end]} can conflict with a query, so a check is a single
+   * bounded range scan.
+   */
+  static final class ProviderTimeline {
+
+    private final NavigableSet<Interval> byStart = new TreeSet<>(Interval.ORDER);
+    // Writes made while the rows are read from the database, null once loaded
+    private List<Consumer<ProviderTimeline>> pending = new ArrayList<>();
+    private boolean failed;
+    private final Map<Long, Interval> byId = new HashMap<>();
+    private Duration longestDuration = Duration.ZERO;
+    private List<RecurringBlock> rules;
+    // Bumped when the rules change, so a load that raced with the change is not kept
+    private long rulesVersion;
+
+    synchronized void put(Interval interval) {
+      if (pending != null) {
+        pending.add(timeline -> timeline.put(interval));
+        return;
+      }
+      Interval previous = byId.put(interval.id(), interval);
+      if (previous != null) {
+        byStart.remove(previous);
+      }
+      byStart.add(interval);
+      Duration duration = duration(interval);
+      if (duration.compareTo(longestDuration) > 0) {
+        longestDuration = duration;
+      } else if (previous != null) {
+        shrinkLongestDuration(previous);
+      }
+    }
+
+    synchronized void remove(long id) {
+      if (pending != null) {
+        pending.add(timeline -> timeline.remove(id));
+        return;
+      }
+      Interval previous = byId.remove(id);
+      if (previous != null) {
+        byStart.remove(previous);
+        shrinkLongestDuration(previous);
+      }
+    }
+
+    /**
+     * Recompute the longest duration after the interval that set it left, so one long block that
+     * was moved or cancelled does not widen every later scan. A linear pass, but only when the
+     * longest interval itself is removed.
+     */
+    private void shrinkLongestDuration(Interval removed) {
+      if (duration(removed).compareTo(longestDuration) < 0) {
+        return;
+      }
+      Duration longest = Duration.ZERO;
+      for (Interval interval : byStart) {
+        Duration duration = duration(interval);
+        if (duration.compareTo(longest) > 0) {
+          longest = duration;
+        }
+      }
+      longestDuration = longest;
+    }
+
+    synchronized Duration longestDuration() {
+      return longestDuration;
+    }
+
+    private static Duration duration(Interval interval) {
+      return Duration.between(interval.start(), interval.end());
+    }
+
+    synchronized boolean conflicts(LocalDateTime start, LocalDateTime end, Long excludedId) {
+      if (!start.isBefore(end)) {
+        // The SQL check flags an empty or inverted range as soon as any other row exists
+        return byId.size() > (excludedId != null && byId.containsKey(excludedId) ? 1 : 0);
+      }
+      Interval from = new Interval(Long.MIN_VALUE, start.minus(longestDuration), start);
+      Interval to = new Interval(Long.MAX_VALUE, end, end);
+      for (Interval interval : byStart.subSet(from, true, to, true)) {
+        if (excludedId != null && interval.id() == excludedId) {
+          continue;
+        }
+        if (interval.conflictsWith(start, end)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    synchronized void forEachId(Consumer<Long> action) {
+      byId.keySet().forEach(action);
+    }
+
+    /** Take the rows read from the database, then replay the writes made while reading. */
+    synchronized void finishLoad(List<Interval> intervals) {
+      List<Consumer<ProviderTimeline>> writes = pending;
+      pending = null;
+      intervals.forEach(this::put);
+      writes.forEach(write -> write.accept(this));
+      notifyAll();
+    }
+
+    synchronized void failLoad() {
+      failed = true;
+      notifyAll();
+    }
+
+    /**
+     * Wait until the rows are loaded.
+     *
+     * @return false if the load failed
+     */
+    synchronized boolean awaitLoaded() {
+      boolean interrupted = false;
+      while (pending != null && !failed) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return !failed;
+    }
+
+    List<RecurringBlock> rules(Supplier<List<RecurringBlock>> loader) {
+      long version;
+      synchronized (this) {
+        if (rules != null) {
+          return rules;
+        }
+        version = rulesVersion;
+      }
+      // Read outside of the monitor so that interval checks do not wait for the query
+      List<RecurringBlock> loaded = List.copyOf(loader.get());
+      synchronized (this) {
+        if (rulesVersion == version) {
+          rules = loaded;
+        }
+      }
+      return loaded;
+    }
+
+    synchronized void dropRules() {
+      rules = null;
+      rulesVersion++;
+    }
+  }
+}
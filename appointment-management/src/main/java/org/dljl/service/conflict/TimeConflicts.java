@@ -0,0 +1,32 @@
+package org.dljl.service.conflict;
+
+import java.time.LocalDateTime;
+
+/**
+ * The conflict predicate shared by the SQL conflict queries in AppointmentMapper.xml and every
+ * in-memory conflict check, so that both paths always agree.
+ */
+public final class TimeConflicts {
+
+  private TimeConflicts() {
+  }
+
+  /**
+   * Whether a requested interval conflicts with an existing, non-cancelled interval: the two
+   * overlap, or the existing interval is empty and lies inside the requested one. Mirrors
+   * {@code checkCreateTimeConflict}, except for the empty requested range which callers handle
+   * themselves.
+   *
+   * @param existingStart the start of the existing interval
+   * @param existingEnd the end of the existing interval
+   * @param start the start of the requested interval
+   * @param end the end of the requested interval
+   * @return true if the intervals conflict
+   */
+  public static boolean conflicts(LocalDateTime existingStart, LocalDateTime existingEnd,
+      LocalDateTime start, LocalDateTime end) {
+    return start.isBefore(existingEnd) && !start.isBefore(existingStart)
+        || !end.isAfter(existingEnd) && end.isAfter(existingStart)
+        || !start.isAfter(existingStart) && !end.isBefore(existingEnd);
+  }
+}
@@ -0,0 +1,72 @@
+package org.dljl.service.export;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import org.apache.ibatis.cursor.Cursor;
+import org.dljl.entity.Appointment;
+import org.dljl.storage.AppointmentStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Streams the rows of a provider to a consumer one at a time. The rows are read through a
+ * MyBatis {@link Cursor} with a driver fetch size, so only one fetch of rows is held in memory
+ * however many the provider has.
+ *
+ * <p>A cursor can only be read while its session is open, so the whole export runs in one
+ * read-only transaction. The cursor is closed when the export ends, also if the consumer fails,
+ * e.g. because the client went away.
+ */
+@Component
+public class AppointmentExporter {
+
+  @Autowired private AppointmentStore appointmentStore;
+
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  private TransactionTemplate transactionTemplate;
+
+  /** Init the read-only transaction template. */
+  @PostConstruct
+  public void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setReadOnly(true);
+  }
+
+  /**
+   * Pass every matching row of a provider to a consumer, ordered by start time and id.
+   *
+   * @param providerId the provider id
+   * @param rangeStart only rows starting at or after this time, or null
+   * @param rangeEnd only rows starting before this time, or null
+   * @param status only rows with this status, or null for any status
+   * @param consumer the consumer of the rows
+   * @return the number of rows exported
+   */
+  public int export(Long providerId, LocalDateTime rangeStart, LocalDateTime rangeEnd,
+      String status, Consumer<Appointment> consumer) {
+    Integer exported = transactionTemplate.execute(
+        transactionStatus -> stream(providerId, rangeStart, rangeEnd, status, consumer));
+    return exported == null ? 0 : exported;
+  }
+
+  private int stream(Long providerId, LocalDateTime rangeStart, LocalDateTime rangeEnd,
+      String status, Consumer<Appointment> consumer) {
+    try (Cursor<Appointment> cursor = appointmentStore.streamAppointmentsByProvider(
+        providerId, rangeStart, rangeEnd, status)) {
+      int exported = 0;
+      for (Appointment appointment : cursor) {
+        consumer.accept(appointment);
+        exported++;
+      }
+      return exported;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.dljl.service.id;
+
+import jakarta.annotation.PostConstruct;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mints unique, time-ordered 64-bit ids without locking, Snowflake style: 41 bits of milliseconds
+ * since 2024-01-01 UTC, 10 bits of node id ({@code appointment.ids.node-id}) and 12 bits of
+ * sequence within the millisecond. The last timestamp and sequence share one {@link AtomicLong}
+ * that callers advance with a compare-and-set, so the ids of a node strictly increase, and nodes
+ * with distinct node ids never mint the same id.
+ *
+ * <p>Past 4096 ids in a millisecond, or when the clock steps back, the generator does not wait:
+ * the sequence carries into the timestamp, which runs ahead of the clock until the clock catches
+ * up. Uniqueness across restarts of a node relies on the clock, as with every Snowflake id.
+ */
+@Component
+public class SnowflakeIdGenerator {
+
+  /** 2024-01-01T00:00:00Z. */
+  static final long EPOCH_MILLIS = 1_704_067_200_000L;
+
+  static final int NODE_BITS = 10;
+
+  static final int SEQUENCE_BITS = 12;
+
+  static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+  // The timestamp of the last id, shifted left by SEQUENCE_BITS, plus its sequence
+  private final AtomicLong last = new AtomicLong();
+
+  @Value("${appointment.ids.node-id:0}")
+  private long nodeId;
+
+  private LongSupplier clock = System::currentTimeMillis;
+
+  /** Fail at startup if the node id does not fit its bits. */
+  @PostConstruct
+  public void init() {
+    if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+      throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ".");
+    }
+  }
+
+  /**
+   * Mint the next id.
+   *
+   * @return an id greater than every id minted before on this node
+   */
+  public long nextId() {
+    long now = (clock.getAsLong() - EPOCH_MILLIS) << SEQUENCE_BITS;
+    long previous;
+    long next;
+    do {
+      previous = last.get();
+      next = Math.max(now, previous + 1);
+    } while (!last.compareAndSet(previous, next));
+    return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+        | nodeId << SEQUENCE_BITS
+        | (next & SEQUENCE_MASK);
+  }
+
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+}
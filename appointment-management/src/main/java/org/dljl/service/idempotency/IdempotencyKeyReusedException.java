@@ -0,0 +1,15 @@
+package org.dljl.service.idempotency;
+
+/**
+ * Thrown when an idempotency key is sent again with a different request body. Replaying the
+ * original response would hide that the second request was never run.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+  /**
+   * Instantiates a new exception.
+   */
+  public IdempotencyKeyReusedException() {
+    super("Idempotency-Key was already used with a different request body.");
+  }
+}
@@ -0,0 +1,191 @@
+package org.dljl.service.idempotency;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the outcome of requests sent with an idempotency key, so a client retrying a request
+ * gets the original response instead of running it again. Each key remembers a fingerprint of the
+ * request it was first sent with, and a request reusing the key with another fingerprint fails.
+ *
+ * <p>The first request with a key runs the action, a duplicate arriving while it is still running
+ * waits for its result, and a duplicate arriving later gets the stored result until it expires.
+ * Results the caller marks as not storable (e.g. server errors) are forgotten once the waiting
+ * duplicates have seen them, so the next retry runs the action again. At most
+ * {@code max-entries} completed results are kept, the oldest are dropped first. Keys are only
+ * deduplicated within this instance.
+ */
+@Component
+public class IdempotencyStore {
+
+  /** The longest key accepted. */
+  public static final int MAX_KEY_LENGTH = 255;
+
+  /** Returned by {@link #await} when the original request failed and this one must run. */
+  private static final Object RETRY = new Object();
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final Queue<Completed> completed = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger completedCount = new AtomicInteger();
+  private final AtomicLong replays = new AtomicLong();
+
+  @Value("${appointment.idempotency.max-entries:10000}")
+  private int maxEntries;
+
+  @Value("${appointment.idempotency.ttl-seconds:86400}")
+  private long ttlSeconds;
+
+  @Value("${appointment.idempotency.wait-seconds:30}")
+  private long waitSeconds;
+
+  private LongSupplier clock = System::nanoTime;
+
+  /**
+   * Run an action once per key.
+   *
+   * @param key the idempotency key, including the operation it belongs to
+   * @param fingerprint identifies the request, e.g. a hash of its body
+   * @param action the action
+   * @param storable whether a result may be replayed to later duplicates
+   * @param <T> the result type
+   * @return the result of the action, or of the earlier request with the same key
+   * @throws IllegalArgumentException if the key is blank or too long
+   * @throws IllegalStateException if the earlier request did not finish in time
+   * @throws IdempotencyKeyReusedException if the earlier request had another fingerprint
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T execute(String key, String fingerprint, Supplier<T> action,
+      Predicate<T> storable) {
+    if (key == null || key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+      throw new IllegalArgumentException(
+          "Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH + " characters.");
+    }
+    while (true) {
+      Entry entry = new Entry(fingerprint);
+      Entry existing = entries.putIfAbsent(key, entry);
+      if (existing == null) {
+        return run(key, entry, action, storable);
+      }
+      if (existing.isExpired(clock.getAsLong())) {
+        entries.remove(key, existing);
+        continue;
+      }
+      if (!Objects.equals(existing.fingerprint, fingerprint)) {
+        throw new IdempotencyKeyReusedException();
+      }
+      Object result = await(existing);
+      if (result != RETRY) {
+        replays.incrementAndGet();
+        return (T) result;
+      }
+    }
+  }
+
+  private <T> T run(String key, Entry entry, Supplier<T> action, Predicate<T> storable) {
+    T result;
+    try {
+      result = action.get();
+    } catch (RuntimeException | Error e) {
+      entries.remove(key, entry);
+      entry.result.completeExceptionally(e);
+      throw e;
+    }
+    if (storable.test(result)) {
+      entry.expiresAt = clock.getAsLong() + TimeUnit.SECONDS.toNanos(ttlSeconds);
+      entry.stored = true;
+      completed.add(new Completed(key, entry));
+      completedCount.incrementAndGet();
+      evict();
+    } else {
+      entries.remove(key, entry);
+    }
+    entry.result.complete(result);
+    return result;
+  }
+
+  private Object await(Entry entry) {
+    try {
+      return entry.result.get(waitSeconds, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the original request.", e);
+    } catch (TimeoutException e) {
+      throw new IllegalStateException(
+          "A request with this Idempotency-Key is still in progress.", e);
+    } catch (ExecutionException e) {
+      // The original request failed and was not recorded, so this duplicate runs it again
+      return RETRY;
+    }
+  }
+
+  private void evict() {
+    long now = clock.getAsLong();
+    while (true) {
+      Completed eldest = completed.peek();
+      if (eldest == null
+          || completedCount.get() <= maxEntries && !eldest.entry.isExpired(now)) {
+        return;
+      }
+      if (completed.remove(eldest)) {
+        completedCount.decrementAndGet();
+        entries.remove(eldest.key, eldest.entry);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of duplicates answered with an earlier result.
+   *
+   * @return the replay count
+   */
+  public long getReplays() {
+    return replays.get();
+  }
+
+  /**
+   * Gets the number of keys held, in flight or completed.
+   *
+   * @return the size
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /** The result of one key, the request it belongs to, and when it expires once completed. */
+  private static final class Entry {
+
+    private final String fingerprint;
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+    private volatile long expiresAt;
+    private volatile boolean stored;
+
+    Entry(String fingerprint) {
+      this.fingerprint = fingerprint;
+    }
+
+    boolean isExpired(long now) {
+      return stored && expiresAt - now <= 0;
+    }
+  }
+
+  private record Completed(String key, Entry entry) {
+  }
+}
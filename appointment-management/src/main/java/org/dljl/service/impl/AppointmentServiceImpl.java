@@ -1,38 +1,137 @@
 package org.dljl.service.impl;
 
+import jakarta.annotation.PostConstruct;
+import java.time.DayOfWeek;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.dljl.dto.AppointmentHistoryEntry;
+import org.dljl.dto.AppointmentHistoryPage;
+import org.dljl.dto.AppointmentPage;
+import org.dljl.dto.BatchAppointmentResult;
+import org.dljl.dto.BulkOperationResult;
 import org.dljl.dto.CreateAppointmentDto;
 import org.dljl.dto.CreateBlockDto;
 import org.dljl.dto.CreateRecurringBlockDto;
 import org.dljl.dto.CreateRecurringBlockInOneYearDto;
 import org.dljl.dto.UpdateAppointmentDto;
 import org.dljl.entity.Appointment;
-import org.dljl.mapper.AppointmentMapper;
+import org.dljl.entity.RecurringBlock;
 import org.dljl.service.AppointmentService;
+import org.dljl.service.availability.CommonFreeTime;
+import org.dljl.service.availability.DayBitmap;
+import org.dljl.service.batch.AppointmentBatchWriter;
+import org.dljl.service.cache.AvailabilityCache;
+import org.dljl.service.concurrency.ProviderLocks;
+import org.dljl.service.conflict.ProviderIntervalIndex;
+import org.dljl.service.conflict.TimeConflicts;
+import org.dljl.service.export.AppointmentExporter;
+import org.dljl.service.id.SnowflakeIdGenerator;
+import org.dljl.service.metrics.BusinessMetrics;
+import org.dljl.service.pagination.KeysetCursor;
+import org.dljl.service.recurring.RecurringBlocks;
+import org.dljl.service.routing.ReadRouting;
+import org.dljl.service.sharding.ShardRouting;
+import org.dljl.storage.AppointmentStore;
+import org.dljl.storage.RecurringBlockStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /** The type Appointment service. */
 @Service
 public class AppointmentServiceImpl implements AppointmentService {
 
-  @Autowired private AppointmentMapper appointmentMapper;
+  // Longest range served by getAvailableTimeIntervalsInRange, a year view including a leap day
+  private static final int MAX_AVAILABILITY_DAYS = 366;
+
+  private static final int MAX_SLOT_SEARCH_RESULTS = 100;
+
+  private static final int MAX_COMMON_AVAILABILITY_PROVIDERS = 50;
+
+  private static final int MAX_BATCH_APPOINTMENTS = 1000;
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+
+  private static final int MAX_PAGE_SIZE = 500;
+
+  @Autowired private AppointmentStore appointmentStore;
+
+  @Autowired private ProviderIntervalIndex intervalIndex;
+
+  @Autowired private AppointmentBatchWriter batchWriter;
+
+  @Autowired private RecurringBlockStore recurringBlockStore;
+
+  @Autowired private AvailabilityCache availabilityCache;
+
+  @Autowired private ProviderLocks providerLocks;
+
+  @Autowired private AppointmentExporter exporter;
+
+  @Autowired private BusinessMetrics businessMetrics;
+
+  @Autowired private ReadRouting readRouting;
+
+  @Autowired private ShardRouting shardRouting;
+
+  @Autowired private SnowflakeIdGenerator idGenerator;
+
+  // Mint appointment ids here instead of taking AUTO_INCREMENT keys, so batches need no key reads
+  @Value("${appointment.ids.assign-appointment-ids:false}")
+  private boolean assignAppointmentIds;
+
+  // Store recurring blocks as one rule row instead of one blocked row per day
+  @Value("${appointment.recurring-block.rules:true}")
+  private boolean useBlockRules;
+
+  // Compute free intervals on a slot bitmap when every row of the day lies on the slot grid
+  @Value("${appointment.availability.bitmap:true}")
+  private boolean useAvailabilityBitmap;
+
+  @Value("${appointment.availability.slot-minutes:1}")
+  private int slotMinutes;
+
+  // Days read per query when searching for free slots, and the default search horizon
+  @Value("${appointment.slot-search.chunk-days:7}")
+  private int slotSearchChunkDays;
+
+  @Value("${appointment.slot-search.default-horizon-days:30}")
+  private int slotSearchHorizonDays;
+
+  /** Fail at startup rather than on the first availability read if the slot size is invalid. */
+  @PostConstruct
+  public void init() {
+    if (useAvailabilityBitmap) {
+      new DayBitmap(slotMinutes);
+    }
+  }
 
   @Override
   public Appointment createAppointment(CreateAppointmentDto appointmentDto) {
+    return providerLocks.withProviderLock(appointmentDto.getProviderId(),
+        () -> createAppointmentLocked(appointmentDto));
+  }
 
-    int conflictCount =
-        appointmentMapper.checkCreateTimeConflict(
-            appointmentDto.getProviderId(),
-            appointmentDto.getStartDateTime().truncatedTo(ChronoUnit.SECONDS),
-            appointmentDto.getEndDateTime().truncatedTo(ChronoUnit.SECONDS));
+  private Appointment createAppointmentLocked(CreateAppointmentDto appointmentDto) {
 
-    if (conflictCount != 0) {
+    if (hasCreateConflict(appointmentDto.getProviderId(),
+        appointmentDto.getStartDateTime(), appointmentDto.getEndDateTime())) {
+      businessMetrics.conflictDetected();
       throw new IllegalArgumentException(
           "The selected time slot is not available or conflicts with an existing appointment.");
     }
@@ -46,10 +145,137 @@ public class AppointmentServiceImpl implements AppointmentService {
     appointment.setServiceType(appointmentDto.getServiceType());
     appointment.setComments(appointmentDto.getComments());
 
-    appointmentMapper.createAppointment(appointment);
+    assignIds(List.of(appointment));
+    appointmentStore.createAppointment(appointment);
+    afterCommit(() -> {
+      intervalIndex.onSaved(appointment);
+      afterWrite(appointment);
+    });
+    businessMetrics.bookingsCreated(1);
     return appointment;
   }
 
+  @Override
+  public List<BatchAppointmentResult> createAppointments(
+      List<CreateAppointmentDto> appointmentDtos) {
+    if (appointmentDtos == null || appointmentDtos.isEmpty()) {
+      throw new IllegalArgumentException("Batch cannot be empty.");
+    }
+    if (appointmentDtos.size() > MAX_BATCH_APPOINTMENTS) {
+      throw new IllegalArgumentException(
+          "At most " + MAX_BATCH_APPOINTMENTS + " appointments can be created at once.");
+    }
+
+    List<BatchAppointmentResult> results = new ArrayList<>(appointmentDtos.size());
+    Map<Long, List<Integer>> indexesByProvider = new LinkedHashMap<>();
+    for (int i = 0; i < appointmentDtos.size(); i++) {
+      BatchAppointmentResult result = new BatchAppointmentResult();
+      result.setIndex(i);
+      results.add(result);
+      CreateAppointmentDto appointmentDto = appointmentDtos.get(i);
+      if (appointmentDto == null || appointmentDto.getProviderId() == null) {
+        result.setError("Provider ID cannot be null.");
+      } else if (appointmentDto.getStartDateTime() == null
+          || appointmentDto.getEndDateTime() == null) {
+        result.setError("Start date and end date cannot be null.");
+      } else if (!appointmentDto.getStartDateTime().truncatedTo(ChronoUnit.SECONDS)
+          .isBefore(appointmentDto.getEndDateTime().truncatedTo(ChronoUnit.SECONDS))) {
+        result.setError("Start date time must be before end date time.");
+      } else {
+        indexesByProvider.computeIfAbsent(appointmentDto.getProviderId(), id -> new ArrayList<>())
+            .add(i);
+      }
+    }
+
+    // One provider at a time, so the batch never holds two provider locks at once
+    for (Map.Entry<Long, List<Integer>> entry : indexesByProvider.entrySet()) {
+      providerLocks.withProviderLock(entry.getKey(),
+          () -> createProviderBatch(entry.getKey(), entry.getValue(), appointmentDtos, results));
+    }
+    return results;
+  }
+
+  /**
+   * Check the appointments of one provider with a single range query and a sweep over both
+   * sorted lists, then insert the accepted ones in one JDBC batch. Runs under the provider lock,
+   * which is held until the interval index has the new rows.
+   */
+  private List<Appointment> createProviderBatch(Long providerId, List<Integer> indexes,
+      List<CreateAppointmentDto> appointmentDtos, List<BatchAppointmentResult> results) {
+    List<Integer> byStart = new ArrayList<>(indexes);
+    byStart.sort(Comparator.comparing(i -> appointmentDtos.get(i).getStartDateTime()));
+    LocalDateTime rangeStart = appointmentDtos.get(byStart.get(0)).getStartDateTime()
+        .truncatedTo(ChronoUnit.SECONDS);
+    LocalDateTime rangeEnd = rangeStart;
+    for (Integer index : byStart) {
+      LocalDateTime end = appointmentDtos.get(index).getEndDateTime()
+          .truncatedTo(ChronoUnit.SECONDS);
+      rangeEnd = end.isAfter(rangeEnd) ? end : rangeEnd;
+    }
+
+    List<Appointment> existing = new ArrayList<>(
+        appointmentStore.getAppointmentsOverlappingRange(providerId, rangeStart, rangeEnd));
+    existing.addAll(
+        recurringBlockOccurrences(providerId, rangeStart.toLocalDate(), rangeEnd.toLocalDate()));
+    existing.sort(Comparator.comparing(Appointment::getStartDateTime));
+    Duration longest = longestDuration(existing);
+
+    List<Appointment> accepted = new ArrayList<>();
+    List<Integer> acceptedIndexes = new ArrayList<>();
+    Integer lastAccepted = null;
+    LocalDateTime lastAcceptedEnd = null;
+    int first = 0;
+    for (Integer index : byStart) {
+      CreateAppointmentDto appointmentDto = appointmentDtos.get(index);
+      LocalDateTime start = appointmentDto.getStartDateTime().truncatedTo(ChronoUnit.SECONDS);
+      LocalDateTime end = appointmentDto.getEndDateTime().truncatedTo(ChronoUnit.SECONDS);
+      LocalDateTime earliest = start.minus(longest);
+      while (first < existing.size()
+          && existing.get(first).getStartDateTime().isBefore(earliest)) {
+        first++;
+      }
+      if (hasSortedConflict(existing, first, start, end)) {
+        businessMetrics.conflictDetected();
+        results.get(index).setError(
+            "The selected time slot is not available or conflicts with an existing appointment.");
+      } else if (lastAcceptedEnd != null && start.isBefore(lastAcceptedEnd)) {
+        // Accepted appointments do not overlap, so only the latest one can reach this start
+        businessMetrics.conflictDetected();
+        results.get(index).setError(
+            "Conflicts with appointment " + lastAccepted + " of the batch.");
+      } else {
+        Appointment appointment = new Appointment();
+        appointment.setProviderId(providerId);
+        appointment.setUserId(appointmentDto.getUserId());
+        appointment.setStartDateTime(appointmentDto.getStartDateTime());
+        appointment.setEndDateTime(appointmentDto.getEndDateTime());
+        appointment.setStatus(appointmentDto.getStatus());
+        appointment.setServiceType(appointmentDto.getServiceType());
+        appointment.setComments(appointmentDto.getComments());
+        accepted.add(appointment);
+        acceptedIndexes.add(index);
+        lastAccepted = index;
+        lastAcceptedEnd = end;
+      }
+    }
+
+    if (!accepted.isEmpty()) {
+      assignIds(accepted);
+      batchWriter.insertAllWithIds(accepted);
+      for (int i = 0; i < accepted.size(); i++) {
+        results.get(acceptedIndexes.get(i)).setAppointmentId(accepted.get(i).getAppointmentId());
+      }
+      afterCommit(() -> {
+        for (Appointment appointment : accepted) {
+          intervalIndex.onSaved(appointment);
+          afterWrite(appointment);
+        }
+      });
+      businessMetrics.bookingsCreated(accepted.size());
+    }
+    return accepted;
+  }
+
   @Override
   public String createBlock(CreateBlockDto blockDto) {
     // Check if provider_id is null before proceeding
@@ -60,29 +286,24 @@ public class AppointmentServiceImpl implements AppointmentService {
     LocalDateTime startDateTime = blockDto.getStartDateTime();
     LocalDateTime endDateTime = blockDto.getEndDateTime();
 
-    Appointment appointment = new Appointment();
-    appointment.setProviderId(providerId); // Ensure providerId is set
-    appointment.setUserId(null);
-    appointment.setStartDateTime(startDateTime);
-    appointment.setEndDateTime(endDateTime);
-    appointment.setStatus("blocked");
-    appointment.setServiceType("blocked");
-    appointment.setComments("blocked");
+    Appointment appointment = newBlock(providerId, startDateTime, endDateTime);
 
-    int conflictCount =
-        appointmentMapper.checkCreateTimeConflict(
-            providerId,
-            startDateTime.truncatedTo(ChronoUnit.SECONDS),
-            endDateTime.truncatedTo(ChronoUnit.SECONDS));
-
-    if (conflictCount != 0) {
-      throw new IllegalArgumentException(
-          "The selected time slot is not available or conflicts with an existing appointment. "
-              + "To block this time, please cancel the conflicting appointment or block.");
-    }
-    appointmentMapper.createAppointment(appointment);
+    return providerLocks.withProviderLock(providerId, () -> {
+      if (hasCreateConflict(providerId, startDateTime, endDateTime)) {
+        businessMetrics.conflictDetected();
+        throw new IllegalArgumentException(
+            "The selected time slot is not available or conflicts with an existing appointment. "
+                + "To block this time, please cancel the conflicting appointment or block.");
+      }
+      assignIds(List.of(appointment));
+      appointmentStore.createAppointment(appointment);
+      afterCommit(() -> {
+        intervalIndex.onSaved(appointment);
+        afterWrite(appointment);
+      });
 
-    return "Block Created Successfully";
+      return "Block Created Successfully";
+    });
   }
 
   @Override
@@ -92,36 +313,15 @@ public class AppointmentServiceImpl implements AppointmentService {
       throw new IllegalArgumentException("Provider ID Can't be null.");
     }
 
-    Long providerId = blockDto.getProviderId();
-    LocalTime startTime = blockDto.getStartTime();
-    LocalTime endTime = blockDto.getEndTime();
     LocalDate startDate = LocalDate.now();
     LocalDate endDate = startDate.plusYears(1);
 
-    StringBuilder conflictDates = new StringBuilder();
-    boolean hasConflict = false;
-
-    // Step 1: Check for conflicts across the entire year
-    for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-      LocalDateTime startDateTime = LocalDateTime.of(date, startTime);
-      LocalDateTime endDateTime = LocalDateTime.of(date, endTime);
-
-      CreateBlockDto singleDayBlockDto = new CreateBlockDto();
-      singleDayBlockDto.setProviderId(providerId);
-      singleDayBlockDto.setStartDateTime(startDateTime);
-      singleDayBlockDto.setEndDateTime(endDateTime);
-
-      try {
-        createBlock(singleDayBlockDto);
-      } catch (IllegalArgumentException e) {
-        hasConflict = true;
-        conflictDates.append(date).append("\n");
-      }
-    }
+    List<LocalDate> conflictDates = providerLocks.withProviderLock(blockDto.getProviderId(),
+        () -> createDailyBlocks(blockDto.getProviderId(), blockDto.getStartTime(),
+            blockDto.getEndTime(), startDate, endDate, blockDto.getDaysOfWeek()));
 
-    // Step 2: Return result based on whether conflicts were found
-    if (hasConflict) {
-      return "Conflicts found on the following dates: \n" + conflictDates.toString();
+    if (!conflictDates.isEmpty()) {
+      return formatConflictDates(conflictDates);
     } else {
       return "Yearly recurring block created successfully.";
     }
@@ -134,57 +334,153 @@ public class AppointmentServiceImpl implements AppointmentService {
     if (appointmentDto.getAppointmentId() == null) {
       throw new IllegalArgumentException("Appointment ID is required for updating an appointment.");
     }
-    Appointment existingAppointment = appointmentMapper
-        .getAppointment(appointmentDto.getAppointmentId());
+    Appointment existingAppointment = shardRouting.findOnAnyShard(
+        () -> appointmentStore.getAppointment(appointmentDto.getAppointmentId()),
+        Appointment::getProviderId);
     if (existingAppointment == null) {
       throw new IllegalArgumentException("Appointment ID does not exist.");
     }
-    if (appointmentDto.getStartDateTime() != null || appointmentDto.getEndDateTime() != null) {
-      Appointment originalAppointment = getAppointment(appointmentDto.getAppointmentId());
-      if (appointmentDto.getStartDateTime() == null) {
-        appointmentDto.setStartDateTime(originalAppointment.getStartDateTime());
-      }
-      if (appointmentDto.getEndDateTime() == null) {
-        appointmentDto.setEndDateTime(originalAppointment.getEndDateTime());
-      }
+    return providerLocks.withProviderLockInTransaction(existingAppointment.getProviderId(),
+        () -> updateAppointmentLocked(appointmentDto, existingAppointment, true));
+  }
 
-      int conflictCount =
-          appointmentMapper.checkUpdateTimeConflict(
-              appointmentDto.getAppointmentId(),
-              appointmentDto.getStartDateTime().truncatedTo(ChronoUnit.SECONDS),
-              appointmentDto.getEndDateTime().truncatedTo(ChronoUnit.SECONDS));
+  /**
+   * Check and apply an update to the row read before the provider lock was taken. The row is
+   * only re-read if it was moved or cancelled in between, which the update statement detects, so
+   * the returned row and the interval index never carry a status that was already overwritten.
+   */
+  private Appointment updateAppointmentLocked(UpdateAppointmentDto appointmentDto,
+      Appointment existingAppointment, boolean mayRetry) {
+    UpdateAppointmentDto merged = new UpdateAppointmentDto();
+    merged.setAppointmentId(appointmentDto.getAppointmentId());
+    merged.setUserId(appointmentDto.getUserId());
+    merged.setStatus(appointmentDto.getStatus());
+    merged.setServiceType(appointmentDto.getServiceType());
+    merged.setComments(appointmentDto.getComments());
+    if (appointmentDto.getStartDateTime() != null || appointmentDto.getEndDateTime() != null) {
+      // DATETIME columns store whole seconds, and MySQL would round a fraction instead, so the
+      // statement, the conflict check, the index and the response all use the truncated time
+      merged.setStartDateTime((appointmentDto.getStartDateTime() != null
+          ? appointmentDto.getStartDateTime() : existingAppointment.getStartDateTime())
+          .truncatedTo(ChronoUnit.SECONDS));
+      merged.setEndDateTime((appointmentDto.getEndDateTime() != null
+          ? appointmentDto.getEndDateTime() : existingAppointment.getEndDateTime())
+          .truncatedTo(ChronoUnit.SECONDS));
 
-      if (conflictCount != 0) {
+      if (hasUpdateConflict(merged.getAppointmentId(), existingAppointment.getProviderId(),
+          merged.getStartDateTime(), merged.getEndDateTime())) {
+        businessMetrics.conflictDetected();
         throw new IllegalArgumentException(
             "The updated time slot conflicts with an existing appointment or blocked time.");
       }
     }
 
-    appointmentMapper.updateAppointment(appointmentDto);
+    if (appointmentStore.updateAppointment(merged, existingAppointment.getStartDateTime(),
+        existingAppointment.getEndDateTime(), existingAppointment.getStatus()) == 0) {
+      Appointment currentAppointment = appointmentStore.getAppointment(merged.getAppointmentId());
+      if (currentAppointment == null) {
+        throw new IllegalArgumentException("Appointment ID does not exist.");
+      }
+      if (!mayRetry) {
+        throw new IllegalStateException("The appointment was changed concurrently.");
+      }
+      // Moved or cancelled before the lock was taken, so check again against the current row
+      return updateAppointmentLocked(appointmentDto, currentAppointment, false);
+    }
 
-    return appointmentMapper.getAppointment(appointmentDto.getAppointmentId());
+    Appointment updatedAppointment = applyUpdate(existingAppointment, merged);
+    afterCommit(() -> {
+      intervalIndex.onSaved(updatedAppointment);
+      // Both the day the appointment moved away from and the day it moved to
+      afterWrite(existingAppointment);
+      afterWrite(updatedAppointment);
+    });
+    return updatedAppointment;
+  }
+
+  /**
+   * Build the updated row from the row read before the update and the fields the update set,
+   * following the same rules as the update statement.
+   */
+  private static Appointment applyUpdate(Appointment row, UpdateAppointmentDto update) {
+    Appointment updated = new Appointment();
+    updated.setAppointmentId(row.getAppointmentId());
+    updated.setProviderId(row.getProviderId());
+    updated.setUserId(update.getUserId() != null ? update.getUserId() : row.getUserId());
+    boolean moved = update.getStartDateTime() != null && update.getEndDateTime() != null;
+    updated.setStartDateTime(moved ? update.getStartDateTime() : row.getStartDateTime());
+    updated.setEndDateTime(moved ? update.getEndDateTime() : row.getEndDateTime());
+    updated.setStatus(update.getStatus() != null ? update.getStatus() : row.getStatus());
+    updated.setServiceType(
+        update.getServiceType() != null ? update.getServiceType() : row.getServiceType());
+    updated.setComments(update.getComments() != null ? update.getComments() : row.getComments());
+    return updated;
   }
 
   @Override
   public Appointment getAppointment(Long id) {
-    return appointmentMapper.getAppointment(id);
+    return shardRouting.findOnAnyShard(
+        () -> readRouting.read(null, () -> appointmentStore.getAppointment(id)),
+        Appointment::getProviderId);
   }
 
   @Override
   public List<Appointment> getAppointmentsByProviderId(Long providerId) {
-    return appointmentMapper.getAppointmentsByProviderId(providerId);
+    return read(providerId,
+        () -> appointmentStore.getAppointmentsByProviderId(providerId));
+  }
+
+  @Override
+  public AppointmentPage getAppointmentsByProviderId(Long providerId, String cursor,
+      Integer limit) {
+    int pageSize = pageSize(limit);
+    KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+    // One row more than the page tells whether there is a next page
+    return page(read(providerId,
+        () -> appointmentStore.getAppointmentsByProviderIdPage(providerId,
+            after == null ? null : after.getStartDateTime(),
+            after == null ? null : after.getAppointmentId(), pageSize + 1)), pageSize);
+  }
+
+  @Override
+  public int exportAppointments(Long providerId, LocalDate startDate, LocalDate endDate,
+      String status, Consumer<Appointment> consumer) {
+    if (providerId == null) {
+      throw new IllegalArgumentException("Provider ID cannot be null.");
+    }
+    if (startDate != null && endDate != null && !startDate.isBefore(endDate)) {
+      throw new IllegalArgumentException("Start date must be before end date.");
+    }
+    return read(providerId, () -> exporter.export(providerId,
+        startDate == null ? null : startDate.atStartOfDay(),
+        endDate == null ? null : endDate.atStartOfDay(), status, consumer));
   }
 
   @Override
   public List<Appointment> getAppointmentsByProviderAndDate(
       Long providerId, LocalDate appointmentDate) {
-    return appointmentMapper.getAppointmentsByProviderAndDate(providerId, appointmentDate);
+    return read(providerId, () -> withRecurringBlocks(
+        appointmentStore.getAppointmentsByProviderAndDate(providerId, appointmentDate),
+        providerId, appointmentDate, appointmentDate));
   }
 
   @Override
   public boolean cancelAppointment(Long id) {
+    Appointment cancelled = availabilityCache.isEnabled() || readRouting.isEnabled()
+        || shardRouting.isEnabled()
+        ? shardRouting.findOnAnyShard(() -> appointmentStore.getAppointment(id),
+            Appointment::getProviderId) : null;
+    if (shardRouting.isEnabled() && cancelled == null) {
+      return false;
+    }
     // Call the mapper to cancel the appointment
-    int rowsAffected = appointmentMapper.cancelAppointment(id);
+    int rowsAffected = shardRouting.onProviderShard(
+        cancelled == null ? null : cancelled.getProviderId(),
+        () -> appointmentStore.cancelAppointment(id));
+    if (rowsAffected == 1) {
+      intervalIndex.onRemoved(id);
+      afterWrite(cancelled);
+    }
 
     // If rowsAffected is 1, the appointment was successfully cancelled; otherwise, it was not found
     return rowsAffected == 1;
@@ -192,18 +488,321 @@ public class AppointmentServiceImpl implements AppointmentService {
 
   @Override
   public boolean deleteBlock(Long id) {
+    Appointment deleted = availabilityCache.isEnabled() || readRouting.isEnabled()
+        || shardRouting.isEnabled()
+        ? shardRouting.findOnAnyShard(() -> appointmentStore.getAppointment(id),
+            Appointment::getProviderId) : null;
+    if (shardRouting.isEnabled() && deleted == null) {
+      return false;
+    }
     // Call the mapper to cancel the appointment
-    int rowsAffected = appointmentMapper.deleteBlock(id);
+    int rowsAffected = shardRouting.onProviderShard(
+        deleted == null ? null : deleted.getProviderId(), () -> appointmentStore.deleteBlock(id));
+    if (rowsAffected == 1) {
+      intervalIndex.onRemoved(id);
+      afterWrite(deleted);
+    }
 
     // If rowsAffected is 1, the appointment was successfully cancelled; otherwise, it was not found
     return rowsAffected == 1;
   }
 
+  @Override
+  public BulkOperationResult cancelAppointmentsInRange(Long providerId,
+      LocalDateTime startDateTime, LocalDateTime endDateTime, String status) {
+    checkBulkRange(providerId, startDateTime, endDateTime);
+    return afterBulkChange(providerId, providerLocks.withProviderLock(providerId,
+        () -> batchWriter.cancelInRange(providerId, startDateTime, endDateTime, status)));
+  }
+
+  @Override
+  public BulkOperationResult deleteAppointmentsInRange(Long providerId,
+      LocalDateTime startDateTime, LocalDateTime endDateTime, String status) {
+    checkBulkRange(providerId, startDateTime, endDateTime);
+    return afterBulkChange(providerId, providerLocks.withProviderLock(providerId,
+        () -> batchWriter.deleteInRange(providerId, startDateTime, endDateTime, status)));
+  }
+
+  private static void checkBulkRange(
+      Long providerId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+    if (providerId == null) {
+      throw new IllegalArgumentException("Provider ID cannot be null.");
+    }
+    if (startDateTime == null || endDateTime == null) {
+      throw new IllegalArgumentException("Start date time and end date time cannot be null.");
+    }
+    if (!startDateTime.isBefore(endDateTime)) {
+      throw new IllegalArgumentException("Start date time must be before end date time.");
+    }
+  }
+
+  private BulkOperationResult afterBulkChange(Long providerId, BulkOperationResult result) {
+    if (result.getAffected() > 0) {
+      for (Long id : result.getAppointmentIds()) {
+        intervalIndex.onRemoved(id);
+      }
+      // The rows can span any number of days, so drop all of the provider's cached days
+      availabilityCache.invalidateProvider(providerId);
+      readRouting.recordWrite(providerId);
+    }
+    return result;
+  }
+
   @Override
   public List<List<LocalDateTime>> getAvailableTimeIntervals(Long providerId, LocalDate date) {
+    if (!availabilityCache.isEnabled()) {
+      return read(providerId, () -> computeAvailableTimeIntervals(providerId, date));
+    }
+    List<List<LocalDateTime>> cached = availabilityCache.get(providerId, date);
+    if (cached != null) {
+      return cached;
+    }
+    long version = availabilityCache.version();
+    List<List<LocalDateTime>> availableTimeIntervals =
+        read(providerId, () -> computeAvailableTimeIntervals(providerId, date));
+    availabilityCache.put(providerId, date, version, availableTimeIntervals);
+    return availableTimeIntervals;
+  }
 
-    List<Appointment> appointments =
-        appointmentMapper.getAppointmentsByProviderAndDate(providerId, date);
+  private List<List<LocalDateTime>> computeAvailableTimeIntervals(
+      Long providerId, LocalDate date) {
+    List<Appointment> appointments = withRecurringBlocks(
+        appointmentStore.getAppointmentsByProviderAndDate(providerId, date),
+        providerId, date, date);
+
+    return freeIntervals(date, appointments);
+  }
+
+  @Override
+  public Map<LocalDate, List<List<LocalDateTime>>> getAvailableTimeIntervalsInRange(
+      Long providerId, LocalDate startDate, LocalDate endDate) {
+    if (providerId == null) {
+      throw new IllegalArgumentException("Provider ID cannot be null.");
+    }
+    if (startDate == null || endDate == null) {
+      throw new IllegalArgumentException("Start date and end date cannot be null.");
+    }
+    if (!startDate.isBefore(endDate)) {
+      throw new IllegalArgumentException("Start date must be before end date.");
+    }
+    if (ChronoUnit.DAYS.between(startDate, endDate) > MAX_AVAILABILITY_DAYS) {
+      throw new IllegalArgumentException(
+          "Date range cannot be longer than " + MAX_AVAILABILITY_DAYS + " days.");
+    }
+
+    long version = availabilityCache.version();
+    // One query for the whole range, already ordered by start time
+    List<Appointment> appointments = read(providerId, () -> withRecurringBlocks(
+        appointmentStore.getAppointmentsByProviderAndDates(providerId, startDate, endDate),
+        providerId, startDate, endDate.minusDays(1)));
+
+    // Single sweep: every day takes the run of rows starting before the next midnight
+    Map<LocalDate, List<List<LocalDateTime>>> availability = new LinkedHashMap<>();
+    int next = 0;
+    for (LocalDate date = startDate; date.isBefore(endDate); date = date.plusDays(1)) {
+      LocalDateTime nextDayStart = date.plusDays(1).atStartOfDay();
+      int first = next;
+      while (next < appointments.size()
+          && appointments.get(next).getStartDateTime().isBefore(nextDayStart)) {
+        next++;
+      }
+      List<List<LocalDateTime>> intervals = freeIntervals(date, appointments.subList(first, next));
+      if (availabilityCache.isEnabled()) {
+        availabilityCache.put(providerId, date, version, intervals);
+      }
+      availability.put(date, intervals);
+    }
+    return availability;
+  }
+
+  @Override
+  public List<List<LocalDateTime>> findAvailableSlots(Long providerId, int durationMinutes,
+      LocalDateTime earliestStart, Integer horizonDays, int count) {
+    if (providerId == null) {
+      throw new IllegalArgumentException("Provider ID cannot be null.");
+    }
+    if (earliestStart == null) {
+      throw new IllegalArgumentException("Earliest start cannot be null.");
+    }
+    if (durationMinutes <= 0 || durationMinutes > DayBitmap.MINUTES_PER_DAY) {
+      throw new IllegalArgumentException("Duration must be between 1 and "
+          + DayBitmap.MINUTES_PER_DAY + " minutes.");
+    }
+    if (count <= 0 || count > MAX_SLOT_SEARCH_RESULTS) {
+      throw new IllegalArgumentException(
+          "Count must be between 1 and " + MAX_SLOT_SEARCH_RESULTS + ".");
+    }
+    int horizon = horizonDays == null ? slotSearchHorizonDays : horizonDays;
+    if (horizon <= 0 || horizon > MAX_AVAILABILITY_DAYS) {
+      throw new IllegalArgumentException(
+          "Horizon must be between 1 and " + MAX_AVAILABILITY_DAYS + " days.");
+    }
+
+    Duration duration = Duration.ofMinutes(durationMinutes);
+    LocalDateTime earliest = earliestStart.truncatedTo(ChronoUnit.SECONDS);
+    LocalDate horizonEnd = earliest.toLocalDate().plusDays(horizon);
+    List<List<LocalDateTime>> slots = new ArrayList<>();
+    // The free run being extended across interval and day boundaries
+    LocalDateTime runStart = null;
+    LocalDateTime runEnd = null;
+    LocalDate chunkStart = earliest.toLocalDate();
+    while (chunkStart.isBefore(horizonEnd) && slots.size() < count) {
+      LocalDate chunkEnd = chunkStart.plusDays(Math.max(slotSearchChunkDays, 1));
+      if (chunkEnd.isAfter(horizonEnd)) {
+        chunkEnd = horizonEnd;
+      }
+      LocalDateTime from = chunkStart.atStartOfDay();
+      LocalDateTime to = chunkEnd.atStartOfDay();
+      LocalDate firstDay = chunkStart;
+      LocalDate lastDay = chunkEnd.minusDays(1);
+      // Overlapping rows include bookings that start the day before and run past midnight
+      List<Appointment> busy = read(providerId, () -> withRecurringBlocks(
+          appointmentStore.getAppointmentsOverlappingRange(providerId, from, to),
+          providerId, firstDay, lastDay));
+      LocalDateTime cursor = from;
+      List<List<LocalDateTime>> free = new ArrayList<>();
+      for (Appointment appointment : busy) {
+        LocalDateTime start = appointment.getStartDateTime();
+        if (start.isAfter(cursor)) {
+          free.add(List.of(cursor, start.isBefore(to) ? start : to));
+        }
+        LocalDateTime end = appointment.getEndDateTime();
+        cursor = end.isAfter(cursor) ? end : cursor;
+        if (!cursor.isBefore(to)) {
+          break;
+        }
+      }
+      if (cursor.isBefore(to)) {
+        free.add(List.of(cursor, to));
+      }
+      for (List<LocalDateTime> interval : free) {
+        LocalDateTime start = interval.get(0);
+        LocalDateTime end = interval.get(1);
+        if (runEnd != null && runEnd.equals(start)) {
+          runEnd = end;
+          continue;
+        }
+        addSlots(slots, runStart, runEnd, earliest, duration, count);
+        runStart = start;
+        runEnd = end;
+      }
+      chunkStart = chunkEnd;
+    }
+    addSlots(slots, runStart, runEnd, earliest, duration, count);
+    return slots;
+  }
+
+  @Override
+  public List<List<LocalDateTime>> getCommonAvailability(List<Long> providerIds,
+      LocalDate startDate, LocalDate endDate, Integer minDurationMinutes) {
+    if (providerIds == null || providerIds.isEmpty() || providerIds.contains(null)) {
+      throw new IllegalArgumentException("Provider IDs cannot be empty.");
+    }
+    if (startDate == null || endDate == null) {
+      throw new IllegalArgumentException("Start date and end date cannot be null.");
+    }
+    if (!startDate.isBefore(endDate)) {
+      throw new IllegalArgumentException("Start date must be before end date.");
+    }
+    if (ChronoUnit.DAYS.between(startDate, endDate) > MAX_AVAILABILITY_DAYS) {
+      throw new IllegalArgumentException(
+          "Date range cannot be longer than " + MAX_AVAILABILITY_DAYS + " days.");
+    }
+    if (minDurationMinutes != null && minDurationMinutes < 0) {
+      throw new IllegalArgumentException("Minimum duration cannot be negative.");
+    }
+    List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(providerIds));
+    if (distinctIds.size() > MAX_COMMON_AVAILABILITY_PROVIDERS) {
+      throw new IllegalArgumentException("At most " + MAX_COMMON_AVAILABILITY_PROVIDERS
+          + " providers can be compared at once.");
+    }
+
+    // One query per shard holding any of the providers, the shards in parallel
+    Map<Long, List<Appointment>> busyByProvider = new LinkedHashMap<>();
+    for (Map<Long, List<Appointment>> shardBusy : shardRouting.fanOut(distinctIds,
+        shardIds -> readRouting.readAll(shardIds, () -> busyByProvider(shardIds, startDate,
+            endDate)))) {
+      busyByProvider.putAll(shardBusy);
+    }
+
+    LocalDateTime rangeEnd = endDate.atStartOfDay();
+    Duration minDuration =
+        minDurationMinutes == null ? null : Duration.ofMinutes(minDurationMinutes);
+    List<List<LocalDateTime>> windows = useAvailabilityBitmap
+        ? CommonFreeTime.intersectOnGrid(busyByProvider.values(), startDate, endDate,
+            slotMinutes, minDuration)
+        : null;
+    if (windows == null) {
+      windows = CommonFreeTime.intersect(busyByProvider.values(), startDate.atStartOfDay(),
+          rangeEnd, minDuration);
+    }
+    // Same end-of-day shape as the other availability reads
+    for (List<LocalDateTime> window : windows) {
+      if (window.get(1).equals(rangeEnd)) {
+        window.set(1, endDate.minusDays(1).atTime(LocalTime.MAX));
+      }
+    }
+    return windows;
+  }
+
+  /** Read the busy intervals of several providers, each list sorted by start time. */
+  private Map<Long, List<Appointment>> busyByProvider(List<Long> providerIds, LocalDate startDate,
+      LocalDate endDate) {
+    // One IN query for every provider, ordered by provider and start time
+    Map<Long, List<Appointment>> busyByProvider = new LinkedHashMap<>();
+    for (Long providerId : providerIds) {
+      busyByProvider.put(providerId, new ArrayList<>());
+    }
+    for (Appointment appointment : appointmentStore.getAppointmentsByProvidersAndDates(
+        providerIds, startDate, endDate)) {
+      busyByProvider.get(appointment.getProviderId()).add(appointment);
+    }
+    if (useBlockRules) {
+      List<RecurringBlock> rules = recurringBlockStore.getRecurringBlocksByProvidersInDateRange(
+          providerIds, startDate, endDate.minusDays(1));
+      for (Appointment occurrence : RecurringBlocks.expand(
+          rules, startDate, endDate.minusDays(1))) {
+        busyByProvider.get(occurrence.getProviderId()).add(occurrence);
+      }
+      if (!rules.isEmpty()) {
+        for (List<Appointment> busy : busyByProvider.values()) {
+          busy.sort(Comparator.comparing(Appointment::getStartDateTime));
+        }
+      }
+    }
+    return busyByProvider;
+  }
+
+  /**
+   * Cut back-to-back slots out of a free run, starting no earlier than {@code earliest}, until
+   * {@code count} slots have been found.
+   */
+  private static void addSlots(List<List<LocalDateTime>> slots, LocalDateTime runStart,
+      LocalDateTime runEnd, LocalDateTime earliest, Duration duration, int count) {
+    if (runStart == null) {
+      return;
+    }
+    LocalDateTime start = runStart.isBefore(earliest) ? earliest : runStart;
+    while (slots.size() < count && !start.plus(duration).isAfter(runEnd)) {
+      List<LocalDateTime> slot = new ArrayList<>(2);
+      slot.add(start);
+      slot.add(start.plus(duration));
+      slots.add(slot);
+      start = start.plus(duration);
+    }
+  }
+
+  /**
+   * The free intervals of a day around the appointments starting on it. Uses a {@link DayBitmap}
+   * when every appointment lies on the slot grid, otherwise sorts and sweeps the appointments.
+   */
+  private List<List<LocalDateTime>> freeIntervals(LocalDate date, List<Appointment> appointments) {
+    if (useAvailabilityBitmap && !appointments.isEmpty()) {
+      DayBitmap bitmap = DayBitmap.of(date, appointments, slotMinutes);
+      if (bitmap != null) {
+        return bitmap.freeIntervals(date);
+      }
+    }
 
     LocalDateTime dayStart = date.atStartOfDay();
     LocalDateTime dayEnd = date.atTime(LocalTime.MAX);
@@ -247,13 +846,92 @@ public class AppointmentServiceImpl implements AppointmentService {
   }
 
   @Override
-  public List<Appointment> getAppointmentHistory(Long providerId, Long userId) {
-    return appointmentMapper.findAppointmentsByProviderAndUser(providerId, userId);
+  public List<AppointmentHistoryEntry> getAppointmentHistory(Long providerId, Long userId) {
+    return read(providerId,
+        () -> appointmentStore.findAppointmentsByProviderAndUser(providerId, userId));
+  }
+
+  @Override
+  public AppointmentHistoryPage getAppointmentHistory(Long providerId, Long userId,
+      LocalDate startDate, LocalDate endDate, String cursor, Integer limit) {
+    if (startDate != null && endDate != null && !startDate.isBefore(endDate)) {
+      throw new IllegalArgumentException("Start date must be before end date.");
+    }
+    int pageSize = pageSize(limit);
+    KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+    List<AppointmentHistoryEntry> rows = read(providerId,
+        () -> appointmentStore.findAppointmentsByProviderAndUserPage(
+            providerId, userId, startDate == null ? null : startDate.atStartOfDay(),
+            endDate == null ? null : endDate.atStartOfDay(),
+            after == null ? null : after.getStartDateTime(),
+            after == null ? null : after.getAppointmentId(), pageSize + 1));
+
+    AppointmentHistoryPage page = new AppointmentHistoryPage();
+    if (rows.size() > pageSize) {
+      AppointmentHistoryEntry last = rows.get(pageSize - 1);
+      page.setItems(new ArrayList<>(rows.subList(0, pageSize)));
+      page.setNextCursor(
+          new KeysetCursor(last.startDateTime(), last.appointmentId()).encode());
+    } else {
+      page.setItems(rows);
+    }
+    return page;
   }
 
   @Override
   public List<Appointment> getAppointmentsWithinDateRange(Long providerId, 
       LocalDate startDate, LocalDate endDate) {
+    checkDateRange(providerId, startDate, endDate);
+
+    List<Appointment> appointments = read(providerId,
+        () -> appointmentStore.getAppointmentsWithinDateRange(providerId, startDate, endDate));
+    // Same bounds as the query: start on or after startDate, end on or before endDate midnight
+    List<Appointment> occurrences = new ArrayList<>();
+    for (Appointment occurrence : read(providerId,
+        () -> recurringBlockOccurrences(providerId, startDate, endDate))) {
+      if (!occurrence.getEndDateTime().isAfter(endDate.atStartOfDay())) {
+        occurrences.add(occurrence);
+      }
+    }
+    if (occurrences.isEmpty()) {
+      return appointments;
+    }
+    List<Appointment> merged = new ArrayList<>(appointments);
+    merged.addAll(occurrences);
+    merged.sort(Comparator.comparing(Appointment::getStartDateTime));
+    return merged;
+  }
+
+  @Override
+  public AppointmentPage getAppointmentsWithinDateRange(Long providerId, LocalDate startDate,
+      LocalDate endDate, String cursor, Integer limit) {
+    checkDateRange(providerId, startDate, endDate);
+    int pageSize = pageSize(limit);
+    KeysetCursor after = cursor == null ? null : KeysetCursor.decode(cursor);
+
+    List<Appointment> page = new ArrayList<>(read(providerId,
+        () -> appointmentStore.getAppointmentsWithinDateRangePage(providerId, startDate, endDate,
+            after == null ? null : after.getStartDateTime(),
+            after == null ? null : after.getAppointmentId(), pageSize + 1)));
+    // Occurrences are expanded in memory, so only the days from the cursor on are expanded and
+    // merged with the stored rows in key order
+    LocalDate firstDay = after == null || after.getStartDateTime().toLocalDate().isBefore(startDate)
+        ? startDate : after.getStartDateTime().toLocalDate();
+    if (!firstDay.isAfter(endDate)) {
+      for (Appointment occurrence : read(providerId,
+          () -> recurringBlockOccurrences(providerId, firstDay, endDate))) {
+        if (!occurrence.getEndDateTime().isAfter(endDate.atStartOfDay())
+            && (after == null || after.isBefore(occurrence))) {
+          page.add(occurrence);
+        }
+      }
+    }
+    page.sort(Comparator.comparing(Appointment::getStartDateTime)
+        .thenComparingLong(KeysetCursor::keyId));
+    return page(page, pageSize);
+  }
+
+  private void checkDateRange(Long providerId, LocalDate startDate, LocalDate endDate) {
     if (providerId == null) {
       throw new IllegalArgumentException("Provider ID cannot be null.");
     }
@@ -263,8 +941,95 @@ public class AppointmentServiceImpl implements AppointmentService {
     if (startDate.isAfter(endDate)) {
       throw new IllegalArgumentException("Start date cannot be after end date.");
     }
+  }
 
-    return appointmentMapper.getAppointmentsWithinDateRange(providerId, startDate, endDate);
+  private static int pageSize(Integer limit) {
+    if (limit == null) {
+      return DEFAULT_PAGE_SIZE;
+    }
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+    }
+    return limit;
+  }
+
+  /**
+   * Cut a key-ordered list read with one row more than the page size down to the page. The extra
+   * row only tells that a next page exists, the cursor is the key of the last row returned.
+   */
+  private static AppointmentPage page(List<Appointment> rows, int pageSize) {
+    AppointmentPage page = new AppointmentPage();
+    if (rows.size() > pageSize) {
+      List<Appointment> items = new ArrayList<>(rows.subList(0, pageSize));
+      page.setItems(items);
+      page.setNextCursor(KeysetCursor.after(items.get(pageSize - 1)).encode());
+    } else {
+      page.setItems(rows);
+    }
+    return page;
+  }
+
+  @Override
+  public List<RecurringBlock> getRecurringBlocks(Long providerId) {
+    return read(providerId,
+        () -> recurringBlockStore.getRecurringBlocksByProviderId(providerId));
+  }
+
+  @Override
+  public boolean deleteRecurringBlock(Long id) {
+    RecurringBlock recurringBlock = availabilityCache.isEnabled() || readRouting.isEnabled()
+        || shardRouting.isEnabled() || intervalIndex.isEnabled()
+        ? shardRouting.findOnAnyShard(() -> recurringBlockStore.getRecurringBlock(id),
+            RecurringBlock::getProviderId) : null;
+    if (shardRouting.isEnabled() && recurringBlock == null) {
+      return false;
+    }
+    boolean deleted = shardRouting.onProviderShard(
+        recurringBlock == null ? null : recurringBlock.getProviderId(),
+        () -> recurringBlockStore.deleteRecurringBlock(id)) == 1;
+    if (deleted && recurringBlock != null) {
+      intervalIndex.onRecurringBlocksChanged(recurringBlock.getProviderId());
+      availabilityCache.invalidateProvider(recurringBlock.getProviderId());
+      readRouting.recordWrite(recurringBlock.getProviderId());
+    }
+    return deleted;
+  }
+
+  @Override
+  public boolean deleteRecurringBlockOccurrence(Long id, LocalDate date) {
+    if (date == null) {
+      throw new IllegalArgumentException("Date cannot be null.");
+    }
+    RecurringBlock recurringBlock =
+        shardRouting.findOnAnyShard(() -> recurringBlockStore.getRecurringBlock(id),
+            RecurringBlock::getProviderId);
+    if (recurringBlock == null) {
+      return false;
+    }
+    Long providerId = recurringBlock.getProviderId();
+    // Read again under the lock, so that two freed days of one rule do not overwrite each other
+    boolean updated = providerLocks.withProviderLock(providerId, () -> {
+      RecurringBlock current = recurringBlockStore.getRecurringBlock(id);
+      if (current == null) {
+        return false;
+      }
+      if (date.isBefore(current.getStartDate()) || date.isAfter(current.getEndDate())
+          || !RecurringBlocks.matches(current.getWeekdayMask(), date)) {
+        throw new IllegalArgumentException("The recurring block does not occur on " + date + ".");
+      }
+      Set<LocalDate> excluded =
+          new TreeSet<>(RecurringBlocks.parseDates(current.getExcludedDates()));
+      if (excluded.add(date)) {
+        recurringBlockStore.updateExcludedDates(id, RecurringBlocks.formatDates(excluded));
+      }
+      return true;
+    });
+    if (updated) {
+      intervalIndex.onRecurringBlocksChanged(providerId);
+      availabilityCache.invalidateProvider(providerId);
+      readRouting.recordWrite(providerId);
+    }
+    return updated;
   }
 
   @Override
@@ -273,41 +1038,307 @@ public class AppointmentServiceImpl implements AppointmentService {
     if (blockDto.getProviderId() == null) {
       throw new IllegalArgumentException("Provider ID Can't be null.");
     }
+    if (blockDto.getStartDate() == null || blockDto.getEndDate() == null) {
+      throw new IllegalArgumentException("Start date and end date cannot be null.");
+    }
 
-    Long providerId = blockDto.getProviderId();
-    LocalTime startTime = blockDto.getStartTime();
-    LocalTime endTime = blockDto.getEndTime();
     LocalDate startDate = blockDto.getStartDate();
     LocalDate endDate = blockDto.getEndDate();
 
-    StringBuilder conflictDates = new StringBuilder();
-    boolean hasConflict = false;
+    List<LocalDate> conflictDates = providerLocks.withProviderLock(blockDto.getProviderId(),
+        () -> createDailyBlocks(blockDto.getProviderId(), blockDto.getStartTime(),
+            blockDto.getEndTime(), startDate, endDate, blockDto.getDaysOfWeek()));
 
-    // Step 1: Check for conflicts from start date to end date
-    for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
-      LocalDateTime startDateTime = LocalDateTime.of(date, startTime);
-      LocalDateTime endDateTime = LocalDateTime.of(date, endTime);
+    if (!conflictDates.isEmpty()) {
+      return formatConflictDates(conflictDates);
+    } else {
+      return "Recurring block created successfully from " 
+          + startDate.toString() + " to " + endDate.toString();
+    }
+  }
+
+  /**
+   * Block the same time window on every matching day of a date range. The whole series is
+   * conflict-checked with one range query and a sweep over the sorted result. Free days are then
+   * stored either as a single recurring block rule, or as one blocked row per day written with
+   * the batch writer. Days that conflict are skipped and returned.
+   */
+  private List<LocalDate> createDailyBlocks(Long providerId, LocalTime startTime,
+      LocalTime endTime, LocalDate startDate, LocalDate endDate, Set<DayOfWeek> daysOfWeek) {
+    if (startTime == null || endTime == null || !startTime.isBefore(endTime)) {
+      throw new IllegalArgumentException("Start time must be before end time.");
+    }
+    Integer weekdayMask = RecurringBlocks.toWeekdayMask(daysOfWeek);
+
+    List<Appointment> existing = new ArrayList<>(appointmentStore.getAppointmentsOverlappingRange(
+        providerId,
+        LocalDateTime.of(startDate, startTime).truncatedTo(ChronoUnit.SECONDS),
+        LocalDateTime.of(endDate, endTime).truncatedTo(ChronoUnit.SECONDS)));
+    existing.addAll(recurringBlockOccurrences(providerId, startDate, endDate));
+    existing.sort(Comparator.comparing(Appointment::getStartDateTime));
 
-      CreateBlockDto singleDayBlockDto = new CreateBlockDto();
-      singleDayBlockDto.setProviderId(providerId);
-      singleDayBlockDto.setStartDateTime(startDateTime);
-      singleDayBlockDto.setEndDateTime(endDateTime);
+    // Only intervals starting within [dayStart - longest, dayEnd] can overlap a day's window
+    Duration longest = longestDuration(existing);
 
-      try {
-        createBlock(singleDayBlockDto);
-      } catch (IllegalArgumentException e) {
-        hasConflict = true;
-        conflictDates.append(date).append("\n");
+    List<LocalDate> conflictDates = new ArrayList<>();
+    List<LocalDate> freeDates = new ArrayList<>();
+    int first = 0;
+    for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+      if (!RecurringBlocks.matches(weekdayMask, date)) {
+        continue;
+      }
+      LocalDateTime dayStart = LocalDateTime.of(date, startTime).truncatedTo(ChronoUnit.SECONDS);
+      LocalDateTime dayEnd = LocalDateTime.of(date, endTime).truncatedTo(ChronoUnit.SECONDS);
+      LocalDateTime earliest = dayStart.minus(longest);
+      while (first < existing.size()
+          && existing.get(first).getStartDateTime().isBefore(earliest)) {
+        first++;
+      }
+      if (hasSortedConflict(existing, first, dayStart, dayEnd)) {
+        conflictDates.add(date);
+      } else {
+        freeDates.add(date);
       }
     }
+    businessMetrics.recurringDaysSkipped(conflictDates.size());
 
-    // Step 2: Return result based on whether conflicts were found
-    if (hasConflict) {
-      return "Conflicts found on the following dates: \n" + conflictDates.toString();
+    if (freeDates.isEmpty()) {
+      return conflictDates;
+    }
+    if (useBlockRules) {
+      RecurringBlock rule = new RecurringBlock();
+      rule.setProviderId(providerId);
+      rule.setStartTime(startTime.truncatedTo(ChronoUnit.SECONDS));
+      rule.setEndTime(endTime.truncatedTo(ChronoUnit.SECONDS));
+      rule.setStartDate(startDate);
+      rule.setEndDate(endDate);
+      rule.setWeekdayMask(weekdayMask);
+      rule.setExcludedDates(RecurringBlocks.formatDates(conflictDates));
+      if (assignAppointmentIds) {
+        // Rules are looked up by id on every shard too, so their ids must not collide either
+        rule.setRecurringBlockId(idGenerator.nextId());
+      }
+      recurringBlockStore.createRecurringBlock(rule);
+      afterCommit(() -> {
+        intervalIndex.onRecurringBlocksChanged(providerId);
+        availabilityCache.invalidateProvider(providerId);
+        readRouting.recordWrite(providerId);
+      });
     } else {
-      return "Recurring block created successfully from " 
-          + startDate.toString() + " to " + endDate.toString();
+      List<Appointment> blocks = new ArrayList<>();
+      for (LocalDate date : freeDates) {
+        blocks.add(newBlock(providerId,
+            LocalDateTime.of(date, startTime).truncatedTo(ChronoUnit.SECONDS),
+            LocalDateTime.of(date, endTime).truncatedTo(ChronoUnit.SECONDS)));
+      }
+      assignIds(blocks);
+      batchWriter.insertAll(blocks);
+      afterCommit(() -> {
+        intervalIndex.invalidate(providerId);
+        availabilityCache.invalidateProvider(providerId);
+        readRouting.recordWrite(providerId);
+      });
+    }
+    return conflictDates;
+  }
+
+  /**
+   * Gets the longest interval of a list, which bounds how far before a requested start a
+   * conflicting interval can begin.
+   */
+  private static Duration longestDuration(List<Appointment> appointments) {
+    Duration longest = Duration.ZERO;
+    for (Appointment appointment : appointments) {
+      Duration duration =
+          Duration.between(appointment.getStartDateTime(), appointment.getEndDateTime());
+      longest = duration.compareTo(longest) > 0 ? duration : longest;
+    }
+    return longest;
+  }
+
+  /**
+   * Whether a requested interval conflicts with an interval of a list sorted by start time,
+   * scanning from {@code first} until the intervals start after the requested end.
+   */
+  private static boolean hasSortedConflict(List<Appointment> sorted, int first,
+      LocalDateTime start, LocalDateTime end) {
+    for (int i = first; i < sorted.size(); i++) {
+      Appointment candidate = sorted.get(i);
+      if (candidate.getStartDateTime().isAfter(end)) {
+        return false;
+      }
+      if (TimeConflicts.conflicts(
+          candidate.getStartDateTime(), candidate.getEndDateTime(), start, end)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Expand the recurring block rules of a provider into blocked occurrences on the given days.
+   */
+  private List<Appointment> recurringBlockOccurrences(
+      Long providerId, LocalDate startDate, LocalDate endDate) {
+    if (!useBlockRules) {
+      return List.of();
+    }
+    return RecurringBlocks.expand(
+        recurringBlockStore.getRecurringBlocksInDateRange(providerId, startDate, endDate),
+        startDate, endDate);
+  }
+
+  /**
+   * Merge the recurring block occurrences of the given days into a list of stored rows.
+   */
+  private List<Appointment> withRecurringBlocks(List<Appointment> appointments,
+      Long providerId, LocalDate startDate, LocalDate endDate) {
+    List<Appointment> occurrences = recurringBlockOccurrences(providerId, startDate, endDate);
+    if (occurrences.isEmpty()) {
+      return appointments;
+    }
+    List<Appointment> merged = new ArrayList<>(appointments);
+    merged.addAll(occurrences);
+    merged.sort(Comparator.comparing(Appointment::getStartDateTime));
+    return merged;
+  }
+
+  /**
+   * Whether an interval conflicts with an occurrence of a recurring block rule. The index engines
+   * take the rules from the interval index, so a check does not query the rules table.
+   */
+  private boolean hasRecurringBlockConflict(
+      Long providerId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+    if (!useBlockRules) {
+      return false;
+    }
+    LocalDate startDate = startDateTime.toLocalDate();
+    LocalDate endDate = endDateTime.toLocalDate();
+    List<RecurringBlock> rules = intervalIndex.isEnabled()
+        ? intervalIndex.recurringBlocks(providerId)
+        : recurringBlockStore.getRecurringBlocksInDateRange(providerId, startDate, endDate);
+    for (Appointment occurrence : RecurringBlocks.expand(rules, startDate, endDate)) {
+      if (TimeConflicts.conflicts(occurrence.getStartDateTime(), occurrence.getEndDateTime(),
+          startDateTime, endDateTime)) {
+        return true;
+      }
     }
+    return false;
   }
 
+  /**
+   * Run a hook once the current transaction has committed, or right away outside a transaction.
+   * Invalidating caches before the commit would let a read in between cache the old rows, and a
+   * rollback would leave the interval index with a write that never happened. Provider locks
+   * commit before they release the lock, so a hook still runs under the provider's lock.
+   */
+  private static void afterCommit(Runnable hook) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      hook.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        hook.run();
+      }
+    });
+  }
+
+  /** Run a read of one provider on its shard, and on a replica when it may. */
+  private <T> T read(Long providerId, Supplier<T> action) {
+    return shardRouting.onProviderShard(providerId, () -> readRouting.read(providerId, action));
+  }
+
+  /**
+   * Invalidate the cached availability of the day an appointment starts on, which is the only
+   * day whose availability reads the row, and keep the provider's reads on the primary until the
+   * replicas have the write.
+   */
+  private void afterWrite(Appointment appointment) {
+    readRouting.recordWrite(appointment == null ? null : appointment.getProviderId());
+    if (appointment != null && appointment.getStartDateTime() != null) {
+      availabilityCache.invalidate(
+          appointment.getProviderId(), appointment.getStartDateTime().toLocalDate());
+    }
+  }
+
+  /**
+   * Give new rows ids from the generator if appointment ids are assigned by the service. Every
+   * insert goes through here, since a key taken from AUTO_INCREMENT could collide with one minted.
+   * Recurring block rules get minted ids as well where they are created.
+   */
+  private void assignIds(List<Appointment> appointments) {
+    if (assignAppointmentIds) {
+      for (Appointment appointment : appointments) {
+        appointment.setAppointmentId(idGenerator.nextId());
+      }
+    }
+  }
+
+  private static Appointment newBlock(
+      Long providerId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+    Appointment appointment = new Appointment();
+    appointment.setProviderId(providerId);
+    appointment.setUserId(null);
+    appointment.setStartDateTime(startDateTime);
+    appointment.setEndDateTime(endDateTime);
+    appointment.setStatus("blocked");
+    appointment.setServiceType("blocked");
+    appointment.setComments("blocked");
+    return appointment;
+  }
+
+  private static String formatConflictDates(List<LocalDate> conflictDates) {
+    StringBuilder message = new StringBuilder("Conflicts found on the following dates: \n");
+    for (LocalDate date : conflictDates) {
+      message.append(date).append("\n");
+    }
+    return message.toString();
+  }
+
+  private boolean hasCreateConflict(
+      Long providerId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+    LocalDateTime start = startDateTime.truncatedTo(ChronoUnit.SECONDS);
+    LocalDateTime end = endDateTime.truncatedTo(ChronoUnit.SECONDS);
+    return hasStoredCreateConflict(providerId, start, end)
+        || hasRecurringBlockConflict(providerId, start, end);
+  }
+
+  private boolean hasStoredCreateConflict(
+      Long providerId, LocalDateTime start, LocalDateTime end) {
+    if (!intervalIndex.isEnabled()) {
+      return appointmentStore.checkCreateTimeConflict(providerId, start, end) != 0;
+    }
+    boolean indexConflict = intervalIndex.hasConflict(providerId, start, end);
+    if (intervalIndex.isCrossCheck()) {
+      boolean sqlConflict = appointmentStore.checkCreateTimeConflict(providerId, start, end) != 0;
+      intervalIndex.recordCrossCheck(providerId, indexConflict, sqlConflict);
+      return sqlConflict;
+    }
+    return indexConflict;
+  }
+
+  private boolean hasUpdateConflict(Long appointmentId, Long providerId,
+      LocalDateTime startDateTime, LocalDateTime endDateTime) {
+    LocalDateTime start = startDateTime.truncatedTo(ChronoUnit.SECONDS);
+    LocalDateTime end = endDateTime.truncatedTo(ChronoUnit.SECONDS);
+    return hasStoredUpdateConflict(appointmentId, providerId, start, end)
+        || providerId != null && hasRecurringBlockConflict(providerId, start, end);
+  }
+
+  private boolean hasStoredUpdateConflict(Long appointmentId, Long providerId,
+      LocalDateTime start, LocalDateTime end) {
+    if (!intervalIndex.isEnabled() || providerId == null) {
+      return appointmentStore.checkUpdateTimeConflict(appointmentId, start, end) != 0;
+    }
+    boolean indexConflict = intervalIndex.hasConflict(providerId, start, end, appointmentId);
+    if (intervalIndex.isCrossCheck()) {
+      boolean sqlConflict =
+          appointmentStore.checkUpdateTimeConflict(appointmentId, start, end) != 0;
+      intervalIndex.recordCrossCheck(providerId, indexConflict, sqlConflict);
+      return sqlConflict;
+    }
+    return indexConflict;
+  }
 }
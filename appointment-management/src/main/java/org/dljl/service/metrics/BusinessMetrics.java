@@ -0,0 +1,76 @@
+package org.dljl.service.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Counters of booking outcomes since startup. A detected conflict also marks the current
+ * request, so a {@code 400} it causes is reported as a conflict rather than as a plain client
+ * error by {@link RequestMetrics}.
+ */
+@Component
+public class BusinessMetrics {
+
+  /** Request attribute set once the request has hit a booking conflict. */
+  public static final String CONFLICT_ATTRIBUTE = BusinessMetrics.class.getName() + ".CONFLICT";
+
+  private final LongAdder bookingsCreated = new LongAdder();
+  private final LongAdder conflictsDetected = new LongAdder();
+  private final LongAdder recurringDaysSkipped = new LongAdder();
+
+  /**
+   * Count created appointments.
+   *
+   * @param count the number of appointments
+   */
+  public void bookingsCreated(int count) {
+    bookingsCreated.add(count);
+  }
+
+  /** Count a requested interval rejected because it overlaps a stored or batched one. */
+  public void conflictDetected() {
+    conflictsDetected.increment();
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes != null) {
+      attributes.setAttribute(CONFLICT_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+    }
+  }
+
+  /**
+   * Count days of a recurring block left out because they conflict.
+   *
+   * @param count the number of days
+   */
+  public void recurringDaysSkipped(int count) {
+    recurringDaysSkipped.add(count);
+  }
+
+  /**
+   * Gets the number of appointments created.
+   *
+   * @return the count
+   */
+  public long getBookingsCreated() {
+    return bookingsCreated.sum();
+  }
+
+  /**
+   * Gets the number of conflicts detected.
+   *
+   * @return the count
+   */
+  public long getConflictsDetected() {
+    return conflictsDetected.sum();
+  }
+
+  /**
+   * Gets the number of recurring block days skipped.
+   *
+   * @return the count
+   */
+  public long getRecurringDaysSkipped() {
+    return recurringDaysSkipped.sum();
+  }
+}
@@ -0,0 +1,119 @@
+package org.dljl.service.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets: bucket {@code i} counts
+ * samples up to {@code 2^i} microseconds, the last bucket everything above about 33 seconds.
+ * Recording a sample is a leading-zero count and a few atomic adds, so it is cheap enough to run
+ * on every statement. Percentiles are reported as the upper bound of the bucket they fall in, so
+ * they overestimate by at most a factor of two.
+ */
+public final class LatencyHistogram {
+
+  /** Buckets with a finite upper bound, 1 microsecond up to 2^25 microseconds. */
+  public static final int BOUNDED_BUCKETS = 26;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BOUNDED_BUCKETS + 1);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Record one sample.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 1);
+    // Smallest i with micros <= 2^i
+    int bucket = Long.SIZE - Long.numberOfLeadingZeros(micros - 1);
+    buckets.incrementAndGet(Math.min(bucket, BOUNDED_BUCKETS));
+    count.increment();
+    totalNanos.add(nanos);
+    if (nanos > maxNanos.get()) {
+      maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+  }
+
+  /**
+   * Gets the upper bound of a bucket.
+   *
+   * @param bucket the bucket, below {@link #BOUNDED_BUCKETS}
+   * @return the upper bound in microseconds
+   */
+  public static long upperBoundMicros(int bucket) {
+    return 1L << bucket;
+  }
+
+  /**
+   * Gets the number of samples in each bucket, the last entry counting samples above every
+   * bound. Taken without a lock, so the counts may miss samples recorded meanwhile.
+   *
+   * @return the bucket counts
+   */
+  public long[] bucketCounts() {
+    long[] counts = new long[buckets.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * Gets the number of samples.
+   *
+   * @return the count
+   */
+  public long count() {
+    return count.sum();
+  }
+
+  /**
+   * Gets the sum of all samples.
+   *
+   * @return the total in nanoseconds
+   */
+  public long totalNanos() {
+    return totalNanos.sum();
+  }
+
+  /**
+   * Gets the largest sample.
+   *
+   * @return the maximum in nanoseconds
+   */
+  public long maxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * Estimate a percentile from the bucket counts.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the upper bound of the bucket holding the percentile in microseconds, the maximum
+   *     for the last bucket, or 0 without samples
+   */
+  public long percentileMicros(double percentile) {
+    long[] counts = bucketCounts();
+    long total = 0;
+    for (long bucketCount : counts) {
+      total += bucketCount;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(total * percentile / 100), 1);
+    long seen = 0;
+    for (int i = 0; i < BOUNDED_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return upperBoundMicros(i);
+      }
+    }
+    return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+  }
+}
@@ -0,0 +1,240 @@
+package org.dljl.service.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.dljl.config.ConcurrencyLimitFilter;
+import org.dljl.service.cache.AvailabilityCache;
+import org.dljl.service.conflict.ProviderIntervalIndex;
+import org.dljl.service.idempotency.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Renders the metrics of the service in the Prometheus text exposition format: requests and
+ * latency per endpoint and outcome, booking counters, mapper statement latency, the counters of
+ * the caches and the conflict index, the concurrency cap when virtual threads are enabled, and
+ * the saturation of the JDBC connection pool.
+ */
+@Component
+public class PrometheusMetrics {
+
+  /** Content type of the text exposition format. */
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final String[] BUCKET_BOUNDS = new String[LatencyHistogram.BOUNDED_BUCKETS];
+
+  static {
+    for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+      BUCKET_BOUNDS[i] = BigDecimal.valueOf(LatencyHistogram.upperBoundMicros(i), 6)
+          .stripTrailingZeros().toPlainString();
+    }
+  }
+
+  @Autowired private RequestMetrics requestMetrics;
+
+  @Autowired private BusinessMetrics businessMetrics;
+
+  @Autowired private StatementMetrics statementMetrics;
+
+  @Autowired private AvailabilityCache availabilityCache;
+
+  @Autowired private IdempotencyStore idempotencyStore;
+
+  @Autowired private ProviderIntervalIndex intervalIndex;
+
+  // Absent with the memory profile
+  @Autowired(required = false)
+  private DataSource dataSource;
+
+  // Only present with virtual threads enabled
+  @Autowired(required = false)
+  private ConcurrencyLimitFilter concurrencyLimitFilter;
+
+  /**
+   * Render every metric.
+   *
+   * @return the metrics in the text exposition format
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder(32 * 1024);
+    writeRequests(out);
+    writeBusiness(out);
+    writeStatements(out);
+    writeCaches(out);
+    writeConcurrency(out);
+    writeConnectionPool(out);
+    return out.toString();
+  }
+
+  private void writeRequests(StringBuilder out) {
+    Map<RequestMetrics.Endpoint, RequestMetrics.EndpointStats> endpoints =
+        new TreeMap<>(Comparator.comparing(RequestMetrics.Endpoint::route)
+            .thenComparing(RequestMetrics.Endpoint::method));
+    endpoints.putAll(requestMetrics.endpoints());
+
+    header(out, "http_requests_total", "counter", "Requests by endpoint and outcome.");
+    endpoints.forEach((endpoint, stats) -> new TreeMap<>(stats.outcomes()).forEach(
+        (outcome, count) -> sample(out, "http_requests_total", labels(endpoint, outcome),
+            count.sum())));
+
+    header(out, "http_request_errors_total", "counter",
+        "Requests answered with 400 or above by endpoint and outcome.");
+    endpoints.forEach((endpoint, stats) -> new TreeMap<>(stats.outcomes()).forEach(
+        (outcome, count) -> {
+          if (!RequestMetrics.SUCCESS.equals(outcome)) {
+            sample(out, "http_request_errors_total", labels(endpoint, outcome), count.sum());
+          }
+        }));
+
+    header(out, "http_request_duration_seconds", "histogram", "Request latency by endpoint.");
+    endpoints.forEach((endpoint, stats) -> histogram(out, "http_request_duration_seconds",
+        labels(endpoint), stats.latency()));
+  }
+
+  private void writeBusiness(StringBuilder out) {
+    counter(out, "appointment_bookings_created_total", "Appointments created.",
+        businessMetrics.getBookingsCreated());
+    counter(out, "appointment_conflicts_detected_total",
+        "Requested intervals rejected because they overlap another one.",
+        businessMetrics.getConflictsDetected());
+    counter(out, "appointment_recurring_days_skipped_total",
+        "Days left out of recurring blocks because they conflict.",
+        businessMetrics.getRecurringDaysSkipped());
+  }
+
+  private void writeStatements(StringBuilder out) {
+    Map<String, StatementStats> statements = new TreeMap<>(statementMetrics.statements());
+
+    header(out, "mybatis_statement_duration_seconds", "histogram",
+        "Mapper statement latency by statement id.");
+    statements.forEach((id, stats) -> histogram(out, "mybatis_statement_duration_seconds",
+        "statement=\"" + escape(id) + "\"", stats.latency()));
+
+    header(out, "mybatis_statement_errors_total", "counter", "Mapper statements that failed.");
+    statements.forEach((id, stats) -> sample(out, "mybatis_statement_errors_total",
+        "statement=\"" + escape(id) + "\"", stats.errors()));
+
+    header(out, "mybatis_statement_rows_total", "counter",
+        "Rows returned or affected by mapper statements.");
+    statements.forEach((id, stats) -> sample(out, "mybatis_statement_rows_total",
+        "statement=\"" + escape(id) + "\"", stats.rows()));
+  }
+
+  private void writeCaches(StringBuilder out) {
+    counter(out, "appointment_availability_cache_hits_total", "Availability cache hits.",
+        availabilityCache.getHits());
+    counter(out, "appointment_availability_cache_misses_total", "Availability cache misses.",
+        availabilityCache.getMisses());
+    counter(out, "appointment_availability_cache_evictions_total",
+        "Availability cache entries evicted because the cache was full.",
+        availabilityCache.getEvictions());
+    gauge(out, "appointment_availability_cache_entries", "Availability cache entries held.",
+        availabilityCache.size());
+    counter(out, "appointment_idempotency_replays_total",
+        "Duplicate requests answered with an earlier result.", idempotencyStore.getReplays());
+    gauge(out, "appointment_idempotency_keys", "Idempotency keys held.",
+        idempotencyStore.size());
+    counter(out, "appointment_conflict_index_mismatches_total",
+        "Conflict index answers that disagreed with SQL in cross-check mode.",
+        intervalIndex.getCrossCheckMismatches());
+  }
+
+  private void writeConcurrency(StringBuilder out) {
+    if (concurrencyLimitFilter == null) {
+      return;
+    }
+    gauge(out, "appointment_requests_limit", "Requests handled at once at most.",
+        concurrencyLimitFilter.getLimit());
+    gauge(out, "appointment_requests_in_flight", "Requests being handled.",
+        concurrencyLimitFilter.getInFlight());
+    counter(out, "appointment_requests_rejected_total",
+        "Requests rejected because the concurrency limit was reached.",
+        concurrencyLimitFilter.getRejected());
+  }
+
+  private void writeConnectionPool(StringBuilder out) {
+    HikariDataSource hikari;
+    try {
+      if (dataSource == null || !dataSource.isWrapperFor(HikariDataSource.class)) {
+        return;
+      }
+      hikari = dataSource.unwrap(HikariDataSource.class);
+    } catch (SQLException e) {
+      return;
+    }
+    String pool = "pool=\"" + escape(String.valueOf(hikari.getPoolName())) + "\"";
+    header(out, "hikaricp_connections_max", "gauge", "Maximum connections of the pool.");
+    sample(out, "hikaricp_connections_max", pool, hikari.getMaximumPoolSize());
+    HikariPoolMXBean bean = hikari.getHikariPoolMXBean();
+    if (bean == null) {
+      // The pool starts with the first connection
+      return;
+    }
+    header(out, "hikaricp_connections_active", "gauge", "Connections in use.");
+    sample(out, "hikaricp_connections_active", pool, bean.getActiveConnections());
+    header(out, "hikaricp_connections_idle", "gauge", "Idle connections.");
+    sample(out, "hikaricp_connections_idle", pool, bean.getIdleConnections());
+    header(out, "hikaricp_connections", "gauge", "Open connections.");
+    sample(out, "hikaricp_connections", pool, bean.getTotalConnections());
+    header(out, "hikaricp_connections_pending", "gauge", "Threads waiting for a connection.");
+    sample(out, "hikaricp_connections_pending", pool, bean.getThreadsAwaitingConnection());
+  }
+
+  private static void histogram(StringBuilder out, String name, String labels,
+      LatencyHistogram histogram) {
+    long[] counts = histogram.bucketCounts();
+    long cumulative = 0;
+    for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+      cumulative += counts[i];
+      sample(out, name + "_bucket", labels + ",le=\"" + BUCKET_BOUNDS[i] + "\"", cumulative);
+    }
+    cumulative += counts[BUCKET_BOUNDS.length];
+    sample(out, name + "_bucket", labels + ",le=\"+Inf\"", cumulative);
+    out.append(name).append("_sum{").append(labels).append("} ")
+        .append(histogram.totalNanos() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+    sample(out, name + "_count", labels, cumulative);
+  }
+
+  private static void counter(StringBuilder out, String name, String help, long value) {
+    header(out, name, "counter", help);
+    sample(out, name, null, value);
+  }
+
+  private static void gauge(StringBuilder out, String name, String help, long value) {
+    header(out, name, "gauge", help);
+    sample(out, name, null, value);
+  }
+
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, long value) {
+    out.append(name);
+    if (labels != null) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ').append(value).append('\n');
+  }
+
+  private static String labels(RequestMetrics.Endpoint endpoint) {
+    return "method=\"" + escape(endpoint.method()) + "\",route=\"" + escape(endpoint.route())
+        + "\"";
+  }
+
+  private static String labels(RequestMetrics.Endpoint endpoint, String outcome) {
+    return labels(endpoint) + ",outcome=\"" + outcome + "\"";
+  }
+
+  static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,92 @@
+package org.dljl.service.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Request counts and latencies per endpoint, where an endpoint is the HTTP method and the
+ * matched route pattern such as {@code /appointments/{id}}, so path variables do not multiply
+ * the series. Each request is counted under one outcome: {@code success} below 400,
+ * {@code conflict} for a 400 caused by a booking conflict, {@code client_error} for any other
+ * 4xx and {@code server_error} for 5xx.
+ */
+@Component
+public class RequestMetrics {
+
+  /** Outcome of requests answered below 400. */
+  public static final String SUCCESS = "success";
+
+  private final ConcurrentMap<Endpoint, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+  /**
+   * Record one request.
+   *
+   * @param method the HTTP method
+   * @param route the matched route pattern
+   * @param status the response status
+   * @param conflict whether the request hit a booking conflict
+   * @param nanos the time taken in nanoseconds
+   */
+  public void record(String method, String route, int status, boolean conflict, long nanos) {
+    EndpointStats stats =
+        endpoints.computeIfAbsent(new Endpoint(method, route), key -> new EndpointStats());
+    stats.latency.record(nanos);
+    stats.outcomes.computeIfAbsent(outcome(status, conflict), key -> new LongAdder()).increment();
+  }
+
+  /**
+   * Gets the stats of every endpoint requested since startup.
+   *
+   * @return the stats by endpoint
+   */
+  public Map<Endpoint, EndpointStats> endpoints() {
+    return endpoints;
+  }
+
+  static String outcome(int status, boolean conflict) {
+    if (status < 400) {
+      return SUCCESS;
+    }
+    if (status == 400 && conflict) {
+      return "conflict";
+    }
+    return status < 500 ? "client_error" : "server_error";
+  }
+
+  /**
+   * An HTTP method and route pattern.
+   *
+   * @param method the HTTP method
+   * @param route the route pattern
+   */
+  public record Endpoint(String method, String route) {
+  }
+
+  /** Latency and outcome counts of one endpoint. */
+  public static final class EndpointStats {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the latency histogram.
+     *
+     * @return the histogram
+     */
+    public LatencyHistogram latency() {
+      return latency;
+    }
+
+    /**
+     * Gets the request count of each outcome.
+     *
+     * @return the counts by outcome
+     */
+    public Map<String, LongAdder> outcomes() {
+      return outcomes;
+    }
+  }
+}
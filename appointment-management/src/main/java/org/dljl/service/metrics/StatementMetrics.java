@@ -0,0 +1,181 @@
+package org.dljl.service.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.dljl.dto.StatementMetricsSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * MyBatis plugin that times every mapped statement at the executor and records the latency and
+ * the rows returned or affected per statement id. A statement slower than
+ * {@code appointment.statement-metrics.slow-threshold-ms} is logged with its bound parameters,
+ * which are only resolved on that path so fast statements pay for two clock reads and a few
+ * atomic adds. Cursor queries are timed until the cursor is open, their rows are not counted.
+ */
+@Component
+@Intercepts({
+    @Signature(type = Executor.class, method = "query",
+        args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+    @Signature(type = Executor.class, method = "query",
+        args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class,
+            CacheKey.class, BoundSql.class}),
+    @Signature(type = Executor.class, method = "queryCursor",
+        args = {MappedStatement.class, Object.class, RowBounds.class}),
+    @Signature(type = Executor.class, method = "update",
+        args = {MappedStatement.class, Object.class})})
+public class StatementMetrics implements Interceptor {
+
+  private static final Logger logger = LoggerFactory.getLogger(StatementMetrics.class);
+
+  private final ConcurrentMap<String, StatementStats> statements = new ConcurrentHashMap<>();
+
+  @Value("${appointment.statement-metrics.enabled:true}")
+  private boolean enabled;
+
+  @Value("${appointment.statement-metrics.slow-threshold-ms:500}")
+  private long slowThresholdMillis;
+
+  @Override
+  public Object intercept(Invocation invocation) throws Throwable {
+    if (!enabled) {
+      return invocation.proceed();
+    }
+    Object[] args = invocation.getArgs();
+    MappedStatement mappedStatement = (MappedStatement) args[0];
+    Object result = null;
+    boolean failed = true;
+    long start = System.nanoTime();
+    try {
+      result = invocation.proceed();
+      failed = false;
+      return result;
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      long rowCount = rowCount(result);
+      statements.computeIfAbsent(mappedStatement.getId(), id -> new StatementStats())
+          .record(elapsed, rowCount, failed);
+      if (elapsed >= TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis)) {
+        logSlowStatement(mappedStatement, args, elapsed, rowCount, failed);
+      }
+    }
+  }
+
+  /**
+   * Gets the stats of every statement executed since startup or the last reset.
+   *
+   * @return the stats by statement id
+   */
+  public Map<String, StatementStats> statements() {
+    return statements;
+  }
+
+  /**
+   * Snapshot the stats of every statement, the statement with the most total time first.
+   *
+   * @return the snapshots
+   */
+  public List<StatementMetricsSnapshot> snapshot() {
+    List<StatementMetricsSnapshot> snapshots = new ArrayList<>(statements.size());
+    statements.forEach((id, stats) -> snapshots.add(snapshot(id, stats)));
+    snapshots.sort(Comparator.comparingDouble(StatementMetricsSnapshot::getTotalMillis)
+        .reversed());
+    return snapshots;
+  }
+
+  /** Drop the stats of every statement, e.g. to measure a deployment on its own. */
+  public void reset() {
+    statements.clear();
+  }
+
+  private static StatementMetricsSnapshot snapshot(String statementId, StatementStats stats) {
+    LatencyHistogram latency = stats.latency();
+    long count = latency.count();
+    StatementMetricsSnapshot snapshot = new StatementMetricsSnapshot();
+    snapshot.setStatementId(statementId);
+    snapshot.setCount(count);
+    snapshot.setErrors(stats.errors());
+    snapshot.setTotalMillis(latency.totalNanos() / 1e6);
+    snapshot.setMeanMillis(count == 0 ? 0 : latency.totalNanos() / 1e6 / count);
+    snapshot.setP50Millis(latency.percentileMicros(50) / 1e3);
+    snapshot.setP95Millis(latency.percentileMicros(95) / 1e3);
+    snapshot.setP99Millis(latency.percentileMicros(99) / 1e3);
+    snapshot.setMaxMillis(latency.maxNanos() / 1e6);
+    snapshot.setRows(stats.rows());
+    snapshot.setMaxRows(stats.maxRows());
+    return snapshot;
+  }
+
+  private static long rowCount(Object result) {
+    if (result instanceof List<?> rows) {
+      return rows.size();
+    }
+    if (result instanceof Integer affected) {
+      // The batch executor returns a negative placeholder until the batch is flushed
+      return Math.max(affected, 0);
+    }
+    return 0;
+  }
+
+  private void logSlowStatement(MappedStatement mappedStatement, Object[] args, long elapsed,
+      long rowCount, boolean failed) {
+    Map<String, Object> parameters;
+    try {
+      BoundSql boundSql = args.length == 6
+          ? (BoundSql) args[5] : mappedStatement.getBoundSql(args[1]);
+      parameters = boundParameters(mappedStatement.getConfiguration(), boundSql);
+    } catch (RuntimeException e) {
+      parameters = Map.of();
+    }
+    logger.warn("Slow statement {} took {} ms{}, {} rows, parameters {}",
+        mappedStatement.getId(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+        failed ? " and failed" : "", rowCount, parameters);
+  }
+
+  /** Resolve the value of each placeholder the way MyBatis binds it. */
+  static Map<String, Object> boundParameters(Configuration configuration,
+      BoundSql boundSql) {
+    Map<String, Object> parameters = new LinkedHashMap<>();
+    Object parameterObject = boundSql.getParameterObject();
+    for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+      if (mapping.getMode() == ParameterMode.OUT) {
+        continue;
+      }
+      String property = mapping.getProperty();
+      Object value;
+      if (boundSql.hasAdditionalParameter(property)) {
+        value = boundSql.getAdditionalParameter(property);
+      } else if (parameterObject == null) {
+        value = null;
+      } else if (configuration.getTypeHandlerRegistry()
+          .hasTypeHandler(parameterObject.getClass())) {
+        value = parameterObject;
+      } else {
+        value = configuration.newMetaObject(parameterObject).getValue(property);
+      }
+      parameters.put(property, value);
+    }
+    return parameters;
+  }
+}
@@ -0,0 +1,62 @@
+package org.dljl.service.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Latency, failures and row counts of one mapped statement. */
+public final class StatementStats {
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder rows = new LongAdder();
+  private final AtomicLong maxRows = new AtomicLong();
+
+  void record(long nanos, long rowCount, boolean failed) {
+    latency.record(nanos);
+    if (failed) {
+      errors.increment();
+    }
+    if (rowCount > 0) {
+      rows.add(rowCount);
+      if (rowCount > maxRows.get()) {
+        maxRows.accumulateAndGet(rowCount, Math::max);
+      }
+    }
+  }
+
+  /**
+   * Gets the latency histogram.
+   *
+   * @return the histogram
+   */
+  public LatencyHistogram latency() {
+    return latency;
+  }
+
+  /**
+   * Gets the number of executions that threw.
+   *
+   * @return the error count
+   */
+  public long errors() {
+    return errors.sum();
+  }
+
+  /**
+   * Gets the rows returned by queries, or affected by writes, over all executions.
+   *
+   * @return the row count
+   */
+  public long rows() {
+    return rows.sum();
+  }
+
+  /**
+   * Gets the most rows a single execution returned or affected.
+   *
+   * @return the maximum row count
+   */
+  public long maxRows() {
+    return maxRows.get();
+  }
+}
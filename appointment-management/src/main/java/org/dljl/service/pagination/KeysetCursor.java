@@ -0,0 +1,118 @@
+package org.dljl.service.pagination;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import org.dljl.entity.Appointment;
+
+/**
+ * Position in a listing ordered by {@code (start_date_time, appointment_id)}: the key of the last
+ * row of a page. The next page is the rows with a greater key, which the
+ * {@code (provider_id, start_date_time, appointment_id)} indexes serve as one range scan however
+ * deep the page is, unlike {@code OFFSET} which reads and discards every earlier row.
+ *
+ * <p>Clients get the cursor as an opaque URL-safe token. Recurring block occurrences are not
+ * stored rows and have no id, they take key id 0 so they sort before stored rows starting at the
+ * same time.
+ */
+public final class KeysetCursor {
+
+  private static final char SEPARATOR = '|';
+
+  private final LocalDateTime startDateTime;
+  private final long appointmentId;
+
+  /**
+   * Create a cursor.
+   *
+   * @param startDateTime the start date time of the last row
+   * @param appointmentId the id of the last row
+   */
+  public KeysetCursor(LocalDateTime startDateTime, long appointmentId) {
+    this.startDateTime = startDateTime;
+    this.appointmentId = appointmentId;
+  }
+
+  /**
+   * Gets the cursor positioned on an appointment.
+   *
+   * @param appointment the appointment
+   * @return the cursor
+   */
+  public static KeysetCursor after(Appointment appointment) {
+    return new KeysetCursor(appointment.getStartDateTime(), keyId(appointment));
+  }
+
+  /**
+   * Gets the key id of an appointment, 0 for recurring block occurrences.
+   *
+   * @param appointment the appointment
+   * @return the key id
+   */
+  public static long keyId(Appointment appointment) {
+    return appointment.getAppointmentId() == null ? 0L : appointment.getAppointmentId();
+  }
+
+  /**
+   * Decode a token returned by {@link #encode()}.
+   *
+   * @param token the token
+   * @return the cursor
+   * @throws IllegalArgumentException if the token is not a valid cursor
+   */
+  public static KeysetCursor decode(String token) {
+    try {
+      String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      int separator = value.indexOf(SEPARATOR);
+      if (separator < 0) {
+        throw new IllegalArgumentException("Invalid cursor.");
+      }
+      return new KeysetCursor(LocalDateTime.parse(value.substring(0, separator)),
+          Long.parseLong(value.substring(separator + 1)));
+    } catch (DateTimeParseException | IllegalArgumentException e) {
+      // NumberFormatException and Base64 errors are IllegalArgumentExceptions as well
+      throw new IllegalArgumentException("Invalid cursor.", e);
+    }
+  }
+
+  /**
+   * Encode the cursor as an opaque token.
+   *
+   * @return the token
+   */
+  public String encode() {
+    String value = startDateTime.toString() + SEPARATOR + appointmentId;
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Whether an appointment comes after this cursor in key order.
+   *
+   * @param appointment the appointment
+   * @return true if the appointment belongs to a later page
+   */
+  public boolean isBefore(Appointment appointment) {
+    int byStart = appointment.getStartDateTime().compareTo(startDateTime);
+    return byStart > 0 || byStart == 0 && keyId(appointment) > appointmentId;
+  }
+
+  /**
+   * Gets the start date time of the last row.
+   *
+   * @return the start date time
+   */
+  public LocalDateTime getStartDateTime() {
+    return startDateTime;
+  }
+
+  /**
+   * Gets the id of the last row.
+   *
+   * @return the appointment id
+   */
+  public long getAppointmentId() {
+    return appointmentId;
+  }
+}
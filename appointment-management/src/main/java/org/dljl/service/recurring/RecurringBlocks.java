@@ -0,0 +1,118 @@
+package org.dljl.service.recurring;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+
+/**
+ * Expands {@link RecurringBlock} rules into the blocked intervals they stand for, so that rules
+ * can be mixed with stored appointment rows wherever a provider's schedule is read.
+ */
+public final class RecurringBlocks {
+
+  private static final String BLOCKED = "blocked";
+
+  private RecurringBlocks() {
+  }
+
+  /**
+   * Convert a set of days to a weekday mask.
+   *
+   * @param daysOfWeek the days, null or empty means every day
+   * @return the mask with bit 0 for Monday, or null for every day
+   */
+  public static Integer toWeekdayMask(Collection<DayOfWeek> daysOfWeek) {
+    if (daysOfWeek == null || daysOfWeek.isEmpty()) {
+      return null;
+    }
+    int mask = 0;
+    for (DayOfWeek day : daysOfWeek) {
+      mask |= 1 << (day.getValue() - 1);
+    }
+    return mask;
+  }
+
+  /**
+   * Whether a date matches a weekday mask.
+   *
+   * @param weekdayMask the mask, null means every day
+   * @param date the date
+   * @return true if the date matches
+   */
+  public static boolean matches(Integer weekdayMask, LocalDate date) {
+    return weekdayMask == null || (weekdayMask & 1 << (date.getDayOfWeek().getValue() - 1)) != 0;
+  }
+
+  /**
+   * Format excluded dates for storage.
+   *
+   * @param dates the dates
+   * @return the comma separated dates, or null if there are none
+   */
+  public static String formatDates(Collection<LocalDate> dates) {
+    if (dates.isEmpty()) {
+      return null;
+    }
+    return dates.stream().map(LocalDate::toString).collect(Collectors.joining(","));
+  }
+
+  /**
+   * Parse stored excluded dates.
+   *
+   * @param dates the comma separated dates, may be null
+   * @return the dates
+   */
+  public static Set<LocalDate> parseDates(String dates) {
+    Set<LocalDate> parsed = new HashSet<>();
+    if (dates != null && !dates.isBlank()) {
+      for (String date : dates.split(",")) {
+        parsed.add(LocalDate.parse(date.trim()));
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Expand rules into blocked occurrences on the days from {@code startDate} to {@code endDate}
+   * (inclusive). Occurrences have no appointment id.
+   *
+   * @param rules the rules
+   * @param startDate the first day
+   * @param endDate the last day
+   * @return the occurrences as blocked appointments
+   */
+  public static List<Appointment> expand(
+      List<RecurringBlock> rules, LocalDate startDate, LocalDate endDate) {
+    List<Appointment> occurrences = new ArrayList<>();
+    for (RecurringBlock rule : rules) {
+      LocalDate from = rule.getStartDate().isAfter(startDate) ? rule.getStartDate() : startDate;
+      LocalDate to = rule.getEndDate().isBefore(endDate) ? rule.getEndDate() : endDate;
+      Set<LocalDate> excluded = parseDates(rule.getExcludedDates());
+      for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+        if (matches(rule.getWeekdayMask(), date) && !excluded.contains(date)) {
+          occurrences.add(toBlock(rule, date));
+        }
+      }
+    }
+    return occurrences;
+  }
+
+  private static Appointment toBlock(RecurringBlock rule, LocalDate date) {
+    Appointment block = new Appointment();
+    block.setProviderId(rule.getProviderId());
+    block.setStartDateTime(LocalDateTime.of(date, rule.getStartTime()));
+    block.setEndDateTime(LocalDateTime.of(date, rule.getEndTime()));
+    block.setStatus(BLOCKED);
+    block.setServiceType(BLOCKED);
+    block.setComments(BLOCKED);
+    return block;
+  }
+}
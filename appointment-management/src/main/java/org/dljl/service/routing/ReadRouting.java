@@ -0,0 +1,239 @@
+package org.dljl.service.routing;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Decides which database the queries of the current thread go to when read replicas are
+ * configured with {@code appointment.read-replica.urls}. Queries run on the primary unless the
+ * service wraps them in {@link #read}, which picks one replica for the whole action. Reads of a
+ * single provider always go to the same replica, so consecutive reads of it never go back in
+ * time by switching to a replica that lags further. Other reads are spread round-robin.
+ *
+ * <p>Replicas lag behind the primary, so a read stays on the primary for
+ * {@code appointment.read-replica.max-lag-ms} after a write to any provider it reads. The
+ * window is per instance. A write also returns a {@value #TOKEN_HEADER} header. A client that
+ * sends it back is served from the primary for the same window, by any instance, so it always
+ * reads its own writes.
+ */
+@Component
+public class ReadRouting {
+
+  /** Header carrying the time of the client's last write. */
+  public static final String TOKEN_HEADER = "Consistency-Token";
+
+  private static final int PRIMARY = -1;
+
+  private static final int MAX_TRACKED_PROVIDERS = 10000;
+
+  private final ThreadLocal<Integer> target = new ThreadLocal<>();
+  private final ThreadLocal<Long> requestToken = new ThreadLocal<>();
+  private final ConcurrentMap<Long, Long> lastWrites = new ConcurrentHashMap<>();
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private final AtomicLong replicaReads = new AtomicLong();
+  private final AtomicLong primaryReads = new AtomicLong();
+
+  @Value("${appointment.read-replica.urls:}")
+  private String replicaUrls;
+
+  @Value("${appointment.read-replica.max-lag-ms:2000}")
+  private long maxLagMillis;
+
+  private int replicaCount;
+
+  private LongSupplier clock = System::currentTimeMillis;
+
+  /** Count the configured replicas. */
+  @PostConstruct
+  public void init() {
+    replicaCount = parseUrls(replicaUrls).size();
+  }
+
+  /**
+   * Split the configured replica URLs.
+   *
+   * @param urls the comma-separated JDBC URLs, may be null or blank
+   * @return the URLs
+   */
+  public static List<String> parseUrls(String urls) {
+    if (urls == null || urls.isBlank()) {
+      return Collections.emptyList();
+    }
+    List<String> parsed = new ArrayList<>();
+    for (String url : urls.split(",")) {
+      if (!url.isBlank()) {
+        parsed.add(url.trim());
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Whether replicas are configured.
+   *
+   * @return true if reads can be routed to a replica
+   */
+  public boolean isEnabled() {
+    return replicaCount > 0;
+  }
+
+  /**
+   * Run the queries of a read on a replica, unless the provider was written recently or the
+   * request presents a recent token.
+   *
+   * @param providerId the provider read, or null if not known before the read
+   * @param action the read
+   * @param <T> the result type
+   * @return the result of the read
+   */
+  public <T> T read(Long providerId, Supplier<T> action) {
+    return readAll(providerId == null ? Collections.emptyList()
+        : Collections.singletonList(providerId), action);
+  }
+
+  /**
+   * Run the queries of a read over several providers on a replica, unless any of them was
+   * written recently or the request presents a recent token.
+   *
+   * @param providerIds the providers read
+   * @param action the read
+   * @param <T> the result type
+   * @return the result of the read
+   */
+  public <T> T readAll(Collection<Long> providerIds, Supplier<T> action) {
+    if (replicaCount == 0) {
+      return action.get();
+    }
+    Integer previous = target.get();
+    if (mustReadPrimary(providerIds)) {
+      primaryReads.incrementAndGet();
+      target.set(PRIMARY);
+    } else {
+      replicaReads.incrementAndGet();
+      target.set(replicaFor(providerIds));
+    }
+    try {
+      return action.get();
+    } finally {
+      if (previous == null) {
+        target.remove();
+      } else {
+        target.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Keep reads of a provider on the primary until replicas have caught up with a write, and hand
+   * the client a token for its next reads.
+   *
+   * @param providerId the provider written, or null if not known
+   */
+  public void recordWrite(Long providerId) {
+    if (replicaCount == 0) {
+      return;
+    }
+    long now = clock.getAsLong();
+    if (providerId != null) {
+      lastWrites.put(providerId, now);
+      if (lastWrites.size() > MAX_TRACKED_PROVIDERS) {
+        lastWrites.values().removeIf(writtenAt -> now - writtenAt >= maxLagMillis);
+      }
+    }
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes instanceof ServletRequestAttributes servletAttributes
+        && servletAttributes.getResponse() != null) {
+      servletAttributes.getResponse().setHeader(TOKEN_HEADER, Long.toString(now));
+    }
+  }
+
+  /**
+   * Set the token presented by the current request.
+   *
+   * @param token the token, or null
+   */
+  public void setRequestToken(Long token) {
+    if (token == null) {
+      requestToken.remove();
+    } else {
+      requestToken.set(token);
+    }
+  }
+
+  /** Forget the token of the current request. */
+  public void clearRequestToken() {
+    requestToken.remove();
+  }
+
+  /**
+   * Gets the replica the current thread reads from.
+   *
+   * @return the replica index, or null for the primary
+   */
+  public Integer currentReplica() {
+    Integer index = target.get();
+    return index == null || index == PRIMARY ? null : index;
+  }
+
+  /**
+   * Gets the number of reads routed to a replica.
+   *
+   * @return the count
+   */
+  public long getReplicaReads() {
+    return replicaReads.get();
+  }
+
+  /**
+   * Gets the number of reads kept on the primary for read-your-writes.
+   *
+   * @return the count
+   */
+  public long getPrimaryReads() {
+    return primaryReads.get();
+  }
+
+  private boolean mustReadPrimary(Collection<Long> providerIds) {
+    if (TransactionSynchronizationManager.isActualTransactionActive()) {
+      // The transaction already holds a primary connection
+      return true;
+    }
+    long now = clock.getAsLong();
+    Long token = requestToken.get();
+    if (token != null && now - token < maxLagMillis) {
+      return true;
+    }
+    for (Long providerId : providerIds) {
+      Long writtenAt = lastWrites.get(providerId);
+      if (writtenAt != null && now - writtenAt < maxLagMillis) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int replicaFor(Collection<Long> providerIds) {
+    int hash = providerIds.size() == 1
+        ? Long.hashCode(providerIds.iterator().next()) : nextReplica.getAndIncrement();
+    return Math.floorMod(hash, replicaCount);
+  }
+
+  void setClock(LongSupplier clock) {
+    this.clock = clock;
+  }
+}
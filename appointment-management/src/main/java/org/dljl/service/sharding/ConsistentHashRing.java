@@ -0,0 +1,82 @@
+package org.dljl.service.sharding;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hashing of provider ids onto shards. Every shard owns a number of virtual nodes on
+ * a ring of 64-bit hashes, and a provider belongs to the first node at or after its own hash.
+ * The nodes of a shard only depend on its index, so adding a shard to a ring of {@code n} moves
+ * about {@code 1 / (n + 1)} of the providers, all of them to the new shard.
+ */
+public final class ConsistentHashRing {
+
+  private final int shardCount;
+  private final long[] points;
+  private final int[] owners;
+
+  /**
+   * Build the ring of shards {@code 0} to {@code shardCount - 1}.
+   *
+   * @param shardCount the number of shards
+   * @param virtualNodes the nodes per shard, more nodes spread providers more evenly
+   */
+  public ConsistentHashRing(int shardCount, int virtualNodes) {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("Shard count must be positive.");
+    }
+    if (virtualNodes <= 0) {
+      throw new IllegalArgumentException("Virtual nodes must be positive.");
+    }
+    this.shardCount = shardCount;
+    long[][] nodes = new long[shardCount * virtualNodes][];
+    for (int shard = 0; shard < shardCount; shard++) {
+      for (int node = 0; node < virtualNodes; node++) {
+        // Hashed twice, so node hashes never equal the hash of a small provider id
+        nodes[shard * virtualNodes + node] = new long[] {hash(hash(shard) ^ node), shard};
+      }
+    }
+    // Ties are broken by shard index so that the ring does not depend on insertion order
+    Arrays.sort(nodes, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+        : Long.compare(a[1], b[1]));
+    points = new long[nodes.length];
+    owners = new int[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      points[i] = nodes[i][0];
+      owners[i] = (int) nodes[i][1];
+    }
+  }
+
+  /**
+   * Gets the number of shards on the ring.
+   *
+   * @return the shard count
+   */
+  public int shardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Gets the shard a provider belongs to.
+   *
+   * @param providerId the provider id
+   * @return the shard index
+   */
+  public int shardFor(long providerId) {
+    int index = Arrays.binarySearch(points, hash(providerId));
+    if (index < 0) {
+      index = -index - 1;
+    }
+    return owners[index == points.length ? 0 : index];
+  }
+
+  /**
+   * Mix the bits of a value (the SplitMix64 finalizer), so consecutive ids and node numbers land
+   * far apart on the ring. Stable across JVMs, unlike {@code Object#hashCode}.
+   */
+  static long hash(long value) {
+    long mixed = value + 0x9E3779B97F4A7C15L;
+    mixed = (mixed ^ (mixed >>> 30)) * 0xBF58476D1CE4E5B9L;
+    mixed = (mixed ^ (mixed >>> 27)) * 0x94D049BB133111EBL;
+    return mixed ^ (mixed >>> 31);
+  }
+}
@@ -0,0 +1,235 @@
+package org.dljl.service.sharding;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.dljl.dto.AutoIncrementSettings;
+import org.dljl.dto.ShardMoveResult;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.ProviderPlacement;
+import org.dljl.entity.RecurringBlock;
+import org.dljl.service.concurrency.ProviderLocks;
+import org.dljl.storage.RecurringBlockStore;
+import org.dljl.storage.ShardStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Moves providers between shards while the service keeps running. A move copies the provider's
+ * rows to the target shard in batches of {@code appointment.sharding.move-batch-size}, switches
+ * the provider over by recording a placement on shard 0, then deletes the rows from the source
+ * shard in batches. Reads of the provider keep going to the source until the switch. Writes wait
+ * for the whole move on the provider's lock, which only covers this instance, so with several
+ * instances the provider's writes must be paused or sent to the instance doing the move.
+ *
+ * <p>Before it copies, a move records the target as the provider's cleanup shard, and the switch
+ * makes the source the cleanup shard, so the placement always names the one shard that may hold
+ * stray copies. A move that fails or is killed part way leaves them there, and they are deleted
+ * at the next startup or rebalance. Until then, lookups by id prefer the copy on the provider's
+ * shard.
+ *
+ * <p>Moves copy rows keeping their ids, so at startup every shard must hand out disjoint
+ * AUTO_INCREMENT ids unless the service assigns appointment ids itself.
+ */
+@Component
+public class ShardRebalancer {
+
+  private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+  @Autowired private ShardStore shardStore;
+
+  @Autowired private RecurringBlockStore recurringBlockStore;
+
+  @Autowired private ShardRouting shardRouting;
+
+  @Autowired private ProviderLocks providerLocks;
+
+  @Value("${appointment.sharding.move-batch-size:500}")
+  private int batchSize;
+
+  @Value("${appointment.ids.assign-appointment-ids:false}")
+  private boolean assignAppointmentIds;
+
+  /**
+   * Check that the shards hand out disjoint ids, load the placements of moved providers from
+   * shard 0 and finish the moves that were cut short.
+   */
+  @PostConstruct
+  public void init() {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Move batch size must be positive.");
+    }
+    if (!shardRouting.isEnabled()) {
+      return;
+    }
+    // Minted ids cover both appointments and recurring block rules, AUTO_INCREMENT keys do not
+    if (!assignAppointmentIds) {
+      checkDisjointIds(shardRouting.onEveryShard(shardStore::getAutoIncrementSettings));
+    }
+    for (ProviderPlacement placement : shardRouting.onShard(0, shardStore::getPlacements)) {
+      shardRouting.setPlacement(placement.getProviderId(), placement.getShard());
+    }
+    finishInterruptedMoves();
+  }
+
+  /**
+   * Delete the copies that moves cut short left on their provider's cleanup shard.
+   *
+   * @return the number of providers cleaned up
+   */
+  public int finishInterruptedMoves() {
+    int finished = 0;
+    for (ProviderPlacement placement : shardRouting.onShard(0, shardStore::getPlacements)) {
+      if (placement.getCleanupShard() == null) {
+        continue;
+      }
+      Long providerId = placement.getProviderId();
+      int shard = placement.getShard();
+      int cleanupShard = placement.getCleanupShard();
+      providerLocks.withLocalProviderLock(providerId, () -> {
+        deleteRows(cleanupShard, providerId);
+        shardRouting.onShard(0, () -> shardStore.savePlacement(providerId, shard, null));
+        return null;
+      });
+      logger.info("Deleted the copies an interrupted move left of provider {} on shard {}",
+          providerId, cleanupShard);
+      finished++;
+    }
+    return finished;
+  }
+
+  /**
+   * Move the rows of a provider to a shard.
+   *
+   * @param providerId the provider id
+   * @param targetShard the shard index
+   * @return the rows moved, none if the provider already lives on the shard
+   */
+  public ShardMoveResult moveProvider(Long providerId, int targetShard) {
+    if (!shardRouting.isEnabled()) {
+      throw new IllegalArgumentException("Sharding is not enabled.");
+    }
+    if (providerId == null) {
+      throw new IllegalArgumentException("Provider ID cannot be null.");
+    }
+    if (targetShard < 0 || targetShard >= shardRouting.getShardCount()) {
+      throw new IllegalArgumentException("Shard " + targetShard + " does not exist.");
+    }
+    return providerLocks.withLocalProviderLock(providerId,
+        () -> moveLocked(providerId, targetShard));
+  }
+
+  /**
+   * Move every provider that does not live on the shard the ring over all configured shards
+   * assigns it to, one provider at a time.
+   *
+   * @return the moves made
+   */
+  public List<ShardMoveResult> rebalance() {
+    if (!shardRouting.isEnabled()) {
+      throw new IllegalArgumentException("Sharding is not enabled.");
+    }
+    finishInterruptedMoves();
+    List<ShardMoveResult> moves = new ArrayList<>();
+    for (int shard = 0; shard < shardRouting.getShardCount(); shard++) {
+      for (Long providerId : shardRouting.onShard(shard, shardStore::getProviderIds)) {
+        int targetShard = shardRouting.targetShardOf(providerId);
+        // Rows of a provider placed elsewhere were just cleaned up, or are being moved now
+        if (shardRouting.shardOf(providerId) == shard && targetShard != shard) {
+          moves.add(moveProvider(providerId, targetShard));
+        }
+      }
+    }
+    return moves;
+  }
+
+  private ShardMoveResult moveLocked(Long providerId, int targetShard) {
+    int sourceShard = shardRouting.shardOf(providerId);
+    ShardMoveResult result = new ShardMoveResult();
+    result.setProviderId(providerId);
+    result.setFromShard(sourceShard);
+    result.setToShard(targetShard);
+    if (sourceShard == targetShard) {
+      return result;
+    }
+
+    // The target may hold copies until the switch, and does hold some after a failed move
+    shardRouting.onShard(0, () -> shardStore.savePlacement(providerId, sourceShard, targetShard));
+    deleteRows(targetShard, providerId);
+    int appointmentsMoved = 0;
+    Long afterId = null;
+    while (true) {
+      Long lastId = afterId;
+      List<Appointment> batch = shardRouting.onShard(sourceShard,
+          () -> shardStore.getAppointmentsAfterId(providerId, lastId, batchSize));
+      if (batch.isEmpty()) {
+        break;
+      }
+      shardRouting.onShard(targetShard, () -> shardStore.copyAppointments(batch));
+      appointmentsMoved += batch.size();
+      afterId = batch.get(batch.size() - 1).getAppointmentId();
+    }
+    List<RecurringBlock> rules = shardRouting.onShard(sourceShard,
+        () -> recurringBlockStore.getRecurringBlocksByProviderId(providerId));
+    if (!rules.isEmpty()) {
+      shardRouting.onShard(targetShard, () -> shardStore.copyRecurringBlocks(rules));
+    }
+
+    // Switch the provider over before its rows leave the source
+    shardRouting.onShard(0, () -> shardStore.savePlacement(providerId, targetShard, sourceShard));
+    shardRouting.setPlacement(providerId, targetShard);
+    deleteRows(sourceShard, providerId);
+    shardRouting.onShard(0, () -> shardStore.savePlacement(providerId, targetShard, null));
+
+    result.setAppointmentsMoved(appointmentsMoved);
+    result.setRecurringBlocksMoved(rules.size());
+    logger.info("Moved provider {} from shard {} to shard {}: {} appointments, {} recurring blocks",
+        providerId, sourceShard, targetShard, appointmentsMoved, rules.size());
+    return result;
+  }
+
+  /** Delete every row of a provider from a shard, in batches. */
+  private void deleteRows(int shard, Long providerId) {
+    shardRouting.onShard(shard, () -> {
+      List<Appointment> batch = shardStore.getAppointmentsAfterId(providerId, null, batchSize);
+      while (!batch.isEmpty()) {
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (Appointment appointment : batch) {
+          ids.add(appointment.getAppointmentId());
+        }
+        shardStore.deleteAppointments(ids);
+        batch = shardStore.getAppointmentsAfterId(providerId, null, batchSize);
+      }
+      List<Long> ruleIds = new ArrayList<>();
+      for (RecurringBlock rule : recurringBlockStore.getRecurringBlocksByProviderId(providerId)) {
+        ruleIds.add(rule.getRecurringBlockId());
+      }
+      if (!ruleIds.isEmpty()) {
+        shardStore.deleteRecurringBlocks(ruleIds);
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Fail unless the AUTO_INCREMENT settings of the shards interleave their ids: one step of at
+   * least the shard count everywhere, and a distinct offset per shard.
+   */
+  static void checkDisjointIds(List<AutoIncrementSettings> shards) {
+    int increment = shards.get(0).getIncrement();
+    Set<Integer> offsets = new HashSet<>();
+    for (AutoIncrementSettings settings : shards) {
+      if (settings.getIncrement() != increment || increment < shards.size()
+          || !offsets.add(settings.getOffset() % increment)) {
+        throw new IllegalStateException("Shards must hand out disjoint ids: give every shard the "
+            + "same auto_increment_increment of at least " + shards.size() + " and its own "
+            + "auto_increment_offset, or set appointment.ids.assign-appointment-ids=true.");
+      }
+    }
+  }
+}
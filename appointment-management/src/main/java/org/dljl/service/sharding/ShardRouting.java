@@ -0,0 +1,364 @@
+package org.dljl.service.sharding;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import org.dljl.config.VirtualThreadConfig;
+import org.dljl.service.routing.ReadRouting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Decides which shard the queries of the current thread go to when
+ * {@code appointment.sharding.urls} lists shards besides {@code spring.datasource}, which is
+ * shard 0. All rows of a provider live on one shard, picked by a {@link ConsistentHashRing}
+ * unless the provider was moved with the {@link ShardRebalancer}. The service wraps provider
+ * queries in {@link #onProviderShard}, and queries without a provider, such as a lookup by id,
+ * in {@link #findOnAnyShard}. Queries over several providers run on their shards in parallel
+ * with {@link #fanOut}.
+ *
+ * <p>The routing ring spans the first {@code appointment.sharding.ring-shards} shards, all of
+ * them by default. To add a shard online, list it while keeping {@code ring-shards} at the old
+ * count, move the providers the full ring assigns to it with {@link ShardRebalancer#rebalance},
+ * then drop {@code ring-shards}.
+ *
+ * <p>Fan-out runs on a pool of {@code fan-out-threads} platform threads, or with
+ * {@code appointment.virtual-threads.enabled=true} on a virtual thread per shard, of which at
+ * most {@code fan-out-threads} query at once.
+ */
+@Component
+public class ShardRouting {
+
+  private static final Logger logger = LoggerFactory.getLogger(ShardRouting.class);
+
+  private final ThreadLocal<Integer> target = new ThreadLocal<>();
+  private final ConcurrentMap<Long, Integer> placements = new ConcurrentHashMap<>();
+
+  @Value("${appointment.sharding.urls:}")
+  private String shardUrls;
+
+  @Value("${appointment.sharding.ring-shards:0}")
+  private int ringShards;
+
+  @Value("${appointment.sharding.virtual-nodes:128}")
+  private int virtualNodes;
+
+  @Value("${appointment.sharding.fan-out-threads:16}")
+  private int fanOutThreads;
+
+  @Value("${appointment.read-replica.urls:}")
+  private String replicaUrls;
+
+  @Value("${appointment.virtual-threads.enabled:false}")
+  private boolean virtualThreads;
+
+  private int shardCount;
+
+  private ConsistentHashRing ring;
+
+  private ConsistentHashRing targetRing;
+
+  private ExecutorService fanOutExecutor;
+
+  // Caps the virtual fan-out threads, null on the platform pool whose size is the cap
+  private Semaphore fanOutPermits;
+
+  /** Build the rings and the fan-out pool if sharding is enabled. */
+  @PostConstruct
+  public void init() {
+    List<String> urls = ReadRouting.parseUrls(shardUrls);
+    if (urls.isEmpty()) {
+      return;
+    }
+    if (!ReadRouting.parseUrls(replicaUrls).isEmpty()) {
+      throw new IllegalStateException("Read replicas and sharding cannot be combined.");
+    }
+    shardCount = urls.size() + 1;
+    if (ringShards < 0 || ringShards > shardCount) {
+      throw new IllegalArgumentException(
+          "Ring shards must be between 1 and " + shardCount + ", or 0 for all shards.");
+    }
+    if (fanOutThreads <= 0) {
+      throw new IllegalArgumentException("Fan-out threads must be positive.");
+    }
+    targetRing = new ConsistentHashRing(shardCount, virtualNodes);
+    ring = ringShards == 0 || ringShards == shardCount
+        ? targetRing : new ConsistentHashRing(ringShards, virtualNodes);
+    if (virtualThreads) {
+      fanOutExecutor = VirtualThreadConfig.newVirtualThreadPerTaskExecutor();
+      if (fanOutExecutor != null) {
+        fanOutPermits = new Semaphore(fanOutThreads);
+        return;
+      }
+      logger.warn("Virtual threads are not available on Java {}, shard fan-out stays on the "
+          + "platform thread pool.", Runtime.version().feature());
+    }
+    AtomicInteger threads = new AtomicInteger();
+    fanOutExecutor = Executors.newFixedThreadPool(fanOutThreads, runnable -> {
+      Thread thread = new Thread(runnable, "shard-fan-out-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /** Stop the fan-out pool. */
+  @PreDestroy
+  public void shutdown() {
+    if (fanOutExecutor != null) {
+      fanOutExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Whether shards are configured.
+   *
+   * @return true if providers are spread over several databases
+   */
+  public boolean isEnabled() {
+    return shardCount > 0;
+  }
+
+  /**
+   * Gets the number of shards, including shard 0.
+   *
+   * @return the shard count, 0 if sharding is disabled
+   */
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /**
+   * Gets the shard holding the rows of a provider.
+   *
+   * @param providerId the provider id
+   * @return the shard index
+   */
+  public int shardOf(Long providerId) {
+    if (!isEnabled() || providerId == null) {
+      return 0;
+    }
+    Integer placed = placements.get(providerId);
+    return placed != null ? placed : ring.shardFor(providerId);
+  }
+
+  /**
+   * Gets the shard the ring over all configured shards assigns a provider to, where the
+   * rebalancer moves it.
+   *
+   * @param providerId the provider id
+   * @return the shard index
+   */
+  public int targetShardOf(Long providerId) {
+    return isEnabled() && providerId != null ? targetRing.shardFor(providerId) : 0;
+  }
+
+  /**
+   * Record that the rows of a provider now live on a shard, overriding the ring.
+   *
+   * @param providerId the provider id
+   * @param shard the shard index
+   */
+  public void setPlacement(Long providerId, int shard) {
+    checkShard(shard);
+    placements.put(providerId, shard);
+  }
+
+  /**
+   * Run the queries of an action on a shard.
+   *
+   * @param shard the shard index
+   * @param action the action
+   * @param <T> the result type
+   * @return the result of the action
+   */
+  public <T> T onShard(int shard, Supplier<T> action) {
+    checkShard(shard);
+    Integer previous = target.get();
+    if (TransactionSynchronizationManager.isActualTransactionActive()
+        && shard != (previous == null ? 0 : previous)) {
+      // The transaction holds a connection to the shard it started on
+      throw new IllegalStateException("Cannot switch shards inside a transaction.");
+    }
+    target.set(shard);
+    try {
+      return action.get();
+    } finally {
+      if (previous == null) {
+        target.remove();
+      } else {
+        target.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Run the queries of an action on the shard of a provider.
+   *
+   * @param providerId the provider id, or null to stay on the current shard
+   * @param action the action
+   * @param <T> the result type
+   * @return the result of the action
+   */
+  public <T> T onProviderShard(Long providerId, Supplier<T> action) {
+    if (!isEnabled() || providerId == null) {
+      return action.get();
+    }
+    return onShard(shardOf(providerId), action);
+  }
+
+  /**
+   * Run an action over several providers once per shard, in parallel, each time with the
+   * providers of that shard.
+   *
+   * @param providerIds the providers
+   * @param action the action, given the providers on the shard it runs on
+   * @param <T> the result type
+   * @return the results, one per shard holding any of the providers
+   */
+  public <T> List<T> fanOut(Collection<Long> providerIds, Function<List<Long>, T> action) {
+    if (!isEnabled()) {
+      return Collections.singletonList(action.apply(new ArrayList<>(providerIds)));
+    }
+    if (providerIds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Map<Integer, List<Long>> byShard = new TreeMap<>();
+    for (Long providerId : providerIds) {
+      byShard.computeIfAbsent(shardOf(providerId), shard -> new ArrayList<>()).add(providerId);
+    }
+    return onShards(new ArrayList<>(byShard.keySet()), shard -> action.apply(byShard.get(shard)));
+  }
+
+  /**
+   * Run a lookup of a provider's row on every shard in parallel, for rows whose provider is not
+   * known up front. A move cut short can leave a copy of a row on a second shard until it is
+   * cleaned up, so of several copies the one on its provider's shard is returned.
+   *
+   * @param lookup the lookup
+   * @param providerOf gets the provider of a row
+   * @param <T> the row type
+   * @return the row, or null
+   * @throws IllegalStateException if copies are found but not exactly one on its provider's shard
+   */
+  public <T> T findOnAnyShard(Supplier<T> lookup, Function<T, Long> providerOf) {
+    if (!isEnabled()) {
+      return lookup.get();
+    }
+    List<T> results = onEveryShard(lookup);
+    List<Integer> foundOn = new ArrayList<>();
+    for (int shard = 0; shard < results.size(); shard++) {
+      if (results.get(shard) != null) {
+        foundOn.add(shard);
+      }
+    }
+    if (foundOn.size() <= 1) {
+      return foundOn.isEmpty() ? null : results.get(foundOn.get(0));
+    }
+    T placed = null;
+    for (int shard : foundOn) {
+      T result = results.get(shard);
+      if (shardOf(providerOf.apply(result)) == shard) {
+        if (placed != null) {
+          // Two providers' rows with one id, the shards do not hand out disjoint ids
+          throw new IllegalStateException("Row found on shards " + foundOn
+              + " for more than one provider.");
+        }
+        placed = result;
+      }
+    }
+    if (placed == null) {
+      throw new IllegalStateException("Row found on shards " + foundOn
+          + " but not on the shard of its provider.");
+    }
+    return placed;
+  }
+
+  /**
+   * Run an action on every shard in parallel.
+   *
+   * @param action the action
+   * @param <T> the result type
+   * @return the results in shard order
+   */
+  public <T> List<T> onEveryShard(Supplier<T> action) {
+    if (!isEnabled()) {
+      return Collections.singletonList(action.get());
+    }
+    List<Integer> shards = new ArrayList<>(shardCount);
+    for (int shard = 0; shard < shardCount; shard++) {
+      shards.add(shard);
+    }
+    return onShards(shards, shard -> action.get());
+  }
+
+  /**
+   * Gets the shard the current thread queries.
+   *
+   * @return the shard index, or null for shard 0
+   */
+  public Integer currentShard() {
+    Integer shard = target.get();
+    return shard == null || shard == 0 ? null : shard;
+  }
+
+  /** Run on the pool for all shards but the first, which runs on the calling thread. */
+  private <T> List<T> onShards(List<Integer> shards, IntFunction<T> action) {
+    List<CompletableFuture<T>> others = new ArrayList<>(shards.size() - 1);
+    for (int shard : shards.subList(1, shards.size())) {
+      others.add(CompletableFuture.supplyAsync(
+          () -> onFanOutThread(shard, action), fanOutExecutor));
+    }
+    List<T> results = new ArrayList<>(shards.size());
+    int first = shards.get(0);
+    results.add(onShard(first, () -> action.apply(first)));
+    for (CompletableFuture<T> other : others) {
+      try {
+        results.add(other.join());
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+    return results;
+  }
+
+  /** Run the action of one shard on a fan-out thread, once a permit is free if they are capped. */
+  private <T> T onFanOutThread(int shard, IntFunction<T> action) {
+    if (fanOutPermits == null) {
+      return onShard(shard, () -> action.apply(shard));
+    }
+    fanOutPermits.acquireUninterruptibly();
+    try {
+      return onShard(shard, () -> action.apply(shard));
+    } finally {
+      fanOutPermits.release();
+    }
+  }
+
+  private void checkShard(int shard) {
+    if (shard < 0 || shard >= Math.max(shardCount, 1)) {
+      throw new IllegalArgumentException("Shard " + shard + " does not exist.");
+    }
+  }
+}
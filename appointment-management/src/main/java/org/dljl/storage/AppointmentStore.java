@@ -0,0 +1,286 @@
+package org.dljl.storage;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.apache.ibatis.cursor.Cursor;
+import org.dljl.dto.AppointmentHistoryEntry;
+import org.dljl.dto.UpdateAppointmentDto;
+import org.dljl.entity.Appointment;
+
+/**
+ * Storage of appointments and blocks. {@link org.dljl.mapper.AppointmentMapper} implements it on
+ * the database, and the {@code memory} profile in process. Every implementation answers like the
+ * statements of AppointmentMapper.xml, including their row order and the case-insensitive
+ * comparison of statuses.
+ */
+public interface AppointmentStore {
+
+  /**
+   * Create appointment.
+   *
+   * @param appointment the appointment
+   */
+  // Create a new appointment and retrieve the auto-generated appointmentId, unless it has one
+  void createAppointment(Appointment appointment);
+
+  /**
+   * Gets appointment.
+   *
+   * @param id the id
+   * @return the appointment
+   */
+  // Get an appointment by its ID
+  Appointment getAppointment(Long id);
+
+  /**
+   * Cancel appointment int.
+   *
+   * @param id the id
+   * @return the int
+   */
+  // Cancel an appointment by setting its status to 'cancelled', return number of rows affected
+  int cancelAppointment(Long id);
+
+  /**
+   * Gets appointments by provider id.
+   *
+   * @param providerId the provider id
+   * @return the appointments by provider id
+   */
+  // Get all appointments by the provider ID
+  List<Appointment> getAppointmentsByProviderId(Long providerId);
+
+  /**
+   * Gets one page of the non-cancelled appointments of a provider in
+   * {@code (start_date_time, appointment_id)} order.
+   *
+   * @param providerId the provider id
+   * @param afterStart the start date time of the last row of the previous page, null for the
+   *     first page
+   * @param afterId the id of the last row of the previous page
+   * @param limit the maximum number of rows
+   * @return the appointments after the given key
+   */
+  List<Appointment> getAppointmentsByProviderIdPage(Long providerId, LocalDateTime afterStart,
+      Long afterId, int limit);
+
+  /**
+   * Stream the appointments and blocks of a provider ordered by start time and id. The cursor must
+   * be read and closed while the session is open, i.e. within a transaction.
+   *
+   * @param providerId the provider id
+   * @param rangeStart only rows starting at or after this time, or null
+   * @param rangeEnd only rows starting before this time, or null
+   * @param status only rows with this status, or null for any status
+   * @return the cursor over the rows
+   */
+  Cursor<Appointment> streamAppointmentsByProvider(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status);
+
+  /**
+   * Gets appointments by provider and date.
+   *
+   * @param providerId the provider id
+   * @param appointmentDate the appointment date
+   * @return the appointments by provider and date
+   */
+  // Get all appointments by the provider ID and Date
+  List<Appointment> getAppointmentsByProviderAndDate(Long providerId, LocalDate appointmentDate);
+
+  /**
+   * Gets non-cancelled appointments starting on any day from {@code startDate} (inclusive) to
+   * {@code endDate} (exclusive), ordered by start time.
+   *
+   * @param providerId the provider id
+   * @param startDate the first day
+   * @param endDate the day after the last day
+   * @return the appointments ordered by start time
+   */
+  List<Appointment> getAppointmentsByProviderAndDates(
+      Long providerId, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Gets non-cancelled appointments of several providers starting on any day from
+   * {@code startDate} (inclusive) to {@code endDate} (exclusive), ordered by provider and then by
+   * start time.
+   *
+   * @param providerIds the provider ids
+   * @param startDate the first day
+   * @param endDate the day after the last day
+   * @return the appointments ordered by provider id and start time
+   */
+  List<Appointment> getAppointmentsByProvidersAndDates(
+      List<Long> providerIds, LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Update appointment, but only if its times and status are still the expected ones, i.e. it was
+   * not moved or cancelled since it was read.
+   *
+   * @param appointmentDto the appointment dto
+   * @param expectedStartDateTime the start date time the row was read with
+   * @param expectedEndDateTime the end date time the row was read with
+   * @param expectedStatus the status the row was read with, may be null
+   * @return num rows affected, 0 if the row was moved, cancelled or deleted
+   */
+  // Update the appointment using UpdateAppointmentDTO
+  int updateAppointment(UpdateAppointmentDto appointmentDto, LocalDateTime expectedStartDateTime,
+      LocalDateTime expectedEndDateTime, String expectedStatus);
+
+  /**
+   * Check create time conflict int.
+   *
+   * @param providerId the provider id
+   * @param startDateTime the start date time
+   * @param endDateTime the end date time
+   * @return the int
+   */
+  // Get the number of conflicted appointments (maximum 1)
+  int checkCreateTimeConflict(
+      Long providerId, LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+  /**
+   * Check update time conflict int.
+   *
+   * @param appointmentId the appointment id
+   * @param startDateTime the start date time
+   * @param endDateTime the end date time
+   * @return the int
+   */
+  // Get the number of conflicted appointments (maximum 1)
+  int checkUpdateTimeConflict(
+      Long appointmentId, LocalDateTime startDateTime, LocalDateTime endDateTime);
+
+  /**
+   * Find appointments by provider and user list.
+   *
+   * @param providerId the provider id
+   * @param userId the user id
+   * @return the list ordered by start date time
+   */
+  // Get all history by given provider and user
+  List<AppointmentHistoryEntry> findAppointmentsByProviderAndUser(Long providerId, Long userId);
+
+  /**
+   * Gets one page of the history of a provider with a user in
+   * {@code (start_date_time, appointment_id)} order.
+   *
+   * @param providerId the provider id
+   * @param userId the user id
+   * @param rangeStart only rows starting at or after this time, or null
+   * @param rangeEnd only rows starting before this time, or null
+   * @param afterStart the start date time of the last row of the previous page, null for the
+   *     first page
+   * @param afterId the id of the last row of the previous page
+   * @param limit the maximum number of rows
+   * @return the history entries after the given key
+   */
+  List<AppointmentHistoryEntry> findAppointmentsByProviderAndUserPage(Long providerId,
+      Long userId, LocalDateTime rangeStart, LocalDateTime rangeEnd, LocalDateTime afterStart,
+      Long afterId, int limit);
+
+  /**
+   * Delete block.
+   *
+   * @param id the id
+   * @return num rows affected
+   */
+  // delete the block permanently
+  int deleteBlock(Long id);
+
+  /**
+   * Gets appointments within a date range for a provider.
+   *
+   * @param providerId the provider id
+   * @param startDate the start date
+   * @param endDate the end date
+   * @return the list of appointments within the specified date range
+   */
+  List<Appointment> getAppointmentsWithinDateRange(Long providerId, 
+      LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Gets one page of {@link #getAppointmentsWithinDateRange} in
+   * {@code (start_date_time, appointment_id)} order.
+   *
+   * @param providerId the provider id
+   * @param startDate the start date
+   * @param endDate the end date
+   * @param afterStart the start date time of the last row of the previous page, null for the
+   *     first page
+   * @param afterId the id of the last row of the previous page
+   * @param limit the maximum number of rows
+   * @return the appointments after the given key
+   */
+  List<Appointment> getAppointmentsWithinDateRangePage(Long providerId, LocalDate startDate,
+      LocalDate endDate, LocalDateTime afterStart, Long afterId, int limit);
+
+  /**
+   * Gets the non-cancelled appointments and blocks of a provider that touch a time range.
+   *
+   * @param providerId the provider id
+   * @param rangeStart the start of the range
+   * @param rangeEnd the end of the range
+   * @return the appointments ordered by start date time
+   */
+  List<Appointment> getAppointmentsOverlappingRange(Long providerId,
+      LocalDateTime rangeStart, LocalDateTime rangeEnd);
+
+  /**
+   * Create appointments with a single multi-row insert.
+   *
+   * @param appointments the appointments, either all with an id or all without, to generate them
+   * @return num rows affected
+   */
+  int createAppointments(List<Appointment> appointments);
+
+  /**
+   * Lock the non-cancelled rows of a provider starting in {@code [rangeStart, rangeEnd)} until
+   * the current transaction ends.
+   *
+   * @param providerId the provider id
+   * @param rangeStart the start of the range
+   * @param rangeEnd the end of the range (exclusive)
+   * @param status only rows with this status, or null for any status
+   * @return the ids of the locked rows ordered by start date time
+   */
+  List<Long> lockCancellableAppointmentIds(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status);
+
+  /**
+   * Cancel the non-cancelled rows of a provider starting in {@code [rangeStart, rangeEnd)}.
+   *
+   * @param providerId the provider id
+   * @param rangeStart the start of the range
+   * @param rangeEnd the end of the range (exclusive)
+   * @param status only rows with this status, or null for any status
+   * @return num rows affected
+   */
+  int cancelAppointmentsInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status);
+
+  /**
+   * Lock the rows of a provider starting in {@code [rangeStart, rangeEnd)} until the current
+   * transaction ends.
+   *
+   * @param providerId the provider id
+   * @param rangeStart the start of the range
+   * @param rangeEnd the end of the range (exclusive)
+   * @param status only rows with this status, or null for any status
+   * @return the ids of the locked rows ordered by start date time
+   */
+  List<Long> lockAppointmentIdsInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status);
+
+  /**
+   * Delete the rows of a provider starting in {@code [rangeStart, rangeEnd)} permanently.
+   *
+   * @param providerId the provider id
+   * @param rangeStart the start of the range
+   * @param rangeEnd the end of the range (exclusive)
+   * @param status only rows with this status, or null for any status
+   * @return num rows affected
+   */
+  int deleteAppointmentsInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status);
+}
@@ -0,0 +1,25 @@
+package org.dljl.storage;
+
+
+/**
+ * Storage of the per-provider lock rows that serialize bookings across instances, implemented by
+ * {@link org.dljl.mapper.ProviderLockMapper} and by the {@code memory} profile.
+ */
+public interface ProviderLockStore {
+
+  /**
+   * Create the lock row of a provider if it does not exist yet.
+   *
+   * @param providerId the provider id
+   * @return num rows inserted
+   */
+  int createProviderLock(Long providerId);
+
+  /**
+   * Lock the lock row of a provider until the current transaction ends.
+   *
+   * @param providerId the provider id
+   * @return the provider id, or null if the row does not exist
+   */
+  Long lockProvider(Long providerId);
+}
@@ -0,0 +1,75 @@
+package org.dljl.storage;
+
+import java.time.LocalDate;
+import java.util.List;
+import org.dljl.entity.RecurringBlock;
+
+/**
+ * Storage of recurring block rules, implemented by {@link org.dljl.mapper.RecurringBlockMapper}
+ * and by the {@code memory} profile.
+ */
+public interface RecurringBlockStore {
+
+  /**
+   * Create recurring block.
+   *
+   * @param recurringBlock the recurring block
+   */
+  // Create a new recurring block rule and retrieve the auto-generated recurringBlockId
+  void createRecurringBlock(RecurringBlock recurringBlock);
+
+  /**
+   * Gets a recurring block.
+   *
+   * @param id the id
+   * @return the recurring block, or null if it does not exist
+   */
+  RecurringBlock getRecurringBlock(Long id);
+
+  /**
+   * Gets recurring blocks by provider id.
+   *
+   * @param providerId the provider id
+   * @return the recurring blocks by provider id
+   */
+  List<RecurringBlock> getRecurringBlocksByProviderId(Long providerId);
+
+  /**
+   * Gets the recurring blocks of a provider whose date range overlaps the given dates.
+   *
+   * @param providerId the provider id
+   * @param startDate the start date
+   * @param endDate the end date
+   * @return the recurring blocks
+   */
+  List<RecurringBlock> getRecurringBlocksInDateRange(Long providerId,
+      LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Gets the recurring blocks of several providers whose date range overlaps the given dates.
+   *
+   * @param providerIds the provider ids
+   * @param startDate the start date
+   * @param endDate the end date
+   * @return the recurring blocks
+   */
+  List<RecurringBlock> getRecurringBlocksByProvidersInDateRange(List<Long> providerIds,
+      LocalDate startDate, LocalDate endDate);
+
+  /**
+   * Replace the excluded dates of a recurring block.
+   *
+   * @param id the id
+   * @param excludedDates the comma separated dates, may be null
+   * @return num rows affected
+   */
+  int updateExcludedDates(Long id, String excludedDates);
+
+  /**
+   * Delete recurring block.
+   *
+   * @param id the id
+   * @return num rows affected
+   */
+  int deleteRecurringBlock(Long id);
+}
@@ -0,0 +1,87 @@
+package org.dljl.storage;
+
+import java.util.List;
+import org.dljl.dto.AutoIncrementSettings;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.ProviderPlacement;
+import org.dljl.entity.RecurringBlock;
+
+/**
+ * The statements that move providers between shards, implemented by
+ * {@link org.dljl.mapper.ShardMapper} and by the {@code memory} profile.
+ */
+public interface ShardStore {
+
+  /**
+   * Gets every provider with rows on the current shard.
+   *
+   * @return the provider ids, ascending
+   */
+  List<Long> getProviderIds();
+
+  /**
+   * Gets the next batch of a provider's appointments in id order.
+   *
+   * @param providerId the provider id
+   * @param afterId the last id of the previous batch, null for the first batch
+   * @param limit the batch size
+   * @return the appointments
+   */
+  List<Appointment> getAppointmentsAfterId(Long providerId, Long afterId, int limit);
+
+  /**
+   * Insert appointments keeping their ids.
+   *
+   * @param appointments the appointments
+   * @return num rows inserted
+   */
+  int copyAppointments(List<Appointment> appointments);
+
+  /**
+   * Delete appointments by id.
+   *
+   * @param appointmentIds the ids
+   * @return num rows deleted
+   */
+  int deleteAppointments(List<Long> appointmentIds);
+
+  /**
+   * Insert recurring blocks keeping their ids.
+   *
+   * @param recurringBlocks the recurring blocks
+   * @return num rows inserted
+   */
+  int copyRecurringBlocks(List<RecurringBlock> recurringBlocks);
+
+  /**
+   * Delete recurring blocks by id.
+   *
+   * @param recurringBlockIds the ids
+   * @return num rows deleted
+   */
+  int deleteRecurringBlocks(List<Long> recurringBlockIds);
+
+  /**
+   * Gets every provider placed off its ring shard.
+   *
+   * @return the placements
+   */
+  List<ProviderPlacement> getPlacements();
+
+  /**
+   * Record the shard of a provider, replacing an earlier placement.
+   *
+   * @param providerId the provider id
+   * @param shard the shard index
+   * @param cleanupShard the shard that may still hold copies of the provider's rows, null if none
+   * @return num rows inserted or updated
+   */
+  int savePlacement(Long providerId, int shard, Integer cleanupShard);
+
+  /**
+   * Gets the AUTO_INCREMENT step and offset of the current shard.
+   *
+   * @return the settings
+   */
+  AutoIncrementSettings getAutoIncrementSettings();
+}
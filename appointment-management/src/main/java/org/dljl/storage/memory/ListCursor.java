@@ -0,0 +1,69 @@
+package org.dljl.storage.memory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.apache.ibatis.cursor.Cursor;
+
+/**
+ * A {@link Cursor} over rows already read, with the contract of the MyBatis cursor: one iterator,
+ * and no rows once closed.
+ *
+ * @param <T> the row type
+ */
+final class ListCursor<T> implements Cursor<T> {
+
+  private final List<T> rows;
+  private int index = -1;
+  private boolean open = true;
+  private boolean iteratorRetrieved;
+
+  ListCursor(List<T> rows) {
+    this.rows = rows;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public boolean isConsumed() {
+    return index >= rows.size() - 1 && iteratorRetrieved;
+  }
+
+  @Override
+  public int getCurrentIndex() {
+    return index;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    if (!open) {
+      throw new IllegalStateException("A Cursor is already closed.");
+    }
+    if (iteratorRetrieved) {
+      throw new IllegalStateException("Cannot open more than one iterator on a Cursor");
+    }
+    iteratorRetrieved = true;
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return open && index + 1 < rows.size();
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return rows.get(++index);
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+}
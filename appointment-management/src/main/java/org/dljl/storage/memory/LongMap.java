@@ -0,0 +1,140 @@
+package org.dljl.storage.memory;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * A hash map from primitive longs to objects, with open addressing and linear probing so that
+ * neither keys nor entries are boxed. Not thread-safe, {@link MemoryTables} guards every map.
+ *
+ * @param <V> the value type, values are never null
+ */
+final class LongMap<V> {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keys;
+  // A null value marks a free slot
+  private Object[] values;
+  private int mask;
+  private int size;
+
+  LongMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  /** A consumer of the entries of a map. */
+  @FunctionalInterface
+  interface EntryConsumer<V> {
+
+    void accept(long key, V value);
+  }
+
+  int size() {
+    return size;
+  }
+
+  V get(long key) {
+    for (int slot = slot(key); values[slot] != null; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        return value(slot);
+      }
+    }
+    return null;
+  }
+
+  V put(long key, V value) {
+    Objects.requireNonNull(value);
+    int slot = slot(key);
+    for (; values[slot] != null; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        V previous = value(slot);
+        values[slot] = value;
+        return previous;
+      }
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    // Kept at most half full, so probe sequences stay short
+    if (++size * 2 > values.length) {
+      resize(values.length * 2);
+    }
+    return null;
+  }
+
+  V remove(long key) {
+    int slot = slot(key);
+    for (; values[slot] != null; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        break;
+      }
+    }
+    if (values[slot] == null) {
+      return null;
+    }
+    V previous = value(slot);
+    size--;
+    // Shift later entries of the probe sequence back instead of leaving a tombstone
+    int free = slot;
+    for (int next = (free + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+      int home = slot(keys[next]);
+      if (((next - home) & mask) >= ((next - free) & mask)) {
+        keys[free] = keys[next];
+        values[free] = values[next];
+        free = next;
+      }
+    }
+    values[free] = null;
+    return previous;
+  }
+
+  void clear() {
+    allocate(MIN_CAPACITY);
+    size = 0;
+  }
+
+  void forEach(EntryConsumer<? super V> action) {
+    for (int slot = 0; slot < values.length; slot++) {
+      if (values[slot] != null) {
+        action.accept(keys[slot], value(slot));
+      }
+    }
+  }
+
+  void forEachValue(Consumer<? super V> action) {
+    forEach((key, value) -> action.accept(value));
+  }
+
+  @SuppressWarnings("unchecked")
+  private V value(int slot) {
+    return (V) values[slot];
+  }
+
+  private int slot(long key) {
+    // Fibonacci hashing, so consecutive ids spread over the table
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+  }
+
+  private void resize(int capacity) {
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(capacity);
+    for (int slot = 0; slot < oldValues.length; slot++) {
+      if (oldValues[slot] != null) {
+        int target = slot(oldKeys[slot]);
+        while (values[target] != null) {
+          target = (target + 1) & mask;
+        }
+        keys[target] = oldKeys[slot];
+        values[target] = oldValues[slot];
+      }
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package org.dljl.storage.memory;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import org.dljl.dto.BulkOperationResult;
+import org.dljl.entity.Appointment;
+import org.dljl.service.batch.AppointmentBatchWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link AppointmentBatchWriter} of the {@code memory} profile. There are no round trips to
+ * save, so every call is one write to the tables, and ids are always set.
+ */
+@Component
+@Profile("memory")
+public class MemoryAppointmentBatchWriter implements AppointmentBatchWriter {
+
+  @Autowired private MemoryTables tables;
+
+  @Autowired private MemoryAppointmentStore appointmentStore;
+
+  @Override
+  public int insertAll(List<Appointment> appointments) {
+    return appointments.isEmpty() ? 0 : appointmentStore.createAppointments(appointments);
+  }
+
+  @Override
+  public void insertAllWithIds(List<Appointment> appointments) {
+    tables.write(() -> {
+      for (Appointment appointment : appointments) {
+        appointmentStore.createAppointment(appointment);
+      }
+      return null;
+    });
+  }
+
+  @Override
+  public BulkOperationResult cancelInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return tables.write(() -> {
+      List<Long> ids = appointmentStore.lockCancellableAppointmentIds(
+          providerId, rangeStart, rangeEnd, status);
+      int affected = ids.isEmpty() ? 0
+          : appointmentStore.cancelAppointmentsInRange(providerId, rangeStart, rangeEnd, status);
+      return bulkResult(affected, ids);
+    });
+  }
+
+  @Override
+  public BulkOperationResult deleteInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return tables.write(() -> {
+      List<Long> ids = appointmentStore.lockAppointmentIdsInRange(
+          providerId, rangeStart, rangeEnd, status);
+      int affected = ids.isEmpty() ? 0
+          : appointmentStore.deleteAppointmentsInRange(providerId, rangeStart, rangeEnd, status);
+      return bulkResult(affected, ids);
+    });
+  }
+
+  private static BulkOperationResult bulkResult(int affected, List<Long> ids) {
+    BulkOperationResult result = new BulkOperationResult();
+    result.setAffected(affected);
+    result.setAppointmentIds(ids);
+    return result;
+  }
+}
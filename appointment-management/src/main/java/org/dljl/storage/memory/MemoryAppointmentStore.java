@@ -0,0 +1,431 @@
+package org.dljl.storage.memory;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.apache.ibatis.cursor.Cursor;
+import org.dljl.dto.AppointmentHistoryEntry;
+import org.dljl.dto.UpdateAppointmentDto;
+import org.dljl.entity.Appointment;
+import org.dljl.service.conflict.TimeConflicts;
+import org.dljl.storage.AppointmentStore;
+import org.dljl.storage.memory.MemoryTables.ProviderRows;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link AppointmentStore} of the {@code memory} profile. Every method answers like its
+ * statement in AppointmentMapper.xml: {@code status != 'cancelled'} skips rows without a status,
+ * statuses compare case-insensitively, and rows of a provider come in
+ * {@code (start_date_time, appointment_id)} order where the statement has no ORDER BY. Locking
+ * statements lock nothing, writes are serialized by the tables.
+ */
+@Component
+@Profile("memory")
+public class MemoryAppointmentStore implements AppointmentStore {
+
+  private static final String CANCELLED = "cancelled";
+
+  @Autowired private MemoryTables tables;
+
+  @Override
+  public void createAppointment(Appointment appointment) {
+    tables.write(() -> {
+      Appointment row = MemoryTables.copyOf(appointment);
+      row.setAppointmentId(newId(row));
+      tables.putAppointment(row);
+      appointment.setAppointmentId(row.getAppointmentId());
+      return null;
+    });
+  }
+
+  @Override
+  public Appointment getAppointment(Long id) {
+    return tables.read(() -> {
+      Appointment row = id == null ? null : tables.appointment(id);
+      return row == null ? null : MemoryTables.copyOf(row);
+    });
+  }
+
+  @Override
+  public int cancelAppointment(Long id) {
+    return tables.write(() -> {
+      Appointment row = id == null ? null : tables.appointment(id);
+      if (row == null) {
+        return 0;
+      }
+      tables.putAppointment(cancelled(row));
+      return 1;
+    });
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsByProviderId(Long providerId) {
+    return select(providerId, null, null, null, null, MemoryAppointmentStore::isActive,
+        MemoryTables::copyOf, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsByProviderIdPage(Long providerId,
+      LocalDateTime afterStart, Long afterId, int limit) {
+    return select(providerId, null, null, afterStart, afterId, MemoryAppointmentStore::isActive,
+        MemoryTables::copyOf, limit);
+  }
+
+  @Override
+  public Cursor<Appointment> streamAppointmentsByProvider(Long providerId,
+      LocalDateTime rangeStart, LocalDateTime rangeEnd, String status) {
+    return new ListCursor<>(select(providerId, rangeStart, rangeEnd, null, null,
+        row -> hasStatus(row, status), MemoryTables::copyOf, Integer.MAX_VALUE));
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsByProviderAndDate(Long providerId,
+      LocalDate appointmentDate) {
+    return getAppointmentsByProviderAndDates(providerId, appointmentDate,
+        appointmentDate.plusDays(1));
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsByProviderAndDates(Long providerId,
+      LocalDate startDate, LocalDate endDate) {
+    return select(providerId, startDate.atStartOfDay(), endDate.atStartOfDay(), null, null,
+        MemoryAppointmentStore::isActive, MemoryTables::copyOf, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsByProvidersAndDates(List<Long> providerIds,
+      LocalDate startDate, LocalDate endDate) {
+    List<Appointment> appointments = new ArrayList<>();
+    tables.read(() -> {
+      for (Long providerId : new TreeSet<>(providerIds)) {
+        appointments.addAll(getAppointmentsByProviderAndDates(providerId, startDate, endDate));
+      }
+      return null;
+    });
+    return appointments;
+  }
+
+  @Override
+  public int updateAppointment(UpdateAppointmentDto appointmentDto,
+      LocalDateTime expectedStartDateTime, LocalDateTime expectedEndDateTime,
+      String expectedStatus) {
+    return tables.write(() -> {
+      Long id = appointmentDto.getAppointmentId();
+      Appointment current = id == null ? null : tables.appointment(id);
+      if (current == null || !current.getStartDateTime().equals(expectedStartDateTime)
+          || !current.getEndDateTime().equals(expectedEndDateTime)
+          || !Objects.equals(current.getStatus(), expectedStatus)) {
+        return 0;
+      }
+      Appointment updated = MemoryTables.copyOf(current);
+      if (appointmentDto.getStatus() != null) {
+        updated.setStatus(appointmentDto.getStatus());
+      }
+      if (appointmentDto.getUserId() != null) {
+        updated.setUserId(appointmentDto.getUserId());
+      }
+      if (appointmentDto.getStartDateTime() != null && appointmentDto.getEndDateTime() != null) {
+        updated.setStartDateTime(MemoryTables.truncate(appointmentDto.getStartDateTime()));
+        updated.setEndDateTime(MemoryTables.truncate(appointmentDto.getEndDateTime()));
+      }
+      if (appointmentDto.getServiceType() != null) {
+        updated.setServiceType(appointmentDto.getServiceType());
+      }
+      if (appointmentDto.getComments() != null) {
+        updated.setComments(appointmentDto.getComments());
+      }
+      tables.putAppointment(updated);
+      return 1;
+    });
+  }
+
+  @Override
+  public int checkCreateTimeConflict(Long providerId, LocalDateTime startDateTime,
+      LocalDateTime endDateTime) {
+    return tables.read(() -> providerId != null
+        && hasConflict(tables.provider(providerId), startDateTime, endDateTime, null) ? 1 : 0);
+  }
+
+  @Override
+  public int checkUpdateTimeConflict(Long appointmentId, LocalDateTime startDateTime,
+      LocalDateTime endDateTime) {
+    return tables.read(() -> {
+      Appointment current = appointmentId == null ? null : tables.appointment(appointmentId);
+      return current != null && hasConflict(tables.provider(current.getProviderId()),
+          startDateTime, endDateTime, appointmentId) ? 1 : 0;
+    });
+  }
+
+  @Override
+  public List<AppointmentHistoryEntry> findAppointmentsByProviderAndUser(Long providerId,
+      Long userId) {
+    return select(providerId, null, null, null, null, row -> isUser(row, userId),
+        MemoryAppointmentStore::historyEntry, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<AppointmentHistoryEntry> findAppointmentsByProviderAndUserPage(Long providerId,
+      Long userId, LocalDateTime rangeStart, LocalDateTime rangeEnd, LocalDateTime afterStart,
+      Long afterId, int limit) {
+    return select(providerId, rangeStart, rangeEnd, afterStart, afterId,
+        row -> isUser(row, userId), MemoryAppointmentStore::historyEntry, limit);
+  }
+
+  @Override
+  public int deleteBlock(Long id) {
+    return tables.write(() -> id != null && tables.removeAppointment(id) != null ? 1 : 0);
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsWithinDateRange(Long providerId, LocalDate startDate,
+      LocalDate endDate) {
+    return getAppointmentsWithinDateRangePage(providerId, startDate, endDate, null, null,
+        Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsWithinDateRangePage(Long providerId,
+      LocalDate startDate, LocalDate endDate, LocalDateTime afterStart, Long afterId,
+      int limit) {
+    // A date compares with a DATETIME column as the start of that day
+    LocalDateTime rangeEnd = endDate.atStartOfDay();
+    return select(providerId, startDate.atStartOfDay(), null, afterStart, afterId,
+        row -> isActive(row) && !row.getEndDateTime().isAfter(rangeEnd), MemoryTables::copyOf,
+        limit);
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsOverlappingRange(Long providerId,
+      LocalDateTime rangeStart, LocalDateTime rangeEnd) {
+    return tables.read(() -> {
+      List<Appointment> appointments = new ArrayList<>();
+      ProviderRows rows = providerId == null ? null : tables.provider(providerId);
+      if (rows == null) {
+        return appointments;
+      }
+      for (Appointment row : candidates(rows, rangeStart, rangeEnd)) {
+        if (isActive(row) && !row.getEndDateTime().isBefore(rangeStart)) {
+          appointments.add(MemoryTables.copyOf(row));
+        }
+      }
+      return appointments;
+    });
+  }
+
+  @Override
+  public int createAppointments(List<Appointment> appointments) {
+    return tables.write(() -> {
+      // Like a multi-row insert, either every row is stored or none
+      List<Appointment> rows = new ArrayList<>(appointments.size());
+      for (Appointment appointment : appointments) {
+        rows.add(MemoryTables.copyOf(appointment));
+      }
+      Set<Long> ids = new HashSet<>();
+      for (Appointment row : rows) {
+        MemoryTables.checkRow(row);
+        if (row.getAppointmentId() != null) {
+          newId(row);
+          if (!ids.add(row.getAppointmentId())) {
+            throw duplicateKey(row.getAppointmentId());
+          }
+        }
+      }
+      for (Appointment row : rows) {
+        row.setAppointmentId(newId(row));
+        tables.putAppointment(row);
+      }
+      return rows.size();
+    });
+  }
+
+  @Override
+  public List<Long> lockCancellableAppointmentIds(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return select(providerId, rangeStart, rangeEnd, null, null,
+        row -> isActive(row) && hasStatus(row, status), Appointment::getAppointmentId,
+        Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int cancelAppointmentsInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return tables.write(() -> {
+      List<Long> ids = lockCancellableAppointmentIds(providerId, rangeStart, rangeEnd, status);
+      for (Long id : ids) {
+        tables.putAppointment(cancelled(tables.appointment(id)));
+      }
+      return ids.size();
+    });
+  }
+
+  @Override
+  public List<Long> lockAppointmentIdsInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return select(providerId, rangeStart, rangeEnd, null, null, row -> hasStatus(row, status),
+        Appointment::getAppointmentId, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int deleteAppointmentsInRange(Long providerId, LocalDateTime rangeStart,
+      LocalDateTime rangeEnd, String status) {
+    return tables.write(() -> {
+      List<Long> ids = lockAppointmentIdsInRange(providerId, rangeStart, rangeEnd, status);
+      for (Long id : ids) {
+        tables.removeAppointment(id);
+      }
+      return ids.size();
+    });
+  }
+
+  /** Gets the id of a new row: its own, like an explicit value for an AUTO_INCREMENT key. */
+  private long newId(Appointment row) {
+    if (row.getAppointmentId() == null) {
+      return tables.nextAppointmentId();
+    }
+    if (tables.appointment(row.getAppointmentId()) != null) {
+      throw duplicateKey(row.getAppointmentId());
+    }
+    return row.getAppointmentId();
+  }
+
+  private static DuplicateKeyException duplicateKey(long appointmentId) {
+    return new DuplicateKeyException(
+        "Duplicate entry '" + appointmentId + "' for key 'appointments.PRIMARY'");
+  }
+
+  /**
+   * Scan the rows of a provider in {@code (start_date_time, appointment_id)} order.
+   *
+   * @param rangeStart only rows starting at or after this time, or null
+   * @param rangeEnd only rows starting before this time, or null
+   * @param afterStart only rows after this key, or null from the first row
+   * @param afterId the id of the key
+   * @param filter the rows to keep
+   * @param mapper what to return of a kept row
+   * @param limit the maximum number of rows
+   */
+  private <T> List<T> select(Long providerId, LocalDateTime rangeStart, LocalDateTime rangeEnd,
+      LocalDateTime afterStart, Long afterId, Predicate<Appointment> filter,
+      Function<Appointment, T> mapper, int limit) {
+    return tables.read(() -> {
+      List<T> result = new ArrayList<>();
+      ProviderRows rows = providerId == null ? null : tables.provider(providerId);
+      if (rows == null) {
+        return result;
+      }
+      for (Appointment row : range(rows.appointments, rangeStart, rangeEnd, afterStart, afterId)) {
+        if (result.size() >= limit) {
+          break;
+        }
+        if (filter.test(row)) {
+          result.add(mapper.apply(row));
+        }
+      }
+      return result;
+    });
+  }
+
+  private static NavigableSet<Appointment> range(NavigableSet<Appointment> rows,
+      LocalDateTime rangeStart, LocalDateTime rangeEnd, LocalDateTime afterStart, Long afterId) {
+    Appointment lower = rangeStart == null ? null : key(rangeStart, Long.MIN_VALUE);
+    boolean lowerInclusive = true;
+    if (afterStart != null) {
+      // appointment_id > NULL matches nothing, so only later start times follow a null id
+      Appointment after = key(afterStart, afterId == null ? Long.MAX_VALUE : afterId);
+      if (lower == null || MemoryTables.START_ORDER.compare(after, lower) >= 0) {
+        lower = after;
+        lowerInclusive = false;
+      }
+    }
+    Appointment upper = rangeEnd == null ? null : key(rangeEnd, Long.MIN_VALUE);
+    if (lower != null && upper != null && MemoryTables.START_ORDER.compare(lower, upper) >= 0) {
+      return Collections.emptyNavigableSet();
+    }
+    NavigableSet<Appointment> range = rows;
+    if (lower != null) {
+      range = range.tailSet(lower, lowerInclusive);
+    }
+    if (upper != null) {
+      range = range.headSet(upper, false);
+    }
+    return range;
+  }
+
+  /** The rows that can touch {@code [rangeStart, rangeEnd]}, i.e. start within it or before. */
+  private static NavigableSet<Appointment> candidates(ProviderRows rows,
+      LocalDateTime rangeStart, LocalDateTime rangeEnd) {
+    Appointment from = key(rangeStart.minus(rows.longestDuration()), Long.MIN_VALUE);
+    Appointment to = key(rangeEnd, Long.MAX_VALUE);
+    if (MemoryTables.START_ORDER.compare(from, to) > 0) {
+      return Collections.emptyNavigableSet();
+    }
+    return rows.appointments.subSet(from, true, to, true);
+  }
+
+  private static boolean hasConflict(ProviderRows rows, LocalDateTime startDateTime,
+      LocalDateTime endDateTime, Long excludedId) {
+    if (rows == null) {
+      return false;
+    }
+    if (!startDateTime.isBefore(endDateTime)) {
+      // An empty or inverted range conflicts with every other row
+      for (Appointment row : rows.appointments) {
+        if (isActive(row) && !row.getAppointmentId().equals(excludedId)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (Appointment row : candidates(rows, startDateTime, endDateTime)) {
+      if (isActive(row) && !row.getAppointmentId().equals(excludedId)
+          && TimeConflicts.conflicts(row.getStartDateTime(), row.getEndDateTime(),
+              startDateTime, endDateTime)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Appointment key(LocalDateTime startDateTime, long appointmentId) {
+    Appointment key = new Appointment();
+    key.setStartDateTime(startDateTime);
+    key.setAppointmentId(appointmentId);
+    return key;
+  }
+
+  private static Appointment cancelled(Appointment row) {
+    Appointment cancelled = MemoryTables.copyOf(row);
+    cancelled.setStatus(CANCELLED);
+    return cancelled;
+  }
+
+  /** Whether a row passes {@code status != 'cancelled'}, which a NULL status does not. */
+  private static boolean isActive(Appointment row) {
+    return row.getStatus() != null && !CANCELLED.equalsIgnoreCase(row.getStatus());
+  }
+
+  private static boolean hasStatus(Appointment row, String status) {
+    return status == null || status.equalsIgnoreCase(row.getStatus());
+  }
+
+  private static boolean isUser(Appointment row, Long userId) {
+    return userId != null && userId.equals(row.getUserId());
+  }
+
+  private static AppointmentHistoryEntry historyEntry(Appointment row) {
+    return new AppointmentHistoryEntry(row.getAppointmentId(), row.getStartDateTime(),
+        row.getEndDateTime(), row.getStatus(), row.getServiceType(), row.getComments());
+  }
+}
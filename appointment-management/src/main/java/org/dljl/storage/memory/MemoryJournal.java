@@ -0,0 +1,342 @@
+package org.dljl.storage.memory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * The write-ahead journal of {@link MemoryTables}. Records are appended to memory-mapped segment
+ * files of a fixed size, {@code journal-<first sequence>.seg}, and forced to disk by one flusher
+ * thread. A writer waits in {@link #awaitDurable} until its records are on disk. Every record
+ * appended while a force runs is covered by the next one, so concurrent writers share one fsync.
+ *
+ * <p>A segment starts with a magic number and its first sequence, followed by records of
+ * {@code [length][crc32][sequence][type][payload]}, where the length and checksum cover the
+ * sequence, type and payload. Segments are zero-filled when created, so a zero length ends one.
+ * A crash can leave the last record torn, which fails its checksum: replay stops before it and
+ * appending continues in a new segment, so the torn bytes are never read again.
+ */
+final class MemoryJournal implements Closeable {
+
+  static final byte PUT_APPOINTMENT = 1;
+  static final byte REMOVE_APPOINTMENT = 2;
+  static final byte PUT_RECURRING_BLOCK = 3;
+  static final byte REMOVE_RECURRING_BLOCK = 4;
+
+  static final int MIN_SEGMENT_BYTES = 4096;
+
+  private static final int MAGIC = 0x4A4E4C31;
+  // Magic number and first sequence
+  private static final int HEADER_BYTES = 12;
+  // Length and checksum
+  private static final int RECORD_HEADER_BYTES = 8;
+  // Sequence and type
+  private static final int BODY_HEADER_BYTES = 9;
+  private static final String PREFIX = "journal-";
+  private static final String SUFFIX = ".seg";
+
+  private final Path directory;
+  private final int segmentBytes;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition appended = lock.newCondition();
+  private final Condition forced = lock.newCondition();
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private final DataOutputStream bodyOut = new DataOutputStream(body);
+  private final CRC32 checksum = new CRC32();
+  private MappedByteBuffer segment;
+  private int position;
+  private int forcedPosition;
+  private long lastSequence;
+  private long durableSequence;
+  private RuntimeException failure;
+  private boolean closed;
+  private Thread flusher;
+
+  /** Applies a replayed record. */
+  @FunctionalInterface
+  interface Replay {
+
+    void apply(byte type, DataInput payload) throws IOException;
+  }
+
+  MemoryJournal(Path directory, int segmentBytes) {
+    if (segmentBytes < MIN_SEGMENT_BYTES) {
+      throw new IllegalArgumentException(
+          "Journal segments must have at least " + MIN_SEGMENT_BYTES + " bytes.");
+    }
+    this.directory = directory;
+    this.segmentBytes = segmentBytes;
+  }
+
+  /**
+   * Replay the records after a snapshot, then start a new segment for appending.
+   *
+   * @param snapshotSequence the last sequence in the snapshot, 0 without one
+   * @param replay applies every record after it, in order
+   * @return the number of records replayed
+   * @throws IOException if a segment cannot be read or created
+   */
+  int open(long snapshotSequence, Replay replay) throws IOException {
+    long next = snapshotSequence + 1;
+    int replayed = 0;
+    for (Path path : segments()) {
+      ByteBuffer buffer = map(path);
+      if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+        throw new IllegalStateException("Journal segment " + path + " is damaged.");
+      }
+      int offset = HEADER_BYTES;
+      for (byte[] record = read(buffer, offset); record != null; record = read(buffer, offset)) {
+        long sequence = ByteBuffer.wrap(record).getLong();
+        if (sequence > next) {
+          throw new IllegalStateException("Journal record " + next + " is missing.");
+        }
+        if (sequence == next) {
+          replay.apply(record[8], new DataInputStream(new ByteArrayInputStream(
+              record, BODY_HEADER_BYTES, record.length - BODY_HEADER_BYTES)));
+          next++;
+          replayed++;
+        }
+        offset += RECORD_HEADER_BYTES + record.length;
+      }
+    }
+    lastSequence = next - 1;
+    durableSequence = lastSequence;
+    segment = create(next);
+    position = HEADER_BYTES;
+    flusher = new Thread(this::flush, "memory-journal-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+    return replayed;
+  }
+
+  /**
+   * Append a record. Callers hold the write lock of the tables, so records are appended in the
+   * order the tables change.
+   *
+   * @param type the record type
+   * @param payload writes the payload
+   * @return the sequence of the record
+   */
+  long append(byte type, RowCodec.Writer payload) {
+    lock.lock();
+    try {
+      if (failure != null || closed) {
+        throw new IllegalStateException("The journal is not writable.", failure);
+      }
+      long sequence = lastSequence + 1;
+      body.reset();
+      bodyOut.writeLong(sequence);
+      bodyOut.writeByte(type);
+      payload.write(bodyOut);
+      byte[] bytes = body.toByteArray();
+      if (position + RECORD_HEADER_BYTES + bytes.length > segment.capacity()) {
+        if (HEADER_BYTES + RECORD_HEADER_BYTES + bytes.length > segmentBytes) {
+          throw new IllegalArgumentException(
+              "A journal record of " + bytes.length + " bytes does not fit in a segment.");
+        }
+        roll(sequence);
+      }
+      checksum.reset();
+      checksum.update(bytes);
+      segment.put(position + RECORD_HEADER_BYTES, bytes);
+      segment.putInt(position + 4, (int) checksum.getValue());
+      segment.putInt(position, bytes.length);
+      position += RECORD_HEADER_BYTES + bytes.length;
+      lastSequence = sequence;
+      appended.signal();
+      return sequence;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the sequence of the last appended record.
+   *
+   * @return the sequence, 0 for an empty journal
+   */
+  long lastSequence() {
+    lock.lock();
+    try {
+      return lastSequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until a record and all records before it are on disk.
+   *
+   * @param sequence the sequence of the record
+   */
+  void awaitDurable(long sequence) {
+    lock.lock();
+    try {
+      while (durableSequence < sequence) {
+        if (failure != null) {
+          throw new IllegalStateException("The journal could not be forced to disk.", failure);
+        }
+        forced.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Delete the segments whose records are all in a snapshot. The current segment is kept.
+   *
+   * @param snapshotSequence the last sequence in the snapshot
+   * @throws IOException if a segment cannot be deleted
+   */
+  void deleteSegmentsBefore(long snapshotSequence) throws IOException {
+    lock.lock();
+    try {
+      List<Path> segments = segments();
+      for (int i = 0; i + 1 < segments.size(); i++) {
+        if (firstSequence(segments.get(i + 1)) <= snapshotSequence + 1) {
+          Files.delete(segments.get(i));
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Force the remaining records to disk and stop the flusher. Appending fails afterwards. */
+  @Override
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      appended.signal();
+    } finally {
+      lock.unlock();
+    }
+    if (flusher != null) {
+      try {
+        flusher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void flush() {
+    lock.lock();
+    try {
+      while (failure == null) {
+        while (durableSequence == lastSequence && !closed) {
+          appended.awaitUninterruptibly();
+        }
+        if (durableSequence == lastSequence) {
+          return;
+        }
+        MappedByteBuffer target = segment;
+        int from = forcedPosition;
+        int to = position;
+        long sequence = lastSequence;
+        RuntimeException error = null;
+        // Writers keep appending while the pages are written, the next force takes them all
+        lock.unlock();
+        try {
+          target.force(from, to - from);
+        } catch (RuntimeException e) {
+          error = e;
+        } finally {
+          lock.lock();
+        }
+        if (error != null) {
+          failure = error;
+        } else {
+          if (target == segment) {
+            forcedPosition = to;
+          }
+          durableSequence = sequence;
+        }
+        forced.signalAll();
+      }
+    } finally {
+      forced.signalAll();
+      lock.unlock();
+    }
+  }
+
+  private void roll(long firstSequence) throws IOException {
+    // The flusher only forces the current segment
+    segment.force();
+    segment = create(firstSequence);
+    position = HEADER_BYTES;
+    forcedPosition = 0;
+  }
+
+  private MappedByteBuffer create(long firstSequence) throws IOException {
+    Path path = directory.resolve(PREFIX + String.format("%020d", firstSequence) + SUFFIX);
+    // Left by a run that crashed before a record of this segment was complete
+    Files.deleteIfExists(path);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+      buffer.putInt(0, MAGIC);
+      buffer.putLong(4, firstSequence);
+      return buffer;
+    }
+  }
+
+  private static ByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /** Gets the body of the record at an offset, or null at the end or at a torn record. */
+  private static byte[] read(ByteBuffer buffer, int offset) {
+    if (offset > buffer.capacity() - RECORD_HEADER_BYTES) {
+      return null;
+    }
+    int length = buffer.getInt(offset);
+    if (length < BODY_HEADER_BYTES || length > buffer.capacity() - offset - RECORD_HEADER_BYTES) {
+      return null;
+    }
+    byte[] record = new byte[length];
+    buffer.get(offset + RECORD_HEADER_BYTES, record);
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    return (int) crc.getValue() == buffer.getInt(offset + 4) ? record : null;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(path -> path.getFileName().toString().startsWith(PREFIX)
+              && path.getFileName().toString().endsWith(SUFFIX))
+          .sorted(Comparator.comparingLong(MemoryJournal::firstSequence))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static long firstSequence(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+  }
+}
@@ -0,0 +1,29 @@
+package org.dljl.storage.memory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.dljl.storage.ProviderLockStore;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link ProviderLockStore} of the {@code memory} profile. The store belongs to one instance,
+ * whose lock stripes already serialize the bookings of a provider, so a lock row is only
+ * recorded and locking it returns at once.
+ */
+@Component
+@Profile("memory")
+public class MemoryProviderLockStore implements ProviderLockStore {
+
+  private final Set<Long> providerIds = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public int createProviderLock(Long providerId) {
+    return providerIds.add(providerId) ? 1 : 0;
+  }
+
+  @Override
+  public Long lockProvider(Long providerId) {
+    return providerIds.contains(providerId) ? providerId : null;
+  }
+}
@@ -0,0 +1,106 @@
+package org.dljl.storage.memory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import org.dljl.entity.RecurringBlock;
+import org.dljl.storage.RecurringBlockStore;
+import org.dljl.storage.memory.MemoryTables.ProviderRows;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link RecurringBlockStore} of the {@code memory} profile. Rules of a provider come in id
+ * order where the statement in RecurringBlockMapper.xml has no ORDER BY.
+ */
+@Component
+@Profile("memory")
+public class MemoryRecurringBlockStore implements RecurringBlockStore {
+
+  @Autowired private MemoryTables tables;
+
+  @Override
+  public void createRecurringBlock(RecurringBlock recurringBlock) {
+    tables.write(() -> {
+      RecurringBlock rule = MemoryTables.copyOf(recurringBlock);
+      if (rule.getRecurringBlockId() == null) {
+        rule.setRecurringBlockId(tables.nextRecurringBlockId());
+      } else if (tables.recurringBlock(rule.getRecurringBlockId()) != null) {
+        throw new DuplicateKeyException("Duplicate entry '" + rule.getRecurringBlockId()
+            + "' for key 'recurring_blocks.PRIMARY'");
+      }
+      tables.putRecurringBlock(rule);
+      recurringBlock.setRecurringBlockId(rule.getRecurringBlockId());
+      return null;
+    });
+  }
+
+  @Override
+  public RecurringBlock getRecurringBlock(Long id) {
+    return tables.read(() -> {
+      RecurringBlock rule = id == null ? null : tables.recurringBlock(id);
+      return rule == null ? null : MemoryTables.copyOf(rule);
+    });
+  }
+
+  @Override
+  public List<RecurringBlock> getRecurringBlocksByProviderId(Long providerId) {
+    List<RecurringBlock> rules = getRecurringBlocksInDateRange(providerId, LocalDate.MIN,
+        LocalDate.MAX);
+    rules.sort(Comparator.comparing(RecurringBlock::getStartDate));
+    return rules;
+  }
+
+  @Override
+  public List<RecurringBlock> getRecurringBlocksInDateRange(Long providerId,
+      LocalDate startDate, LocalDate endDate) {
+    return tables.read(() -> {
+      List<RecurringBlock> rules = new ArrayList<>();
+      ProviderRows rows = providerId == null ? null : tables.provider(providerId);
+      if (rows == null) {
+        return rules;
+      }
+      for (RecurringBlock rule : rows.recurringBlocks.values()) {
+        if (!rule.getStartDate().isAfter(endDate) && !rule.getEndDate().isBefore(startDate)) {
+          rules.add(MemoryTables.copyOf(rule));
+        }
+      }
+      return rules;
+    });
+  }
+
+  @Override
+  public List<RecurringBlock> getRecurringBlocksByProvidersInDateRange(List<Long> providerIds,
+      LocalDate startDate, LocalDate endDate) {
+    return tables.read(() -> {
+      List<RecurringBlock> rules = new ArrayList<>();
+      for (Long providerId : new TreeSet<>(providerIds)) {
+        rules.addAll(getRecurringBlocksInDateRange(providerId, startDate, endDate));
+      }
+      return rules;
+    });
+  }
+
+  @Override
+  public int updateExcludedDates(Long id, String excludedDates) {
+    return tables.write(() -> {
+      RecurringBlock current = id == null ? null : tables.recurringBlock(id);
+      if (current == null) {
+        return 0;
+      }
+      RecurringBlock updated = MemoryTables.copyOf(current);
+      updated.setExcludedDates(excludedDates);
+      tables.putRecurringBlock(updated);
+      return 1;
+    });
+  }
+
+  @Override
+  public int deleteRecurringBlock(Long id) {
+    return tables.write(() -> id != null && tables.removeRecurringBlock(id) != null ? 1 : 0);
+  }
+}
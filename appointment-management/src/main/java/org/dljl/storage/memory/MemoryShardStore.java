@@ -0,0 +1,130 @@
+package org.dljl.storage.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.dljl.dto.AutoIncrementSettings;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.ProviderPlacement;
+import org.dljl.entity.RecurringBlock;
+import org.dljl.storage.ShardStore;
+import org.dljl.storage.memory.MemoryTables.ProviderRows;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link ShardStore} of the {@code memory} profile, which always runs as a single shard. It
+ * keeps the statements working for the shard endpoints, which then report shard 0.
+ */
+@Component
+@Profile("memory")
+public class MemoryShardStore implements ShardStore {
+
+  private final Map<Long, ProviderPlacement> placements = new ConcurrentSkipListMap<>();
+
+  @Autowired private MemoryTables tables;
+
+  @Override
+  public List<Long> getProviderIds() {
+    return tables.read(tables::providerIds);
+  }
+
+  @Override
+  public List<Appointment> getAppointmentsAfterId(Long providerId, Long afterId, int limit) {
+    return tables.read(() -> {
+      List<Appointment> appointments = new ArrayList<>();
+      ProviderRows rows = providerId == null ? null : tables.provider(providerId);
+      if (rows == null) {
+        return appointments;
+      }
+      for (Appointment row : rows.appointments) {
+        if (afterId == null || row.getAppointmentId() > afterId) {
+          appointments.add(MemoryTables.copyOf(row));
+        }
+      }
+      appointments.sort((a, b) -> Long.compare(a.getAppointmentId(), b.getAppointmentId()));
+      return appointments.size() > limit
+          ? new ArrayList<>(appointments.subList(0, limit)) : appointments;
+    });
+  }
+
+  @Override
+  public int copyAppointments(List<Appointment> appointments) {
+    return tables.write(() -> {
+      for (Appointment appointment : appointments) {
+        tables.putAppointment(MemoryTables.copyOf(appointment));
+      }
+      return appointments.size();
+    });
+  }
+
+  @Override
+  public int deleteAppointments(List<Long> appointmentIds) {
+    return tables.write(() -> {
+      int deleted = 0;
+      for (Long id : appointmentIds) {
+        deleted += tables.removeAppointment(id) != null ? 1 : 0;
+      }
+      return deleted;
+    });
+  }
+
+  @Override
+  public int copyRecurringBlocks(List<RecurringBlock> recurringBlocks) {
+    return tables.write(() -> {
+      for (RecurringBlock rule : recurringBlocks) {
+        tables.putRecurringBlock(MemoryTables.copyOf(rule));
+      }
+      return recurringBlocks.size();
+    });
+  }
+
+  @Override
+  public int deleteRecurringBlocks(List<Long> recurringBlockIds) {
+    return tables.write(() -> {
+      int deleted = 0;
+      for (Long id : recurringBlockIds) {
+        deleted += tables.removeRecurringBlock(id) != null ? 1 : 0;
+      }
+      return deleted;
+    });
+  }
+
+  @Override
+  public List<ProviderPlacement> getPlacements() {
+    List<ProviderPlacement> result = new ArrayList<>();
+    placements.values().forEach(placement -> result.add(copyOf(placement)));
+    return result;
+  }
+
+  @Override
+  public int savePlacement(Long providerId, int shard, Integer cleanupShard) {
+    ProviderPlacement placement = new ProviderPlacement();
+    placement.setProviderId(providerId);
+    placement.setShard(shard);
+    placement.setCleanupShard(cleanupShard);
+    // ON DUPLICATE KEY UPDATE counts an insert as 1 and a changed row as 2
+    ProviderPlacement previous = placements.put(providerId, placement);
+    return previous == null ? 1 : previous.getShard() == shard
+        && Objects.equals(previous.getCleanupShard(), cleanupShard) ? 0 : 2;
+  }
+
+  @Override
+  public AutoIncrementSettings getAutoIncrementSettings() {
+    AutoIncrementSettings settings = new AutoIncrementSettings();
+    settings.setIncrement(1);
+    settings.setOffset(1);
+    return settings;
+  }
+
+  private static ProviderPlacement copyOf(ProviderPlacement placement) {
+    ProviderPlacement copy = new ProviderPlacement();
+    copy.setProviderId(placement.getProviderId());
+    copy.setShard(placement.getShard());
+    copy.setCleanupShard(placement.getCleanupShard());
+    return copy;
+  }
+}
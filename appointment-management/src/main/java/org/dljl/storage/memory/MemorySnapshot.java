@@ -0,0 +1,144 @@
+package org.dljl.storage.memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+
+/**
+ * A snapshot of {@link MemoryTables} as of a journal sequence, {@code snapshot-<sequence>.bin}:
+ * the id sequences and every row, followed by a CRC32 of the file. It is written to a temporary
+ * file, forced and renamed, so a crash leaves either the previous snapshot or this one.
+ */
+final class MemorySnapshot {
+
+  private static final int MAGIC = 0x534E5031;
+  private static final String PREFIX = "snapshot-";
+  private static final String SUFFIX = ".bin";
+
+  final long sequence;
+  final long lastAppointmentId;
+  final long lastRecurringBlockId;
+  final List<Appointment> appointments;
+  final List<RecurringBlock> recurringBlocks;
+
+  MemorySnapshot(long sequence, long lastAppointmentId, long lastRecurringBlockId,
+      List<Appointment> appointments, List<RecurringBlock> recurringBlocks) {
+    this.sequence = sequence;
+    this.lastAppointmentId = lastAppointmentId;
+    this.lastRecurringBlockId = lastRecurringBlockId;
+    this.appointments = appointments;
+    this.recurringBlocks = recurringBlocks;
+  }
+
+  /**
+   * Write the snapshot and delete the older ones.
+   *
+   * @param directory the journal directory
+   * @throws IOException if the snapshot cannot be written
+   */
+  void write(Path directory) throws IOException {
+    Path target = directory.resolve(PREFIX + String.format("%020d", sequence) + SUFFIX);
+    Path temporary = directory.resolve(target.getFileName() + ".tmp");
+    try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+      CheckedOutputStream checked =
+          new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+      DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(MAGIC);
+      out.writeLong(sequence);
+      out.writeLong(lastAppointmentId);
+      out.writeLong(lastRecurringBlockId);
+      out.writeInt(appointments.size());
+      for (Appointment row : appointments) {
+        RowCodec.writeAppointment(out, row);
+      }
+      out.writeInt(recurringBlocks.size());
+      for (RecurringBlock rule : recurringBlocks) {
+        RowCodec.writeRecurringBlock(out, rule);
+      }
+      out.writeLong(checked.getChecksum().getValue());
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    for (Path older : snapshots(directory)) {
+      if (sequence(older) < sequence) {
+        Files.delete(older);
+      }
+    }
+  }
+
+  /**
+   * Read the newest snapshot.
+   *
+   * @param directory the journal directory
+   * @return the snapshot, or null if there is none
+   * @throws IOException if the snapshot cannot be read
+   */
+  static MemorySnapshot readLatest(Path directory) throws IOException {
+    List<Path> snapshots = snapshots(directory);
+    if (snapshots.isEmpty()) {
+      return null;
+    }
+    Path path = snapshots.get(snapshots.size() - 1);
+    try (InputStream file = Files.newInputStream(path)) {
+      CheckedInputStream checked =
+          new CheckedInputStream(new BufferedInputStream(file), new CRC32());
+      DataInputStream in = new DataInputStream(checked);
+      if (in.readInt() != MAGIC) {
+        throw new IllegalStateException("Snapshot " + path + " is damaged.");
+      }
+      long sequence = in.readLong();
+      long lastAppointmentId = in.readLong();
+      long lastRecurringBlockId = in.readLong();
+      int appointmentCount = in.readInt();
+      List<Appointment> appointments = new ArrayList<>(appointmentCount);
+      for (int i = 0; i < appointmentCount; i++) {
+        appointments.add(RowCodec.readAppointment(in));
+      }
+      int recurringBlockCount = in.readInt();
+      List<RecurringBlock> recurringBlocks = new ArrayList<>(recurringBlockCount);
+      for (int i = 0; i < recurringBlockCount; i++) {
+        recurringBlocks.add(RowCodec.readRecurringBlock(in));
+      }
+      long expected = checked.getChecksum().getValue();
+      if (in.readLong() != expected) {
+        throw new IllegalStateException("Snapshot " + path + " is damaged.");
+      }
+      return new MemorySnapshot(sequence, lastAppointmentId, lastRecurringBlockId, appointments,
+          recurringBlocks);
+    }
+  }
+
+  private static List<Path> snapshots(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(path -> path.getFileName().toString().startsWith(PREFIX)
+              && path.getFileName().toString().endsWith(SUFFIX))
+          .sorted(Comparator.comparingLong(MemorySnapshot::sequence))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static long sequence(Path snapshot) {
+    String name = snapshot.getFileName().toString();
+    return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+  }
+}
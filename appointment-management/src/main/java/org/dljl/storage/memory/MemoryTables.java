@@ -0,0 +1,425 @@
+package org.dljl.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+/**
+ * The tables of the {@code memory} profile. Appointments and recurring blocks are kept by id in
+ * {@link LongMap}s, and every provider keeps its appointments sorted by start time and id, so that
+ * range, keyset and conflict queries are a bounded scan of one sorted set.
+ *
+ * <p>Statements run under a read or the write lock of the tables, so each one is atomic. Rows are
+ * copied on the way in and out, and a stored row is replaced rather than changed, so callers
+ * never see a row change under them, just like with a database.
+ *
+ * <p>With {@code appointment.memory.journal.dir} set the tables are durable: every change is
+ * appended to a {@link MemoryJournal} before it is made, and a write returns once its records are
+ * on disk. A {@link MemorySnapshot} is written periodically and on shutdown, and startup loads the
+ * newest snapshot and replays only the journal records after it.
+ */
+@Component
+@Profile("memory")
+public class MemoryTables {
+
+  /** Rows in key order of the {@code (provider_id, start_date_time, appointment_id)} index. */
+  static final Comparator<Appointment> START_ORDER = Comparator
+      .comparing(Appointment::getStartDateTime)
+      .thenComparing(Appointment::getAppointmentId);
+
+  private static final Logger logger = LoggerFactory.getLogger(MemoryTables.class);
+
+  // Empty keeps the data in memory only
+  @Value("${appointment.memory.journal.dir:}")
+  private String journalDir;
+
+  @Value("${appointment.memory.journal.segment-bytes:67108864}")
+  private int segmentBytes;
+
+  // 0 writes snapshots only on shutdown
+  @Value("${appointment.memory.journal.snapshot-interval-seconds:300}")
+  private long snapshotIntervalSeconds;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final LongMap<Appointment> appointments = new LongMap<>();
+  private final LongMap<RecurringBlock> recurringBlocks = new LongMap<>();
+  private final LongMap<ProviderRows> providers = new LongMap<>();
+  private long lastAppointmentId;
+  private long lastRecurringBlockId;
+  private Path directory;
+  private MemoryJournal journal;
+  private long snapshotSequence;
+  private ScheduledExecutorService snapshotExecutor;
+
+  /**
+   * Load the newest snapshot and replay the journal after it, if the tables are durable.
+   *
+   * @throws IOException if the snapshot or the journal cannot be read
+   */
+  @PostConstruct
+  public void open() throws IOException {
+    if (journalDir == null || journalDir.isBlank()) {
+      return;
+    }
+    directory = Paths.get(journalDir);
+    Files.createDirectories(directory);
+    MemorySnapshot snapshot = MemorySnapshot.readLatest(directory);
+    if (snapshot != null) {
+      snapshot.appointments.forEach(this::putAppointment);
+      snapshot.recurringBlocks.forEach(this::putRecurringBlock);
+      lastAppointmentId = snapshot.lastAppointmentId;
+      lastRecurringBlockId = snapshot.lastRecurringBlockId;
+      snapshotSequence = snapshot.sequence;
+    }
+    MemoryJournal opened = new MemoryJournal(directory, segmentBytes);
+    int replayed = opened.open(snapshotSequence, this::replay);
+    // Set last, so that loading is not journaled again
+    journal = opened;
+    logger.info("Recovered {} appointments and {} recurring blocks from {}, {} journal records "
+        + "after the snapshot.", appointments.size(), recurringBlocks.size(), directory, replayed);
+    if (snapshotIntervalSeconds > 0) {
+      snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "memory-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      snapshotExecutor.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalSeconds,
+          snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+  }
+
+  /** Write a last snapshot, so that the next start replays nothing, and close the journal. */
+  @PreDestroy
+  public void close() {
+    if (journal == null) {
+      return;
+    }
+    if (snapshotExecutor != null) {
+      snapshotExecutor.shutdownNow();
+    }
+    try {
+      snapshot();
+    } finally {
+      journal.close();
+    }
+  }
+
+  /**
+   * Write a snapshot and delete the journal segments it covers. Does nothing if the tables are
+   * not durable or nothing changed since the last snapshot.
+   */
+  public synchronized void snapshot() {
+    if (journal == null) {
+      return;
+    }
+    // Rows are never changed once stored, so the snapshot is written outside the lock
+    MemorySnapshot snapshot = read(() -> {
+      List<Appointment> appointmentRows = new ArrayList<>(appointments.size());
+      appointments.forEachValue(appointmentRows::add);
+      List<RecurringBlock> rules = new ArrayList<>(recurringBlocks.size());
+      recurringBlocks.forEachValue(rules::add);
+      return new MemorySnapshot(journal.lastSequence(), lastAppointmentId, lastRecurringBlockId,
+          appointmentRows, rules);
+    });
+    if (snapshot.sequence == snapshotSequence) {
+      return;
+    }
+    try {
+      snapshot.write(directory);
+      journal.deleteSegmentsBefore(snapshot.sequence);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    snapshotSequence = snapshot.sequence;
+  }
+
+  private void scheduledSnapshot() {
+    try {
+      snapshot();
+    } catch (RuntimeException e) {
+      logger.warn("Could not write a snapshot of the memory tables.", e);
+    }
+  }
+
+  private void replay(byte type, DataInput payload) throws IOException {
+    switch (type) {
+      case MemoryJournal.PUT_APPOINTMENT -> putAppointment(RowCodec.readAppointment(payload));
+      case MemoryJournal.REMOVE_APPOINTMENT -> removeAppointment(payload.readLong());
+      case MemoryJournal.PUT_RECURRING_BLOCK ->
+          putRecurringBlock(RowCodec.readRecurringBlock(payload));
+      case MemoryJournal.REMOVE_RECURRING_BLOCK -> removeRecurringBlock(payload.readLong());
+      default -> throw new IllegalStateException("Unknown journal record type " + type + ".");
+    }
+  }
+
+  /**
+   * Run a statement that only reads.
+   *
+   * @param statement the statement
+   * @param <T> the result type
+   * @return the result of the statement
+   */
+  public <T> T read(Supplier<T> statement) {
+    return locked(lock.readLock(), statement);
+  }
+
+  /**
+   * Run a statement that writes. Statements run inside it see its writes. If the tables are
+   * durable, it returns once the writes are on disk.
+   *
+   * @param statement the statement
+   * @param <T> the result type
+   * @return the result of the statement
+   */
+  public <T> T write(Supplier<T> statement) {
+    if (journal == null) {
+      return locked(lock.writeLock(), statement);
+    }
+    long sequence;
+    T result;
+    lock.writeLock().lock();
+    try {
+      result = statement.get();
+      sequence = journal.lastSequence();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    // Waited for outside the lock, so that the writers queued behind it share the next fsync
+    if (!lock.isWriteLockedByCurrentThread()) {
+      journal.awaitDurable(sequence);
+    }
+    return result;
+  }
+
+  Appointment appointment(long appointmentId) {
+    return appointments.get(appointmentId);
+  }
+
+  RecurringBlock recurringBlock(long recurringBlockId) {
+    return recurringBlocks.get(recurringBlockId);
+  }
+
+  ProviderRows provider(long providerId) {
+    return providers.get(providerId);
+  }
+
+  List<Long> providerIds() {
+    List<Long> providerIds = new ArrayList<>(providers.size());
+    providers.forEach((providerId, rows) -> providerIds.add(providerId));
+    providerIds.sort(null);
+    return providerIds;
+  }
+
+  long nextAppointmentId() {
+    return ++lastAppointmentId;
+  }
+
+  long nextRecurringBlockId() {
+    return ++lastRecurringBlockId;
+  }
+
+  /** Store a row the caller no longer holds, replacing the row with the same id. */
+  void putAppointment(Appointment row) {
+    checkRow(row);
+    log(MemoryJournal.PUT_APPOINTMENT, out -> RowCodec.writeAppointment(out, row));
+    Appointment previous = appointments.put(row.getAppointmentId(), row);
+    if (previous != null) {
+      unlink(previous);
+    }
+    ProviderRows rows = providers.get(row.getProviderId());
+    if (rows == null) {
+      rows = new ProviderRows();
+      providers.put(row.getProviderId(), rows);
+    }
+    rows.add(row);
+    lastAppointmentId = Math.max(lastAppointmentId, row.getAppointmentId());
+  }
+
+  Appointment removeAppointment(long appointmentId) {
+    if (appointments.get(appointmentId) == null) {
+      return null;
+    }
+    log(MemoryJournal.REMOVE_APPOINTMENT, out -> out.writeLong(appointmentId));
+    Appointment previous = appointments.remove(appointmentId);
+    unlink(previous);
+    return previous;
+  }
+
+  /** Store a rule the caller no longer holds, replacing the rule with the same id. */
+  void putRecurringBlock(RecurringBlock rule) {
+    checkNotNull(rule.getProviderId(), "provider_id");
+    checkNotNull(rule.getStartTime(), "start_time");
+    checkNotNull(rule.getEndTime(), "end_time");
+    checkNotNull(rule.getStartDate(), "start_date");
+    checkNotNull(rule.getEndDate(), "end_date");
+    log(MemoryJournal.PUT_RECURRING_BLOCK, out -> RowCodec.writeRecurringBlock(out, rule));
+    RecurringBlock previous = recurringBlocks.put(rule.getRecurringBlockId(), rule);
+    if (previous != null) {
+      unlink(previous);
+    }
+    ProviderRows rows = providers.get(rule.getProviderId());
+    if (rows == null) {
+      rows = new ProviderRows();
+      providers.put(rule.getProviderId(), rows);
+    }
+    rows.recurringBlocks.put(rule.getRecurringBlockId(), rule);
+    lastRecurringBlockId = Math.max(lastRecurringBlockId, rule.getRecurringBlockId());
+  }
+
+  RecurringBlock removeRecurringBlock(long recurringBlockId) {
+    if (recurringBlocks.get(recurringBlockId) == null) {
+      return null;
+    }
+    log(MemoryJournal.REMOVE_RECURRING_BLOCK, out -> out.writeLong(recurringBlockId));
+    RecurringBlock previous = recurringBlocks.remove(recurringBlockId);
+    unlink(previous);
+    return previous;
+  }
+
+  // Before the change, so that a change that cannot be journaled is not made
+  private void log(byte type, RowCodec.Writer payload) {
+    if (journal != null) {
+      journal.append(type, payload);
+    }
+  }
+
+  private void unlink(Appointment row) {
+    ProviderRows rows = providers.get(row.getProviderId());
+    rows.appointments.remove(row);
+    dropIfEmpty(row.getProviderId(), rows);
+  }
+
+  private void unlink(RecurringBlock rule) {
+    ProviderRows rows = providers.get(rule.getProviderId());
+    rows.recurringBlocks.remove(rule.getRecurringBlockId());
+    dropIfEmpty(rule.getProviderId(), rows);
+  }
+
+  private void dropIfEmpty(long providerId, ProviderRows rows) {
+    if (rows.appointments.isEmpty() && rows.recurringBlocks.isEmpty()) {
+      providers.remove(providerId);
+    }
+  }
+
+  /**
+   * Check the NOT NULL constraints of the appointments table.
+   *
+   * @param row the row to store
+   */
+  static void checkRow(Appointment row) {
+    checkNotNull(row.getProviderId(), "provider_id");
+    checkNotNull(row.getStartDateTime(), "start_date_time");
+    checkNotNull(row.getEndDateTime(), "end_date_time");
+  }
+
+  private static void checkNotNull(Object value, String column) {
+    if (value == null) {
+      throw new DataIntegrityViolationException("Column '" + column + "' cannot be null");
+    }
+  }
+
+  private static <T> T locked(Lock held, Supplier<T> statement) {
+    held.lock();
+    try {
+      return statement.get();
+    } finally {
+      held.unlock();
+    }
+  }
+
+  /**
+   * Copy an appointment for storage, with the times truncated to the seconds a DATETIME column
+   * keeps.
+   *
+   * @param appointment the appointment
+   * @return the copy
+   */
+  static Appointment copyOf(Appointment appointment) {
+    Appointment copy = new Appointment();
+    copy.setAppointmentId(appointment.getAppointmentId());
+    copy.setProviderId(appointment.getProviderId());
+    copy.setUserId(appointment.getUserId());
+    copy.setStartDateTime(truncate(appointment.getStartDateTime()));
+    copy.setEndDateTime(truncate(appointment.getEndDateTime()));
+    copy.setStatus(appointment.getStatus());
+    copy.setServiceType(appointment.getServiceType());
+    copy.setComments(appointment.getComments());
+    return copy;
+  }
+
+  /**
+   * Copy a recurring block rule.
+   *
+   * @param rule the rule
+   * @return the copy
+   */
+  static RecurringBlock copyOf(RecurringBlock rule) {
+    RecurringBlock copy = new RecurringBlock();
+    copy.setRecurringBlockId(rule.getRecurringBlockId());
+    copy.setProviderId(rule.getProviderId());
+    copy.setStartTime(rule.getStartTime());
+    copy.setEndTime(rule.getEndTime());
+    copy.setStartDate(rule.getStartDate());
+    copy.setEndDate(rule.getEndDate());
+    copy.setWeekdayMask(rule.getWeekdayMask());
+    copy.setExcludedDates(rule.getExcludedDates());
+    return copy;
+  }
+
+  static LocalDateTime truncate(LocalDateTime dateTime) {
+    return dateTime == null ? null : dateTime.truncatedTo(ChronoUnit.SECONDS);
+  }
+
+  /**
+   * The rows of one provider. Only appointments starting within
+   * {@code [start - longestDuration, end]} can touch a range, so overlap queries are a single
+   * bounded range scan.
+   */
+  static final class ProviderRows {
+
+    final NavigableSet<Appointment> appointments = new TreeSet<>(START_ORDER);
+    final NavigableMap<Long, RecurringBlock> recurringBlocks = new TreeMap<>();
+    private Duration longestDuration = Duration.ZERO;
+
+    Duration longestDuration() {
+      return longestDuration;
+    }
+
+    private void add(Appointment row) {
+      appointments.add(row);
+      Duration duration = Duration.between(row.getStartDateTime(), row.getEndDateTime());
+      if (duration.compareTo(longestDuration) > 0) {
+        longestDuration = duration;
+      }
+    }
+  }
+}
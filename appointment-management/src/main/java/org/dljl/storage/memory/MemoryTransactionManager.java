@@ -0,0 +1,49 @@
+package org.dljl.storage.memory;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The transaction manager of the {@code memory} profile. Every statement of the in-memory store
+ * is atomic on its own, so transactions only mark their boundaries for the code that runs in
+ * them. Nothing is rolled back: statements that ran before a failure stay applied.
+ */
+@Component
+@Profile("memory")
+public class MemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+  @Override
+  protected Object doGetTransaction() {
+    return new Object();
+  }
+
+  @Override
+  protected boolean isExistingTransaction(Object transaction) {
+    return TransactionSynchronizationManager.isActualTransactionActive();
+  }
+
+  @Override
+  protected void doBegin(Object transaction, TransactionDefinition definition) {
+  }
+
+  @Override
+  protected Object doSuspend(Object transaction) {
+    return transaction;
+  }
+
+  @Override
+  protected void doResume(Object transaction, Object suspendedResources) {
+  }
+
+  @Override
+  protected void doCommit(DefaultTransactionStatus status) {
+  }
+
+  @Override
+  protected void doRollback(DefaultTransactionStatus status) {
+  }
+}
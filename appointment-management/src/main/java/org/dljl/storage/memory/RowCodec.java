@@ -0,0 +1,121 @@
+package org.dljl.storage.memory;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+
+/**
+ * The binary form of rows in the journal and in snapshots. Fields are written in declaration
+ * order, nullable fields behind a presence flag, so a row takes a few dozen bytes.
+ */
+final class RowCodec {
+
+  private RowCodec() {
+  }
+
+  /** Writes the payload of a journal record. */
+  @FunctionalInterface
+  interface Writer {
+
+    void write(DataOutput out) throws IOException;
+  }
+
+  static void writeAppointment(DataOutput out, Appointment row) throws IOException {
+    out.writeLong(row.getAppointmentId());
+    out.writeLong(row.getProviderId());
+    writeLong(out, row.getUserId());
+    writeDateTime(out, row.getStartDateTime());
+    writeDateTime(out, row.getEndDateTime());
+    writeString(out, row.getStatus());
+    writeString(out, row.getServiceType());
+    writeString(out, row.getComments());
+  }
+
+  static Appointment readAppointment(DataInput in) throws IOException {
+    Appointment row = new Appointment();
+    row.setAppointmentId(in.readLong());
+    row.setProviderId(in.readLong());
+    row.setUserId(readLong(in));
+    row.setStartDateTime(readDateTime(in));
+    row.setEndDateTime(readDateTime(in));
+    row.setStatus(readString(in));
+    row.setServiceType(readString(in));
+    row.setComments(readString(in));
+    return row;
+  }
+
+  static void writeRecurringBlock(DataOutput out, RecurringBlock rule) throws IOException {
+    out.writeLong(rule.getRecurringBlockId());
+    out.writeLong(rule.getProviderId());
+    out.writeLong(rule.getStartTime().toNanoOfDay());
+    out.writeLong(rule.getEndTime().toNanoOfDay());
+    out.writeLong(rule.getStartDate().toEpochDay());
+    out.writeLong(rule.getEndDate().toEpochDay());
+    out.writeBoolean(rule.getWeekdayMask() != null);
+    if (rule.getWeekdayMask() != null) {
+      out.writeInt(rule.getWeekdayMask());
+    }
+    writeString(out, rule.getExcludedDates());
+  }
+
+  static RecurringBlock readRecurringBlock(DataInput in) throws IOException {
+    RecurringBlock rule = new RecurringBlock();
+    rule.setRecurringBlockId(in.readLong());
+    rule.setProviderId(in.readLong());
+    rule.setStartTime(LocalTime.ofNanoOfDay(in.readLong()));
+    rule.setEndTime(LocalTime.ofNanoOfDay(in.readLong()));
+    rule.setStartDate(LocalDate.ofEpochDay(in.readLong()));
+    rule.setEndDate(LocalDate.ofEpochDay(in.readLong()));
+    rule.setWeekdayMask(in.readBoolean() ? in.readInt() : null);
+    rule.setExcludedDates(readString(in));
+    return rule;
+  }
+
+  private static void writeLong(DataOutput out, Long value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value);
+    }
+  }
+
+  private static Long readLong(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readLong() : null;
+  }
+
+  private static void writeDateTime(DataOutput out, LocalDateTime value) throws IOException {
+    out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+    out.writeInt(value.getNano());
+  }
+
+  private static LocalDateTime readDateTime(DataInput in) throws IOException {
+    return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+  }
+
+  // Not writeUTF, which stops at 64 KB and excluded dates are a TEXT column
+  private static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,11 @@
+-- Baseline schema. Databases created before migrations existed are baselined at this version.
+CREATE TABLE IF NOT EXISTS appointments (
+    appointment_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    provider_id BIGINT NOT NULL,
+    user_id BIGINT,
+    start_date_time DATETIME NOT NULL,
+    end_date_time DATETIME NOT NULL,
+    status VARCHAR(50),
+    service_type VARCHAR(100),
+    comments VARCHAR(100)
+);
@@ -0,0 +1,14 @@
+-- Recurring blocks stored as one rule row per series instead of one blocked row per day
+CREATE TABLE IF NOT EXISTS recurring_blocks (
+    recurring_block_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    provider_id BIGINT NOT NULL,
+    start_time TIME NOT NULL,
+    end_time TIME NOT NULL,
+    start_date DATE NOT NULL,
+    end_date DATE NOT NULL,
+    weekday_mask INT,
+    excluded_dates TEXT
+);
+
+CREATE INDEX idx_recurring_blocks_provider_dates
+    ON recurring_blocks (provider_id, start_date, end_date);
@@ -0,0 +1,8 @@
+-- Day, range, availability and conflict queries: provider equality, then a start_date_time range.
+-- status is last because every query filters it with != 'cancelled', which is not a usable prefix.
+CREATE INDEX idx_appointments_provider_start
+    ON appointments (provider_id, start_date_time, status);
+
+-- Appointment history of a provider with one user, in time order
+CREATE INDEX idx_appointments_provider_user_start
+    ON appointments (provider_id, user_id, start_date_time);
@@ -0,0 +1,4 @@
+-- One row per provider, locked with SELECT ... FOR UPDATE to serialize bookings across instances
+CREATE TABLE IF NOT EXISTS provider_locks (
+    provider_id BIGINT PRIMARY KEY
+);
@@ -0,0 +1,10 @@
+-- Keyset pagination of a provider's appointments orders by (start_date_time, appointment_id).
+-- The V3 provider/start index has status between the two, so it cannot return that order and
+-- every page would sort the rest of the provider's rows. It is replaced rather than joined by a
+-- second index on the same prefix: appointment_id goes before status, and the day, range and
+-- conflict queries still filter status from the index. The user history index already ends in
+-- start_date_time and InnoDB appends the primary key to it.
+DROP INDEX idx_appointments_provider_start ON appointments;
+
+CREATE INDEX idx_appointments_provider_start
+    ON appointments (provider_id, start_date_time, appointment_id, status);
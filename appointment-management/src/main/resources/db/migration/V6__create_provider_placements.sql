@@ -0,0 +1,5 @@
+-- Providers moved off the shard the hash ring assigns them to. Only read on shard 0
+CREATE TABLE IF NOT EXISTS provider_placements (
+    provider_id BIGINT PRIMARY KEY,
+    shard INT NOT NULL
+);
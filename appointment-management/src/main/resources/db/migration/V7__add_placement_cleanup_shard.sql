@@ -0,0 +1,3 @@
+-- The shard that may still hold copies of a moving provider's rows. A move sets it before it copies
+-- and clears it once those copies are deleted, so a move cut short is finished at the next start.
+ALTER TABLE provider_placements ADD COLUMN cleanup_shard INT NULL;
@@ -0,0 +1,155 @@
+package org.dljl.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Concurrency limit filter test.
+ */
+public class ConcurrencyLimitFilterTest {
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testRequestWithinLimitIsPassedOn() throws Exception {
+    ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, 100);
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    FilterChain chain = mock(FilterChain.class);
+
+    filter.doFilter(request, response, chain);
+    filter.doFilter(request, response, chain);
+
+    verify(chain, times(2)).doFilter(request, response);
+    assertEquals(0, filter.getInFlight());
+    assertEquals(0, filter.getRejected());
+  }
+
+  @Test
+  void testRequestOverLimitIsRejected() throws Exception {
+    ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, 50);
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    FilterChain blocking = mock(FilterChain.class);
+    doAnswer(invocation -> {
+      entered.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return null;
+    }).when(blocking).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+    Future<?> first = executor.submit(() -> {
+      filter.doFilter(mock(HttpServletRequest.class), mock(HttpServletResponse.class), blocking);
+      return null;
+    });
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+    assertEquals(1, filter.getInFlight());
+
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    FilterChain chain = mock(FilterChain.class);
+    filter.doFilter(mock(HttpServletRequest.class), response, chain);
+
+    verify(chain, never()).doFilter(any(), any());
+    verify(response).setIntHeader("Retry-After", 1);
+    verify(response).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+        "Too many concurrent requests.");
+    assertEquals(1, filter.getRejected());
+
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    assertEquals(0, filter.getInFlight());
+  }
+
+  @Test
+  void testExcludedPathIsNotCapped() throws Exception {
+    ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, 50, List.of("/metrics"));
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    FilterChain blocking = mock(FilterChain.class);
+    doAnswer(invocation -> {
+      entered.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return null;
+    }).when(blocking).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+    Future<?> first = executor.submit(() -> {
+      filter.doFilter(request("/appointments/createAppointment"),
+          mock(HttpServletResponse.class), blocking);
+      return null;
+    });
+    assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+    HttpServletRequest scrape = request("/metrics/prometheus");
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    FilterChain chain = mock(FilterChain.class);
+    filter.doFilter(scrape, response, chain);
+
+    verify(chain).doFilter(scrape, response);
+    assertEquals(0, filter.getRejected());
+    assertEquals(1, filter.getInFlight());
+
+    filter.doFilter(request("/metricsfoo"), response, chain);
+    assertEquals(1, filter.getRejected());
+
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  void testPermitIsReleasedWhenChainThrows() throws Exception {
+    ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(1, 50);
+    FilterChain failing = mock(FilterChain.class);
+    doAnswer(invocation -> {
+      throw new IllegalStateException("boom");
+    }).when(failing).doFilter(any(), any());
+
+    assertThrows(IllegalStateException.class, () -> filter.doFilter(
+        mock(HttpServletRequest.class), mock(HttpServletResponse.class), failing));
+
+    assertEquals(0, filter.getInFlight());
+  }
+
+  @Test
+  void testLimitMustBePositive() {
+    IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+        () -> new ConcurrencyLimitFilter(0, 50));
+    assertEquals("Concurrency limit must be positive.", exception.getMessage());
+  }
+
+  private static HttpServletRequest request(String path) {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getContextPath()).thenReturn("");
+    when(request.getRequestURI()).thenReturn(path);
+    return request;
+  }
+}
@@ -0,0 +1,41 @@
+package org.dljl.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.dljl.service.routing.ReadRouting;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Consistency token filter test.
+ */
+public class ConsistencyTokenFilterTest {
+
+  @Test
+  void testParseToken() {
+    assertEquals(42L, ConsistencyTokenFilter.parseToken(" 42 "));
+    assertNull(ConsistencyTokenFilter.parseToken(null));
+    assertNull(ConsistencyTokenFilter.parseToken("yesterday"));
+  }
+
+  @Test
+  void testTokenAppliesForTheRequestOnly() throws Exception {
+    ReadRouting readRouting = new ReadRouting();
+    ReflectionTestUtils.setField(readRouting, "replicaUrls", "jdbc:h2:mem:replica");
+    ReflectionTestUtils.setField(readRouting, "maxLagMillis", 60_000L);
+    readRouting.init();
+    ConsistencyTokenFilter filter = new ConsistencyTokenFilter(readRouting);
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/appointments/7");
+    request.addHeader(ReadRouting.TOKEN_HEADER, Long.toString(System.currentTimeMillis()));
+
+    filter.doFilter(request, new MockHttpServletResponse(),
+        (req, res) -> assertNull(readRouting.read(7L, readRouting::currentReplica)));
+
+    assertNotNull(readRouting.read(7L, readRouting::currentReplica));
+    assertEquals(1, readRouting.getPrimaryReads());
+  }
+}
@@ -0,0 +1,77 @@
+package org.dljl.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import jakarta.servlet.ServletException;
+import org.dljl.service.metrics.BusinessMetrics;
+import org.dljl.service.metrics.RequestMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * The type Request metrics filter test.
+ */
+public class RequestMetricsFilterTest {
+
+  private RequestMetrics requestMetrics;
+
+  private RequestMetricsFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    requestMetrics = new RequestMetrics();
+    filter = new RequestMetricsFilter(requestMetrics);
+  }
+
+  @Test
+  void testRecordsMatchedRoute() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/appointments/7");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request, response, (req, res) -> req.setAttribute(
+        HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/appointments/{id}"));
+
+    assertEquals(1, outcomeCount("GET", "/appointments/{id}", "success"));
+  }
+
+  @Test
+  void testRecordsConflictAndUnmatchedRoutes() throws Exception {
+    MockHttpServletRequest conflict =
+        new MockHttpServletRequest("POST", "/appointments/createAppointment");
+    filter.doFilter(conflict, new MockHttpServletResponse(), (req, res) -> {
+      req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+          "/appointments/createAppointment");
+      req.setAttribute(BusinessMetrics.CONFLICT_ATTRIBUTE, Boolean.TRUE);
+      ((MockHttpServletResponse) res).setStatus(400);
+    });
+    MockHttpServletResponse notFound = new MockHttpServletResponse();
+    notFound.setStatus(404);
+    filter.doFilter(new MockHttpServletRequest("GET", "/wp-login.php"), notFound,
+        (req, res) -> { });
+
+    assertEquals(1, outcomeCount("POST", "/appointments/createAppointment", "conflict"));
+    assertEquals(1, outcomeCount("GET", RequestMetricsFilter.UNMATCHED, "client_error"));
+  }
+
+  @Test
+  void testExceptionCountsAsServerError() {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/appointments/7");
+
+    assertThrows(ServletException.class, () -> filter.doFilter(request,
+        new MockHttpServletResponse(), (req, res) -> {
+          req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/appointments/{id}");
+          throw new ServletException("boom");
+        }));
+
+    assertEquals(1, outcomeCount("GET", "/appointments/{id}", "server_error"));
+  }
+
+  private long outcomeCount(String method, String route, String outcome) {
+    return requestMetrics.endpoints().get(new RequestMetrics.Endpoint(method, route))
+        .outcomes().get(outcome).sum();
+  }
+}
@@ -0,0 +1,146 @@
+package org.dljl.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dljl.AppointmentManagementService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Compares throughput and p99 latency of DB-bound reads with requests on the platform thread
+ * pool and on virtual threads. Slow and only meaningful on Java 21, so it runs only with
+ * {@code -Dbenchmark=true}. H2 runs in-process, so a query never waits on the network and the
+ * numbers understate what virtual threads gain against a remote MySQL.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class VirtualThreadBenchmarkIt {
+
+  private static final Logger logger = LoggerFactory.getLogger(VirtualThreadBenchmarkIt.class);
+
+  private static final int PROVIDERS = 50;
+  private static final int CLIENTS = 200;
+  private static final int REQUESTS_PER_CLIENT = 50;
+
+  @Test
+  void benchmarkPlatformAgainstVirtualThreads() throws Exception {
+    assumeTrue(Runtime.version().feature() >= 21, "Virtual threads need Java 21");
+
+    Result platform = run(false);
+    Result virtual = run(true);
+
+    logger.info("Platform threads: {} requests per second, p99 {} ms",
+        Math.round(platform.throughput()), platform.p99Millis());
+    logger.info("Virtual threads: {} requests per second, p99 {} ms, {} rejected",
+        Math.round(virtual.throughput()), virtual.p99Millis(), virtual.errors());
+    assertEquals(0, platform.errors());
+    assertEquals(0, virtual.errors());
+    // Against in-process H2 virtual threads gain little, but they must not cost much either
+    assertTrue(virtual.throughput() >= platform.throughput() / 2,
+        "Virtual threads served less than half the requests per second of platform threads");
+    assertTrue(virtual.p99Millis() <= 2 * platform.p99Millis() + 10,
+        "Virtual threads more than doubled the p99 latency of platform threads");
+  }
+
+  private Result run(boolean virtualThreads) throws Exception {
+    ConfigurableApplicationContext context =
+        new SpringApplicationBuilder(AppointmentManagementService.class)
+            .profiles("test")
+            .properties("server.port=0",
+                "spring.datasource.url=jdbc:h2:mem:benchmark" + virtualThreads + ";MODE=MySQL",
+                "appointment.virtual-threads.enabled=" + virtualThreads,
+                // Queue behind the cap rather than fail, the benchmark measures the wait
+                "appointment.virtual-threads.acquire-timeout-ms=60000")
+            .run();
+    try {
+      seed(context.getBean(JdbcTemplate.class));
+      int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+      load(port, 1, 10);
+      return load(port, CLIENTS, REQUESTS_PER_CLIENT);
+    } finally {
+      context.close();
+    }
+  }
+
+  private void seed(JdbcTemplate jdbcTemplate) {
+    List<Object[]> rows = new ArrayList<>();
+    for (long providerId = 1; providerId <= PROVIDERS; providerId++) {
+      for (int day = 1; day <= 28; day++) {
+        LocalDateTime start = LocalDateTime.of(2024, 2, day, 9, 0);
+        rows.add(new Object[] {providerId, (long) day, Timestamp.valueOf(start),
+            Timestamp.valueOf(start.plusHours(1))});
+      }
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO appointments (provider_id, user_id, start_date_time, "
+        + "end_date_time, status, service_type, comments) "
+        + "VALUES (?, ?, ?, ?, 'SCHEDULED', 'Medical', 'benchmark')", rows);
+  }
+
+  private Result load(int port, int clients, int requestsPerClient) throws Exception {
+    HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+    long[] latencies = new long[clients * requestsPerClient];
+    AtomicInteger errors = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(clients);
+    long started = System.nanoTime();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int c = 0; c < clients; c++) {
+        int clientIndex = c;
+        futures.add(pool.submit(() -> {
+          for (int r = 0; r < requestsPerClient; r++) {
+            long providerId = (clientIndex + r) % PROVIDERS + 1;
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+                + "/appointments/provider/" + providerId
+                + "/appointments?startDate=2024-02-01&endDate=2024-02-29")).GET().build();
+            long sent = System.nanoTime();
+            HttpResponse<String> response =
+                client.send(request, HttpResponse.BodyHandlers.ofString());
+            latencies[clientIndex * requestsPerClient + r] = System.nanoTime() - sent;
+            if (response.statusCode() != 200) {
+              errors.incrementAndGet();
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.MINUTES);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    long elapsed = System.nanoTime() - started;
+    Arrays.sort(latencies);
+    long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+    return new Result(latencies.length * 1e9 / elapsed, TimeUnit.NANOSECONDS.toMillis(p99),
+        errors.get());
+  }
+
+  private record Result(double throughput, long p99Millis, int errors) {
+  }
+}
@@ -0,0 +1,50 @@
+package org.dljl.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Virtual thread config test.
+ */
+public class VirtualThreadConfigTest {
+
+  @Test
+  void testVirtualThreadExecutorMatchesRuntime() {
+    ExecutorService executor = VirtualThreadConfig.newVirtualThreadPerTaskExecutor();
+    try {
+      assertEquals(Runtime.version().feature() >= 21, executor != null);
+    } finally {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+  }
+
+  @Test
+  void testConcurrencyLimitDefaultsToConnectionPoolSize() {
+    VirtualThreadConfig config = new VirtualThreadConfig();
+    ReflectionTestUtils.setField(config, "connectionPoolSize", 10);
+    ReflectionTestUtils.setField(config, "maxConcurrentRequests", 0);
+
+    assertEquals(10, config.concurrencyLimitFilter().getLimit());
+
+    ReflectionTestUtils.setField(config, "maxConcurrentRequests", 25);
+    assertEquals(25, config.concurrencyLimitFilter().getLimit());
+  }
+
+  @Test
+  void testConcurrencyLimitLeavesTwoConnectionsPerRequestUnderDbGuard() {
+    VirtualThreadConfig config = new VirtualThreadConfig();
+    ReflectionTestUtils.setField(config, "connectionPoolSize", 10);
+    ReflectionTestUtils.setField(config, "maxConcurrentRequests", 0);
+    ReflectionTestUtils.setField(config, "dbGuard", true);
+
+    assertEquals(5, config.concurrencyLimitFilter().getLimit());
+
+    ReflectionTestUtils.setField(config, "connectionPoolSize", 1);
+    assertEquals(1, config.concurrencyLimitFilter().getLimit());
+  }
+}
@@ -1,6 +1,8 @@
 package org.dljl.controller;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -9,6 +11,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.jayway.jsonpath.JsonPath;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -17,6 +22,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 /**
  * Integration tests for AppointmentController.
@@ -221,4 +227,329 @@ public class AppointmentControllerIt {
       .andExpect(jsonPath("$[0].status").value("COMPLETED"))
         .andExpect(jsonPath("$[0].comments").value("Updated comments"));
   }
+
+  /**
+   * Test a recurring block is stored as a rule and shows up in the availability of a day.
+   */
+  @Test
+  void testRecurringBlockRuleBlocksAvailability() throws Exception {
+    String blockDtoJson = """
+                {
+                    "providerId": 1,
+                    "startTime": "12:00",
+                    "endTime": "13:00",
+                    "startDate": "2024-01-01",
+                    "endDate": "2024-01-03"
+                }
+            """;
+
+    mockMvc.perform(post("/appointments/createRecurringBlock")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(blockDtoJson))
+        .andExpect(status().isCreated());
+
+    mockMvc.perform(get("/appointments/provider/1/recurringBlocks"))
+      .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1));
+
+    mockMvc.perform(get("/appointments/provider/1/available/date/2024-01-02"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(3))
+      .andExpect(jsonPath("$[1][1]").value("2024-01-02T12:00:00"))
+        .andExpect(jsonPath("$[2][0]").value("2024-01-02T13:00:00"));
+  }
+
+
+  /**
+   * Test that the range availability matches the single day availability for each day.
+   */
+  @Test
+  void testGetAvailableTimeIntervalsInRange() throws Exception {
+    mockMvc.perform(get("/appointments/provider/1/available")
+        .param("startDate", "2024-01-01")
+        .param("endDate", "2024-01-04"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(3))
+      .andExpect(jsonPath("$['2024-01-01'].length()").value(2))
+      .andExpect(jsonPath("$['2024-01-01'][0][1]").value("2024-01-01T09:00:00"))
+      .andExpect(jsonPath("$['2024-01-01'][1][0]").value("2024-01-01T10:00:00"))
+        .andExpect(jsonPath("$['2024-01-03'].length()").value(1));
+  }
+
+
+  /**
+   * Test the common free time of two providers loaded with one query.
+   */
+  @Test
+  void testGetCommonAvailability() throws Exception {
+    mockMvc.perform(post("/appointments/createAppointment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+                {
+                    "providerId": 2,
+                    "userId": 5,
+                    "startDateTime": "2024-01-01T09:30:00",
+                    "endDateTime": "2024-01-01T11:00:00",
+                    "status": "SCHEDULED",
+                    "serviceType": "Medical",
+                    "comments": "Second provider"
+                }
+            """))
+        .andExpect(status().isCreated());
+
+    mockMvc.perform(get("/appointments/commonAvailability")
+        .param("providerIds", "1,2")
+        .param("startDate", "2024-01-01")
+        .param("endDate", "2024-01-02"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(2))
+      .andExpect(jsonPath("$[0][1]").value("2024-01-01T09:00:00"))
+        .andExpect(jsonPath("$[1][0]").value("2024-01-01T11:00:00"));
+  }
+
+
+  /**
+   * Test that a retried create with the same idempotency key is answered with the original
+   * appointment instead of a conflict.
+   */
+  @Test
+  void testCreateAppointmentRetryWithIdempotencyKey() throws Exception {
+    String appointmentJson = """
+                {
+                    "providerId": 3,
+                    "userId": 5,
+                    "startDateTime": "2024-02-01T09:00:00",
+                    "endDateTime": "2024-02-01T10:00:00",
+                    "status": "SCHEDULED",
+                    "serviceType": "Medical",
+                    "comments": "Retried request"
+                }
+            """;
+
+    String first = mockMvc.perform(post("/appointments/createAppointment")
+        .header("Idempotency-Key", "it-retry-1")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(appointmentJson))
+        .andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+
+    mockMvc.perform(post("/appointments/createAppointment")
+        .header("Idempotency-Key", "it-retry-1")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(appointmentJson))
+        .andExpect(status().isCreated())
+        .andExpect(content().json(first));
+
+    mockMvc.perform(get("/appointments/provider/3"))
+      .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1));
+  }
+
+
+  /**
+   * Test creating a batch of appointments, one of which conflicts with a stored appointment and
+   * one with an earlier appointment of the batch.
+   */
+  @Test
+  void testCreateAppointmentsBatch() throws Exception {
+    mockMvc.perform(post("/appointments/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+                [
+                    {"providerId": 1, "userId": 5, "startDateTime": "2024-01-01T09:30:00",
+                     "endDateTime": "2024-01-01T10:30:00", "status": "SCHEDULED"},
+                    {"providerId": 1, "userId": 5, "startDateTime": "2024-01-01T11:00:00",
+                     "endDateTime": "2024-01-01T12:00:00", "status": "SCHEDULED"},
+                    {"providerId": 1, "userId": 6, "startDateTime": "2024-01-01T11:30:00",
+                     "endDateTime": "2024-01-01T12:30:00", "status": "SCHEDULED"},
+                    {"providerId": 4, "userId": 6, "startDateTime": "2024-01-01T11:30:00",
+                     "endDateTime": "2024-01-01T12:30:00", "status": "SCHEDULED"}
+                ]
+            """))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.length()").value(4))
+      .andExpect(jsonPath("$[0].error").value("The selected time slot is not available "
+          + "or conflicts with an existing appointment."))
+      .andExpect(jsonPath("$[1].appointmentId").isNumber())
+      .andExpect(jsonPath("$[2].error").value("Conflicts with appointment 1 of the batch."))
+        .andExpect(jsonPath("$[3].appointmentId").isNumber());
+
+    mockMvc.perform(get("/appointments/provider/1/date/2024-01-01"))
+      .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2));
+  }
+
+
+  /**
+   * Test deleting only the blocks of a provider in a range, then cancelling the rest.
+   */
+  @Test
+  void testBulkDeleteBlocksAndCancelRange() throws Exception {
+    for (String day : new String[] {"2024-01-03", "2024-01-04"}) {
+      mockMvc.perform(post("/appointments/createBlock")
+          .contentType(MediaType.APPLICATION_JSON)
+          .content("{\"providerId\": 1, \"startDateTime\": \"" + day + "T09:00:00\","
+              + " \"endDateTime\": \"" + day + "T17:00:00\"}"))
+          .andExpect(status().isCreated());
+    }
+
+    mockMvc.perform(delete("/appointments/provider/1/deleteRange")
+        .param("startDateTime", "2024-01-01T00:00:00")
+        .param("endDateTime", "2024-02-01T00:00:00")
+        .param("status", "blocked"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.affected").value(2))
+        .andExpect(jsonPath("$.appointmentIds.length()").value(2));
+
+    mockMvc.perform(put("/appointments/provider/1/cancelRange")
+        .param("startDateTime", "2024-01-01T00:00:00")
+        .param("endDateTime", "2024-01-02T00:00:00"))
+      .andExpect(status().isOk())
+      .andExpect(jsonPath("$.affected").value(1))
+        .andExpect(jsonPath("$.appointmentIds[0]").value(1));
+
+    mockMvc.perform(get("/appointments/1"))
+      .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("cancelled"));
+  }
+
+  /**
+   * Test walking the appointments of a provider page by page with the next cursor.
+   */
+  @Test
+  void testGetAppointmentsByProviderIdPages() throws Exception {
+    mockMvc.perform(post("/appointments/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+                [
+                    {"providerId": 6, "userId": 7, "startDateTime": "2024-05-03T09:00:00",
+                     "endDateTime": "2024-05-03T10:00:00", "status": "scheduled"},
+                    {"providerId": 6, "userId": 7, "startDateTime": "2024-05-01T09:00:00",
+                     "endDateTime": "2024-05-01T10:00:00", "status": "scheduled"},
+                    {"providerId": 6, "userId": 8, "startDateTime": "2024-05-02T09:00:00",
+                     "endDateTime": "2024-05-02T10:00:00", "status": "scheduled"},
+                    {"providerId": 6, "userId": 7, "startDateTime": "2024-05-01T11:00:00",
+                     "endDateTime": "2024-05-01T12:00:00", "status": "scheduled"},
+                    {"providerId": 6, "userId": 7, "startDateTime": "2024-05-04T09:00:00",
+                     "endDateTime": "2024-05-04T10:00:00", "status": "scheduled"}
+                ]
+            """))
+        .andExpect(status().isOk());
+
+    List<String> starts = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      MockHttpServletRequestBuilder request = get("/appointments/provider/6").param("limit", "2");
+      if (cursor != null) {
+        request.param("cursor", cursor);
+      }
+      String body = mockMvc.perform(request)
+          .andExpect(status().isOk())
+          .andReturn().getResponse().getContentAsString();
+      List<String> pageStarts = JsonPath.read(body, "$.items[*].startDateTime");
+      starts.addAll(pageStarts);
+      cursor = JsonPath.read(body, "$.nextCursor");
+      pages++;
+    } while (cursor != null);
+
+    assertEquals(3, pages);
+    assertEquals(List.of("2024-05-01T09:00:00", "2024-05-01T11:00:00", "2024-05-02T09:00:00",
+        "2024-05-03T09:00:00", "2024-05-04T09:00:00"), starts);
+
+    mockMvc.perform(get("/appointments/history")
+        .param("provider_id", "6")
+        .param("user_id", "7")
+        .param("limit", "3"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(3))
+        .andExpect(jsonPath("$.items[2]['Start Date and Time']").value("2024-05-03T09:00:00"))
+        .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+
+    mockMvc.perform(get("/appointments/history")
+        .param("provider_id", "6")
+        .param("user_id", "7")
+        .param("startDate", "2024-05-02")
+        .param("endDate", "2024-05-04"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items.length()").value(1))
+        .andExpect(jsonPath("$.items[0]['End Date and Time']").value("2024-05-03T10:00:00"))
+        .andExpect(jsonPath("$.items[0]['Status']").value("scheduled"))
+        .andExpect(jsonPath("$.nextCursor").isEmpty());
+
+    mockMvc.perform(get("/appointments/provider/6").param("limit", "501"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Limit must be between 1 and 500."));
+  }
+
+  /**
+   * Test exporting the rows of a provider as newline-delimited JSON, with and without filters.
+   */
+  @Test
+  void testExportAppointments() throws Exception {
+    String all = mockMvc.perform(get("/appointments/provider/1/export"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+        .andReturn().getResponse().getContentAsString();
+    String[] lines = all.split("\n");
+    assertEquals(2, lines.length);
+    assertEquals(1, (Integer) JsonPath.read(lines[0], "$.appointmentId"));
+    assertEquals(2, (Integer) JsonPath.read(lines[1], "$.appointmentId"));
+
+    mockMvc.perform(get("/appointments/provider/1/export").param("status", "CANCELLED"))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("\"appointmentId\":2")))
+        .andExpect(content().string(not(containsString("\"appointmentId\":1"))));
+
+    mockMvc.perform(get("/appointments/provider/1/export")
+        .param("startDate", "2024-01-01")
+        .param("endDate", "2024-01-02"))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("\"appointmentId\":1")))
+        .andExpect(content().string(not(containsString("\"appointmentId\":2"))));
+
+    mockMvc.perform(get("/appointments/provider/1/export")
+        .param("startDate", "2024-01-02")
+        .param("endDate", "2024-01-01"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Start date must be before end date."));
+  }
+
+  /**
+   * Test that requests, conflicts and statements are exported in Prometheus format.
+   */
+  @Test
+  void testPrometheusMetrics() throws Exception {
+    mockMvc.perform(post("/appointments/createAppointment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+            {
+                "providerId": 1,
+                "userId": 4,
+                "startDateTime": "2024-01-01T09:30:00",
+                "endDateTime": "2024-01-01T10:30:00",
+                "status": "SCHEDULED"
+            }
+            """))
+        .andExpect(status().isBadRequest());
+    mockMvc.perform(get("/appointments/provider/1/export")
+        .param("startDate", "2024-01-02")
+        .param("endDate", "2024-01-01"))
+        .andExpect(status().isBadRequest());
+
+    mockMvc.perform(get("/metrics/prometheus"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+        .andExpect(content().string(containsString("http_requests_total{method=\"POST\","
+            + "route=\"/appointments/createAppointment\",outcome=\"conflict\"}")))
+        .andExpect(content().string(containsString("http_request_errors_total{method=\"GET\","
+            + "route=\"/appointments/provider/{providerId}/export\",outcome=\"client_error\"}")))
+        .andExpect(content().string(containsString("http_request_duration_seconds_count{"
+            + "method=\"POST\",route=\"/appointments/createAppointment\"}")))
+        .andExpect(content().string(containsString("mybatis_statement_duration_seconds_bucket{"
+            + "statement=\"org.dljl.mapper.AppointmentMapper.checkCreateTimeConflict\"")))
+        .andExpect(content().string(containsString("# TYPE appointment_conflicts_detected_total "
+            + "counter")))
+        .andExpect(content().string(containsString("hikaricp_connections_active{pool=")));
+  }
 }
@@ -1,7 +1,14 @@
 package org.dljl.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -11,19 +18,34 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.dljl.dto.AppointmentHistoryEntry;
+import org.dljl.dto.AppointmentHistoryPage;
+import org.dljl.dto.AppointmentPage;
+import org.dljl.dto.BatchAppointmentResult;
+import org.dljl.dto.BulkOperationResult;
 import org.dljl.dto.CreateAppointmentDto;
 import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
 import org.dljl.service.AppointmentService;
+import org.dljl.service.idempotency.IdempotencyStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
@@ -37,12 +59,23 @@ public class AppointmentControllerTest {
   @Mock
   private AppointmentService appointmentService;
 
+  @Spy
+  private IdempotencyStore idempotencyStore = new IdempotencyStore();
+
+  // Configured like the ObjectMapper of the application context
+  @Spy
+  private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
   @InjectMocks
   private AppointmentController appointmentController;
 
   @BeforeEach
   public void setUp() {
     MockitoAnnotations.openMocks(this);
+    ReflectionTestUtils.setField(idempotencyStore, "maxEntries", 100);
+    ReflectionTestUtils.setField(idempotencyStore, "ttlSeconds", 60L);
+    ReflectionTestUtils.setField(idempotencyStore, "waitSeconds", 5L);
     mockMvc = MockMvcBuilders.standaloneSetup(appointmentController).build();
   }
 
@@ -93,6 +126,182 @@ public class AppointmentControllerTest {
   }
 
 
+  @Test
+  public void testCreateAppointmentRetryWithIdempotencyKeyIsReplayed() throws Exception {
+    String appointmentJson = """
+            {
+                "providerId": 1,
+                "userId": 2,
+                "startDateTime": "2024-01-01T09:00:00",
+                "endDateTime": "2024-01-01T10:00:00",
+                "status": "SCHEDULED",
+                "serviceType": "Medical"
+            }
+        """;
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(7L);
+    when(appointmentService.createAppointment(any())).thenReturn(appointment);
+
+    for (int i = 0; i < 2; i++) {
+      mockMvc.perform(post("/appointments/createAppointment")
+              .header("Idempotency-Key", "retry-1")
+              .contentType(MediaType.APPLICATION_JSON)
+              .content(appointmentJson))
+          .andExpect(status().isCreated())
+          .andExpect(jsonPath("$.appointmentId").value(7));
+    }
+
+    verify(appointmentService, times(1)).createAppointment(any());
+  }
+
+  @Test
+  public void testCreateAppointmentServerErrorIsNotReplayed() throws Exception {
+    String appointmentJson = """
+            {
+                "providerId": 1,
+                "startDateTime": "2024-01-01T09:00:00",
+                "endDateTime": "2024-01-01T10:00:00"
+            }
+        """;
+    when(appointmentService.createAppointment(any()))
+        .thenThrow(new RuntimeException("Unexpected error"))
+        .thenReturn(new Appointment());
+
+    mockMvc.perform(post("/appointments/createAppointment")
+            .header("Idempotency-Key", "retry-2")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(appointmentJson))
+        .andExpect(status().isInternalServerError());
+    mockMvc.perform(post("/appointments/createAppointment")
+            .header("Idempotency-Key", "retry-2")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(appointmentJson))
+        .andExpect(status().isCreated());
+
+    verify(appointmentService, times(2)).createAppointment(any());
+  }
+
+  @Test
+  public void testCreateAppointmentIdempotencyKeyReusedWithAnotherBody() throws Exception {
+    String appointmentJson = """
+            {
+                "providerId": 1,
+                "startDateTime": "2024-01-01T09:00:00",
+                "endDateTime": "2024-01-01T10:00:00"
+            }
+        """;
+    when(appointmentService.createAppointment(any())).thenReturn(new Appointment());
+
+    mockMvc.perform(post("/appointments/createAppointment")
+            .header("Idempotency-Key", "retry-3")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(appointmentJson))
+        .andExpect(status().isCreated());
+    mockMvc.perform(post("/appointments/createAppointment")
+            .header("Idempotency-Key", "retry-3")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(appointmentJson.replace("10:00", "11:00")))
+        .andExpect(status().isUnprocessableEntity())
+        .andExpect(content().string(
+            "Idempotency-Key was already used with a different request body."));
+
+    verify(appointmentService, times(1)).createAppointment(any());
+  }
+
+  @Test
+  public void testCreateBlockIdempotencyKeyIsScopedToTheEndpoint() throws Exception {
+    String blockJson = """
+            {
+                "providerId": 1,
+                "startDateTime": "2024-01-01T09:00:00",
+                "endDateTime": "2024-01-01T10:00:00"
+            }
+        """;
+    when(appointmentService.createAppointment(any())).thenReturn(new Appointment());
+    when(appointmentService.createBlock(any())).thenReturn("Block created");
+
+    mockMvc.perform(post("/appointments/createAppointment")
+            .header("Idempotency-Key", "shared")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(blockJson))
+        .andExpect(status().isCreated());
+    mockMvc.perform(post("/appointments/createBlock")
+            .header("Idempotency-Key", "shared")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(blockJson))
+        .andExpect(status().isCreated())
+        .andExpect(content().string("Block created"));
+  }
+
+  @Test
+  public void testCreateBlockWithTooLongIdempotencyKey() throws Exception {
+    mockMvc.perform(post("/appointments/createBlock")
+            .header("Idempotency-Key", "k".repeat(256))
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"providerId\": 1}"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Idempotency-Key must be between 1 and 255 characters."));
+  }
+
+  @Test
+  public void testCreateAppointmentsBatch() throws Exception {
+    BatchAppointmentResult created = new BatchAppointmentResult();
+    created.setAppointmentId(11L);
+    BatchAppointmentResult rejected = new BatchAppointmentResult();
+    rejected.setIndex(1);
+    rejected.setError("Conflicts with appointment 0 of the batch.");
+    when(appointmentService.createAppointments(any())).thenReturn(List.of(created, rejected));
+
+    mockMvc.perform(post("/appointments/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"providerId\": 1}, {\"providerId\": 1}]"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].appointmentId").value(11))
+        .andExpect(jsonPath("$[1].index").value(1))
+        .andExpect(jsonPath("$[1].error").value("Conflicts with appointment 0 of the batch."));
+  }
+
+  @Test
+  public void testCreateAppointmentsBatchTooLarge() throws Exception {
+    when(appointmentService.createAppointments(any())).thenThrow(
+        new IllegalArgumentException("At most 1000 appointments can be created at once."));
+
+    mockMvc.perform(post("/appointments/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[]"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("At most 1000 appointments can be created at once."));
+  }
+
+  @Test
+  public void testCancelAppointmentsInRange() throws Exception {
+    BulkOperationResult cancelled = new BulkOperationResult();
+    cancelled.setAffected(2);
+    cancelled.setAppointmentIds(List.of(3L, 4L));
+    when(appointmentService.cancelAppointmentsInRange(1L, LocalDateTime.of(2024, 1, 1, 0, 0),
+        LocalDateTime.of(2025, 1, 1, 0, 0), "blocked")).thenReturn(cancelled);
+
+    mockMvc.perform(put("/appointments/provider/1/cancelRange")
+            .param("startDateTime", "2024-01-01T00:00:00")
+            .param("endDateTime", "2025-01-01T00:00:00")
+            .param("status", "blocked"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.affected").value(2))
+        .andExpect(jsonPath("$.appointmentIds[1]").value(4));
+  }
+
+  @Test
+  public void testDeleteAppointmentsInRangeInvalidRange() throws Exception {
+    when(appointmentService.deleteAppointmentsInRange(any(), any(), any(), any())).thenThrow(
+        new IllegalArgumentException("Start date time must be before end date time."));
+
+    mockMvc.perform(delete("/appointments/provider/1/deleteRange")
+            .param("startDateTime", "2024-01-02T00:00:00")
+            .param("endDateTime", "2024-01-01T00:00:00"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Start date time must be before end date time."));
+  }
+
   @Test
   public void testCreateBlock() throws Exception {
     String blockJson = """
@@ -220,6 +429,18 @@ public class AppointmentControllerTest {
         .andExpect(content().string("Appointment ID is required"));
   }
 
+  @Test
+  public void testUpdateAppointmentChangedConcurrently() throws Exception {
+    when(appointmentService.updateAppointment(any()))
+        .thenThrow(new IllegalStateException("The appointment was changed concurrently."));
+
+    mockMvc.perform(put("/appointments/update")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"appointmentId\": 1, \"comments\": \"Updated comments\"}"))
+        .andExpect(status().isConflict())
+        .andExpect(content().string("The appointment was changed concurrently."));
+  }
+
 
   @Test
   public void testCancelAppointment() throws Exception {
@@ -324,7 +545,7 @@ public class AppointmentControllerTest {
   @Test
   public void testGetAppointmentHistoryWithData() throws Exception {
     when(appointmentService.getAppointmentHistory(anyLong(), anyLong()))
-        .thenReturn(List.of(createMockAppointment()));
+        .thenReturn(List.of(createMockHistoryEntry()));
 
     mockMvc.perform(get("/appointments/history")
         .param("provider_id", "1")
@@ -485,10 +706,15 @@ public class AppointmentControllerTest {
     return appointment;
   }
 
+  private AppointmentHistoryEntry createMockHistoryEntry() {
+    return new AppointmentHistoryEntry(1L, LocalDateTime.of(2024, 1, 1, 9, 0),
+        LocalDateTime.of(2024, 1, 1, 10, 0), "Scheduled", "Medical", "Test appointment");
+  }
+
   @Test
   public void testGetAppointmentHistoryWithNonEmptyHistory() throws Exception {
     when(appointmentService.getAppointmentHistory(anyLong(), anyLong()))
-        .thenReturn(List.of(createMockAppointment()));
+        .thenReturn(List.of(createMockHistoryEntry()));
 
     mockMvc.perform(get("/appointments/history")
         .param("provider_id", "1")
@@ -565,5 +791,247 @@ public class AppointmentControllerTest {
         .andExpect(content().string("Block not found or already deleted."));
   }
 
+  @Test
+  public void testGetRecurringBlocks() throws Exception {
+    RecurringBlock recurringBlock = new RecurringBlock();
+    recurringBlock.setRecurringBlockId(7L);
+    recurringBlock.setProviderId(1L);
+    when(appointmentService.getRecurringBlocks(1L)).thenReturn(List.of(recurringBlock));
+
+    mockMvc.perform(get("/appointments/provider/1/recurringBlocks"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].recurringBlockId").value(7));
+  }
+
+  @Test
+  public void testDeleteRecurringBlock() throws Exception {
+    when(appointmentService.deleteRecurringBlock(7L)).thenReturn(true);
+    when(appointmentService.deleteRecurringBlock(8L)).thenReturn(false);
+
+    mockMvc.perform(delete("/appointments/deleteRecurringBlock/7"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("Recurring block deleted successfully."));
+    mockMvc.perform(delete("/appointments/deleteRecurringBlock/8"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Recurring block not found or already deleted."));
+  }
+
+  @Test
+  public void testDeleteRecurringBlockOccurrence() throws Exception {
+    when(appointmentService.deleteRecurringBlockOccurrence(7L, LocalDate.of(2024, 12, 25)))
+        .thenReturn(true);
+    when(appointmentService.deleteRecurringBlockOccurrence(7L, LocalDate.of(2024, 12, 26)))
+        .thenThrow(new IllegalArgumentException(
+            "The recurring block does not occur on 2024-12-26."));
+
+    mockMvc.perform(delete("/appointments/deleteRecurringBlock/7/occurrence/2024-12-25"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("Recurring block occurrence deleted successfully."));
+    mockMvc.perform(delete("/appointments/deleteRecurringBlock/7/occurrence/2024-12-26"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("The recurring block does not occur on 2024-12-26."));
+  }
+
+
+  @Test
+  public void testGetAvailableTimeIntervalsInRange() throws Exception {
+    LocalDate date = LocalDate.of(2024, 1, 1);
+    Map<LocalDate, List<List<LocalDateTime>>> availability = new LinkedHashMap<>();
+    availability.put(date, List.of(List.of(date.atStartOfDay(), date.atTime(9, 0))));
+    availability.put(date.plusDays(1), List.of());
+    when(appointmentService.getAvailableTimeIntervalsInRange(1L, date, date.plusDays(2)))
+        .thenReturn(availability);
+
+    mockMvc.perform(get("/appointments/provider/1/available")
+        .param("startDate", "2024-01-01")
+        .param("endDate", "2024-01-03"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$['2024-01-01'].length()").value(1))
+        .andExpect(jsonPath("$['2024-01-02'].length()").value(0));
+  }
+
+  @Test
+  public void testGetAvailableTimeIntervalsInRangeInvalidRange() throws Exception {
+    when(appointmentService.getAvailableTimeIntervalsInRange(anyLong(), any(), any()))
+        .thenThrow(new IllegalArgumentException("Start date must be before end date."));
+
+    mockMvc.perform(get("/appointments/provider/1/available")
+        .param("startDate", "2024-01-03")
+        .param("endDate", "2024-01-01"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Start date must be before end date."));
+  }
+
+
+  @Test
+  public void testFindAvailableSlots() throws Exception {
+    LocalDateTime start = LocalDateTime.of(2024, 1, 2, 14, 0);
+    when(appointmentService.findAvailableSlots(1L, 45, start, null, 1))
+        .thenReturn(List.of(List.of(start, start.plusMinutes(45))));
+
+    mockMvc.perform(get("/appointments/provider/1/nextAvailable")
+        .param("durationMinutes", "45")
+        .param("earliestStart", "2024-01-02T14:00:00"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(jsonPath("$[0].length()").value(2));
+  }
+
+  @Test
+  public void testFindAvailableSlotsInvalidDuration() throws Exception {
+    when(appointmentService.findAvailableSlots(anyLong(), anyInt(), any(), any(), anyInt()))
+        .thenThrow(new IllegalArgumentException("Duration must be between 1 and 1440 minutes."));
+
+    mockMvc.perform(get("/appointments/provider/1/nextAvailable")
+        .param("durationMinutes", "0")
+        .param("earliestStart", "2024-01-02T14:00:00"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Duration must be between 1 and 1440 minutes."));
+  }
+
+
+  @Test
+  public void testGetCommonAvailability() throws Exception {
+    LocalDate date = LocalDate.of(2024, 1, 1);
+    when(appointmentService.getCommonAvailability(List.of(1L, 2L), date, date.plusDays(1), 30))
+        .thenReturn(List.of(List.of(date.atStartOfDay(), date.atTime(9, 0))));
+
+    mockMvc.perform(get("/appointments/commonAvailability")
+        .param("providerIds", "1,2")
+        .param("startDate", "2024-01-01")
+        .param("endDate", "2024-01-02")
+        .param("minDurationMinutes", "30"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1));
+  }
+
+  @Test
+  public void testGetCommonAvailabilityInvalidRange() throws Exception {
+    when(appointmentService.getCommonAvailability(any(), any(), any(), any()))
+        .thenThrow(new IllegalArgumentException("Start date must be before end date."));
+
+    mockMvc.perform(get("/appointments/commonAvailability")
+        .param("providerIds", "1,2")
+        .param("startDate", "2024-01-02")
+        .param("endDate", "2024-01-01"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Start date must be before end date."));
+  }
+
+  @Test
+  public void testGetAppointmentsByProviderIdPage() throws Exception {
+    AppointmentPage page = new AppointmentPage();
+    page.setItems(List.of(createMockAppointment()));
+    page.setNextCursor("next");
+    when(appointmentService.getAppointmentsByProviderId(1L, "abc", 1)).thenReturn(page);
+
+    mockMvc.perform(get("/appointments/provider/1")
+        .param("limit", "1")
+        .param("cursor", "abc"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].appointmentId").value(1))
+        .andExpect(jsonPath("$.nextCursor").value("next"));
+
+    verify(appointmentService, times(0)).getAppointmentsByProviderId(anyLong());
+  }
 
+  @Test
+  public void testGetAppointmentsByProviderIdPageInvalidCursor() throws Exception {
+    when(appointmentService.getAppointmentsByProviderId(1L, "bad", null))
+        .thenThrow(new IllegalArgumentException("Invalid cursor."));
+
+    mockMvc.perform(get("/appointments/provider/1").param("cursor", "bad"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Invalid cursor."));
+  }
+
+  @Test
+  public void testGetAppointmentHistoryPage() throws Exception {
+    AppointmentHistoryPage page = new AppointmentHistoryPage();
+    page.setItems(List.of(createMockHistoryEntry()));
+    when(appointmentService.getAppointmentHistory(1L, 2L, LocalDate.of(2024, 1, 1), null, null,
+        10)).thenReturn(page);
+
+    mockMvc.perform(get("/appointments/history")
+        .param("provider_id", "1")
+        .param("user_id", "2")
+        .param("startDate", "2024-01-01")
+        .param("limit", "10"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0]['Appointment ID']").value(1))
+        .andExpect(jsonPath("$.items[0]['Status']").value("Scheduled"))
+        .andExpect(jsonPath("$.items[0]['Start Date and Time']").value("2024-01-01T09:00:00"))
+        .andExpect(jsonPath("$.nextCursor").isEmpty());
+  }
+
+  @Test
+  public void testGetAppointmentHistoryPageInvalidRange() throws Exception {
+    when(appointmentService.getAppointmentHistory(1L, 2L, LocalDate.of(2024, 2, 1),
+        LocalDate.of(2024, 1, 1), null, null))
+        .thenThrow(new IllegalArgumentException("Start date must be before end date."));
+
+    mockMvc.perform(get("/appointments/history")
+        .param("provider_id", "1")
+        .param("user_id", "2")
+        .param("startDate", "2024-02-01")
+        .param("endDate", "2024-01-01"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Start date must be before end date."));
+  }
+
+  @Test
+  public void testGetAppointmentsWithinDateRangePage() throws Exception {
+    AppointmentPage page = new AppointmentPage();
+    page.setItems(List.of(createMockAppointment()));
+    page.setNextCursor("next");
+    when(appointmentService.getAppointmentsWithinDateRange(1L, LocalDate.of(2024, 1, 1),
+        LocalDate.of(2024, 1, 31), null, 1)).thenReturn(page);
+
+    mockMvc.perform(get("/appointments/provider/1/appointments")
+        .param("startDate", "2024-01-01")
+        .param("endDate", "2024-01-31")
+        .param("limit", "1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.items[0].appointmentId").value(1))
+        .andExpect(jsonPath("$.nextCursor").value("next"));
+  }
+
+  @Test
+  public void testExportAppointmentsWritesOneJsonObjectPerLine() throws Exception {
+    Appointment second = createMockAppointment();
+    second.setAppointmentId(2L);
+    when(appointmentService.exportAppointments(eq(1L), eq(LocalDate.of(2024, 1, 1)), isNull(),
+        eq("Scheduled"), any())).thenAnswer(invocation -> {
+          Consumer<Appointment> consumer = invocation.getArgument(4);
+          consumer.accept(createMockAppointment());
+          consumer.accept(second);
+          return 2;
+        });
+
+    String body = mockMvc.perform(get("/appointments/provider/1/export")
+        .param("startDate", "2024-01-01")
+        .param("status", "Scheduled"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+        .andReturn().getResponse().getContentAsString();
+
+    String[] lines = body.split("\n");
+    assertEquals(2, lines.length);
+    assertTrue(body.endsWith("\n"));
+    assertEquals(1, objectMapper.readTree(lines[0]).get("appointmentId").asInt());
+    assertEquals("2024-01-01T09:00:00",
+        objectMapper.readTree(lines[1]).get("startDateTime").asText());
+  }
+
+  @Test
+  public void testExportAppointmentsInvalidRange() throws Exception {
+    when(appointmentService.exportAppointments(anyLong(), any(), any(), any(), any()))
+        .thenThrow(new IllegalArgumentException("Start date must be before end date."));
+
+    mockMvc.perform(get("/appointments/provider/1/export")
+        .param("startDate", "2024-02-01")
+        .param("endDate", "2024-01-01"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Start date must be before end date."));
+  }
 }
@@ -1,13 +1,16 @@
 package org.dljl.controller;
 
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dljl.service.id.SnowflakeIdGenerator;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.web.servlet.MockMvc;
 
 
@@ -16,6 +19,7 @@ import org.springframework.test.web.servlet.MockMvc;
  * Client Controller Test.
  */
 @WebMvcTest(ClientController.class)
+@Import(SnowflakeIdGenerator.class)
 public class ClientControllerTest {
 
   @Autowired
@@ -34,4 +38,17 @@ public class ClientControllerTest {
           "SAVE YOUR CLIENT ID. LOSING IT WILL "
            + "POTENTIALLY LOSE PREVIOUS INFO AND REQUIRE YOU TO REGENERATE ONE"));
   }
+
+  @Test
+  public void testRegisterClientIdsIncrease() throws Exception {
+    long first = registeredClientId();
+    long second = registeredClientId();
+    assertTrue(second > first);
+  }
+
+  private long registeredClientId() throws Exception {
+    String response = mockMvc.perform(post("/clients/registerClient"))
+        .andReturn().getResponse().getContentAsString();
+    return objectMapper.readTree(response).get("client_id").asLong();
+  }
 }
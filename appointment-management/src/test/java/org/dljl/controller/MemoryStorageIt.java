@@ -0,0 +1,98 @@
+package org.dljl.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import javax.sql.DataSource;
+import org.dljl.storage.AppointmentStore;
+import org.dljl.storage.memory.MemoryAppointmentStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+/**
+ * Integration tests for the REST surface on the in-memory storage engine, without any database.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("memory")
+public class MemoryStorageIt {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ApplicationContext context;
+
+  @Test
+  void testRunsWithoutDatabase() {
+    assertEquals(0, context.getBeanNamesForType(DataSource.class).length);
+    assertEquals(MemoryAppointmentStore.class, context.getBean(AppointmentStore.class).getClass());
+  }
+
+  @Test
+  void testBookingLifecycle() throws Exception {
+    String response = create(101, "2024-03-01T09:00:00", "2024-03-01T10:00:00")
+        .andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+    long appointmentId = ((Number) JsonPath.read(response, "$.appointmentId")).longValue();
+
+    create(101, "2024-03-01T09:30:00", "2024-03-01T10:30:00")
+        .andExpect(status().isBadRequest());
+    mockMvc.perform(put("/appointments/update")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"appointmentId\": " + appointmentId + ", \"comments\": \"moved\"}"))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/appointments/" + appointmentId))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.comments").value("moved"));
+    mockMvc.perform(put("/appointments/cancel/" + appointmentId))
+        .andExpect(status().isOk());
+    create(101, "2024-03-01T09:30:00", "2024-03-01T10:30:00")
+        .andExpect(status().isCreated());
+    mockMvc.perform(get("/appointments/provider/101"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1))
+        .andExpect(jsonPath("$[0].startDateTime").value("2024-03-01T09:30:00"));
+  }
+
+  @Test
+  void testAvailabilityAroundRecurringBlock() throws Exception {
+    mockMvc.perform(post("/appointments/createRecurringBlock")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+            {
+                "providerId": 102,
+                "startTime": "12:00",
+                "endTime": "13:00",
+                "startDate": "2024-03-01",
+                "endDate": "2024-03-31"
+            }
+            """))
+        .andExpect(status().isCreated());
+
+    mockMvc.perform(get("/appointments/provider/102/available/date/2024-03-05"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0][1]").value("2024-03-05T12:00:00"))
+        .andExpect(jsonPath("$[1][0]").value("2024-03-05T13:00:00"));
+  }
+
+  private ResultActions create(long providerId, String start, String end) throws Exception {
+    return mockMvc.perform(post("/appointments/createAppointment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"providerId\": " + providerId + ", \"userId\": 1, \"startDateTime\": \""
+            + start + "\", \"endDateTime\": \"" + end + "\", \"status\": \"SCHEDULED\"}"));
+  }
+}
@@ -0,0 +1,82 @@
+package org.dljl.controller;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+import org.dljl.dto.StatementMetricsSnapshot;
+import org.dljl.service.metrics.PrometheusMetrics;
+import org.dljl.service.metrics.StatementMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * Metrics Controller tests.
+ */
+public class MetricsControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Mock
+  private StatementMetrics statementMetrics;
+
+  @Mock
+  private PrometheusMetrics prometheusMetrics;
+
+  @InjectMocks
+  private MetricsController metricsController;
+
+  @BeforeEach
+  public void setUp() {
+    MockitoAnnotations.openMocks(this);
+    mockMvc = MockMvcBuilders.standaloneSetup(metricsController).build();
+  }
+
+  @Test
+  public void testGetStatementMetrics() throws Exception {
+    StatementMetricsSnapshot snapshot = new StatementMetricsSnapshot();
+    snapshot.setStatementId("org.dljl.mapper.AppointmentMapper.checkCreateTimeConflict");
+    snapshot.setCount(3);
+    snapshot.setP99Millis(2.048);
+    snapshot.setRows(1);
+    when(statementMetrics.snapshot()).thenReturn(List.of(snapshot));
+
+    mockMvc.perform(get("/metrics/statements"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].statementId")
+            .value("org.dljl.mapper.AppointmentMapper.checkCreateTimeConflict"))
+        .andExpect(jsonPath("$[0].count").value(3))
+        .andExpect(jsonPath("$[0].p99Millis").value(2.048))
+        .andExpect(jsonPath("$[0].rows").value(1));
+  }
+
+  @Test
+  public void testResetStatementMetrics() throws Exception {
+    mockMvc.perform(delete("/metrics/statements"))
+        .andExpect(status().isOk())
+        .andExpect(content().string("Statement metrics reset."));
+
+    verify(statementMetrics).reset();
+  }
+
+  @Test
+  public void testGetPrometheusMetrics() throws Exception {
+    when(prometheusMetrics.scrape()).thenReturn("appointment_bookings_created_total 4\n");
+
+    mockMvc.perform(get("/metrics/prometheus"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+        .andExpect(content().string("appointment_bookings_created_total 4\n"));
+  }
+}
@@ -0,0 +1,101 @@
+package org.dljl.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.dljl.service.routing.ReadRouting;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Integration tests for read replica routing, with a second in-memory database as the replica.
+ * Nothing replicates between the two, so a row seen by a read tells which database served it.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+    "spring.datasource.url=jdbc:h2:mem:primary;MODE=MySQL;DB_CLOSE_DELAY=-1",
+    "appointment.read-replica.urls=" + ReadReplicaRoutingIt.REPLICA_URL,
+    "appointment.read-replica.max-lag-ms=60000"
+})
+public class ReadReplicaRoutingIt {
+
+  static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private JdbcTemplate replica;
+
+  /**
+   * Migrate the replica and empty both databases, then put a row on the replica only.
+   */
+  @BeforeEach
+  void setUp() {
+    DriverManagerDataSource replicaDataSource = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+    Flyway.configure().dataSource(replicaDataSource).locations("classpath:db/migration").load()
+        .migrate();
+    replica = new JdbcTemplate(replicaDataSource);
+    for (JdbcTemplate database : new JdbcTemplate[] {jdbcTemplate, replica}) {
+      database.update("DELETE FROM recurring_blocks");
+      database.update("DELETE FROM appointments");
+    }
+    replica.update("INSERT INTO appointments (provider_id, user_id, start_date_time, "
+        + "end_date_time, status) VALUES (7, 1, TIMESTAMP '2024-03-01 09:00:00', "
+        + "TIMESTAMP '2024-03-01 10:00:00', 'SCHEDULED')");
+  }
+
+  @Test
+  void testReadsGoToReplica() throws Exception {
+    mockMvc.perform(get("/appointments/provider/7"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1));
+  }
+
+  @Test
+  void testReadsOwnWrites() throws Exception {
+    MvcResult created = mockMvc.perform(post("/appointments/createAppointment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+            {
+                "providerId": 8,
+                "userId": 1,
+                "startDateTime": "2024-03-01T09:00:00",
+                "endDateTime": "2024-03-01T10:00:00",
+                "status": "SCHEDULED"
+            }
+            """))
+        .andExpect(status().isCreated())
+        .andExpect(header().exists(ReadRouting.TOKEN_HEADER))
+        .andReturn();
+
+    // The written provider stays on the primary, the replica never sees the row
+    mockMvc.perform(get("/appointments/provider/8"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1));
+
+    // With the token every read goes to the primary, which has no row of provider 7
+    String token = created.getResponse().getHeader(ReadRouting.TOKEN_HEADER);
+    mockMvc.perform(get("/appointments/provider/7").header(ReadRouting.TOKEN_HEADER, token))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(0));
+  }
+}
@@ -0,0 +1,95 @@
+package org.dljl.controller;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+import org.dljl.dto.ShardMoveResult;
+import org.dljl.service.sharding.ShardRebalancer;
+import org.dljl.service.sharding.ShardRouting;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/**
+ * Shard Controller tests.
+ */
+public class ShardControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Mock
+  private ShardRouting shardRouting;
+
+  @Mock
+  private ShardRebalancer shardRebalancer;
+
+  @InjectMocks
+  private ShardController shardController;
+
+  @BeforeEach
+  public void setUp() {
+    MockitoAnnotations.openMocks(this);
+    mockMvc = MockMvcBuilders.standaloneSetup(shardController).build();
+  }
+
+  @Test
+  public void testGetProviderShard() throws Exception {
+    when(shardRouting.isEnabled()).thenReturn(true);
+    when(shardRouting.shardOf(7L)).thenReturn(2);
+
+    mockMvc.perform(get("/shards/provider/7"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.providerId").value(7))
+        .andExpect(jsonPath("$.shard").value(2));
+  }
+
+  @Test
+  public void testGetProviderShardWithoutSharding() throws Exception {
+    mockMvc.perform(get("/shards/provider/7"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Sharding is not enabled."));
+  }
+
+  @Test
+  public void testMoveProvider() throws Exception {
+    ShardMoveResult result = new ShardMoveResult();
+    result.setProviderId(7L);
+    result.setFromShard(2);
+    result.setToShard(1);
+    result.setAppointmentsMoved(40);
+    when(shardRebalancer.moveProvider(7L, 1)).thenReturn(result);
+
+    mockMvc.perform(post("/shards/provider/7/move").param("targetShard", "1"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.fromShard").value(2))
+        .andExpect(jsonPath("$.appointmentsMoved").value(40));
+  }
+
+  @Test
+  public void testMoveProviderToUnknownShard() throws Exception {
+    when(shardRebalancer.moveProvider(7L, 9))
+        .thenThrow(new IllegalArgumentException("Shard 9 does not exist."));
+
+    mockMvc.perform(post("/shards/provider/7/move").param("targetShard", "9"))
+        .andExpect(status().isBadRequest())
+        .andExpect(content().string("Shard 9 does not exist."));
+  }
+
+  @Test
+  public void testRebalance() throws Exception {
+    when(shardRebalancer.rebalance()).thenReturn(List.of(new ShardMoveResult()));
+
+    mockMvc.perform(post("/shards/rebalance"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(1));
+  }
+}
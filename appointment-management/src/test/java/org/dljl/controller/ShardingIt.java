@@ -0,0 +1,223 @@
+package org.dljl.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.dljl.service.sharding.ShardRouting;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Integration tests for provider sharding over two in-memory databases.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+    "spring.datasource.url=" + ShardingIt.SHARD_0_URL,
+    "appointment.sharding.urls=" + ShardingIt.SHARD_1_URL,
+    "appointment.sharding.move-batch-size=2",
+    // H2 has no auto_increment_increment to check, so the service mints appointment and rule ids
+    "appointment.ids.assign-appointment-ids=true"
+})
+public class ShardingIt {
+
+  static final String SHARD_0_URL = "jdbc:h2:mem:shard0;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+  static final String SHARD_1_URL = "jdbc:h2:mem:shard1;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ShardRouting shardRouting;
+
+  private final List<JdbcTemplate> shards = new ArrayList<>();
+
+  private final List<List<Long>> providersByShard = new ArrayList<>();
+
+  /**
+   * Empty both shards, and let them hand out different appointment ids.
+   */
+  @BeforeEach
+  void setUp() {
+    shards.clear();
+    providersByShard.clear();
+    for (String url : new String[] {SHARD_0_URL, SHARD_1_URL}) {
+      JdbcTemplate shard = new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+      shard.update("DELETE FROM recurring_blocks");
+      shard.update("DELETE FROM appointments");
+      shard.update("DELETE FROM provider_placements");
+      shards.add(shard);
+      providersByShard.add(new ArrayList<>());
+    }
+    shards.get(1).update("ALTER TABLE appointments ALTER COLUMN appointment_id "
+        + "RESTART WITH 1000000");
+    for (long providerId = 1; providerId <= 100; providerId++) {
+      providersByShard.get(shardRouting.shardOf(providerId)).add(providerId);
+    }
+  }
+
+  @Test
+  void testAppointmentsLiveOnTheirProvidersShard() throws Exception {
+    long providerId = providersByShard.get(1).get(0);
+    String response = create(providerId, "2024-03-01T09:00:00", "2024-03-01T10:00:00");
+    long appointmentId = ((Number) JsonPath.read(response, "$.appointmentId")).longValue();
+
+    assertEquals(1, count(1, providerId));
+    assertEquals(0, count(0, providerId));
+    mockMvc.perform(get("/appointments/" + appointmentId))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.providerId").value(providerId));
+    mockMvc.perform(put("/appointments/cancel/" + appointmentId))
+        .andExpect(status().isOk());
+    mockMvc.perform(get("/appointments/provider/" + providerId))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].status").value("cancelled"));
+  }
+
+  @Test
+  void testCommonAvailabilityFansOutOverShards() throws Exception {
+    long first = providersByShard.get(0).get(0);
+    long second = providersByShard.get(1).get(0);
+    create(first, "2024-03-01T09:00:00", "2024-03-01T10:00:00");
+    create(second, "2024-03-01T11:00:00", "2024-03-01T12:00:00");
+
+    mockMvc.perform(get("/appointments/commonAvailability")
+        .param("providerIds", first + "," + second)
+        .param("startDate", "2024-03-01")
+        .param("endDate", "2024-03-02"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(3))
+        .andExpect(jsonPath("$[0][1]").value("2024-03-01T09:00:00"))
+        .andExpect(jsonPath("$[1][0]").value("2024-03-01T10:00:00"))
+        .andExpect(jsonPath("$[1][1]").value("2024-03-01T11:00:00"));
+  }
+
+  @Test
+  void testMoveProviderInBatches() throws Exception {
+    // Not used by the other tests, whose providers must stay on their ring shard
+    long providerId = providersByShard.get(1).get(1);
+    for (int day = 1; day <= 5; day++) {
+      create(providerId, "2024-03-0" + day + "T09:00:00", "2024-03-0" + day + "T10:00:00");
+    }
+
+    mockMvc.perform(post("/shards/provider/" + providerId + "/move").param("targetShard", "0"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.fromShard").value(1))
+        .andExpect(jsonPath("$.toShard").value(0))
+        .andExpect(jsonPath("$.appointmentsMoved").value(5));
+
+    assertEquals(0, count(1, providerId));
+    assertEquals(5, count(0, providerId));
+    assertEquals(Integer.valueOf(0), shards.get(0).queryForObject(
+        "SELECT shard FROM provider_placements WHERE provider_id = ?", Integer.class, providerId));
+    mockMvc.perform(get("/shards/provider/" + providerId))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.shard").value(0));
+    mockMvc.perform(get("/appointments/provider/" + providerId))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(5));
+    create(providerId, "2024-03-09T09:00:00", "2024-03-09T10:00:00");
+    assertEquals(6, count(0, providerId));
+  }
+
+  @Test
+  void testRebalanceDeletesCopiesOfInterruptedMove() throws Exception {
+    long providerId = providersByShard.get(1).get(2);
+    String response = create(providerId, "2024-03-01T09:00:00", "2024-03-01T10:00:00");
+    long appointmentId = ((Number) JsonPath.read(response, "$.appointmentId")).longValue();
+    // A move to shard 0 that was killed after copying, before the switch
+    Map<String, Object> row = shards.get(1).queryForMap(
+        "SELECT * FROM appointments WHERE appointment_id = ?", appointmentId);
+    shards.get(0).update("INSERT INTO appointments (appointment_id, provider_id, user_id, "
+        + "start_date_time, end_date_time, status) VALUES (?, ?, ?, ?, ?, ?)", appointmentId,
+        providerId, row.get("user_id"), row.get("start_date_time"), row.get("end_date_time"),
+        "stale copy");
+    shards.get(0).update("INSERT INTO provider_placements (provider_id, shard, cleanup_shard) "
+        + "VALUES (?, 1, 0)", providerId);
+    mockMvc.perform(get("/appointments/" + appointmentId))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.status").value("SCHEDULED"));
+
+    mockMvc.perform(post("/shards/rebalance"))
+        .andExpect(status().isOk());
+
+    assertEquals(0, count(0, providerId));
+    assertEquals(1, count(1, providerId));
+    assertEquals(1, shards.get(0).queryForObject("SELECT COUNT(*) FROM provider_placements "
+        + "WHERE provider_id = ? AND cleanup_shard IS NULL", Integer.class, providerId));
+  }
+
+  @Test
+  void testMoveProviderWithRecurringBlock() throws Exception {
+    // A rule on each shard, which AUTO_INCREMENT would both have given id 1
+    createRecurringBlock(providersByShard.get(0).get(3));
+    long providerId = providersByShard.get(1).get(3);
+    createRecurringBlock(providerId);
+    String rules = mockMvc.perform(get("/appointments/provider/" + providerId + "/recurringBlocks"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsString();
+    long ruleId = ((Number) JsonPath.read(rules, "$[0].recurringBlockId")).longValue();
+
+    mockMvc.perform(post("/shards/provider/" + providerId + "/move").param("targetShard", "0"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.recurringBlocksMoved").value(1));
+
+    assertEquals(2, shards.get(0).queryForObject(
+        "SELECT COUNT(*) FROM recurring_blocks", Integer.class));
+    assertEquals(0, shards.get(1).queryForObject(
+        "SELECT COUNT(*) FROM recurring_blocks", Integer.class));
+    mockMvc.perform(delete("/appointments/deleteRecurringBlock/" + ruleId))
+        .andExpect(status().isOk());
+    assertEquals(0, shards.get(0).queryForObject(
+        "SELECT COUNT(*) FROM recurring_blocks WHERE provider_id = ?", Integer.class, providerId));
+  }
+
+  @Test
+  void testMoveToUnknownShard() throws Exception {
+    mockMvc.perform(post("/shards/provider/1/move").param("targetShard", "2"))
+        .andExpect(status().isBadRequest());
+  }
+
+  private String create(long providerId, String start, String end) throws Exception {
+    return mockMvc.perform(post("/appointments/createAppointment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"providerId\": " + providerId + ", \"userId\": 1, \"startDateTime\": \""
+            + start + "\", \"endDateTime\": \"" + end + "\", \"status\": \"SCHEDULED\"}"))
+        .andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+  }
+
+  private void createRecurringBlock(long providerId) throws Exception {
+    mockMvc.perform(post("/appointments/createRecurringBlock")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("{\"providerId\": " + providerId + ", \"startTime\": \"12:00\", "
+            + "\"endTime\": \"13:00\", \"startDate\": \"2024-03-01\", "
+            + "\"endDate\": \"2024-03-31\"}"))
+        .andExpect(status().isCreated());
+  }
+
+  private int count(int shard, long providerId) {
+    return shards.get(shard).queryForObject(
+        "SELECT COUNT(*) FROM appointments WHERE provider_id = ?", Integer.class, providerId);
+  }
+}
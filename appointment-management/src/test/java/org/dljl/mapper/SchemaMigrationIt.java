@@ -0,0 +1,175 @@
+package org.dljl.mapper;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+
+/**
+ * Integration tests for the schema migrations and the query plans of the hot mapper queries.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class SchemaMigrationIt {
+
+  private static final String PROVIDER_START_INDEX = "IDX_APPOINTMENTS_PROVIDER_START";
+
+  private static final String STATEMENT_PREFIX = "org.dljl.mapper.AppointmentMapper.";
+
+  @Autowired
+  private Flyway flyway;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private SqlSessionFactory sqlSessionFactory;
+
+  /**
+   * Fill the table with enough providers, each seeing a few users, that a full scan is clearly
+   * the worse plan.
+   */
+  @BeforeEach
+  void setUp() {
+    List<Object[]> rows = new ArrayList<>();
+    for (long providerId = 100; providerId < 150; providerId++) {
+      for (int day = 1; day <= 20; day++) {
+        LocalDateTime start = LocalDateTime.of(2024, 3, day, 9, 0);
+        rows.add(new Object[] {providerId, day % 4 + 1, Timestamp.valueOf(start),
+            Timestamp.valueOf(start.plusHours(1))});
+      }
+    }
+    jdbcTemplate.batchUpdate("INSERT INTO appointments (provider_id, user_id, start_date_time, "
+        + "end_date_time, status, service_type, comments) "
+        + "VALUES (?, ?, ?, ?, 'scheduled', 'Medical', 'plan test')", rows);
+    jdbcTemplate.execute("ANALYZE");
+  }
+
+  /**
+   * Test that every migration has been applied in order.
+   */
+  @Test
+  void testMigrationsApplied() {
+    List<String> versions = Arrays.stream(flyway.info().applied())
+        .map(MigrationInfo::getVersion)
+        .map(Object::toString)
+        .toList();
+
+    assertEquals(List.of("1", "2", "3", "4", "5", "6"), versions);
+  }
+
+  /**
+   * Test that the day query uses the provider/start index instead of scanning the table.
+   */
+  @Test
+  void testDayQueryUsesProviderStartIndex() {
+    Map<String, Object> params = new HashMap<>();
+    params.put("providerId", 120L);
+    params.put("appointmentDate", LocalDate.of(2024, 3, 5));
+
+    assertThat(explain("getAppointmentsByProviderAndDate", params),
+        containsString(PROVIDER_START_INDEX));
+  }
+
+  /**
+   * Test that the create conflict check uses the provider/start index.
+   */
+  @Test
+  void testCreateConflictCheckUsesProviderStartIndex() {
+    Map<String, Object> params = new HashMap<>();
+    params.put("providerId", 120L);
+    params.put("startDateTime", LocalDateTime.of(2024, 3, 5, 9, 30));
+    params.put("endDateTime", LocalDateTime.of(2024, 3, 5, 10, 30));
+
+    assertThat(explain("checkCreateTimeConflict", params), containsString(PROVIDER_START_INDEX));
+  }
+
+  /**
+   * Test that the date range query uses the provider/start index.
+   */
+  @Test
+  void testDateRangeQueryUsesProviderStartIndex() {
+    Map<String, Object> params = new HashMap<>();
+    params.put("providerId", 120L);
+    params.put("startDate", LocalDate.of(2024, 3, 1));
+    params.put("endDate", LocalDate.of(2024, 3, 8));
+
+    assertThat(explain("getAppointmentsWithinDateRange", params),
+        containsString(PROVIDER_START_INDEX));
+  }
+
+  /**
+   * Test that a deep keyset page of a provider is a range scan on the provider/start index.
+   */
+  @Test
+  void testKeysetPageUsesProviderStartIndex() {
+    Map<String, Object> params = new HashMap<>();
+    params.put("providerId", 120L);
+    params.put("afterStart", LocalDateTime.of(2024, 3, 15, 9, 0));
+    params.put("afterId", 500L);
+    params.put("limit", 21);
+
+    assertThat(explain("getAppointmentsByProviderIdPage", params),
+        containsString(PROVIDER_START_INDEX));
+  }
+
+  /**
+   * Test that a page of the history of a provider with a user uses the provider/user index.
+   */
+  @Test
+  void testHistoryPageUsesProviderUserIndex() {
+    Map<String, Object> params = new HashMap<>();
+    params.put("providerId", 120L);
+    params.put("userId", 1L);
+    params.put("rangeStart", LocalDateTime.of(2024, 3, 1, 0, 0));
+    params.put("rangeEnd", LocalDateTime.of(2024, 3, 10, 0, 0));
+    params.put("afterStart", LocalDateTime.of(2024, 3, 2, 9, 0));
+    params.put("afterId", 500L);
+    params.put("limit", 21);
+
+    assertThat(explain("findAppointmentsByProviderAndUserPage", params),
+        containsString("IDX_APPOINTMENTS_PROVIDER_USER_START"));
+  }
+
+  /**
+   * Run EXPLAIN on the SQL that MyBatis generates for a mapper statement.
+   */
+  private String explain(String statementId, Map<String, Object> params) {
+    BoundSql boundSql = sqlSessionFactory.getConfiguration()
+        .getMappedStatement(STATEMENT_PREFIX + statementId)
+        .getBoundSql(params);
+    List<Object> args = new ArrayList<>();
+    for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+      String property = mapping.getProperty();
+      args.add(boundSql.hasAdditionalParameter(property)
+          ? boundSql.getAdditionalParameter(property)
+          : params.get(property));
+    }
+    String sql = boundSql.getSql().trim();
+    if (sql.endsWith(";")) {
+      sql = sql.substring(0, sql.length() - 1);
+    }
+    return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, args.toArray());
+  }
+}
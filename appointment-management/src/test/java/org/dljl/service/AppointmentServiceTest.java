@@ -7,31 +7,66 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.dljl.dto.AppointmentHistoryEntry;
+import org.dljl.dto.AppointmentHistoryPage;
+import org.dljl.dto.AppointmentPage;
+import org.dljl.dto.BatchAppointmentResult;
+import org.dljl.dto.BulkOperationResult;
 import org.dljl.dto.CreateAppointmentDto;
 import org.dljl.dto.CreateBlockDto;
 import org.dljl.dto.CreateRecurringBlockDto;
 import org.dljl.dto.CreateRecurringBlockInOneYearDto;
 import org.dljl.dto.UpdateAppointmentDto;
 import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
 import org.dljl.mapper.AppointmentMapper;
+import org.dljl.mapper.RecurringBlockMapper;
+import org.dljl.service.batch.AppointmentBatchWriter;
+import org.dljl.service.cache.AvailabilityCache;
+import org.dljl.service.concurrency.ProviderLocks;
+import org.dljl.service.conflict.ProviderIntervalIndex;
+import org.dljl.service.export.AppointmentExporter;
 import org.dljl.service.impl.AppointmentServiceImpl;
+import org.dljl.service.metrics.BusinessMetrics;
+import org.dljl.service.pagination.KeysetCursor;
+import org.dljl.service.routing.ReadRouting;
+import org.dljl.service.sharding.ShardRouting;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * The type Appointment service test.
@@ -42,6 +77,39 @@ public class AppointmentServiceTest {
   @Mock
   private AppointmentMapper appointmentMapper;
 
+  @Mock
+  private ProviderIntervalIndex intervalIndex;
+
+  @Mock
+  private AppointmentBatchWriter batchWriter;
+
+  @Mock
+  private RecurringBlockMapper recurringBlockMapper;
+
+  @Mock
+  private AvailabilityCache availabilityCache;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private AppointmentExporter exporter;
+
+  @Spy
+  private BusinessMetrics businessMetrics = new BusinessMetrics();
+
+  // No replicas configured, so reads run on the mocked mappers as written
+  @Spy
+  private ReadRouting readRouting = new ReadRouting();
+
+  // No shards configured, so by-id lookups and fan-outs run once on the mocked mappers
+  @Spy
+  private ShardRouting shardRouting = new ShardRouting();
+
+  // A real lock table without the database guard, so locked sections run as written
+  @Spy
+  private ProviderLocks providerLocks = new ProviderLocks();
+
   @InjectMocks
   private AppointmentServiceImpl appointmentService;
 
@@ -51,6 +119,10 @@ public class AppointmentServiceTest {
   @BeforeEach
   void setUp() {
     MockitoAnnotations.openMocks(this); // Initialize mocks
+    ReflectionTestUtils.setField(providerLocks, "stripeCount", 4);
+    ReflectionTestUtils.setField(providerLocks, "transactionManager", transactionManager);
+    ReflectionTestUtils.setField(providerLocks, "shardRouting", shardRouting);
+    providerLocks.init();
   }
 
   /**
@@ -79,6 +151,7 @@ public class AppointmentServiceTest {
     assertEquals(LocalDateTime.of(2024, 10, 15, 11, 0), result.getEndDateTime());
 
     verify(appointmentMapper).createAppointment(any(Appointment.class));
+    assertEquals(1, businessMetrics.getBookingsCreated());
   }
 
   /**
@@ -101,6 +174,8 @@ public class AppointmentServiceTest {
     assertEquals(
         "The selected time slot is not available or conflicts with an existing appointment.",
         exception.getMessage());
+    assertEquals(1, businessMetrics.getConflictsDetected());
+    assertEquals(0, businessMetrics.getBookingsCreated());
   }
 
   @Test
@@ -205,34 +280,26 @@ public class AppointmentServiceTest {
   @Test
   public void testGetAppointmentHistory_ServiceLayer() {
     // Creating mock data
-    Appointment appointment1 = new Appointment();
-    appointment1.setAppointmentId(1L);
-    appointment1.setStartDateTime(LocalDateTime.now().minusDays(1));
-    appointment1.setEndDateTime(LocalDateTime.now().minusDays(1).plusHours(1));
-    appointment1.setStatus("completed");
-    appointment1.setServiceType("Consultation");
-    appointment1.setComments("First appointment.");
+    AppointmentHistoryEntry appointment1 = new AppointmentHistoryEntry(1L,
+        LocalDateTime.now().minusDays(1), LocalDateTime.now().minusDays(1).plusHours(1),
+        "completed", "Consultation", "First appointment.");
 
-    Appointment appointment2 = new Appointment();
-    appointment2.setAppointmentId(2L);
-    appointment2.setStartDateTime(LocalDateTime.now().minusDays(2));
-    appointment2.setEndDateTime(LocalDateTime.now().minusDays(2).plusHours(1));
-    appointment2.setStatus("canceled");
-    appointment2.setServiceType("Repair");
-    appointment2.setComments("Client canceled.");
+    AppointmentHistoryEntry appointment2 = new AppointmentHistoryEntry(2L,
+        LocalDateTime.now().minusDays(2), LocalDateTime.now().minusDays(2).plusHours(1),
+        "canceled", "Repair", "Client canceled.");
 
     // Mocking the service call to return a list of appointments
-    List<Appointment> mockAppointments = Arrays.asList(appointment1, appointment2);
+    List<AppointmentHistoryEntry> mockAppointments = Arrays.asList(appointment1, appointment2);
     when(appointmentService.getAppointmentHistory(1L, 1L)).thenReturn(mockAppointments);
 
     // Calling the service method
-    List<Appointment> result = appointmentService.getAppointmentHistory(1L, 1L);
+    List<AppointmentHistoryEntry> result = appointmentService.getAppointmentHistory(1L, 1L);
 
     // Validating the response
     assertEquals(2, result.size()); // Ensure two appointments are returned
-    assertEquals("completed", result.get(0).getStatus());
-    assertEquals("Consultation", result.get(0).getServiceType());
-    assertEquals("First appointment.", result.get(0).getComments());
+    assertEquals("completed", result.get(0).status());
+    assertEquals("Consultation", result.get(0).serviceType());
+    assertEquals("First appointment.", result.get(0).comments());
   }
 
   @Test
@@ -293,11 +360,13 @@ public class AppointmentServiceTest {
 
     when(appointmentMapper.checkUpdateTimeConflict(anyLong(), any(), any())).thenReturn(0);
     when(appointmentMapper.getAppointment(anyLong())).thenReturn(new Appointment());
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(1);
 
     Appointment updatedAppointment = appointmentService.updateAppointment(updateDto);
 
     assertNotNull(updatedAppointment);
-    verify(appointmentMapper).updateAppointment(updateDto);
+    verify(appointmentMapper).updateAppointment(argThat(dto -> dto.getAppointmentId() == 1L
+        && updateDto.getStartDateTime().equals(dto.getStartDateTime())), any(), any(), any());
   }
 
   @Test
@@ -602,6 +671,7 @@ public class AppointmentServiceTest {
     originalAppointment.setEndDateTime(LocalDateTime.of(2024, 10, 15, 11, 0));
 
     when(appointmentMapper.getAppointment(anyLong())).thenReturn(originalAppointment);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(1);
 
     Appointment result = appointmentService.updateAppointment(updateDto);
 
@@ -612,8 +682,10 @@ public class AppointmentServiceTest {
     assertNull(updateDto.getStartDateTime());
     assertNull(updateDto.getEndDateTime());
 
-    // Verify the mapper update call
-    verify(appointmentMapper).updateAppointment(updateDto);
+    // Verify the mapper update call, guarded by the times the row was read with
+    verify(appointmentMapper).updateAppointment(any(UpdateAppointmentDto.class),
+        argThat(LocalDateTime.of(2024, 10, 15, 10, 0)::equals),
+        argThat(LocalDateTime.of(2024, 10, 15, 11, 0)::equals), any());
   }
 
 
@@ -630,6 +702,7 @@ public class AppointmentServiceTest {
     originalAppointment.setEndDateTime(LocalDateTime.of(2024, 10, 15, 11, 0));
 
     when(appointmentMapper.getAppointment(anyLong())).thenReturn(originalAppointment);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(1);
 
     // Call the service method
     appointmentService.updateAppointment(updateDto);
@@ -638,8 +711,9 @@ public class AppointmentServiceTest {
     assertNull(updateDto.getStartDateTime());
     assertNull(updateDto.getEndDateTime());
 
-    // Verify that updateAppointment was called with the dto
-    verify(appointmentMapper).updateAppointment(updateDto);
+    // Verify that updateAppointment was called without times
+    verify(appointmentMapper).updateAppointment(argThat(dto -> dto.getStartDateTime() == null
+        && dto.getEndDateTime() == null), any(), any(), any());
   }
 
 
@@ -828,11 +902,14 @@ public class AppointmentServiceTest {
     blockDto.setStartDate(LocalDate.of(2024, 10, 15));
     blockDto.setEndDate(LocalDate.of(2024, 10, 15)); // Single day
 
-    when(appointmentMapper.checkCreateTimeConflict(anyLong(), any(), any())).thenReturn(0);
+    when(appointmentMapper.getAppointmentsOverlappingRange(anyLong(), any(), any()))
+        .thenReturn(List.of());
 
     String result = appointmentService.createRecurringBlock(blockDto);
 
     assertEquals("Recurring block created successfully from 2024-10-15 to 2024-10-15", result);
+    verify(appointmentMapper, never()).checkCreateTimeConflict(anyLong(), any(), any());
+    verify(batchWriter).insertAll(argThat(blocks -> blocks.size() == 1));
   }
 
 
@@ -844,11 +921,13 @@ public class AppointmentServiceTest {
     blockDto.setEndTime(LocalTime.of(19, 0));
     blockDto.setStartDate(LocalDate.of(2024, 12, 24));
     blockDto.setEndDate(LocalDate.of(2024, 12, 25));
-    when(appointmentMapper.checkCreateTimeConflict(anyLong(), any(), any())).thenReturn(0);
+    when(appointmentMapper.getAppointmentsOverlappingRange(anyLong(), any(), any()))
+        .thenReturn(List.of());
 
     String result = appointmentService.createRecurringBlock(blockDto);
     //check success
     assertEquals("Recurring block created successfully from 2024-12-24 to 2024-12-25", result);
+    verify(batchWriter).insertAll(argThat(blocks -> blocks.size() == 2));
   }
 
   @Test
@@ -859,19 +938,44 @@ public class AppointmentServiceTest {
     appointment2.setUserId(3L);
     appointment2.setStartDateTime(LocalDateTime.of(2024, 12, 24, 14, 0));
     appointment2.setEndDateTime(LocalDateTime.of(2024, 12, 24, 15, 0));
-    appointmentMapper.createAppointment(appointment2);
+    Appointment appointment3 = new Appointment();
+    appointment3.setAppointmentId(3L);
+    appointment3.setProviderId(1L);
+    appointment3.setStartDateTime(LocalDateTime.of(2024, 12, 25, 18, 30));
+    appointment3.setEndDateTime(LocalDateTime.of(2024, 12, 25, 20, 0));
     CreateRecurringBlockDto blockDto1 = new CreateRecurringBlockDto();
     blockDto1.setProviderId(1L);
     blockDto1.setStartTime(LocalTime.of(8, 0));
     blockDto1.setEndTime(LocalTime.of(19, 0));
     blockDto1.setStartDate(LocalDate.of(2024, 12, 24));
-    blockDto1.setEndDate(LocalDate.of(2024, 12, 25));
-    when(appointmentMapper.checkCreateTimeConflict(anyLong(), any(), any())).thenReturn(1);
+    blockDto1.setEndDate(LocalDate.of(2024, 12, 26));
+    when(appointmentMapper.getAppointmentsOverlappingRange(anyLong(), any(), any()))
+        .thenReturn(Arrays.asList(appointment2, appointment3));
 
     String result = appointmentService.createRecurringBlock(blockDto1);
-    //check success
+    //check conflicts are reported and the free day is still blocked
     assertEquals("Conflicts found on the following dates: \n"
         + "2024-12-24\n" + "2024-12-25\n", result);
+    verify(batchWriter).insertAll(argThat(blocks -> blocks.size() == 1
+        && blocks.get(0).getStartDateTime().equals(LocalDateTime.of(2024, 12, 26, 8, 0))));
+    assertEquals(2, businessMetrics.getRecurringDaysSkipped());
+  }
+
+  @Test
+  void testCreateRecurringBlock_invalidTimeWindow() {
+    CreateRecurringBlockDto blockDto = new CreateRecurringBlockDto();
+    blockDto.setProviderId(1L);
+    blockDto.setStartTime(LocalTime.of(19, 0));
+    blockDto.setEndTime(LocalTime.of(8, 0));
+    blockDto.setStartDate(LocalDate.of(2024, 12, 24));
+    blockDto.setEndDate(LocalDate.of(2024, 12, 25));
+
+    IllegalArgumentException exception = assertThrows(
+        IllegalArgumentException.class,
+        () -> appointmentService.createRecurringBlock(blockDto)
+    );
+
+    assertEquals("Start time must be before end time.", exception.getMessage());
   }
 
   @Test
@@ -896,9 +1000,11 @@ public class AppointmentServiceTest {
     blockDto.setStartTime(LocalTime.of(9, 0));
     blockDto.setEndTime(LocalTime.of(17, 0));
 
-    when(appointmentMapper.checkCreateTimeConflict(anyLong(), any(), any()))
-        .thenReturn(0) // No conflict on most days
-        .thenReturn(1); // Conflict on specific days
+    Appointment existing = new Appointment();
+    existing.setStartDateTime(LocalDate.now().plusDays(10).atTime(16, 0));
+    existing.setEndDateTime(LocalDate.now().plusDays(10).atTime(18, 0));
+    when(appointmentMapper.getAppointmentsOverlappingRange(anyLong(), any(), any()))
+        .thenReturn(List.of(existing)); // Conflict on a specific day
 
     String result = appointmentService.createRecurringBlockInOneYear(blockDto);
 
@@ -912,7 +1018,8 @@ public class AppointmentServiceTest {
     blockDto2.setProviderId(1L);
     blockDto2.setStartTime(LocalTime.of(8, 0));
     blockDto2.setEndTime(LocalTime.of(19, 0));
-    when(appointmentMapper.checkCreateTimeConflict(anyLong(), any(), any())).thenReturn(0);
+    when(appointmentMapper.getAppointmentsOverlappingRange(anyLong(), any(), any()))
+        .thenReturn(List.of());
 
     String result2 = appointmentService.createRecurringBlockInOneYear(blockDto2);
     //check success
@@ -926,14 +1033,17 @@ public class AppointmentServiceTest {
     blockDto.setStartTime(LocalTime.of(9, 0));
     blockDto.setEndTime(LocalTime.of(10, 0));
 
-    // Simulate a conflict on specific dates
-    when(appointmentMapper.checkCreateTimeConflict(anyLong(), any(), any()))
-        .thenReturn(0) // No conflict on most days
-        .thenReturn(1); // Conflict on a specific day
+    // Simulate a conflict on a specific date
+    LocalDate conflictDate = LocalDate.now().plusDays(3);
+    Appointment existing = new Appointment();
+    existing.setStartDateTime(conflictDate.atTime(9, 30));
+    existing.setEndDateTime(conflictDate.atTime(9, 45));
+    when(appointmentMapper.getAppointmentsOverlappingRange(anyLong(), any(), any()))
+        .thenReturn(List.of(existing));
 
     String result = appointmentService.createRecurringBlockInOneYear(blockDto);
 
-    assertTrue(result.contains("Conflicts found on the following dates:"));
+    assertEquals("Conflicts found on the following dates: \n" + conflictDate + "\n", result);
   }
 
   @Test
@@ -959,7 +1069,7 @@ public class AppointmentServiceTest {
     when(appointmentMapper.findAppointmentsByProviderAndUser(anyLong(), anyLong()))
         .thenReturn(new ArrayList<>());
 
-    List<Appointment> result = appointmentService.getAppointmentHistory(1L, 2L);
+    List<AppointmentHistoryEntry> result = appointmentService.getAppointmentHistory(1L, 2L);
 
     assertNotNull(result);
     assertTrue(result.isEmpty());
@@ -1015,4 +1125,917 @@ public class AppointmentServiceTest {
     assertEquals("Start date and end date cannot be null.", exception.getMessage());
   }
 
-}
\ No newline at end of file
+  @Test
+  void testCreateRecurringBlock_storesOneRuleWithExcludedDates() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    Appointment existing = new Appointment();
+    existing.setStartDateTime(LocalDateTime.of(2024, 12, 25, 9, 30));
+    existing.setEndDateTime(LocalDateTime.of(2024, 12, 25, 10, 30));
+    when(appointmentMapper.getAppointmentsOverlappingRange(anyLong(), any(), any()))
+        .thenReturn(List.of(existing));
+
+    CreateRecurringBlockDto blockDto = new CreateRecurringBlockDto();
+    blockDto.setProviderId(1L);
+    blockDto.setStartTime(LocalTime.of(9, 0));
+    blockDto.setEndTime(LocalTime.of(10, 0));
+    blockDto.setStartDate(LocalDate.of(2024, 12, 23));
+    blockDto.setEndDate(LocalDate.of(2024, 12, 29));
+    blockDto.setDaysOfWeek(Set.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY));
+
+    String result = appointmentService.createRecurringBlock(blockDto);
+
+    assertEquals("Conflicts found on the following dates: \n2024-12-25\n", result);
+    verify(recurringBlockMapper).createRecurringBlock(argThat(rule -> rule.getWeekdayMask() == 5
+        && "2024-12-25".equals(rule.getExcludedDates())
+        && rule.getStartDate().equals(LocalDate.of(2024, 12, 23))));
+    verify(batchWriter, never()).insertAll(any());
+  }
+
+  @Test
+  void testGetAvailableTimeIntervals_expandsRecurringBlocks() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    when(appointmentMapper.getAppointmentsByProviderAndDate(anyLong(), any()))
+        .thenReturn(List.of());
+    when(recurringBlockMapper.getRecurringBlocksInDateRange(1L, date, date))
+        .thenReturn(List.of(lunchBreak()));
+
+    List<List<LocalDateTime>> result = appointmentService.getAvailableTimeIntervals(1L, date);
+
+    assertEquals(2, result.size());
+    assertEquals(LocalDateTime.of(2024, 10, 15, 12, 0), result.get(0).get(1));
+    assertEquals(LocalDateTime.of(2024, 10, 15, 13, 0), result.get(1).get(0));
+  }
+
+  @Test
+  void testCreateAppointment_conflictsWithRecurringBlock() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    when(appointmentMapper.checkCreateTimeConflict(anyLong(), any(), any())).thenReturn(0);
+    when(recurringBlockMapper.getRecurringBlocksInDateRange(anyLong(), any(), any()))
+        .thenReturn(List.of(lunchBreak()));
+
+    CreateAppointmentDto appointmentDto = new CreateAppointmentDto();
+    appointmentDto.setProviderId(1L);
+    appointmentDto.setStartDateTime(LocalDateTime.of(2024, 10, 15, 12, 30));
+    appointmentDto.setEndDateTime(LocalDateTime.of(2024, 10, 15, 13, 30));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.createAppointment(appointmentDto));
+    verify(appointmentMapper, never()).createAppointment(any());
+  }
+
+  @Test
+  void testGetAppointmentsWithinDateRange_includesRecurringBlocks() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    LocalDate startDate = LocalDate.of(2024, 10, 14);
+    LocalDate endDate = LocalDate.of(2024, 10, 16);
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(1L);
+    appointment.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    appointment.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    when(appointmentMapper.getAppointmentsWithinDateRange(1L, startDate, endDate))
+        .thenReturn(List.of(appointment));
+    when(recurringBlockMapper.getRecurringBlocksInDateRange(1L, startDate, endDate))
+        .thenReturn(List.of(lunchBreak()));
+
+    List<Appointment> result =
+        appointmentService.getAppointmentsWithinDateRange(1L, startDate, endDate);
+
+    // The block on the end date is outside of the range, like stored rows are
+    assertEquals(3, result.size());
+    assertEquals("blocked", result.get(0).getStatus());
+    assertEquals(1L, result.get(1).getAppointmentId());
+    assertEquals(LocalDateTime.of(2024, 10, 15, 12, 0), result.get(2).getStartDateTime());
+  }
+
+  @Test
+  void testDeleteRecurringBlock() {
+    when(recurringBlockMapper.deleteRecurringBlock(7L)).thenReturn(1);
+    when(recurringBlockMapper.deleteRecurringBlock(8L)).thenReturn(0);
+
+    assertTrue(appointmentService.deleteRecurringBlock(7L));
+    assertFalse(appointmentService.deleteRecurringBlock(8L));
+  }
+
+  @Test
+  void testDeleteRecurringBlockOccurrence_addsExcludedDate() {
+    RecurringBlock rule = lunchBreak();
+    rule.setExcludedDates("2024-10-20");
+    when(recurringBlockMapper.getRecurringBlock(7L)).thenReturn(rule);
+
+    assertTrue(appointmentService.deleteRecurringBlockOccurrence(7L, LocalDate.of(2024, 10, 15)));
+
+    verify(recurringBlockMapper).updateExcludedDates(7L, "2024-10-15,2024-10-20");
+    verify(intervalIndex).onRecurringBlocksChanged(1L);
+    verify(availabilityCache).invalidateProvider(1L);
+  }
+
+  @Test
+  void testDeleteRecurringBlockOccurrence_rejectsDayOutsideRule() {
+    when(recurringBlockMapper.getRecurringBlock(7L)).thenReturn(lunchBreak());
+
+    IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.deleteRecurringBlockOccurrence(7L, LocalDate.of(2024, 11, 1)));
+
+    assertEquals("The recurring block does not occur on 2024-11-01.", exception.getMessage());
+    verify(recurringBlockMapper, never()).updateExcludedDates(anyLong(), any());
+    assertFalse(appointmentService.deleteRecurringBlockOccurrence(8L, LocalDate.of(2024, 10, 1)));
+  }
+
+  @Test
+  void testCreateAppointment_indexEngineTakesRulesFromIndex() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    when(intervalIndex.isEnabled()).thenReturn(true);
+    when(intervalIndex.recurringBlocks(1L)).thenReturn(List.of(lunchBreak()));
+
+    CreateAppointmentDto appointmentDto = new CreateAppointmentDto();
+    appointmentDto.setProviderId(1L);
+    appointmentDto.setStartDateTime(LocalDateTime.of(2024, 10, 15, 12, 30));
+    appointmentDto.setEndDateTime(LocalDateTime.of(2024, 10, 15, 13, 30));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.createAppointment(appointmentDto));
+    verify(recurringBlockMapper, never()).getRecurringBlocksInDateRange(anyLong(), any(), any());
+  }
+
+  @Test
+  void testFindAvailableSlots_joinsFreeTimeAcrossMidnight() {
+    ReflectionTestUtils.setField(appointmentService, "slotSearchChunkDays", 7);
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    Appointment first = new Appointment();
+    first.setStartDateTime(date.atTime(14, 0));
+    first.setEndDateTime(date.atTime(16, 0));
+    Appointment second = new Appointment();
+    second.setStartDateTime(date.atTime(16, 30));
+    second.setEndDateTime(date.atTime(23, 0));
+    when(appointmentMapper.getAppointmentsOverlappingRange(
+        1L, date.atStartOfDay(), date.plusDays(7).atStartOfDay()))
+        .thenReturn(new ArrayList<>(List.of(first, second)));
+
+    List<List<LocalDateTime>> slots =
+        appointmentService.findAvailableSlots(1L, 45, date.atTime(14, 0), 7, 2);
+
+    // The 30 minute gap at 16:00 is too short
+    assertEquals(2, slots.size());
+    assertEquals(List.of(date.atTime(23, 0), date.atTime(23, 45)), slots.get(0));
+    assertEquals(List.of(date.atTime(23, 45), date.plusDays(1).atTime(0, 30)), slots.get(1));
+  }
+
+  @Test
+  void testFindAvailableSlots_readsForwardInChunks() {
+    ReflectionTestUtils.setField(appointmentService, "slotSearchChunkDays", 2);
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    when(appointmentMapper.getAppointmentsOverlappingRange(
+        1L, date.atStartOfDay(), date.plusDays(2).atStartOfDay()))
+        .thenReturn(new ArrayList<>(List.of(fullDayBlock(date), fullDayBlock(date.plusDays(1)))));
+    when(appointmentMapper.getAppointmentsOverlappingRange(
+        1L, date.plusDays(2).atStartOfDay(), date.plusDays(4).atStartOfDay()))
+        .thenReturn(new ArrayList<>(
+            List.of(fullDayBlock(date.plusDays(2)), fullDayBlock(date.plusDays(3)))));
+    when(appointmentMapper.getAppointmentsOverlappingRange(
+        1L, date.plusDays(4).atStartOfDay(), date.plusDays(5).atStartOfDay()))
+        .thenReturn(new ArrayList<>());
+
+    List<List<LocalDateTime>> slots =
+        appointmentService.findAvailableSlots(1L, 30, date.atTime(8, 0), 5, 1);
+
+    assertEquals(List.of(List.of(date.plusDays(4).atStartOfDay(),
+        date.plusDays(4).atTime(0, 30))), slots);
+  }
+
+  @Test
+  void testFindAvailableSlots_skipsBookingFromPreviousDay() {
+    ReflectionTestUtils.setField(appointmentService, "slotSearchChunkDays", 7);
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    Appointment overnight = new Appointment();
+    overnight.setStartDateTime(date.minusDays(1).atTime(22, 0));
+    overnight.setEndDateTime(date.atTime(2, 0));
+    when(appointmentMapper.getAppointmentsOverlappingRange(
+        1L, date.atStartOfDay(), date.plusDays(7).atStartOfDay()))
+        .thenReturn(new ArrayList<>(List.of(overnight)));
+
+    List<List<LocalDateTime>> slots =
+        appointmentService.findAvailableSlots(1L, 60, date.atStartOfDay(), 7, 1);
+
+    assertEquals(List.of(List.of(date.atTime(2, 0), date.atTime(3, 0))), slots);
+  }
+
+  @Test
+  void testFindAvailableSlots_invalidArguments() {
+    LocalDateTime start = LocalDateTime.of(2024, 10, 15, 14, 0);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.findAvailableSlots(1L, 0, start, 7, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.findAvailableSlots(1L, 30, start, 7, 0));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.findAvailableSlots(1L, 30, start, 400, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.findAvailableSlots(1L, 30, null, 7, 1));
+  }
+
+  @Test
+  void testGetAvailableTimeIntervalsInRange_groupsByDayWithOneQuery() {
+    LocalDate startDate = LocalDate.of(2024, 10, 14);
+    LocalDate endDate = LocalDate.of(2024, 10, 17);
+    Appointment morning = new Appointment();
+    morning.setStartDateTime(LocalDateTime.of(2024, 10, 14, 9, 0));
+    morning.setEndDateTime(LocalDateTime.of(2024, 10, 14, 10, 0));
+    Appointment afternoon = new Appointment();
+    afternoon.setStartDateTime(LocalDateTime.of(2024, 10, 16, 13, 0));
+    afternoon.setEndDateTime(LocalDateTime.of(2024, 10, 16, 14, 0));
+    when(appointmentMapper.getAppointmentsByProviderAndDates(1L, startDate, endDate))
+        .thenReturn(new ArrayList<>(List.of(morning, afternoon)));
+
+    Map<LocalDate, List<List<LocalDateTime>>> result =
+        appointmentService.getAvailableTimeIntervalsInRange(1L, startDate, endDate);
+
+    assertEquals(List.of(startDate, startDate.plusDays(1), startDate.plusDays(2)),
+        new ArrayList<>(result.keySet()));
+    assertEquals(2, result.get(startDate).size());
+    assertEquals(LocalDateTime.of(2024, 10, 14, 10, 0), result.get(startDate).get(1).get(0));
+    assertEquals(1, result.get(startDate.plusDays(1)).size());
+    assertEquals(LocalDateTime.of(2024, 10, 15, 23, 59, 59, 999999999),
+        result.get(startDate.plusDays(1)).get(0).get(1));
+    assertEquals(LocalDateTime.of(2024, 10, 16, 13, 0),
+        result.get(startDate.plusDays(2)).get(0).get(1));
+    verify(appointmentMapper, never()).getAppointmentsByProviderAndDate(anyLong(), any());
+  }
+
+  @Test
+  void testGetAvailableTimeIntervalsInRange_includesRecurringBlocks() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    LocalDate startDate = LocalDate.of(2024, 10, 14);
+    LocalDate endDate = LocalDate.of(2024, 10, 16);
+    when(appointmentMapper.getAppointmentsByProviderAndDates(1L, startDate, endDate))
+        .thenReturn(new ArrayList<>());
+    when(recurringBlockMapper.getRecurringBlocksInDateRange(1L, startDate, endDate.minusDays(1)))
+        .thenReturn(List.of(lunchBreak()));
+
+    Map<LocalDate, List<List<LocalDateTime>>> result =
+        appointmentService.getAvailableTimeIntervalsInRange(1L, startDate, endDate);
+
+    assertEquals(2, result.size());
+    for (List<List<LocalDateTime>> intervals : result.values()) {
+      assertEquals(2, intervals.size());
+      assertEquals(LocalTime.of(12, 0), intervals.get(0).get(1).toLocalTime());
+      assertEquals(LocalTime.of(13, 0), intervals.get(1).get(0).toLocalTime());
+    }
+  }
+
+  @Test
+  void testGetAvailableTimeIntervalsInRange_invalidRange() {
+    LocalDate date = LocalDate.of(2024, 10, 14);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getAvailableTimeIntervalsInRange(1L, date, date));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getAvailableTimeIntervalsInRange(1L, date, date.plusYears(2)));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getAvailableTimeIntervalsInRange(null, date, date.plusDays(1)));
+    verify(appointmentMapper, never()).getAppointmentsByProviderAndDates(any(), any(), any());
+  }
+
+  @Test
+  void testGetAvailableTimeIntervals_cacheHitSkipsQuery() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    List<List<LocalDateTime>> cached = List.of(List.of(date.atStartOfDay(), date.atTime(9, 0)));
+    when(availabilityCache.isEnabled()).thenReturn(true);
+    when(availabilityCache.get(1L, date)).thenReturn(cached);
+
+    assertEquals(cached, appointmentService.getAvailableTimeIntervals(1L, date));
+    verify(appointmentMapper, never()).getAppointmentsByProviderAndDate(anyLong(), any());
+  }
+
+  @Test
+  void testGetAvailableTimeIntervals_cacheMissStoresResult() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    when(availabilityCache.isEnabled()).thenReturn(true);
+    when(availabilityCache.version()).thenReturn(4L);
+    when(appointmentMapper.getAppointmentsByProviderAndDate(1L, date))
+        .thenReturn(new ArrayList<>());
+
+    List<List<LocalDateTime>> result = appointmentService.getAvailableTimeIntervals(1L, date);
+
+    verify(availabilityCache).put(1L, date, 4L, result);
+  }
+
+  @Test
+  void testUpdateAppointment_invalidatesOldAndNewDay() {
+    Appointment existing = new Appointment();
+    existing.setAppointmentId(1L);
+    existing.setProviderId(1L);
+    existing.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    existing.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    Appointment moved = new Appointment();
+    moved.setAppointmentId(1L);
+    moved.setProviderId(1L);
+    moved.setStartDateTime(LocalDateTime.of(2024, 10, 17, 9, 0));
+    moved.setEndDateTime(LocalDateTime.of(2024, 10, 17, 10, 0));
+    when(appointmentMapper.getAppointment(1L)).thenReturn(existing);
+    when(appointmentMapper.checkUpdateTimeConflict(anyLong(), any(), any())).thenReturn(0);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(1);
+
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setStartDateTime(moved.getStartDateTime());
+    updateDto.setEndDateTime(moved.getEndDateTime());
+    appointmentService.updateAppointment(updateDto);
+
+    verify(availabilityCache).invalidate(1L, LocalDate.of(2024, 10, 15));
+    verify(availabilityCache).invalidate(1L, LocalDate.of(2024, 10, 17));
+  }
+
+  @Test
+  void testCancelAppointment_invalidatesDayWhenCacheEnabled() {
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(1L);
+    appointment.setProviderId(2L);
+    appointment.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    when(availabilityCache.isEnabled()).thenReturn(true);
+    when(appointmentMapper.getAppointment(1L)).thenReturn(appointment);
+    when(appointmentMapper.cancelAppointment(1L)).thenReturn(1);
+
+    assertTrue(appointmentService.cancelAppointment(1L));
+    verify(availabilityCache).invalidate(2L, LocalDate.of(2024, 10, 15));
+  }
+
+  @Test
+  void testGetAvailableTimeIntervals_bitmapMatchesSweep() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    Random random = new Random(42);
+    for (int round = 0; round < 50; round++) {
+      List<Appointment> appointments = new ArrayList<>();
+      for (int i = random.nextInt(8); i > 0; i--) {
+        Appointment appointment = new Appointment();
+        LocalDateTime start = date.atStartOfDay().plusMinutes(random.nextInt(1440));
+        appointment.setStartDateTime(start);
+        appointment.setEndDateTime(start.plusMinutes(1 + random.nextInt(240)));
+        appointments.add(appointment);
+      }
+      when(appointmentMapper.getAppointmentsByProviderAndDate(1L, date))
+          .thenAnswer(invocation -> new ArrayList<>(appointments));
+
+      ReflectionTestUtils.setField(appointmentService, "useAvailabilityBitmap", false);
+      List<List<LocalDateTime>> swept = appointmentService.getAvailableTimeIntervals(1L, date);
+      ReflectionTestUtils.setField(appointmentService, "useAvailabilityBitmap", true);
+      ReflectionTestUtils.setField(appointmentService, "slotMinutes", 1);
+      List<List<LocalDateTime>> bitmap = appointmentService.getAvailableTimeIntervals(1L, date);
+
+      assertEquals(swept, bitmap);
+    }
+  }
+
+  @Test
+  void testGetAvailableTimeIntervals_bitmapFallsBackOffGrid() {
+    ReflectionTestUtils.setField(appointmentService, "useAvailabilityBitmap", true);
+    ReflectionTestUtils.setField(appointmentService, "slotMinutes", 15);
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    Appointment appointment = new Appointment();
+    appointment.setStartDateTime(date.atTime(9, 5));
+    appointment.setEndDateTime(date.atTime(9, 50));
+    when(appointmentMapper.getAppointmentsByProviderAndDate(1L, date))
+        .thenReturn(new ArrayList<>(List.of(appointment)));
+
+    List<List<LocalDateTime>> result = appointmentService.getAvailableTimeIntervals(1L, date);
+
+    assertEquals(date.atTime(9, 5), result.get(0).get(1));
+    assertEquals(date.atTime(9, 50), result.get(1).get(0));
+  }
+
+  @Test
+  void testGetCommonAvailability_mergesProvidersFromOneQuery() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    Appointment first = new Appointment();
+    first.setProviderId(1L);
+    first.setStartDateTime(date.atTime(9, 0));
+    first.setEndDateTime(date.atTime(12, 0));
+    Appointment second = new Appointment();
+    second.setProviderId(2L);
+    second.setStartDateTime(date.atTime(11, 0));
+    second.setEndDateTime(date.atTime(13, 0));
+    when(appointmentMapper.getAppointmentsByProvidersAndDates(
+        List.of(1L, 2L), date, date.plusDays(1)))
+        .thenReturn(List.of(first, second));
+
+    List<List<LocalDateTime>> windows = appointmentService.getCommonAvailability(
+        List.of(1L, 2L, 1L), date, date.plusDays(1), 60);
+
+    assertEquals(List.of(List.of(date.atStartOfDay(), date.atTime(9, 0)),
+        List.of(date.atTime(13, 0), date.atTime(LocalTime.MAX))), windows);
+  }
+
+  @Test
+  void testGetCommonAvailability_includesRecurringBlocks() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    when(appointmentMapper.getAppointmentsByProvidersAndDates(List.of(1L, 2L), date,
+        date.plusDays(1))).thenReturn(List.of());
+    when(recurringBlockMapper.getRecurringBlocksByProvidersInDateRange(List.of(1L, 2L), date,
+        date)).thenReturn(List.of(lunchBreak()));
+
+    List<List<LocalDateTime>> windows = appointmentService.getCommonAvailability(
+        List.of(1L, 2L), date, date.plusDays(1), null);
+
+    assertEquals(2, windows.size());
+    assertEquals(date.atTime(12, 0), windows.get(0).get(1));
+    assertEquals(date.atTime(13, 0), windows.get(1).get(0));
+  }
+
+  @Test
+  void testGetCommonAvailability_invalidArguments() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getCommonAvailability(List.of(), date, date.plusDays(1), null));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getCommonAvailability(List.of(1L), date, date, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getCommonAvailability(List.of(1L), date, date.plusDays(1), -5));
+  }
+
+  @Test
+  void testCreateAppointments_checksStoredIntervalsAndTheBatch() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    Appointment stored = new Appointment();
+    stored.setProviderId(1L);
+    stored.setStartDateTime(date.atTime(12, 0));
+    stored.setEndDateTime(date.atTime(13, 0));
+    when(appointmentMapper.getAppointmentsOverlappingRange(1L, date.atTime(9, 0),
+        date.atTime(13, 0))).thenReturn(List.of(stored));
+    when(appointmentMapper.getAppointmentsOverlappingRange(2L, date.atTime(9, 0),
+        date.atTime(10, 0))).thenReturn(List.of());
+    long[] nextId = {100};
+    doAnswer(invocation -> {
+      List<Appointment> appointments = invocation.getArgument(0);
+      appointments.forEach(appointment -> appointment.setAppointmentId(nextId[0]++));
+      return null;
+    }).when(batchWriter).insertAllWithIds(any());
+
+    List<BatchAppointmentResult> results = appointmentService.createAppointments(Arrays.asList(
+        batchItem(1L, date.atTime(9, 0), date.atTime(10, 0)),
+        batchItem(1L, date.atTime(9, 30), date.atTime(10, 30)),
+        batchItem(1L, date.atTime(12, 30), date.atTime(13, 0)),
+        batchItem(2L, date.atTime(9, 0), date.atTime(10, 0)),
+        batchItem(null, date.atTime(9, 0), date.atTime(10, 0)),
+        batchItem(1L, date.atTime(11, 0), date.atTime(11, 0))));
+
+    assertEquals(6, results.size());
+    assertEquals(100L, results.get(0).getAppointmentId());
+    assertEquals("Conflicts with appointment 0 of the batch.", results.get(1).getError());
+    assertEquals("The selected time slot is not available or conflicts with an existing "
+        + "appointment.", results.get(2).getError());
+    assertEquals(101L, results.get(3).getAppointmentId());
+    assertEquals("Provider ID cannot be null.", results.get(4).getError());
+    assertEquals("Start date time must be before end date time.", results.get(5).getError());
+    verify(batchWriter, times(2)).insertAllWithIds(any());
+    verify(appointmentMapper, never()).checkCreateTimeConflict(any(), any(), any());
+    assertEquals(2, businessMetrics.getBookingsCreated());
+    assertEquals(2, businessMetrics.getConflictsDetected());
+  }
+
+  @Test
+  void testCreateAppointments_indexesRowsBeforeReleasingProviderLock() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    when(appointmentMapper.getAppointmentsOverlappingRange(1L, date.atTime(9, 0),
+        date.atTime(10, 0))).thenReturn(List.of());
+    List<Boolean> lockHeld = new ArrayList<>();
+    doAnswer(invocation -> lockHeld.add(providerLockHeld()))
+        .when(intervalIndex).onSaved(any());
+
+    appointmentService.createAppointments(
+        List.of(batchItem(1L, date.atTime(9, 0), date.atTime(10, 0))));
+
+    assertEquals(List.of(true), lockHeld);
+  }
+
+  @Test
+  void testCreateAppointments_acceptsBackToBackAppointmentsInAnyOrder() {
+    LocalDate date = LocalDate.of(2024, 10, 15);
+    when(appointmentMapper.getAppointmentsOverlappingRange(1L, date.atTime(9, 0),
+        date.atTime(11, 0))).thenReturn(List.of());
+
+    List<BatchAppointmentResult> results = appointmentService.createAppointments(List.of(
+        batchItem(1L, date.atTime(10, 0), date.atTime(11, 0)),
+        batchItem(1L, date.atTime(9, 0), date.atTime(10, 0))));
+
+    assertNull(results.get(0).getError());
+    assertNull(results.get(1).getError());
+    verify(batchWriter).insertAllWithIds(argThat(appointments -> appointments.size() == 2));
+  }
+
+  @Test
+  void testCreateAppointments_invalidBatch() {
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.createAppointments(List.of()));
+    List<CreateAppointmentDto> tooMany = new ArrayList<>();
+    for (int i = 0; i <= 1000; i++) {
+      tooMany.add(new CreateAppointmentDto());
+    }
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.createAppointments(tooMany));
+  }
+
+  @Test
+  void testCancelAppointmentsInRange_updatesIndexAndCache() {
+    LocalDateTime start = LocalDateTime.of(2024, 10, 1, 0, 0);
+    LocalDateTime end = LocalDateTime.of(2024, 11, 1, 0, 0);
+    BulkOperationResult cancelled = new BulkOperationResult();
+    cancelled.setAffected(2);
+    cancelled.setAppointmentIds(List.of(5L, 6L));
+    when(batchWriter.cancelInRange(1L, start, end, "blocked")).thenReturn(cancelled);
+
+    BulkOperationResult result =
+        appointmentService.cancelAppointmentsInRange(1L, start, end, "blocked");
+
+    assertEquals(2, result.getAffected());
+    assertEquals(List.of(5L, 6L), result.getAppointmentIds());
+    verify(intervalIndex).onRemoved(5L);
+    verify(intervalIndex).onRemoved(6L);
+    verify(availabilityCache).invalidateProvider(1L);
+  }
+
+  @Test
+  void testDeleteAppointmentsInRange_nothingMatched() {
+    LocalDateTime start = LocalDateTime.of(2024, 10, 1, 0, 0);
+    LocalDateTime end = LocalDateTime.of(2024, 11, 1, 0, 0);
+    BulkOperationResult deleted = new BulkOperationResult();
+    deleted.setAppointmentIds(List.of());
+    when(batchWriter.deleteInRange(1L, start, end, null)).thenReturn(deleted);
+
+    assertEquals(0, appointmentService.deleteAppointmentsInRange(1L, start, end, null)
+        .getAffected());
+    verify(availabilityCache, never()).invalidateProvider(any());
+  }
+
+  @Test
+  void testBulkRangeOperations_invalidArguments() {
+    LocalDateTime start = LocalDateTime.of(2024, 10, 1, 0, 0);
+
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.cancelAppointmentsInRange(null, start, start.plusDays(1), null));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.cancelAppointmentsInRange(1L, start, null, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.deleteAppointmentsInRange(1L, start, start, null));
+    verify(batchWriter, never()).deleteInRange(any(), any(), any(), any());
+  }
+
+  @Test
+  void testUpdateAppointment_readsRowOnceAndBuildsResult() {
+    Appointment existing = new Appointment();
+    existing.setAppointmentId(1L);
+    existing.setProviderId(3L);
+    existing.setUserId(4L);
+    existing.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    existing.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    existing.setStatus("scheduled");
+    existing.setServiceType("consultation");
+    when(appointmentMapper.getAppointment(1L)).thenReturn(existing);
+    when(appointmentMapper.checkUpdateTimeConflict(1L, LocalDateTime.of(2024, 10, 15, 9, 0),
+        LocalDateTime.of(2024, 10, 15, 11, 0))).thenReturn(0);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(1);
+
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setEndDateTime(LocalDateTime.of(2024, 10, 15, 11, 0));
+    updateDto.setComments("extended");
+    Appointment result = appointmentService.updateAppointment(updateDto);
+
+    assertEquals(3L, result.getProviderId());
+    assertEquals(4L, result.getUserId());
+    assertEquals(LocalDateTime.of(2024, 10, 15, 9, 0), result.getStartDateTime());
+    assertEquals(LocalDateTime.of(2024, 10, 15, 11, 0), result.getEndDateTime());
+    assertEquals("scheduled", result.getStatus());
+    assertEquals("extended", result.getComments());
+    verify(appointmentMapper).getAppointment(1L);
+    verify(appointmentMapper).checkUpdateTimeConflict(any(), any(), any());
+    verify(appointmentMapper).updateAppointment(any(), any(), any(), any());
+    verifyNoMoreInteractions(appointmentMapper);
+  }
+
+  @Test
+  void testUpdateAppointment_rowMovedBeforeLock_checksCurrentTimes() {
+    Appointment stale = new Appointment();
+    stale.setAppointmentId(1L);
+    stale.setProviderId(3L);
+    stale.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    stale.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    Appointment current = new Appointment();
+    current.setAppointmentId(1L);
+    current.setProviderId(3L);
+    current.setStartDateTime(LocalDateTime.of(2024, 10, 15, 8, 0));
+    current.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    when(appointmentMapper.getAppointment(1L)).thenReturn(stale, current);
+    when(appointmentMapper.checkUpdateTimeConflict(anyLong(), any(), any())).thenReturn(0);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(0, 1);
+
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setEndDateTime(LocalDateTime.of(2024, 10, 15, 11, 0));
+    Appointment result = appointmentService.updateAppointment(updateDto);
+
+    assertEquals(LocalDateTime.of(2024, 10, 15, 8, 0), result.getStartDateTime());
+    verify(appointmentMapper).checkUpdateTimeConflict(1L, LocalDateTime.of(2024, 10, 15, 8, 0),
+        LocalDateTime.of(2024, 10, 15, 11, 0));
+  }
+
+  @Test
+  void testUpdateAppointment_cancelledBeforeLock_returnsCurrentStatus() {
+    Appointment stale = new Appointment();
+    stale.setAppointmentId(1L);
+    stale.setProviderId(3L);
+    stale.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    stale.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    stale.setStatus("confirmed");
+    Appointment cancelled = new Appointment();
+    cancelled.setAppointmentId(1L);
+    cancelled.setProviderId(3L);
+    cancelled.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    cancelled.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    cancelled.setStatus("cancelled");
+    when(appointmentMapper.getAppointment(1L)).thenReturn(stale, cancelled);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), eq("confirmed")))
+        .thenReturn(0);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), eq("cancelled")))
+        .thenReturn(1);
+
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setComments("Running late");
+    Appointment result = appointmentService.updateAppointment(updateDto);
+
+    assertEquals("cancelled", result.getStatus());
+    assertEquals("Running late", result.getComments());
+    verify(intervalIndex, never()).onSaved(argThat(row -> "confirmed".equals(row.getStatus())));
+    verify(intervalIndex).onSaved(argThat(row -> "cancelled".equals(row.getStatus())));
+  }
+
+  @Test
+  void testUpdateAppointment_fractionalSeconds_truncatedBeforeWrite() {
+    Appointment row = new Appointment();
+    row.setAppointmentId(1L);
+    row.setProviderId(3L);
+    row.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    row.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    when(appointmentMapper.getAppointment(1L)).thenReturn(row);
+    when(appointmentMapper.checkUpdateTimeConflict(anyLong(), any(), any())).thenReturn(0);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(1);
+
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setStartDateTime(LocalDateTime.of(2024, 10, 15, 11, 0, 0, 600_000_000));
+    updateDto.setEndDateTime(LocalDateTime.of(2024, 10, 15, 12, 0, 0, 600_000_000));
+    Appointment result = appointmentService.updateAppointment(updateDto);
+
+    LocalDateTime start = LocalDateTime.of(2024, 10, 15, 11, 0);
+    LocalDateTime end = LocalDateTime.of(2024, 10, 15, 12, 0);
+    assertEquals(start, result.getStartDateTime());
+    assertEquals(end, result.getEndDateTime());
+    verify(appointmentMapper).checkUpdateTimeConflict(1L, start, end);
+    verify(appointmentMapper).updateAppointment(
+        argThat(update -> start.equals(update.getStartDateTime())
+            && end.equals(update.getEndDateTime())), any(), any(), any());
+    verify(intervalIndex).onSaved(argThat(saved -> start.equals(saved.getStartDateTime())));
+  }
+
+  @Test
+  void testUpdateAppointment_indexAndCacheWaitForCommit() {
+    Appointment row = new Appointment();
+    row.setAppointmentId(1L);
+    row.setProviderId(3L);
+    row.setStartDateTime(LocalDateTime.of(2024, 10, 15, 9, 0));
+    row.setEndDateTime(LocalDateTime.of(2024, 10, 15, 10, 0));
+    when(appointmentMapper.getAppointment(1L)).thenReturn(row);
+    when(appointmentMapper.updateAppointment(any(), any(), any(), any())).thenReturn(1);
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setComments("Running late");
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      appointmentService.updateAppointment(updateDto);
+
+      verify(intervalIndex, never()).onSaved(any());
+      verify(availabilityCache, never()).invalidate(any(), any());
+      TransactionSynchronizationManager.getSynchronizations()
+          .forEach(TransactionSynchronization::afterCommit);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    verify(intervalIndex).onSaved(argThat(saved -> "Running late".equals(saved.getComments())));
+    verify(availabilityCache, times(2)).invalidate(3L, LocalDate.of(2024, 10, 15));
+  }
+
+  @Test
+  void testGetAppointmentsByProviderIdPage_readsOneExtraRowForTheCursor() {
+    Appointment first = pagedAppointment(3L, LocalDateTime.of(2024, 1, 1, 9, 0));
+    Appointment second = pagedAppointment(8L, LocalDateTime.of(2024, 1, 1, 10, 0));
+    Appointment extra = pagedAppointment(5L, LocalDateTime.of(2024, 1, 1, 11, 0));
+    when(appointmentMapper.getAppointmentsByProviderIdPage(1L, null, null, 3))
+        .thenReturn(new ArrayList<>(List.of(first, second, extra)));
+
+    AppointmentPage page = appointmentService.getAppointmentsByProviderId(1L, null, 2);
+
+    assertEquals(List.of(first, second), page.getItems());
+    KeysetCursor next = KeysetCursor.decode(page.getNextCursor());
+    assertEquals(LocalDateTime.of(2024, 1, 1, 10, 0), next.getStartDateTime());
+    assertEquals(8L, next.getAppointmentId());
+
+    when(appointmentMapper.getAppointmentsByProviderIdPage(
+        1L, LocalDateTime.of(2024, 1, 1, 10, 0), 8L, 3))
+        .thenReturn(new ArrayList<>(List.of(extra)));
+
+    AppointmentPage last =
+        appointmentService.getAppointmentsByProviderId(1L, page.getNextCursor(), 2);
+
+    assertEquals(List.of(extra), last.getItems());
+    assertNull(last.getNextCursor());
+  }
+
+  @Test
+  void testGetAppointmentsByProviderIdPage_defaultAndInvalidLimits() {
+    when(appointmentMapper.getAppointmentsByProviderIdPage(1L, null, null, 101))
+        .thenReturn(new ArrayList<>());
+
+    assertTrue(appointmentService.getAppointmentsByProviderId(1L, null, null).getItems()
+        .isEmpty());
+
+    for (Integer limit : new Integer[] {0, 501}) {
+      IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+          () -> appointmentService.getAppointmentsByProviderId(1L, null, limit));
+      assertEquals("Limit must be between 1 and 500.", exception.getMessage());
+    }
+    IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getAppointmentsByProviderId(1L, "%%%", 10));
+    assertEquals("Invalid cursor.", exception.getMessage());
+    verify(appointmentMapper, times(1)).getAppointmentsByProviderIdPage(any(), any(), any(),
+        anyInt());
+  }
+
+  @Test
+  void testGetAppointmentHistoryPage_passesTheCursorKeyAndDayRange() {
+    AppointmentHistoryEntry first = new AppointmentHistoryEntry(12L,
+        LocalDateTime.of(2024, 2, 1, 9, 0), LocalDateTime.of(2024, 2, 1, 10, 0), "scheduled",
+        "Medical", null);
+    AppointmentHistoryEntry second = new AppointmentHistoryEntry(13L,
+        LocalDateTime.of(2024, 2, 2, 9, 0), LocalDateTime.of(2024, 2, 2, 10, 0), "scheduled",
+        "Medical", null);
+    String cursor = new KeysetCursor(LocalDateTime.of(2024, 1, 15, 9, 0), 4L).encode();
+    when(appointmentMapper.findAppointmentsByProviderAndUserPage(1L, 2L,
+        LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 3, 1, 0, 0),
+        LocalDateTime.of(2024, 1, 15, 9, 0), 4L, 2))
+        .thenReturn(new ArrayList<>(List.of(first, second)));
+
+    AppointmentHistoryPage page = appointmentService.getAppointmentHistory(1L, 2L,
+        LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 1), cursor, 1);
+
+    assertEquals(List.of(first), page.getItems());
+    KeysetCursor next = KeysetCursor.decode(page.getNextCursor());
+    assertEquals(LocalDateTime.of(2024, 2, 1, 9, 0), next.getStartDateTime());
+    assertEquals(12L, next.getAppointmentId());
+  }
+
+  @Test
+  void testGetAppointmentHistoryPage_invalidDayRange() {
+    IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.getAppointmentHistory(1L, 2L, LocalDate.of(2024, 3, 1),
+            LocalDate.of(2024, 1, 1), null, null));
+
+    assertEquals("Start date must be before end date.", exception.getMessage());
+    verifyNoMoreInteractions(appointmentMapper);
+  }
+
+  @Test
+  void testGetAppointmentsWithinDateRangePage_mergesRecurringOccurrencesInKeyOrder() {
+    ReflectionTestUtils.setField(appointmentService, "useBlockRules", true);
+    LocalDate startDate = LocalDate.of(2024, 10, 1);
+    LocalDate endDate = LocalDate.of(2024, 10, 4);
+    Appointment morning = pagedAppointment(20L, LocalDateTime.of(2024, 10, 1, 9, 0));
+    Appointment atNoon = pagedAppointment(21L, LocalDateTime.of(2024, 10, 2, 12, 0));
+    Appointment evening = pagedAppointment(22L, LocalDateTime.of(2024, 10, 3, 18, 0));
+    when(appointmentMapper.getAppointmentsWithinDateRangePage(
+        1L, startDate, endDate, null, null, 4))
+        .thenReturn(new ArrayList<>(List.of(morning, atNoon, evening)));
+    when(recurringBlockMapper.getRecurringBlocksInDateRange(1L, startDate, endDate))
+        .thenReturn(List.of(lunchBreak()));
+
+    AppointmentPage page = appointmentService.getAppointmentsWithinDateRange(
+        1L, startDate, endDate, null, 3);
+
+    // 10-01 09:00, the 10-01 lunch occurrence, then the 10-02 occurrence before row 21
+    assertEquals(3, page.getItems().size());
+    assertEquals(morning, page.getItems().get(0));
+    assertNull(page.getItems().get(1).getAppointmentId());
+    assertEquals(LocalDateTime.of(2024, 10, 2, 12, 0),
+        page.getItems().get(2).getStartDateTime());
+    assertNull(page.getItems().get(2).getAppointmentId());
+
+    KeysetCursor next = KeysetCursor.decode(page.getNextCursor());
+    assertEquals(LocalDateTime.of(2024, 10, 2, 12, 0), next.getStartDateTime());
+    assertEquals(0L, next.getAppointmentId());
+
+    // The next page expands only the days from the cursor on and skips the returned occurrence
+    LocalDate cursorDay = LocalDate.of(2024, 10, 2);
+    when(appointmentMapper.getAppointmentsWithinDateRangePage(
+        1L, startDate, endDate, LocalDateTime.of(2024, 10, 2, 12, 0), 0L, 4))
+        .thenReturn(new ArrayList<>(List.of(atNoon, evening)));
+    when(recurringBlockMapper.getRecurringBlocksInDateRange(1L, cursorDay, endDate))
+        .thenReturn(List.of(lunchBreak()));
+
+    AppointmentPage second = appointmentService.getAppointmentsWithinDateRange(
+        1L, startDate, endDate, page.getNextCursor(), 3);
+
+    assertEquals(3, second.getItems().size());
+    assertEquals(atNoon, second.getItems().get(0));
+    assertEquals(LocalDateTime.of(2024, 10, 3, 12, 0),
+        second.getItems().get(1).getStartDateTime());
+    assertEquals(evening, second.getItems().get(2));
+    assertNull(second.getNextCursor());
+  }
+
+  @Test
+  void testExportAppointments_passesTheDayRangeToTheExporter() {
+    when(exporter.export(eq(1L), eq(LocalDateTime.of(2024, 1, 1, 0, 0)),
+        eq(LocalDateTime.of(2024, 2, 1, 0, 0)), eq("blocked"), any()))
+        .thenAnswer(invocation -> {
+          Consumer<Appointment> consumer = invocation.getArgument(4);
+          consumer.accept(pagedAppointment(4L, LocalDateTime.of(2024, 1, 2, 9, 0)));
+          return 1;
+        });
+
+    List<Appointment> exported = new ArrayList<>();
+    int count = appointmentService.exportAppointments(1L, LocalDate.of(2024, 1, 1),
+        LocalDate.of(2024, 2, 1), "blocked", exported::add);
+
+    assertEquals(1, count);
+    assertEquals(4L, exported.get(0).getAppointmentId());
+  }
+
+  @Test
+  void testExportAppointments_withoutFiltersAndWithInvalidArguments() {
+    when(exporter.export(eq(1L), isNull(), isNull(), isNull(), any())).thenReturn(0);
+
+    assertEquals(0, appointmentService.exportAppointments(1L, null, null, null, row -> { }));
+
+    IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.exportAppointments(null, null, null, null, row -> { }));
+    assertEquals("Provider ID cannot be null.", exception.getMessage());
+    exception = assertThrows(IllegalArgumentException.class,
+        () -> appointmentService.exportAppointments(1L, LocalDate.of(2024, 2, 1),
+            LocalDate.of(2024, 2, 1), null, row -> { }));
+    assertEquals("Start date must be before end date.", exception.getMessage());
+    verify(exporter, times(1)).export(any(), any(), any(), any(), any());
+  }
+
+  private static RecurringBlock lunchBreak() {
+    RecurringBlock recurringBlock = new RecurringBlock();
+    recurringBlock.setRecurringBlockId(7L);
+    recurringBlock.setProviderId(1L);
+    recurringBlock.setStartTime(LocalTime.of(12, 0));
+    recurringBlock.setEndTime(LocalTime.of(13, 0));
+    recurringBlock.setStartDate(LocalDate.of(2024, 10, 1));
+    recurringBlock.setEndDate(LocalDate.of(2024, 10, 31));
+    return recurringBlock;
+  }
+
+  private static Appointment fullDayBlock(LocalDate date) {
+    Appointment block = new Appointment();
+    block.setStartDateTime(date.atStartOfDay());
+    block.setEndDateTime(date.plusDays(1).atStartOfDay());
+    block.setStatus("blocked");
+    return block;
+  }
+
+  /** Whether the current thread holds any stripe of the provider lock table. */
+  private boolean providerLockHeld() {
+    for (ReentrantLock stripe
+        : (ReentrantLock[]) ReflectionTestUtils.getField(providerLocks, "stripes")) {
+      if (stripe.isHeldByCurrentThread()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static CreateAppointmentDto batchItem(
+      Long providerId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+    CreateAppointmentDto appointmentDto = new CreateAppointmentDto();
+    appointmentDto.setProviderId(providerId);
+    appointmentDto.setUserId(2L);
+    appointmentDto.setStartDateTime(startDateTime);
+    appointmentDto.setEndDateTime(endDateTime);
+    appointmentDto.setStatus("scheduled");
+    return appointmentDto;
+  }
+
+  private static Appointment pagedAppointment(Long id, LocalDateTime startDateTime) {
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(id);
+    appointment.setProviderId(1L);
+    appointment.setStartDateTime(startDateTime);
+    appointment.setEndDateTime(startDateTime.plusHours(1));
+    appointment.setStatus("scheduled");
+    return appointment;
+  }
+}
@@ -0,0 +1,111 @@
+package org.dljl.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.dljl.dto.UpdateAppointmentDto;
+import org.dljl.entity.Appointment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+
+/**
+ * Counts the SQL statements an appointment update sends to the database.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "appointment.recurring-block.rules=false")
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class UpdateStatementCountIt {
+
+  @Autowired
+  private AppointmentService appointmentService;
+
+  @Autowired
+  private StatementCounter statementCounter;
+
+  @BeforeEach
+  void setUp() {
+    statementCounter.reset();
+  }
+
+  /**
+   * Moving an appointment reads the row, checks for conflicts and updates it.
+   */
+  @Test
+  void testMoveAppointmentRunsThreeStatements() {
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setStartDateTime(LocalDateTime.of(2024, 1, 1, 13, 0));
+    updateDto.setEndDateTime(LocalDateTime.of(2024, 1, 1, 14, 0));
+
+    Appointment updated = appointmentService.updateAppointment(updateDto);
+
+    assertEquals(3, statementCounter.get());
+    assertEquals(LocalDateTime.of(2024, 1, 1, 13, 0), updated.getStartDateTime());
+    assertEquals("Initial test appointment", updated.getComments());
+    assertEquals(LocalDateTime.of(2024, 1, 1, 13, 0),
+        appointmentService.getAppointment(1L).getStartDateTime());
+  }
+
+  /**
+   * Changing other fields skips the conflict check.
+   */
+  @Test
+  void testChangeStatusRunsTwoStatements() {
+    UpdateAppointmentDto updateDto = new UpdateAppointmentDto();
+    updateDto.setAppointmentId(1L);
+    updateDto.setStatus("COMPLETED");
+
+    Appointment updated = appointmentService.updateAppointment(updateDto);
+
+    assertEquals(2, statementCounter.get());
+    assertEquals("COMPLETED", updated.getStatus());
+    assertEquals("COMPLETED", appointmentService.getAppointment(1L).getStatus());
+  }
+
+  /** Registers the statement counter as a MyBatis plugin. */
+  @TestConfiguration
+  static class CounterConfiguration {
+
+    @Bean
+    StatementCounter statementCounter() {
+      return new StatementCounter();
+    }
+  }
+
+  /** Counts every statement MyBatis prepares. */
+  @Intercepts(@Signature(type = StatementHandler.class, method = "prepare",
+      args = {Connection.class, Integer.class}))
+  static class StatementCounter implements Interceptor {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+      count.incrementAndGet();
+      return invocation.proceed();
+    }
+
+    int get() {
+      return count.get();
+    }
+
+    void reset() {
+      count.set(0);
+    }
+  }
+}
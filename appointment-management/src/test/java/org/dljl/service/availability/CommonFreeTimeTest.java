@@ -0,0 +1,135 @@
+package org.dljl.service.availability;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.dljl.entity.Appointment;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Common free time test.
+ */
+public class CommonFreeTimeTest {
+
+  private static final LocalDate DAY = LocalDate.of(2024, 10, 15);
+
+  @Test
+  void testIntersectsFreeTimeOfAllProviders() {
+    List<Appointment> first = List.of(busy(9, 0, 10, 0), busy(13, 0, 14, 0));
+    List<Appointment> second = List.of(busy(9, 30, 11, 0), busy(16, 0, 17, 0));
+
+    List<List<LocalDateTime>> windows = CommonFreeTime.intersect(List.of(first, second),
+        DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay(), null);
+
+    assertEquals(List.of(
+        List.of(DAY.atStartOfDay(), DAY.atTime(9, 0)),
+        List.of(DAY.atTime(11, 0), DAY.atTime(13, 0)),
+        List.of(DAY.atTime(14, 0), DAY.atTime(16, 0)),
+        List.of(DAY.atTime(17, 0), DAY.plusDays(1).atStartOfDay())), windows);
+  }
+
+  @Test
+  void testMinimumDurationAndRangeClipping() {
+    List<Appointment> first = List.of(busy(8, 0, 9, 0), busy(9, 30, 12, 0));
+    List<Appointment> second = List.of(busy(12, 45, 15, 0));
+
+    List<List<LocalDateTime>> windows = CommonFreeTime.intersect(List.of(first, second),
+        DAY.atTime(8, 30), DAY.atTime(16, 0), Duration.ofMinutes(45));
+
+    assertEquals(List.of(List.of(DAY.atTime(12, 0), DAY.atTime(12, 45)),
+        List.of(DAY.atTime(15, 0), DAY.atTime(16, 0))), windows);
+  }
+
+  @Test
+  void testMatchesMinuteByMinuteIntersection() {
+    Random random = new Random(7);
+    for (int round = 0; round < 200; round++) {
+      List<List<Appointment>> providers = new ArrayList<>();
+      boolean[] busyMinutes = new boolean[DayBitmap.MINUTES_PER_DAY];
+      for (int provider = 1 + random.nextInt(5); provider > 0; provider--) {
+        List<Appointment> busy = new ArrayList<>();
+        for (int i = random.nextInt(6); i > 0; i--) {
+          int start = random.nextInt(DayBitmap.MINUTES_PER_DAY);
+          int end = Math.min(start + random.nextInt(180), DayBitmap.MINUTES_PER_DAY);
+          busy.add(busy(start, end));
+          for (int minute = start; minute < end; minute++) {
+            busyMinutes[minute] = true;
+          }
+        }
+        busy.sort(Comparator.comparing(Appointment::getStartDateTime));
+        providers.add(busy);
+      }
+
+      List<List<LocalDateTime>> expected = new ArrayList<>();
+      int free = 0;
+      while (free < busyMinutes.length) {
+        int end = free;
+        while (end < busyMinutes.length && !busyMinutes[end]) {
+          end++;
+        }
+        if (end > free) {
+          expected.add(List.of(minute(free), minute(end)));
+        }
+        free = end + 1;
+      }
+
+      assertEquals(expected, CommonFreeTime.intersect(providers,
+          DAY.atStartOfDay(), DAY.plusDays(1).atStartOfDay(), null));
+    }
+  }
+
+  @Test
+  void testOnGridMatchesSweep() {
+    Random random = new Random(11);
+    for (int round = 0; round < 200; round++) {
+      List<List<Appointment>> providers = new ArrayList<>();
+      for (int provider = 1 + random.nextInt(5); provider > 0; provider--) {
+        List<Appointment> busy = new ArrayList<>();
+        for (int i = random.nextInt(6); i > 0; i--) {
+          int start = random.nextInt(2 * DayBitmap.MINUTES_PER_DAY / 15) * 15;
+          int dayEnd = (start / DayBitmap.MINUTES_PER_DAY + 1) * DayBitmap.MINUTES_PER_DAY;
+          busy.add(busy(start, Math.min(start + 15 + random.nextInt(12) * 15, dayEnd)));
+        }
+        busy.sort(Comparator.comparing(Appointment::getStartDateTime));
+        providers.add(busy);
+      }
+      Duration minDuration = Duration.ofMinutes(random.nextInt(4) * 30);
+
+      assertEquals(CommonFreeTime.intersect(providers, DAY.atStartOfDay(),
+              DAY.plusDays(2).atStartOfDay(), minDuration),
+          CommonFreeTime.intersectOnGrid(providers, DAY, DAY.plusDays(2), 15, minDuration));
+    }
+  }
+
+  @Test
+  void testOnGridFallsBack() {
+    List<Appointment> offGrid = List.of(busy(9, 10, 10, 0));
+    List<Appointment> overnight = List.of(busy(23 * 60, 25 * 60));
+
+    assertNull(CommonFreeTime.intersectOnGrid(List.of(offGrid), DAY, DAY.plusDays(2), 15, null));
+    assertNull(CommonFreeTime.intersectOnGrid(List.of(overnight), DAY, DAY.plusDays(2), 15,
+        null));
+  }
+
+  private static LocalDateTime minute(int minute) {
+    return DAY.atStartOfDay().plusMinutes(minute);
+  }
+
+  private static Appointment busy(int startMinute, int endMinute) {
+    Appointment appointment = new Appointment();
+    appointment.setStartDateTime(minute(startMinute));
+    appointment.setEndDateTime(minute(endMinute));
+    return appointment;
+  }
+
+  private static Appointment busy(int startHour, int startMinute, int endHour, int endMinute) {
+    return busy(startHour * 60 + startMinute, endHour * 60 + endMinute);
+  }
+}
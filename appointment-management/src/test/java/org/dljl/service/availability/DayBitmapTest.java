@@ -0,0 +1,98 @@
+package org.dljl.service.availability;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import org.dljl.entity.Appointment;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Day bitmap test.
+ */
+public class DayBitmapTest {
+
+  private static final LocalDate DAY = LocalDate.of(2024, 10, 15);
+
+  @Test
+  void testOccupyAcrossWordBoundaries() {
+    DayBitmap bitmap = new DayBitmap(1);
+    bitmap.occupy(60, 200);
+
+    assertEquals(1440, bitmap.slots());
+    assertEquals(60, bitmap.nextBusy(0));
+    assertEquals(64, bitmap.nextBusy(64));
+    assertEquals(199, bitmap.nextBusy(199));
+    assertEquals(0, bitmap.nextFree(0));
+    assertEquals(200, bitmap.nextFree(60));
+    assertEquals(1440, bitmap.nextBusy(200));
+  }
+
+  @Test
+  void testFreeIntervalsMatchDayShape() {
+    DayBitmap bitmap = DayBitmap.of(DAY, List.of(
+        appointment(DAY.atTime(9, 0), DAY.atTime(10, 0)),
+        appointment(DAY.atTime(9, 30), DAY.atTime(11, 0)),
+        appointment(DAY.atTime(12, 0), DAY.atTime(13, 0))), 1);
+
+    assertNotNull(bitmap);
+    List<List<LocalDateTime>> intervals = bitmap.freeIntervals(DAY);
+    assertEquals(3, intervals.size());
+    assertEquals(List.of(DAY.atStartOfDay(), DAY.atTime(9, 0)), intervals.get(0));
+    assertEquals(List.of(DAY.atTime(11, 0), DAY.atTime(12, 0)), intervals.get(1));
+    assertEquals(List.of(DAY.atTime(13, 0), DAY.atTime(LocalTime.MAX)), intervals.get(2));
+  }
+
+  @Test
+  void testAppointmentPastMidnightFillsRestOfDay() {
+    DayBitmap bitmap = DayBitmap.of(DAY, List.of(
+        appointment(DAY.atTime(22, 0), DAY.plusDays(1).atTime(1, 0))), 15);
+
+    assertNotNull(bitmap);
+    assertEquals(96, bitmap.slots());
+    assertEquals(List.of(List.of(DAY.atStartOfDay(), DAY.atTime(22, 0))),
+        bitmap.freeIntervals(DAY));
+  }
+
+  @Test
+  void testRowsOffTheGridAreNotRepresented() {
+    assertNull(DayBitmap.of(DAY, List.of(
+        appointment(DAY.atTime(9, 0, 30), DAY.atTime(10, 0))), 1));
+    assertNull(DayBitmap.of(DAY, List.of(
+        appointment(DAY.atTime(9, 10), DAY.atTime(10, 0))), 15));
+    assertNull(DayBitmap.of(DAY, List.of(
+        appointment(DAY.atTime(9, 0), DAY.atTime(9, 0))), 1));
+  }
+
+  @Test
+  void testOccupyAllIntersectsFreeTime() {
+    DayBitmap first = new DayBitmap(30);
+    first.occupy(0, 18);
+    DayBitmap second = new DayBitmap(30);
+    second.occupy(20, 48);
+
+    first.occupyAll(second);
+
+    assertEquals(List.of(List.of(DAY.atTime(9, 0), DAY.atTime(10, 0))),
+        first.freeIntervals(DAY));
+    assertThrows(IllegalArgumentException.class, () -> first.occupyAll(new DayBitmap(15)));
+  }
+
+  @Test
+  void testInvalidSlotSize() {
+    assertThrows(IllegalArgumentException.class, () -> new DayBitmap(7));
+    assertThrows(IllegalArgumentException.class, () -> new DayBitmap(0));
+  }
+
+  private static Appointment appointment(LocalDateTime start, LocalDateTime end) {
+    Appointment appointment = new Appointment();
+    appointment.setStartDateTime(start);
+    appointment.setEndDateTime(end);
+    return appointment;
+  }
+}
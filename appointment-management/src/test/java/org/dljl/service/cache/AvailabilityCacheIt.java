@@ -0,0 +1,130 @@
+package org.dljl.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Integration tests for the availability cache, which the test profile otherwise disables: every
+ * write must be visible in the next availability read of the days it touches.
+ */
+@SpringBootTest(properties = "appointment.availability-cache.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class AvailabilityCacheIt {
+
+  private static final String DAY = "/appointments/provider/1/available/date/2024-01-01";
+
+  private static final String NEXT_DAY = "/appointments/provider/1/available/date/2024-01-03";
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private AvailabilityCache availabilityCache;
+
+  @BeforeEach
+  void setUp() {
+    // test-data.sql rewrote the tables behind the service
+    availabilityCache.clear();
+  }
+
+  @Test
+  void testCreateAndCancelAreVisibleInTheNextRead() throws Exception {
+    mockMvc.perform(get(DAY))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()").value(2));
+    long hits = availabilityCache.getHits();
+    mockMvc.perform(get(DAY))
+        .andExpect(jsonPath("$.length()").value(2));
+    assertEquals(hits + 1, availabilityCache.getHits());
+
+    String response = mockMvc.perform(post("/appointments/createAppointment")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+            {
+                "providerId": 1,
+                "userId": 4,
+                "startDateTime": "2024-01-01T11:00:00",
+                "endDateTime": "2024-01-01T12:00:00",
+                "status": "SCHEDULED"
+            }
+            """))
+        .andExpect(status().isCreated())
+        .andReturn().getResponse().getContentAsString();
+    long appointmentId = ((Number) JsonPath.read(response, "$.appointmentId")).longValue();
+
+    mockMvc.perform(get(DAY))
+        .andExpect(jsonPath("$.length()").value(3))
+        .andExpect(jsonPath("$[1][0]").value("2024-01-01T10:00:00"))
+        .andExpect(jsonPath("$[1][1]").value("2024-01-01T11:00:00"));
+
+    mockMvc.perform(put("/appointments/cancel/" + appointmentId))
+        .andExpect(status().isOk());
+    mockMvc.perform(get(DAY))
+        .andExpect(jsonPath("$.length()").value(2));
+  }
+
+  @Test
+  void testMovedAppointmentFreesTheOldDayAndBlocksTheNewOne() throws Exception {
+    mockMvc.perform(get(DAY))
+        .andExpect(jsonPath("$.length()").value(2));
+    mockMvc.perform(get(NEXT_DAY))
+        .andExpect(jsonPath("$.length()").value(1));
+
+    mockMvc.perform(put("/appointments/update")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+            {
+                "appointmentId": 1,
+                "startDateTime": "2024-01-03T09:00:00",
+                "endDateTime": "2024-01-03T10:00:00"
+            }
+            """))
+        .andExpect(status().isOk());
+
+    mockMvc.perform(get(DAY))
+        .andExpect(jsonPath("$.length()").value(1));
+    mockMvc.perform(get(NEXT_DAY))
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0][1]").value("2024-01-03T09:00:00"));
+  }
+
+  @Test
+  void testRecurringBlockIsVisibleInTheNextRead() throws Exception {
+    mockMvc.perform(get(NEXT_DAY))
+        .andExpect(jsonPath("$.length()").value(1));
+
+    mockMvc.perform(post("/appointments/createRecurringBlock")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content("""
+            {
+                "providerId": 1,
+                "startTime": "12:00",
+                "endTime": "13:00",
+                "startDate": "2024-01-01",
+                "endDate": "2024-01-31"
+            }
+            """))
+        .andExpect(status().isCreated());
+
+    mockMvc.perform(get(NEXT_DAY))
+        .andExpect(jsonPath("$.length()").value(2))
+        .andExpect(jsonPath("$[0][1]").value("2024-01-03T12:00:00"));
+  }
+}
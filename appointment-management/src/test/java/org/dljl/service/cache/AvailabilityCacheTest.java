@@ -0,0 +1,183 @@
+package org.dljl.service.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Availability cache test.
+ */
+public class AvailabilityCacheTest {
+
+  private static final LocalDate DAY = LocalDate.of(2024, 10, 15);
+
+  private final AtomicLong now = new AtomicLong();
+
+  private AvailabilityCache cache;
+
+  @BeforeEach
+  void setUp() {
+    cache = new AvailabilityCache();
+    ReflectionTestUtils.setField(cache, "enabled", true);
+    ReflectionTestUtils.setField(cache, "maxEntries", 2);
+    ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+    cache.setClock(now::get);
+  }
+
+  @Test
+  void testHitAndMissCounts() {
+    assertNull(cache.get(1L, DAY));
+    cache.put(1L, DAY, cache.version(), fullDay(DAY));
+
+    assertEquals(fullDay(DAY), cache.get(1L, DAY));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  void testEntriesExpireAfterTtl() {
+    cache.put(1L, DAY, cache.version(), fullDay(DAY));
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+    assertNotNull(cache.get(1L, DAY));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertNull(cache.get(1L, DAY));
+  }
+
+  @Test
+  void testLeastRecentlyUsedEntryIsEvicted() {
+    cache.put(1L, DAY, cache.version(), fullDay(DAY));
+    cache.put(1L, DAY.plusDays(1), cache.version(), fullDay(DAY.plusDays(1)));
+    cache.get(1L, DAY);
+    cache.put(1L, DAY.plusDays(2), cache.version(), fullDay(DAY.plusDays(2)));
+
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+    assertNotNull(cache.get(1L, DAY));
+    assertNull(cache.get(1L, DAY.plusDays(1)));
+  }
+
+  @Test
+  void testInvalidateOnlyTouchesThatProviderDay() {
+    cache.put(1L, DAY, cache.version(), fullDay(DAY));
+    cache.put(2L, DAY, cache.version(), fullDay(DAY));
+
+    cache.invalidate(1L, DAY);
+
+    assertNull(cache.get(1L, DAY));
+    assertNotNull(cache.get(2L, DAY));
+  }
+
+  @Test
+  void testInvalidateProviderDropsEveryDay() {
+    cache.put(1L, DAY, cache.version(), fullDay(DAY));
+    cache.put(2L, DAY, cache.version(), fullDay(DAY));
+
+    cache.invalidateProvider(1L);
+
+    assertNull(cache.get(1L, DAY));
+    assertNotNull(cache.get(2L, DAY));
+  }
+
+  @Test
+  void testPutAfterConcurrentInvalidationIsDropped() {
+    long version = cache.version();
+    // A write lands while the read is still computing
+    cache.invalidate(1L, DAY.plusDays(3));
+    cache.put(1L, DAY, version, fullDay(DAY));
+
+    assertNull(cache.get(1L, DAY));
+
+    cache.put(1L, DAY, cache.version(), fullDay(DAY));
+    assertNotNull(cache.get(1L, DAY));
+  }
+
+  @Test
+  void testInvalidationMarkersArePrunedAfterTtl() {
+    long staleVersion = cache.version();
+    for (long providerId = 1; providerId <= 100; providerId++) {
+      cache.invalidateProvider(providerId);
+    }
+    assertEquals(100, cache.invalidatedProviders());
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+    cache.invalidate(101L, DAY);
+
+    assertEquals(1, cache.invalidatedProviders());
+    // A read that started before a pruned invalidation still cannot store its intervals
+    cache.put(1L, DAY, staleVersion, fullDay(DAY));
+    assertNull(cache.get(1L, DAY));
+    cache.put(1L, DAY, cache.version(), fullDay(DAY));
+    assertNotNull(cache.get(1L, DAY));
+  }
+
+  @Test
+  void testReplacedEntriesAreNotEvicted() {
+    for (int i = 0; i < 10; i++) {
+      cache.put(1L, DAY, cache.version(), fullDay(DAY.plusDays(i)));
+    }
+    cache.put(2L, DAY, cache.version(), fullDay(DAY));
+
+    assertEquals(2, cache.size());
+    assertEquals(0, cache.getEvictions());
+    assertEquals(fullDay(DAY.plusDays(9)), cache.get(1L, DAY));
+  }
+
+  @Test
+  void testConcurrentUseStaysBounded() throws Exception {
+    ReflectionTestUtils.setField(cache, "maxEntries", 50);
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> workers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        long providerId = t % 4;
+        workers.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < 20_000; i++) {
+            LocalDate date = DAY.plusDays(i % 40);
+            if (i % 10 == 0) {
+              cache.invalidate(providerId, date);
+            } else if (cache.get(providerId, date) == null) {
+              cache.put(providerId, date, cache.version(), fullDay(date));
+            }
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (Future<?> worker : workers) {
+        worker.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue(cache.size() <= 50, "Holds " + cache.size() + " entries");
+    assertTrue(cache.getEvictions() > 0);
+    for (long providerId = 0; providerId < 4; providerId++) {
+      List<List<LocalDateTime>> intervals = cache.get(providerId, DAY);
+      assertTrue(intervals == null || intervals.equals(fullDay(DAY)));
+    }
+  }
+
+  private static List<List<LocalDateTime>> fullDay(LocalDate date) {
+    return List.of(List.of(date.atStartOfDay(), date.plusDays(1).atStartOfDay()));
+  }
+}
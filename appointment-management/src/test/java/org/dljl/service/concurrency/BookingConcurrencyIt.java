@@ -0,0 +1,119 @@
+package org.dljl.service.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.dljl.dto.CreateAppointmentDto;
+import org.dljl.service.AppointmentService;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+
+/**
+ * Stress test firing concurrent bookings for the same slot at the service, with the database
+ * guard enabled.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "appointment.locking.db-guard=true")
+@Sql(scripts = "/test-data.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+public class BookingConcurrencyIt {
+
+  private static final Logger logger = LoggerFactory.getLogger(BookingConcurrencyIt.class);
+
+  private static final int THREADS = 32;
+
+  private static final int CONTENDED_REQUESTS = 2000;
+
+  private static final int OTHER_PROVIDERS = 20;
+
+  private static final LocalDateTime SLOT_START = LocalDateTime.of(2024, 6, 3, 10, 0);
+
+  @Autowired
+  private AppointmentService appointmentService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Test
+  void testConcurrentBookingsOfOneSlotCreateOneAppointment() throws Exception {
+    List<Callable<Boolean>> requests = new ArrayList<>();
+    for (int i = 0; i < CONTENDED_REQUESTS; i++) {
+      requests.add(booking(7L, (long) i));
+    }
+    // Providers that do not contend with the hot slot must each get their booking
+    for (long providerId = 100; providerId < 100 + OTHER_PROVIDERS; providerId++) {
+      requests.add(booking(providerId, 1L));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Boolean>> futures = new ArrayList<>();
+    try {
+      for (Callable<Boolean> request : requests) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          return request.call();
+        }));
+      }
+      long startedAt = System.nanoTime();
+      start.countDown();
+      int succeeded = 0;
+      for (Future<Boolean> future : futures) {
+        if (future.get(60, TimeUnit.SECONDS)) {
+          succeeded++;
+        }
+      }
+      long elapsedMillis =
+          Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+      logger.info("{} bookings on {} threads in {} ms ({} per second)", requests.size(), THREADS,
+          elapsedMillis, requests.size() * 1000L / elapsedMillis);
+
+      assertEquals(1 + OTHER_PROVIDERS, succeeded);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, count("SELECT COUNT(*) FROM appointments WHERE provider_id = 7"));
+    assertEquals(0, count("SELECT COUNT(*) FROM appointments a JOIN appointments b"
+        + " ON a.provider_id = b.provider_id AND a.appointment_id < b.appointment_id"
+        + " AND a.status <> 'CANCELLED' AND b.status <> 'CANCELLED'"
+        + " AND a.start_date_time < b.end_date_time AND b.start_date_time < a.end_date_time"));
+  }
+
+  private Callable<Boolean> booking(Long providerId, Long userId) {
+    return () -> {
+      CreateAppointmentDto dto = new CreateAppointmentDto();
+      dto.setProviderId(providerId);
+      dto.setUserId(userId);
+      dto.setStartDateTime(SLOT_START);
+      dto.setEndDateTime(SLOT_START.plusMinutes(30));
+      dto.setStatus("SCHEDULED");
+      dto.setServiceType("Consultation");
+      try {
+        appointmentService.createAppointment(dto);
+        return true;
+      } catch (IllegalArgumentException e) {
+        return false;
+      }
+    };
+  }
+
+  private int count(String sql) {
+    return jdbcTemplate.queryForObject(sql, Integer.class);
+  }
+}
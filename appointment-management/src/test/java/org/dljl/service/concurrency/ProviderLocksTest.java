@@ -0,0 +1,153 @@
+package org.dljl.service.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.dljl.mapper.ProviderLockMapper;
+import org.dljl.service.sharding.ShardRouting;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * The type Provider locks test.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ProviderLocksTest {
+
+  @Mock
+  private ProviderLockMapper providerLockMapper;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  // Not sharded, so actions run on the only database
+  @Spy
+  private ShardRouting shardRouting = new ShardRouting();
+
+  @InjectMocks
+  private ProviderLocks providerLocks;
+
+  private ExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    ReflectionTestUtils.setField(providerLocks, "stripeCount", 64);
+    executor = Executors.newFixedThreadPool(8);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testSameProviderIsSerialized() throws Exception {
+    providerLocks.init();
+    AtomicInteger inside = new AtomicInteger();
+    AtomicInteger maxInside = new AtomicInteger();
+
+    Future<?>[] futures = new Future<?>[8];
+    for (int i = 0; i < futures.length; i++) {
+      futures[i] = executor.submit(() -> {
+        for (int j = 0; j < 200; j++) {
+          providerLocks.withProviderLock(1L, () -> {
+            maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+            Thread.yield();
+            return inside.decrementAndGet();
+          });
+        }
+      });
+    }
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+
+    assertEquals(1, maxInside.get());
+  }
+
+  @Test
+  void testDifferentProvidersRunInParallel() throws Exception {
+    providerLocks.init();
+    CountDownLatch firstInside = new CountDownLatch(1);
+    CountDownLatch secondInside = new CountDownLatch(1);
+
+    Future<Boolean> first = executor.submit(() -> providerLocks.withProviderLock(1L, () -> {
+      firstInside.countDown();
+      return await(secondInside);
+    }));
+    firstInside.await(5, TimeUnit.SECONDS);
+    // Provider 2 hashes to another stripe, so it can enter while provider 1 is held
+    providerLocks.withProviderLock(2L, () -> {
+      secondInside.countDown();
+      return true;
+    });
+
+    assertTrue(first.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testDatabaseGuardLocksProviderRowInTransaction() {
+    ReflectionTestUtils.setField(providerLocks, "dbGuard", true);
+    providerLocks.init();
+    when(providerLockMapper.lockProvider(1L)).thenReturn(null, 1L);
+
+    assertEquals("done", providerLocks.withProviderLock(1L, () -> "done"));
+
+    InOrder order = inOrder(transactionManager, providerLockMapper);
+    order.verify(transactionManager).getTransaction(any());
+    order.verify(providerLockMapper).lockProvider(1L);
+    order.verify(providerLockMapper).createProviderLock(1L);
+    order.verify(providerLockMapper).lockProvider(1L);
+    order.verify(transactionManager).commit(any());
+  }
+
+  @Test
+  void testDatabaseGuardReusesExistingRow() {
+    ReflectionTestUtils.setField(providerLocks, "dbGuard", true);
+    providerLocks.init();
+    when(providerLockMapper.lockProvider(1L)).thenReturn(1L);
+
+    providerLocks.withProviderLock(1L, () -> "done");
+
+    verify(providerLockMapper, never()).createProviderLock(1L);
+  }
+
+  @Test
+  void testInTransactionWithoutDatabaseGuard() {
+    providerLocks.init();
+
+    assertEquals("done", providerLocks.withProviderLockInTransaction(1L, () -> "done"));
+
+    verify(transactionManager).commit(any());
+    verify(providerLockMapper, never()).lockProvider(1L);
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package org.dljl.service.conflict;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+import org.dljl.mapper.AppointmentMapper;
+import org.dljl.mapper.RecurringBlockMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Provider interval index test.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ProviderIntervalIndexTest {
+
+  @Mock
+  private AppointmentMapper appointmentMapper;
+
+  @Mock
+  private RecurringBlockMapper recurringBlockMapper;
+
+  @InjectMocks
+  private ProviderIntervalIndex intervalIndex;
+
+  private List<Appointment> stored;
+
+  @BeforeEach
+  void setUp() {
+    ReflectionTestUtils.setField(intervalIndex, "engine", "index");
+    intervalIndex.init();
+    stored = new ArrayList<>();
+    stored.add(appointment(1L, 9, 10, "scheduled"));
+    stored.add(appointment(2L, 12, 14, "blocked"));
+    stored.add(appointment(3L, 15, 16, "cancelled"));
+  }
+
+  @Test
+  void testEngineParsing() {
+    assertEquals(ConflictEngine.SQL, ConflictEngine.fromProperty(null));
+    assertEquals(ConflictEngine.INDEX, ConflictEngine.fromProperty("index"));
+    assertEquals(ConflictEngine.CROSS_CHECK, ConflictEngine.fromProperty("cross-check"));
+    assertTrue(intervalIndex.isEnabled());
+    assertFalse(intervalIndex.isCrossCheck());
+
+    ReflectionTestUtils.setField(intervalIndex, "engine", "cross-check");
+    // Parsed once at startup
+    assertFalse(intervalIndex.isCrossCheck());
+    intervalIndex.init();
+    assertTrue(intervalIndex.isCrossCheck());
+  }
+
+  @Test
+  void testHasConflict_overlapsAndTouches() {
+    when(appointmentMapper.getAppointmentsByProviderId(1L)).thenReturn(stored);
+
+    assertTrue(intervalIndex.hasConflict(1L, at(9, 30), at(10, 30)));
+    assertTrue(intervalIndex.hasConflict(1L, at(8, 0), at(11, 0)));
+    assertTrue(intervalIndex.hasConflict(1L, at(13, 0), at(13, 30)));
+    assertFalse(intervalIndex.hasConflict(1L, at(10, 0), at(12, 0)));
+    // Cancelled rows never conflict
+    assertFalse(intervalIndex.hasConflict(1L, at(15, 0), at(16, 0)));
+    // An empty range is rejected like the SQL check does
+    assertTrue(intervalIndex.hasConflict(1L, at(11, 0), at(11, 0)));
+
+    verify(appointmentMapper, times(1)).getAppointmentsByProviderId(1L);
+  }
+
+  @Test
+  void testHasConflict_longIntervalFarBeforeQuery() {
+    stored.add(appointment(4L, 0, 23, "blocked"));
+    when(appointmentMapper.getAppointmentsByProviderId(1L)).thenReturn(stored);
+
+    assertTrue(intervalIndex.hasConflict(1L, at(20, 0), at(21, 0)));
+  }
+
+  @Test
+  void testLongestDurationShrinksWhenLongestIntervalLeaves() {
+    ProviderIntervalIndex.ProviderTimeline timeline = new ProviderIntervalIndex.ProviderTimeline();
+    timeline.finishLoad(new ArrayList<>(List.of(
+        new ProviderIntervalIndex.Interval(1L, at(0, 0), at(23, 0)),
+        new ProviderIntervalIndex.Interval(2L, at(9, 0), at(11, 0)),
+        new ProviderIntervalIndex.Interval(3L, at(12, 0), at(13, 0)))));
+    assertEquals(Duration.ofHours(23), timeline.longestDuration());
+
+    timeline.put(new ProviderIntervalIndex.Interval(1L, at(14, 0), at(15, 0)));
+    assertEquals(Duration.ofHours(2), timeline.longestDuration());
+
+    timeline.remove(3L);
+    assertEquals(Duration.ofHours(2), timeline.longestDuration());
+    timeline.remove(2L);
+    assertEquals(Duration.ofHours(1), timeline.longestDuration());
+    assertTrue(timeline.conflicts(at(14, 30), at(16, 0), null));
+  }
+
+  @Test
+  void testHasConflict_excludesUpdatedAppointment() {
+    when(appointmentMapper.getAppointmentsByProviderId(1L)).thenReturn(stored);
+
+    assertFalse(intervalIndex.hasConflict(1L, at(9, 30), at(11, 0), 1L));
+    assertTrue(intervalIndex.hasConflict(1L, at(9, 30), at(12, 30), 1L));
+  }
+
+  @Test
+  void testWriteThroughUpdatesLoadedProvider() {
+    when(appointmentMapper.getAppointmentsByProviderId(1L)).thenReturn(stored);
+    assertFalse(intervalIndex.hasConflict(1L, at(17, 0), at(18, 0)));
+
+    intervalIndex.onSaved(appointment(5L, 17, 18, "scheduled"));
+    assertTrue(intervalIndex.hasConflict(1L, at(17, 30), at(19, 0)));
+
+    intervalIndex.onRemoved(5L);
+    assertFalse(intervalIndex.hasConflict(1L, at(17, 30), at(19, 0)));
+
+    Appointment moved = appointment(1L, 20, 21, "scheduled");
+    intervalIndex.onSaved(moved);
+    assertFalse(intervalIndex.hasConflict(1L, at(9, 0), at(10, 0)));
+    assertTrue(intervalIndex.hasConflict(1L, at(20, 0), at(21, 0)));
+
+    moved.setStatus("cancelled");
+    intervalIndex.onSaved(moved);
+    assertFalse(intervalIndex.hasConflict(1L, at(20, 0), at(21, 0)));
+  }
+
+  @Test
+  void testWritesDuringLoadAreReplayed() {
+    // The query reads the rows, then a cancel and a booking land before the load completes
+    when(appointmentMapper.getAppointmentsByProviderId(1L)).thenAnswer(invocation -> {
+      List<Appointment> read = new ArrayList<>(stored);
+      intervalIndex.onRemoved(1L);
+      intervalIndex.onSaved(appointment(5L, 17, 18, "scheduled"));
+      return read;
+    });
+
+    assertFalse(intervalIndex.hasConflict(1L, at(9, 0), at(10, 0)));
+    assertTrue(intervalIndex.hasConflict(1L, at(17, 30), at(19, 0)));
+  }
+
+  @Test
+  void testFailedLoadIsRetried() {
+    when(appointmentMapper.getAppointmentsByProviderId(1L))
+        .thenThrow(new IllegalStateException("database down"))
+        .thenReturn(stored);
+
+    assertThrows(IllegalStateException.class,
+        () -> intervalIndex.hasConflict(1L, at(9, 0), at(10, 0)));
+    assertTrue(intervalIndex.hasConflict(1L, at(9, 0), at(10, 0)));
+  }
+
+  @Test
+  void testCrossCheckMismatchReloadsProvider() {
+    when(appointmentMapper.getAppointmentsByProviderId(1L)).thenReturn(stored);
+    intervalIndex.hasConflict(1L, at(17, 0), at(18, 0));
+
+    intervalIndex.recordCrossCheck(1L, false, true);
+    intervalIndex.hasConflict(1L, at(17, 0), at(18, 0));
+
+    assertEquals(1, intervalIndex.getCrossCheckMismatches());
+    verify(appointmentMapper, times(2)).getAppointmentsByProviderId(1L);
+  }
+
+  @Test
+  void testRecurringBlocksCachedUntilChanged() {
+    when(appointmentMapper.getAppointmentsByProviderId(1L)).thenReturn(stored);
+    List<RecurringBlock> rules = List.of(new RecurringBlock());
+    when(recurringBlockMapper.getRecurringBlocksByProviderId(1L)).thenReturn(rules);
+
+    assertEquals(rules, intervalIndex.recurringBlocks(1L));
+    assertEquals(rules, intervalIndex.recurringBlocks(1L));
+    verify(recurringBlockMapper, times(1)).getRecurringBlocksByProviderId(1L);
+
+    intervalIndex.onRecurringBlocksChanged(1L);
+    assertEquals(rules, intervalIndex.recurringBlocks(1L));
+    verify(recurringBlockMapper, times(2)).getRecurringBlocksByProviderId(1L);
+    // The intervals stay loaded
+    verify(appointmentMapper, times(1)).getAppointmentsByProviderId(1L);
+  }
+
+  private static LocalDateTime at(int hour, int minute) {
+    return LocalDateTime.of(2024, 10, 15, hour, minute);
+  }
+
+  private static Appointment appointment(Long id, int startHour, int endHour, String status) {
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(id);
+    appointment.setProviderId(1L);
+    appointment.setStartDateTime(at(startHour, 0));
+    appointment.setEndDateTime(at(endHour, 0));
+    appointment.setStatus(status);
+    return appointment;
+  }
+}
@@ -0,0 +1,99 @@
+package org.dljl.service.export;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.ibatis.cursor.Cursor;
+import org.dljl.entity.Appointment;
+import org.dljl.mapper.AppointmentMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+/**
+ * The type Appointment exporter test.
+ */
+@ExtendWith(MockitoExtension.class)
+public class AppointmentExporterTest {
+
+  private static final LocalDateTime RANGE_START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+  private static final LocalDateTime RANGE_END = LocalDateTime.of(2024, 2, 1, 0, 0);
+
+  @Mock
+  private AppointmentMapper appointmentMapper;
+
+  @Mock
+  private PlatformTransactionManager transactionManager;
+
+  @Mock
+  private Cursor<Appointment> cursor;
+
+  @InjectMocks
+  private AppointmentExporter exporter;
+
+  @BeforeEach
+  void setUp() {
+    exporter.init();
+  }
+
+  @Test
+  void testExportStreamsEveryRowInOneReadOnlyTransaction() throws IOException {
+    List<Appointment> rows = List.of(appointment(1L), appointment(2L), appointment(3L));
+    when(appointmentMapper.streamAppointmentsByProvider(1L, RANGE_START, RANGE_END, "blocked"))
+        .thenReturn(cursor);
+    when(cursor.iterator()).thenReturn(rows.iterator());
+
+    List<Appointment> exported = new ArrayList<>();
+    int count = exporter.export(1L, RANGE_START, RANGE_END, "blocked", exported::add);
+
+    assertEquals(3, count);
+    assertEquals(rows, exported);
+    verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+    verify(cursor).close();
+    verify(transactionManager).commit(any());
+  }
+
+  @Test
+  void testExportClosesTheCursorWhenTheConsumerFails() throws IOException {
+    when(appointmentMapper.streamAppointmentsByProvider(1L, null, null, null)).thenReturn(cursor);
+    when(cursor.iterator()).thenReturn(List.of(appointment(1L), appointment(2L)).iterator());
+
+    List<Appointment> exported = new ArrayList<>();
+    assertThrows(UncheckedIOException.class, () -> exporter.export(1L, null, null, null,
+        appointment -> {
+          exported.add(appointment);
+          throw new UncheckedIOException(new IOException("Broken pipe"));
+        }));
+
+    assertEquals(1, exported.size());
+    verify(cursor).close();
+    verify(transactionManager).rollback(any());
+    verify(transactionManager, never()).commit(any());
+  }
+
+  private static Appointment appointment(Long id) {
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(id);
+    appointment.setProviderId(1L);
+    appointment.setStartDateTime(RANGE_START.plusDays(id));
+    appointment.setEndDateTime(RANGE_START.plusDays(id).plusHours(1));
+    appointment.setStatus("blocked");
+    return appointment;
+  }
+}
@@ -0,0 +1,133 @@
+package org.dljl.service.id;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Snowflake id generator test.
+ */
+public class SnowflakeIdGeneratorTest {
+
+  private static final long NOW = SnowflakeIdGenerator.EPOCH_MILLIS + 86_400_000L;
+
+  private final AtomicLong now = new AtomicLong(NOW);
+
+  @Test
+  void testIdLayout() {
+    SnowflakeIdGenerator generator = generator(5);
+
+    long id = generator.nextId();
+    assertEquals(86_400_000L, id >>> 22);
+    assertEquals(5, (id >>> 12) & SnowflakeIdGenerator.MAX_NODE_ID);
+    assertEquals(0, id & 0xFFF);
+    assertEquals(id + 1, generator.nextId());
+
+    now.addAndGet(1);
+    assertEquals(86_400_001L, generator.nextId() >>> 22);
+  }
+
+  @Test
+  void testNodesNeverCollide() {
+    SnowflakeIdGenerator first = generator(1);
+    SnowflakeIdGenerator second = generator(2);
+
+    for (int i = 0; i < 10_000; i++) {
+      assertTrue(first.nextId() != second.nextId());
+    }
+  }
+
+  @Test
+  void testSequenceOverflowBorrowsNextMillisecond() {
+    SnowflakeIdGenerator generator = generator(0);
+
+    long id = 0;
+    for (int i = 0; i <= 4096; i++) {
+      id = generator.nextId();
+    }
+    assertEquals(86_400_001L, id >>> 22);
+    assertEquals(0, id & 0xFFF);
+    // The clock catching up to the borrowed millisecond does not repeat it
+    now.addAndGet(1);
+    assertEquals(id + 1, generator.nextId());
+  }
+
+  @Test
+  void testClockSteppingBackStaysMonotonic() {
+    SnowflakeIdGenerator generator = generator(0);
+
+    long before = generator.nextId();
+    now.addAndGet(-60_000);
+    assertEquals(before + 1, generator.nextId());
+  }
+
+  @Test
+  void testRejectsNodeIdOutOfRange() {
+    assertThrows(IllegalArgumentException.class, () -> generator(1024));
+    assertThrows(IllegalArgumentException.class, () -> generator(-1));
+  }
+
+  @Test
+  void testConcurrentIdsAreUniqueAndIncreasing() throws Exception {
+    SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+    generator.init();
+    int threads = 8;
+    int idsPerThread = 200_000;
+    long[][] ids = new long[threads][idsPerThread];
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      long[] own = ids[t];
+      Thread worker = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < own.length; i++) {
+          own[i] = generator.nextId();
+        }
+      });
+      worker.start();
+      workers.add(worker);
+    }
+
+    long started = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    long elapsedNanos = System.nanoTime() - started;
+
+    long[] all = new long[threads * idsPerThread];
+    for (int t = 0; t < threads; t++) {
+      for (int i = 1; i < idsPerThread; i++) {
+        assertTrue(ids[t][i] > ids[t][i - 1], "Ids of one thread must increase");
+      }
+      System.arraycopy(ids[t], 0, all, t * idsPerThread, idsPerThread);
+    }
+    Arrays.sort(all);
+    for (int i = 1; i < all.length; i++) {
+      assertTrue(all[i] != all[i - 1], "Duplicate id " + all[i]);
+    }
+    // 1.6 million ids, a loose floor so that slow CI machines pass
+    double idsPerSecond = all.length * 1e9 / elapsedNanos;
+    assertTrue(idsPerSecond > 200_000, "Only " + (long) idsPerSecond + " ids per second");
+  }
+
+  private SnowflakeIdGenerator generator(long nodeId) {
+    SnowflakeIdGenerator generator = new SnowflakeIdGenerator();
+    ReflectionTestUtils.setField(generator, "nodeId", nodeId);
+    generator.setClock(now::get);
+    generator.init();
+    return generator;
+  }
+}
@@ -0,0 +1,165 @@
+package org.dljl.service.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Idempotency store test.
+ */
+public class IdempotencyStoreTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private final AtomicInteger runs = new AtomicInteger();
+
+  private IdempotencyStore store;
+
+  @BeforeEach
+  void setUp() {
+    store = new IdempotencyStore();
+    ReflectionTestUtils.setField(store, "maxEntries", 2);
+    ReflectionTestUtils.setField(store, "ttlSeconds", 60L);
+    ReflectionTestUtils.setField(store, "waitSeconds", 5L);
+    store.setClock(now::get);
+  }
+
+  @Test
+  void testDuplicateGetsStoredResult() {
+    assertEquals("created 1", store.execute("a", "body", this::create, result -> true));
+    assertEquals("created 1", store.execute("a", "body", this::create, result -> true));
+
+    assertEquals(1, runs.get());
+    assertEquals(1, store.getReplays());
+  }
+
+  @Test
+  void testKeyReusedWithAnotherBodyIsRejected() {
+    store.execute("a", "body", this::create, result -> true);
+
+    assertThrows(IdempotencyKeyReusedException.class,
+        () -> store.execute("a", "other body", this::create, result -> true));
+    assertEquals(1, runs.get());
+    assertEquals(0, store.getReplays());
+    // Once the first result expires, the key is free for any body
+    now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+    assertEquals("created 2", store.execute("a", "other body", this::create, result -> true));
+  }
+
+  @Test
+  void testResultExpiresAfterTtl() {
+    store.execute("a", "body", this::create, result -> true);
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+    assertEquals("created 1", store.execute("a", "body", this::create, result -> true));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals("created 2", store.execute("a", "body", this::create, result -> true));
+  }
+
+  @Test
+  void testOldestResultIsEvictedWhenFull() {
+    store.execute("a", "body", this::create, result -> true);
+    store.execute("b", "body", this::create, result -> true);
+    store.execute("c", "body", this::create, result -> true);
+
+    assertEquals(2, store.size());
+    assertEquals("created 4", store.execute("a", "body", this::create, result -> true));
+    assertEquals("created 3", store.execute("c", "body", this::create, result -> true));
+  }
+
+  @Test
+  void testResultsThatAreNotStorableRunAgain() {
+    store.execute("a", "body", this::create, result -> false);
+
+    assertEquals("created 2", store.execute("a", "body", this::create, result -> false));
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  void testFailedRequestIsNotStored() {
+    assertThrows(IllegalStateException.class, () -> store.execute("a", "body", () -> {
+      throw new IllegalStateException("down");
+    }, result -> true));
+
+    assertEquals("created 1", store.execute("a", "body", this::create, result -> true));
+  }
+
+  @Test
+  void testInvalidKeyIsRejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> store.execute(" ", "body", this::create, result -> true));
+    assertThrows(IllegalArgumentException.class,
+        () -> store.execute("k".repeat(256), "body", this::create, result -> true));
+  }
+
+  @Test
+  void testInFlightDuplicatesWaitForTheOriginal() throws Exception {
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<String> original = executor.submit(() -> store.execute("a", "body", () -> {
+        running.countDown();
+        await(release);
+        return create();
+      }, result -> true));
+      running.await(5, TimeUnit.SECONDS);
+      Future<String> duplicate1 = executor.submit(
+          () -> store.execute("a", "body", this::create, result -> true));
+      Future<String> duplicate2 = executor.submit(
+          () -> store.execute("a", "body", this::create, result -> true));
+      release.countDown();
+
+      assertEquals("created 1", original.get(5, TimeUnit.SECONDS));
+      assertEquals("created 1", duplicate1.get(5, TimeUnit.SECONDS));
+      assertEquals("created 1", duplicate2.get(5, TimeUnit.SECONDS));
+      assertEquals(1, runs.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testDuplicateTimesOutWhileOriginalIsRunning() throws Exception {
+    ReflectionTestUtils.setField(store, "waitSeconds", 0L);
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> store.execute("a", "body", () -> {
+        running.countDown();
+        await(release);
+        return create();
+      }, result -> true));
+      running.await(5, TimeUnit.SECONDS);
+
+      assertThrows(IllegalStateException.class,
+          () -> store.execute("a", "body", this::create, result -> true));
+    } finally {
+      release.countDown();
+      executor.shutdownNow();
+    }
+  }
+
+  private String create() {
+    return "created " + runs.incrementAndGet();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package org.dljl.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * The type Business metrics test.
+ */
+public class BusinessMetricsTest {
+
+  @AfterEach
+  void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void testCounters() {
+    BusinessMetrics businessMetrics = new BusinessMetrics();
+    businessMetrics.bookingsCreated(3);
+    businessMetrics.bookingsCreated(1);
+    businessMetrics.conflictDetected();
+    businessMetrics.recurringDaysSkipped(5);
+
+    assertEquals(4, businessMetrics.getBookingsCreated());
+    assertEquals(1, businessMetrics.getConflictsDetected());
+    assertEquals(5, businessMetrics.getRecurringDaysSkipped());
+  }
+
+  @Test
+  void testConflictMarksCurrentRequest() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    BusinessMetrics businessMetrics = new BusinessMetrics();
+
+    businessMetrics.bookingsCreated(1);
+    assertNull(request.getAttribute(BusinessMetrics.CONFLICT_ATTRIBUTE));
+
+    businessMetrics.conflictDetected();
+    assertEquals(Boolean.TRUE, request.getAttribute(BusinessMetrics.CONFLICT_ATTRIBUTE));
+  }
+}
@@ -0,0 +1,66 @@
+package org.dljl.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Latency histogram test.
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  void testSamplesLandInPowerOfTwoBuckets() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(1));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(2));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(1024));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(1025));
+    histogram.record(100);
+
+    long[] buckets = histogram.bucketCounts();
+    assertEquals(LatencyHistogram.BOUNDED_BUCKETS + 1, buckets.length);
+    // Sub-microsecond samples count as one microsecond
+    assertEquals(2, buckets[0]);
+    assertEquals(1, buckets[1]);
+    assertEquals(1, buckets[2]);
+    assertEquals(1, buckets[10]);
+    assertEquals(1, buckets[11]);
+    assertEquals(6, histogram.count());
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(1025), histogram.maxNanos());
+  }
+
+  @Test
+  void testSamplesAboveEveryBoundLandInLastBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MINUTES.toNanos(2));
+
+    assertEquals(1, histogram.bucketCounts()[LatencyHistogram.BOUNDED_BUCKETS]);
+    assertEquals(TimeUnit.MINUTES.toMicros(2), histogram.percentileMicros(99));
+  }
+
+  @Test
+  void testPercentilesReportBucketUpperBound() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+    }
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+    assertEquals(128, histogram.percentileMicros(50));
+    assertEquals(128, histogram.percentileMicros(99));
+    assertEquals(65536, histogram.percentileMicros(100));
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(99 * 100) + TimeUnit.MILLISECONDS.toNanos(50),
+        histogram.totalNanos());
+  }
+
+  @Test
+  void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.percentileMicros(99));
+  }
+}
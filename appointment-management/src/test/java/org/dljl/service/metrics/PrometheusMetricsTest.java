@@ -0,0 +1,143 @@
+package org.dljl.service.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.dljl.config.ConcurrencyLimitFilter;
+import org.dljl.service.cache.AvailabilityCache;
+import org.dljl.service.conflict.ProviderIntervalIndex;
+import org.dljl.service.idempotency.IdempotencyStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Prometheus metrics test.
+ */
+public class PrometheusMetricsTest {
+
+  private RequestMetrics requestMetrics;
+
+  private BusinessMetrics businessMetrics;
+
+  private StatementMetrics statementMetrics;
+
+  private AvailabilityCache availabilityCache;
+
+  private DataSource dataSource;
+
+  private PrometheusMetrics prometheusMetrics;
+
+  @BeforeEach
+  void setUp() {
+    requestMetrics = new RequestMetrics();
+    businessMetrics = new BusinessMetrics();
+    statementMetrics = new StatementMetrics();
+    availabilityCache = mock(AvailabilityCache.class);
+    dataSource = mock(DataSource.class);
+    prometheusMetrics = new PrometheusMetrics();
+    ReflectionTestUtils.setField(prometheusMetrics, "requestMetrics", requestMetrics);
+    ReflectionTestUtils.setField(prometheusMetrics, "businessMetrics", businessMetrics);
+    ReflectionTestUtils.setField(prometheusMetrics, "statementMetrics", statementMetrics);
+    ReflectionTestUtils.setField(prometheusMetrics, "availabilityCache", availabilityCache);
+    ReflectionTestUtils.setField(prometheusMetrics, "idempotencyStore",
+        mock(IdempotencyStore.class));
+    ReflectionTestUtils.setField(prometheusMetrics, "intervalIndex",
+        mock(ProviderIntervalIndex.class));
+    ReflectionTestUtils.setField(prometheusMetrics, "dataSource", dataSource);
+  }
+
+  @Test
+  void testRequestsAreExportedByEndpointAndOutcome() {
+    requestMetrics.record("POST", "/appointments/createAppointment", 201, false,
+        TimeUnit.MICROSECONDS.toNanos(3));
+    requestMetrics.record("POST", "/appointments/createAppointment", 400, true,
+        TimeUnit.MICROSECONDS.toNanos(1500));
+
+    String text = prometheusMetrics.scrape();
+
+    String labels = "method=\"POST\",route=\"/appointments/createAppointment\"";
+    assertThat(text, containsString("# TYPE http_requests_total counter\n"));
+    assertThat(text, containsString("http_requests_total{" + labels
+        + ",outcome=\"success\"} 1\n"));
+    assertThat(text, containsString("http_requests_total{" + labels
+        + ",outcome=\"conflict\"} 1\n"));
+    assertThat(text, containsString("http_request_errors_total{" + labels
+        + ",outcome=\"conflict\"} 1\n"));
+    assertThat(text, not(containsString("http_request_errors_total{" + labels
+        + ",outcome=\"success\"}")));
+    assertThat(text, containsString("# TYPE http_request_duration_seconds histogram\n"));
+    assertThat(text, containsString("http_request_duration_seconds_bucket{" + labels
+        + ",le=\"0.000002\"} 0\n"));
+    assertThat(text, containsString("http_request_duration_seconds_bucket{" + labels
+        + ",le=\"0.000004\"} 1\n"));
+    assertThat(text, containsString("http_request_duration_seconds_bucket{" + labels
+        + ",le=\"0.002048\"} 2\n"));
+    assertThat(text, containsString("http_request_duration_seconds_bucket{" + labels
+        + ",le=\"+Inf\"} 2\n"));
+    assertThat(text, containsString("http_request_duration_seconds_sum{" + labels
+        + "} 0.001503\n"));
+    assertThat(text, containsString("http_request_duration_seconds_count{" + labels + "} 2\n"));
+  }
+
+  @Test
+  void testBusinessStatementAndCacheCountersAreExported() {
+    businessMetrics.bookingsCreated(4);
+    businessMetrics.conflictDetected();
+    businessMetrics.recurringDaysSkipped(2);
+    statementMetrics.statements().computeIfAbsent(
+        "org.dljl.mapper.AppointmentMapper.checkCreateTimeConflict", id -> new StatementStats())
+        .record(TimeUnit.MILLISECONDS.toNanos(1), 1, false);
+    when(availabilityCache.getHits()).thenReturn(12L);
+
+    String text = prometheusMetrics.scrape();
+
+    assertThat(text, containsString("appointment_bookings_created_total 4\n"));
+    assertThat(text, containsString("appointment_conflicts_detected_total 1\n"));
+    assertThat(text, containsString("appointment_recurring_days_skipped_total 2\n"));
+    assertThat(text, containsString("mybatis_statement_duration_seconds_count{"
+        + "statement=\"org.dljl.mapper.AppointmentMapper.checkCreateTimeConflict\"} 1\n"));
+    assertThat(text, containsString("mybatis_statement_rows_total{"
+        + "statement=\"org.dljl.mapper.AppointmentMapper.checkCreateTimeConflict\"} 1\n"));
+    assertThat(text, containsString("appointment_availability_cache_hits_total 12\n"));
+    assertThat(text, not(containsString("appointment_requests_in_flight")));
+    assertThat(text, not(containsString("hikaricp_")));
+  }
+
+  @Test
+  void testConcurrencyLimitAndConnectionPoolAreExported() throws Exception {
+    ReflectionTestUtils.setField(prometheusMetrics, "concurrencyLimitFilter",
+        new ConcurrencyLimitFilter(10, 100));
+    HikariDataSource hikari = mock(HikariDataSource.class);
+    HikariPoolMXBean pool = mock(HikariPoolMXBean.class);
+    when(dataSource.isWrapperFor(HikariDataSource.class)).thenReturn(true);
+    when(dataSource.unwrap(HikariDataSource.class)).thenReturn(hikari);
+    when(hikari.getPoolName()).thenReturn("HikariPool-1");
+    when(hikari.getMaximumPoolSize()).thenReturn(10);
+    when(hikari.getHikariPoolMXBean()).thenReturn(pool);
+    when(pool.getActiveConnections()).thenReturn(10);
+    when(pool.getThreadsAwaitingConnection()).thenReturn(4);
+
+    String text = prometheusMetrics.scrape();
+
+    assertThat(text, containsString("appointment_requests_limit 10\n"));
+    assertThat(text, containsString("appointment_requests_in_flight 0\n"));
+    assertThat(text, containsString("appointment_requests_rejected_total 0\n"));
+    assertThat(text, containsString("hikaricp_connections_max{pool=\"HikariPool-1\"} 10\n"));
+    assertThat(text, containsString("hikaricp_connections_active{pool=\"HikariPool-1\"} 10\n"));
+    assertThat(text, containsString("hikaricp_connections_pending{pool=\"HikariPool-1\"} 4\n"));
+  }
+
+  @Test
+  void testLabelValuesAreEscaped() {
+    assertEquals("a\\\"b\\\\c\\nd", PrometheusMetrics.escape("a\"b\\c\nd"));
+  }
+}
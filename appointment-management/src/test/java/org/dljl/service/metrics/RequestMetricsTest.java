@@ -0,0 +1,43 @@
+package org.dljl.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Request metrics test.
+ */
+public class RequestMetricsTest {
+
+  @Test
+  void testOutcomes() {
+    assertEquals("success", RequestMetrics.outcome(200, false));
+    assertEquals("success", RequestMetrics.outcome(201, true));
+    assertEquals("conflict", RequestMetrics.outcome(400, true));
+    assertEquals("client_error", RequestMetrics.outcome(400, false));
+    assertEquals("client_error", RequestMetrics.outcome(404, true));
+    assertEquals("server_error", RequestMetrics.outcome(500, false));
+    assertEquals("server_error", RequestMetrics.outcome(503, false));
+  }
+
+  @Test
+  void testRecordGroupsByEndpointAndOutcome() {
+    RequestMetrics requestMetrics = new RequestMetrics();
+    requestMetrics.record("POST", "/appointments/createAppointment", 201, false,
+        TimeUnit.MILLISECONDS.toNanos(3));
+    requestMetrics.record("POST", "/appointments/createAppointment", 400, true,
+        TimeUnit.MILLISECONDS.toNanos(2));
+    requestMetrics.record("POST", "/appointments/createAppointment", 400, true,
+        TimeUnit.MILLISECONDS.toNanos(2));
+    requestMetrics.record("GET", "/appointments/{id}", 200, false,
+        TimeUnit.MILLISECONDS.toNanos(1));
+
+    RequestMetrics.EndpointStats create = requestMetrics.endpoints()
+        .get(new RequestMetrics.Endpoint("POST", "/appointments/createAppointment"));
+    assertEquals(3, create.latency().count());
+    assertEquals(1, create.outcomes().get("success").sum());
+    assertEquals(2, create.outcomes().get("conflict").sum());
+    assertEquals(2, requestMetrics.endpoints().size());
+  }
+}
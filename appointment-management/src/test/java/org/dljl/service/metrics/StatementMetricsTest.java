@@ -0,0 +1,160 @@
+package org.dljl.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.session.Configuration;
+import org.dljl.dto.StatementMetricsSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Statement metrics test.
+ */
+public class StatementMetricsTest {
+
+  private Configuration configuration;
+
+  private StatementMetrics statementMetrics;
+
+  @BeforeEach
+  void setUp() {
+    configuration = new Configuration();
+    statementMetrics = new StatementMetrics();
+    ReflectionTestUtils.setField(statementMetrics, "enabled", true);
+    ReflectionTestUtils.setField(statementMetrics, "slowThresholdMillis", 500L);
+  }
+
+  @Test
+  void testQueryRecordsLatencyAndRows() throws Throwable {
+    MappedStatement query = statement("AppointmentMapper.getAppointmentsByProviderId",
+        SqlCommandType.SELECT);
+
+    statementMetrics.intercept(invocation(query, List.of("a", "b", "c")));
+    statementMetrics.intercept(invocation(query, List.of("a")));
+
+    StatementStats stats = statementMetrics.statements().get(query.getId());
+    assertEquals(2, stats.latency().count());
+    assertEquals(4, stats.rows());
+    assertEquals(3, stats.maxRows());
+    assertEquals(0, stats.errors());
+  }
+
+  @Test
+  void testUpdateRecordsAffectedRows() throws Throwable {
+    MappedStatement update = statement("AppointmentMapper.cancelAppointmentsInRange",
+        SqlCommandType.UPDATE);
+
+    statementMetrics.intercept(invocation(update, 5));
+
+    assertEquals(5, statementMetrics.statements().get(update.getId()).rows());
+  }
+
+  @Test
+  void testFailedStatementIsCounted() throws Throwable {
+    MappedStatement query = statement("AppointmentMapper.checkCreateTimeConflict",
+        SqlCommandType.SELECT);
+    Invocation invocation = mock(Invocation.class);
+    when(invocation.getArgs()).thenReturn(new Object[] {query, null, null, null});
+    when(invocation.proceed()).thenThrow(new IllegalStateException("timeout"));
+
+    assertThrows(IllegalStateException.class, () -> statementMetrics.intercept(invocation));
+
+    StatementStats stats = statementMetrics.statements().get(query.getId());
+    assertEquals(1, stats.latency().count());
+    assertEquals(1, stats.errors());
+  }
+
+  @Test
+  void testSlowStatementIsStillRecorded() throws Throwable {
+    ReflectionTestUtils.setField(statementMetrics, "slowThresholdMillis", 0L);
+    MappedStatement query = statement("AppointmentMapper.getAppointmentById",
+        SqlCommandType.SELECT);
+
+    assertEquals(List.of("a"), statementMetrics.intercept(invocation(query, List.of("a"))));
+
+    assertEquals(1, statementMetrics.statements().get(query.getId()).latency().count());
+  }
+
+  @Test
+  void testDisabledRecordsNothing() throws Throwable {
+    ReflectionTestUtils.setField(statementMetrics, "enabled", false);
+    MappedStatement query = statement("AppointmentMapper.getAppointmentById",
+        SqlCommandType.SELECT);
+
+    statementMetrics.intercept(invocation(query, List.of("a")));
+
+    assertTrue(statementMetrics.statements().isEmpty());
+  }
+
+  @Test
+  void testSnapshotOrdersByTotalTimeAndResets() throws Throwable {
+    statementMetrics.statements().computeIfAbsent("fast", id -> new StatementStats())
+        .record(1_000_000, 1, false);
+    statementMetrics.statements().computeIfAbsent("slow", id -> new StatementStats())
+        .record(30_000_000, 2, false);
+
+    List<StatementMetricsSnapshot> snapshots = statementMetrics.snapshot();
+
+    assertEquals("slow", snapshots.get(0).getStatementId());
+    assertEquals(30.0, snapshots.get(0).getTotalMillis());
+    assertEquals(30.0, snapshots.get(0).getMaxMillis());
+    assertEquals(32.768, snapshots.get(0).getP99Millis());
+    assertEquals(2, snapshots.get(0).getRows());
+    assertEquals("fast", snapshots.get(1).getStatementId());
+
+    statementMetrics.reset();
+    assertTrue(statementMetrics.snapshot().isEmpty());
+  }
+
+  @Test
+  void testBoundParametersResolvePropertiesOfParameterMap() {
+    Map<String, Object> parameterObject = new HashMap<>();
+    parameterObject.put("providerId", 1L);
+    parameterObject.put("status", "SCHEDULED");
+    BoundSql boundSql = new BoundSql(configuration,
+        "SELECT * FROM appointments WHERE provider_id = ? AND status = ?",
+        List.of(new ParameterMapping.Builder(configuration, "providerId", Long.class).build(),
+            new ParameterMapping.Builder(configuration, "status", String.class).build()),
+        parameterObject);
+
+    Map<String, Object> parameters = StatementMetrics.boundParameters(configuration, boundSql);
+
+    assertEquals(Map.of("providerId", 1L, "status", "SCHEDULED"), parameters);
+  }
+
+  @Test
+  void testBoundParametersUseSingleSimpleParameter() {
+    BoundSql boundSql = new BoundSql(configuration,
+        "SELECT * FROM appointments WHERE appointment_id = ?",
+        List.of(new ParameterMapping.Builder(configuration, "id", Long.class).build()), 7L);
+
+    assertEquals(Map.of("id", 7L), StatementMetrics.boundParameters(configuration, boundSql));
+  }
+
+  private MappedStatement statement(String id, SqlCommandType type) {
+    return new MappedStatement.Builder(configuration, id,
+        new StaticSqlSource(configuration, "SELECT 1"), type).build();
+  }
+
+  private static Invocation invocation(MappedStatement statement, Object result)
+      throws Exception {
+    Invocation invocation = mock(Invocation.class);
+    when(invocation.getArgs()).thenReturn(new Object[] {statement, null, null, null});
+    when(invocation.proceed()).thenReturn(result);
+    return invocation;
+  }
+}
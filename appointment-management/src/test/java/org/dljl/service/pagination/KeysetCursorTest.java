@@ -0,0 +1,67 @@
+package org.dljl.service.pagination;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import org.dljl.entity.Appointment;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Keyset cursor test.
+ */
+public class KeysetCursorTest {
+
+  @Test
+  void testEncodeDecodeRoundTrip() {
+    LocalDateTime start = LocalDateTime.of(2024, 3, 5, 9, 30);
+    String token = KeysetCursor.after(appointment(42L, start)).encode();
+
+    assertFalse(token.contains("="));
+    KeysetCursor cursor = KeysetCursor.decode(token);
+    assertEquals(start, cursor.getStartDateTime());
+    assertEquals(42L, cursor.getAppointmentId());
+  }
+
+  @Test
+  void testDecodeInvalidTokens() {
+    String noSeparator = Base64.getUrlEncoder()
+        .encodeToString("2024-03-05T09:30".getBytes(StandardCharsets.UTF_8));
+    String badId = Base64.getUrlEncoder()
+        .encodeToString("2024-03-05T09:30|x".getBytes(StandardCharsets.UTF_8));
+    String badTime = Base64.getUrlEncoder()
+        .encodeToString("yesterday|1".getBytes(StandardCharsets.UTF_8));
+
+    for (String token : new String[] {"not base64!", noSeparator, badId, badTime}) {
+      IllegalArgumentException exception =
+          assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode(token));
+      assertEquals("Invalid cursor.", exception.getMessage());
+    }
+  }
+
+  @Test
+  void testIsBefore_ordersByStartThenId() {
+    LocalDateTime start = LocalDateTime.of(2024, 3, 5, 9, 0);
+    KeysetCursor cursor = new KeysetCursor(start, 10L);
+
+    assertTrue(cursor.isBefore(appointment(1L, start.plusMinutes(1))));
+    assertTrue(cursor.isBefore(appointment(11L, start)));
+    assertFalse(cursor.isBefore(appointment(10L, start)));
+    assertFalse(cursor.isBefore(appointment(99L, start.minusMinutes(1))));
+    // Recurring block occurrences have no id and sort first among rows with the same start
+    assertFalse(cursor.isBefore(appointment(null, start)));
+    assertTrue(new KeysetCursor(start.minusMinutes(1), 5L).isBefore(appointment(null, start)));
+  }
+
+  private static Appointment appointment(Long id, LocalDateTime start) {
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(id);
+    appointment.setStartDateTime(start);
+    appointment.setEndDateTime(start.plusHours(1));
+    return appointment;
+  }
+}
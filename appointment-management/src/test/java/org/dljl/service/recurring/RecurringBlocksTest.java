@@ -0,0 +1,51 @@
+package org.dljl.service.recurring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Set;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Recurring blocks test.
+ */
+public class RecurringBlocksTest {
+
+  @Test
+  void testWeekdayMask() {
+    assertNull(RecurringBlocks.toWeekdayMask(Set.of()));
+    Integer mask = RecurringBlocks.toWeekdayMask(Set.of(DayOfWeek.MONDAY, DayOfWeek.SUNDAY));
+    assertEquals(65, mask);
+    assertTrue(RecurringBlocks.matches(mask, LocalDate.of(2024, 12, 23)));
+    assertFalse(RecurringBlocks.matches(mask, LocalDate.of(2024, 12, 24)));
+    assertTrue(RecurringBlocks.matches(null, LocalDate.of(2024, 12, 24)));
+  }
+
+  @Test
+  void testExpand_clipsToRangeAndSkipsExcludedDates() {
+    RecurringBlock rule = new RecurringBlock();
+    rule.setProviderId(1L);
+    rule.setStartTime(LocalTime.of(12, 0));
+    rule.setEndTime(LocalTime.of(13, 0));
+    rule.setStartDate(LocalDate.of(2024, 12, 20));
+    rule.setEndDate(LocalDate.of(2024, 12, 31));
+    rule.setExcludedDates(RecurringBlocks.formatDates(List.of(LocalDate.of(2024, 12, 25))));
+
+    List<Appointment> occurrences = RecurringBlocks.expand(
+        List.of(rule), LocalDate.of(2024, 12, 24), LocalDate.of(2025, 1, 5));
+
+    assertEquals(7, occurrences.size());
+    assertEquals(LocalDateTime.of(2024, 12, 24, 12, 0), occurrences.get(0).getStartDateTime());
+    assertEquals(LocalDateTime.of(2024, 12, 26, 13, 0), occurrences.get(1).getEndDateTime());
+    assertEquals("blocked", occurrences.get(0).getStatus());
+  }
+}
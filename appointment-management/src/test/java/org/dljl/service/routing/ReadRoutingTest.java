@@ -0,0 +1,125 @@
+package org.dljl.service.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The type Read routing test.
+ */
+public class ReadRoutingTest {
+
+  private final AtomicLong now = new AtomicLong(1_000_000L);
+
+  private ReadRouting routing;
+
+  @BeforeEach
+  void setUp() {
+    routing = routing("jdbc:h2:mem:a, jdbc:h2:mem:b");
+  }
+
+  @Test
+  void testParseUrls() {
+    assertEquals(List.of("jdbc:h2:mem:a", "jdbc:h2:mem:b"),
+        ReadRouting.parseUrls(" jdbc:h2:mem:a ,,jdbc:h2:mem:b,"));
+    assertTrue(ReadRouting.parseUrls(null).isEmpty());
+    assertTrue(ReadRouting.parseUrls(" ").isEmpty());
+  }
+
+  @Test
+  void testWithoutReplicasReadsRunOnPrimary() {
+    ReadRouting primaryOnly = routing("");
+
+    assertFalse(primaryOnly.isEnabled());
+    assertNull(primaryOnly.read(1L, primaryOnly::currentReplica));
+    assertEquals(0, primaryOnly.getReplicaReads() + primaryOnly.getPrimaryReads());
+  }
+
+  @Test
+  void testReadsOfOneProviderStickToOneReplica() {
+    Integer first = routing.read(5L, routing::currentReplica);
+
+    assertEquals(first, routing.read(5L, routing::currentReplica));
+    assertEquals(2, routing.getReplicaReads());
+    assertNull(routing.currentReplica());
+  }
+
+  @Test
+  void testOtherReadsAreSpreadOverReplicas() {
+    Set<Integer> replicas = new HashSet<>();
+    replicas.add(routing.read(null, routing::currentReplica));
+    replicas.add(routing.read(null, routing::currentReplica));
+    replicas.add(routing.readAll(Arrays.asList(1L, 2L), routing::currentReplica));
+
+    assertEquals(Set.of(0, 1), replicas);
+  }
+
+  @Test
+  void testWrittenProviderReadsPrimaryUntilMaxLag() {
+    routing.recordWrite(5L);
+
+    assertNull(routing.read(5L, routing::currentReplica));
+    assertNull(routing.readAll(Arrays.asList(4L, 5L), routing::currentReplica));
+    assertNotNull(routing.read(4L, routing::currentReplica));
+
+    now.addAndGet(2000);
+    assertNotNull(routing.read(5L, routing::currentReplica));
+    assertEquals(2, routing.getPrimaryReads());
+  }
+
+  @Test
+  void testRecentTokenReadsPrimary() {
+    routing.setRequestToken(now.get() - 1999);
+    assertNull(routing.read(null, routing::currentReplica));
+
+    routing.setRequestToken(now.get() - 2000);
+    assertNotNull(routing.read(null, routing::currentReplica));
+
+    routing.setRequestToken(now.get());
+    routing.clearRequestToken();
+    assertNotNull(routing.read(null, routing::currentReplica));
+  }
+
+  @Test
+  void testTransactionReadsPrimary() {
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    try {
+      assertNull(routing.read(5L, routing::currentReplica));
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+  }
+
+  @Test
+  void testNestedReadRestoresTarget() {
+    routing.recordWrite(5L);
+
+    Integer outer = routing.read(4L, () -> {
+      assertNull(routing.read(5L, routing::currentReplica));
+      return routing.currentReplica();
+    });
+
+    assertEquals(routing.read(4L, routing::currentReplica), outer);
+  }
+
+  private ReadRouting routing(String urls) {
+    ReadRouting readRouting = new ReadRouting();
+    ReflectionTestUtils.setField(readRouting, "replicaUrls", urls);
+    ReflectionTestUtils.setField(readRouting, "maxLagMillis", 2000L);
+    readRouting.setClock(now::get);
+    readRouting.init();
+    return readRouting;
+  }
+}
@@ -0,0 +1,56 @@
+package org.dljl.service.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Consistent hash ring test.
+ */
+public class ConsistentHashRingTest {
+
+  private static final int PROVIDERS = 100_000;
+
+  @Test
+  void testProvidersSpreadEvenly() {
+    ConsistentHashRing ring = new ConsistentHashRing(4, 128);
+    int[] counts = new int[4];
+    for (long providerId = 1; providerId <= PROVIDERS; providerId++) {
+      counts[ring.shardFor(providerId)]++;
+    }
+    for (int count : counts) {
+      // Within 20% of an even share
+      assertTrue(Math.abs(count - PROVIDERS / 4) < PROVIDERS / 20, "shard count " + count);
+    }
+  }
+
+  @Test
+  void testSameProviderSameShard() {
+    assertEquals(new ConsistentHashRing(3, 64).shardFor(42L),
+        new ConsistentHashRing(3, 64).shardFor(42L));
+  }
+
+  @Test
+  void testAddingShardOnlyMovesProvidersToIt() {
+    ConsistentHashRing before = new ConsistentHashRing(3, 128);
+    ConsistentHashRing after = new ConsistentHashRing(4, 128);
+    int moved = 0;
+    for (long providerId = 1; providerId <= PROVIDERS; providerId++) {
+      int shard = after.shardFor(providerId);
+      if (shard != before.shardFor(providerId)) {
+        assertEquals(3, shard);
+        moved++;
+      }
+    }
+    // About a quarter of the providers move
+    assertTrue(Math.abs(moved - PROVIDERS / 4) < PROVIDERS / 20, "moved " + moved);
+  }
+
+  @Test
+  void testInvalidRing() {
+    assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(0, 128));
+    assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(2, 0));
+  }
+}
@@ -0,0 +1,39 @@
+package org.dljl.service.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.dljl.dto.AutoIncrementSettings;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Shard rebalancer test.
+ */
+public class ShardRebalancerTest {
+
+  @Test
+  void testAcceptsInterleavedIds() {
+    ShardRebalancer.checkDisjointIds(List.of(settings(3, 1), settings(3, 2), settings(3, 3)));
+    ShardRebalancer.checkDisjointIds(List.of(settings(4, 1), settings(4, 2)));
+  }
+
+  @Test
+  void testRejectsOverlappingIds() {
+    // MySQL defaults on every shard
+    assertThrows(IllegalStateException.class,
+        () -> ShardRebalancer.checkDisjointIds(List.of(settings(1, 1), settings(1, 1))));
+    assertThrows(IllegalStateException.class,
+        () -> ShardRebalancer.checkDisjointIds(List.of(settings(2, 1), settings(2, 3))));
+    assertThrows(IllegalStateException.class,
+        () -> ShardRebalancer.checkDisjointIds(List.of(settings(2, 1), settings(3, 2))));
+    assertThrows(IllegalStateException.class, () -> ShardRebalancer.checkDisjointIds(
+        List.of(settings(2, 1), settings(2, 2), settings(2, 3))));
+  }
+
+  private static AutoIncrementSettings settings(int increment, int offset) {
+    AutoIncrementSettings settings = new AutoIncrementSettings();
+    settings.setIncrement(increment);
+    settings.setOffset(offset);
+    return settings;
+  }
+}
@@ -0,0 +1,217 @@
+package org.dljl.service.sharding;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The type Shard routing test.
+ */
+public class ShardRoutingTest {
+
+  private ShardRouting routing;
+
+  @BeforeEach
+  void setUp() {
+    routing = routing("jdbc:h2:mem:shard1,jdbc:h2:mem:shard2");
+  }
+
+  @AfterEach
+  void tearDown() {
+    routing.shutdown();
+  }
+
+  @Test
+  void testDisabledRunsEverythingOnce() {
+    ShardRouting disabled = new ShardRouting();
+
+    assertFalse(disabled.isEnabled());
+    assertEquals(0, disabled.shardOf(5L));
+    assertNull(disabled.onProviderShard(5L, disabled::currentShard));
+    assertEquals(List.of(List.of(1L, 2L)), disabled.fanOut(Arrays.asList(1L, 2L), ids -> ids));
+    assertEquals("found", disabled.findOnAnyShard(() -> "found", row -> 5L));
+  }
+
+  @Test
+  void testProviderRunsOnItsShard() {
+    for (long providerId = 1; providerId <= 20; providerId++) {
+      int shard = routing.shardOf(providerId);
+      Integer current = routing.onProviderShard(providerId, routing::currentShard);
+      assertEquals(shard, current == null ? 0 : current);
+    }
+    assertNull(routing.currentShard());
+  }
+
+  @Test
+  void testPlacementOverridesRing() {
+    int placed = (routing.shardOf(5L) + 1) % 3;
+    routing.setPlacement(5L, placed);
+
+    assertEquals(placed, routing.shardOf(5L));
+    assertThrows(IllegalArgumentException.class, () -> routing.setPlacement(5L, 3));
+  }
+
+  @Test
+  void testRingShardsKeepsNewShardEmpty() {
+    ShardRouting growing = routing("jdbc:h2:mem:shard1,jdbc:h2:mem:shard2", 2);
+    boolean targetsNewShard = false;
+    for (long providerId = 1; providerId <= 100; providerId++) {
+      assertNotEquals(2, growing.shardOf(providerId));
+      targetsNewShard |= growing.targetShardOf(providerId) == 2;
+    }
+    growing.shutdown();
+
+    assertTrue(targetsNewShard);
+  }
+
+  @Test
+  void testFanOutGroupsProvidersByShardInParallel() {
+    List<Long> providerIds = new ArrayList<>();
+    for (long providerId = 1; providerId <= 30; providerId++) {
+      providerIds.add(providerId);
+    }
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    List<List<Long>> groups = routing.fanOut(providerIds, ids -> {
+      threads.add(Thread.currentThread().getName());
+      for (Long id : ids) {
+        Integer current = routing.currentShard();
+        assertEquals(routing.shardOf(id), current == null ? 0 : current);
+      }
+      return ids;
+    });
+
+    assertEquals(3, groups.size());
+    assertEquals(3, threads.size());
+    List<Long> all = new ArrayList<>();
+    groups.forEach(all::addAll);
+    Collections.sort(all);
+    assertEquals(providerIds, all);
+  }
+
+  @Test
+  void testVirtualFanOutIsCappedAtFanOutThreads() {
+    ShardRouting virtual = new ShardRouting();
+    ReflectionTestUtils.setField(virtual, "shardUrls",
+        "jdbc:h2:mem:shard1,jdbc:h2:mem:shard2,jdbc:h2:mem:shard3,jdbc:h2:mem:shard4");
+    ReflectionTestUtils.setField(virtual, "replicaUrls", "");
+    ReflectionTestUtils.setField(virtual, "virtualNodes", 128);
+    ReflectionTestUtils.setField(virtual, "fanOutThreads", 2);
+    ReflectionTestUtils.setField(virtual, "virtualThreads", true);
+    virtual.init();
+    Thread caller = Thread.currentThread();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger mostRunning = new AtomicInteger();
+
+    try {
+      List<Integer> shards = virtual.onEveryShard(() -> {
+        if (Thread.currentThread() != caller) {
+          mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(20);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          running.decrementAndGet();
+        }
+        return virtual.currentShard();
+      });
+
+      assertEquals(Arrays.asList(null, 1, 2, 3, 4), shards);
+      assertEquals(2, mostRunning.get());
+    } finally {
+      virtual.shutdown();
+    }
+  }
+
+  @Test
+  void testFindOnAnyShardReturnsSingleHit() {
+    assertEquals("row", routing.findOnAnyShard(
+        () -> Integer.valueOf(2).equals(routing.currentShard()) ? "row" : null, row -> 7L));
+    assertNull(routing.findOnAnyShard(() -> null, row -> 7L));
+  }
+
+  @Test
+  void testFindOnAnyShardPrefersCopyOnProvidersShard() {
+    // A row of provider 7 on shards 1 and 2, as left by a move to shard 2 cut short
+    routing.setPlacement(7L, 2);
+    assertEquals(Integer.valueOf(2), routing.findOnAnyShard(routing::currentShard, shard -> 7L));
+
+    routing.setPlacement(7L, 0);
+    assertThrows(IllegalStateException.class,
+        () -> routing.findOnAnyShard(routing::currentShard, shard -> 7L));
+  }
+
+  @Test
+  void testFindOnAnyShardRejectsIdsSharedByProviders() {
+    Long[] providerOnShard = new Long[3];
+    for (long providerId = 1; providerOnShard[1] == null || providerOnShard[2] == null;
+        providerId++) {
+      providerOnShard[routing.shardOf(providerId)] = providerId;
+    }
+
+    assertThrows(IllegalStateException.class,
+        () -> routing.findOnAnyShard(routing::currentShard, shard -> providerOnShard[shard]));
+  }
+
+  @Test
+  void testFanOutRethrowsFailure() {
+    assertThrows(IllegalStateException.class, () -> routing.onEveryShard(() -> {
+      if (routing.currentShard() != null && routing.currentShard() == 2) {
+        throw new IllegalStateException("shard down");
+      }
+      return null;
+    }));
+  }
+
+  @Test
+  void testCannotSwitchShardsInTransaction() {
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    try {
+      assertNull(routing.onShard(0, routing::currentShard));
+      assertThrows(IllegalStateException.class, () -> routing.onShard(1, () -> null));
+    } finally {
+      TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+  }
+
+  @Test
+  void testReplicasAndShardsCannotBeCombined() {
+    ShardRouting combined = new ShardRouting();
+    ReflectionTestUtils.setField(combined, "shardUrls", "jdbc:h2:mem:shard1");
+    ReflectionTestUtils.setField(combined, "replicaUrls", "jdbc:h2:mem:replica");
+
+    assertThrows(IllegalStateException.class, combined::init);
+  }
+
+  private ShardRouting routing(String urls) {
+    return routing(urls, 0);
+  }
+
+  private ShardRouting routing(String urls, int ringShards) {
+    ShardRouting shardRouting = new ShardRouting();
+    ReflectionTestUtils.setField(shardRouting, "shardUrls", urls);
+    ReflectionTestUtils.setField(shardRouting, "replicaUrls", "");
+    ReflectionTestUtils.setField(shardRouting, "ringShards", ringShards);
+    ReflectionTestUtils.setField(shardRouting, "virtualNodes", 128);
+    ReflectionTestUtils.setField(shardRouting, "fanOutThreads", 4);
+    shardRouting.init();
+    return shardRouting;
+  }
+}
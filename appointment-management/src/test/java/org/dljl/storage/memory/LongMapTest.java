@@ -0,0 +1,47 @@
+package org.dljl.storage.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The type Long map test.
+ */
+public class LongMapTest {
+
+  @Test
+  void testPutGetRemove() {
+    LongMap<String> map = new LongMap<>();
+    assertNull(map.put(7L, "seven"));
+    assertEquals("seven", map.put(7L, "SEVEN"));
+    assertEquals("SEVEN", map.get(7L));
+    assertNull(map.get(8L));
+    assertEquals("SEVEN", map.remove(7L));
+    assertNull(map.remove(7L));
+    assertEquals(0, map.size());
+  }
+
+  @Test
+  void testMatchesHashMapUnderRandomOperations() {
+    LongMap<Long> map = new LongMap<>();
+    Map<Long, Long> expected = new HashMap<>();
+    Random random = new Random(42);
+    // Few distinct keys, so removals shift entries of long probe sequences
+    for (int i = 0; i < 200_000; i++) {
+      long key = random.nextInt(2000) - 1000;
+      switch (random.nextInt(3)) {
+        case 0 -> assertEquals(expected.remove(key), map.remove(key));
+        case 1 -> assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+        default -> assertEquals(expected.get(key), map.get(key));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    Map<Long, Long> entries = new HashMap<>();
+    map.forEach(entries::put);
+    assertEquals(expected, entries);
+  }
+}
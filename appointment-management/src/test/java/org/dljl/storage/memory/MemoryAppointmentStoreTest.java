@@ -0,0 +1,214 @@
+package org.dljl.storage.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.ibatis.cursor.Cursor;
+import org.dljl.dto.UpdateAppointmentDto;
+import org.dljl.entity.Appointment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Memory appointment store test. Each case mirrors the SQL statement of the same name.
+ */
+public class MemoryAppointmentStoreTest {
+
+  private static final LocalDateTime NINE = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+  private MemoryAppointmentStore store;
+
+  @BeforeEach
+  void setUp() {
+    store = new MemoryAppointmentStore();
+    ReflectionTestUtils.setField(store, "tables", new MemoryTables());
+  }
+
+  @Test
+  void testCreateAssignsIdsAndCopies() {
+    Appointment appointment = appointment(1L, NINE.withNano(500), NINE.plusHours(1), "SCHEDULED");
+    store.createAppointment(appointment);
+    appointment.setComments("changed after the insert");
+
+    Appointment stored = store.getAppointment(appointment.getAppointmentId());
+    assertEquals(1L, stored.getAppointmentId());
+    assertEquals(NINE, stored.getStartDateTime());
+    assertNull(stored.getComments());
+    assertNull(store.getAppointment(2L));
+  }
+
+  @Test
+  void testCreateKeepsGivenIds() {
+    Appointment appointment = appointment(1L, NINE, NINE.plusHours(1), "SCHEDULED");
+    appointment.setAppointmentId(1_000L);
+    store.createAppointment(appointment);
+    Appointment duplicate = appointment(1L, NINE.plusHours(2), NINE.plusHours(3), "SCHEDULED");
+    duplicate.setAppointmentId(1_000L);
+    Appointment other = appointment(1L, NINE.plusHours(4), NINE.plusHours(5), "SCHEDULED");
+    other.setAppointmentId(2_000L);
+
+    assertThrows(DuplicateKeyException.class,
+        () -> store.createAppointments(List.of(other, duplicate)));
+    assertNull(store.getAppointment(2_000L));
+    assertEquals(1, store.createAppointments(List.of(other)));
+    // Generated ids continue after the largest given one, like AUTO_INCREMENT
+    assertEquals(2_001L, create(1L, NINE.plusHours(6), NINE.plusHours(7), "SCHEDULED"));
+  }
+
+  @Test
+  void testCreateRequiresTimes() {
+    Appointment appointment = appointment(1L, NINE, null, "SCHEDULED");
+    assertThrows(DataIntegrityViolationException.class,
+        () -> store.createAppointment(appointment));
+  }
+
+  @Test
+  void testCheckCreateTimeConflict() {
+    create(1L, NINE, NINE.plusHours(1), "SCHEDULED");
+    create(1L, NINE.plusHours(2), NINE.plusHours(3), "Cancelled");
+    create(1L, NINE.plusHours(4), NINE.plusHours(4), "BLOCKED");
+
+    assertEquals(1, store.checkCreateTimeConflict(1L, NINE.plusMinutes(30), NINE.plusHours(2)));
+    assertEquals(0, store.checkCreateTimeConflict(1L, NINE.plusHours(1), NINE.plusHours(2)));
+    // Cancelled rows never conflict, whatever the case of their status
+    assertEquals(0, store.checkCreateTimeConflict(1L, NINE.plusHours(2), NINE.plusHours(3)));
+    // An empty row conflicts with a range around it, an empty range with any row
+    assertEquals(1, store.checkCreateTimeConflict(1L, NINE.plusHours(3), NINE.plusHours(5)));
+    assertEquals(1, store.checkCreateTimeConflict(1L, NINE.plusHours(6), NINE.plusHours(6)));
+    assertEquals(0, store.checkCreateTimeConflict(2L, NINE, NINE.plusHours(6)));
+  }
+
+  @Test
+  void testCheckUpdateTimeConflictIgnoresTheRowItself() {
+    Long id = create(1L, NINE, NINE.plusHours(1), "SCHEDULED");
+    create(1L, NINE.plusHours(1), NINE.plusHours(2), "SCHEDULED");
+
+    assertEquals(0, store.checkUpdateTimeConflict(id, NINE.minusMinutes(30), NINE.plusHours(1)));
+    assertEquals(1, store.checkUpdateTimeConflict(id, NINE, NINE.plusMinutes(61)));
+    assertEquals(0, store.checkUpdateTimeConflict(99L, NINE, NINE.plusHours(2)));
+  }
+
+  @Test
+  void testUpdateOnlyIfTimesAndStatusAreUnchanged() {
+    Long id = create(1L, NINE, NINE.plusHours(1), "SCHEDULED");
+    UpdateAppointmentDto update = new UpdateAppointmentDto();
+    update.setAppointmentId(id);
+    update.setStartDateTime(NINE.plusHours(2));
+    update.setEndDateTime(NINE.plusHours(3));
+    update.setComments("moved");
+
+    assertEquals(0, store.updateAppointment(update, NINE.plusHours(1), NINE.plusHours(2),
+        "SCHEDULED"));
+    assertEquals(0, store.updateAppointment(update, NINE, NINE.plusHours(1), "cancelled"));
+    assertEquals(1, store.updateAppointment(update, NINE, NINE.plusHours(1), "SCHEDULED"));
+    Appointment updated = store.getAppointment(id);
+    assertEquals(NINE.plusHours(2), updated.getStartDateTime());
+    assertEquals("moved", updated.getComments());
+    assertEquals("SCHEDULED", updated.getStatus());
+    assertEquals(0, store.checkCreateTimeConflict(1L, NINE, NINE.plusHours(1)));
+  }
+
+  @Test
+  void testKeysetPagesVisitEveryRowOnce() {
+    List<Appointment> appointments = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      // Pairs of rows share a start time, so pages break ties on the id
+      appointments.add(appointment(1L, NINE.plusMinutes(i / 2), NINE.plusMinutes(i / 2 + 1),
+          "SCHEDULED"));
+    }
+    assertEquals(25, store.createAppointments(appointments));
+
+    List<Long> seen = new ArrayList<>();
+    LocalDateTime afterStart = null;
+    Long afterId = null;
+    List<Appointment> page;
+    while (!(page = store.getAppointmentsByProviderIdPage(1L, afterStart, afterId, 4))
+        .isEmpty()) {
+      page.forEach(row -> seen.add(row.getAppointmentId()));
+      afterStart = page.get(page.size() - 1).getStartDateTime();
+      afterId = page.get(page.size() - 1).getAppointmentId();
+    }
+    List<Long> expected = new ArrayList<>();
+    for (long id = 1; id <= 25; id++) {
+      expected.add(id);
+    }
+    assertEquals(expected, seen);
+  }
+
+  @Test
+  void testRangeQueries() {
+    create(1L, NINE, NINE.plusHours(1), "SCHEDULED");
+    create(1L, NINE.plusDays(1), NINE.plusDays(1).plusHours(1), "SCHEDULED");
+    create(1L, NINE.plusDays(1).plusHours(2), NINE.plusDays(1).plusHours(3), "cancelled");
+    create(1L, NINE.plusDays(2), NINE.plusDays(2).plusHours(1), null);
+    LocalDate first = NINE.toLocalDate();
+
+    assertEquals(1, store.getAppointmentsByProviderAndDate(1L, first).size());
+    assertEquals(2, store.getAppointmentsByProviderAndDates(1L, first, first.plusDays(3)).size());
+    assertEquals(1, store.getAppointmentsWithinDateRange(1L, first, first.plusDays(1)).size());
+    assertEquals(2, store.getAppointmentsOverlappingRange(1L, NINE.plusHours(1),
+        NINE.plusDays(1)).size());
+    assertEquals(4, store.findAppointmentsByProviderAndUser(1L, 2L).size());
+    assertEquals(2, store.findAppointmentsByProviderAndUserPage(1L, 2L,
+        NINE.plusDays(1), NINE.plusDays(2), null, null, 10).size());
+  }
+
+  @Test
+  void testStreamHonoursStatusAndRange() throws Exception {
+    create(1L, NINE, NINE.plusHours(1), "SCHEDULED");
+    create(1L, NINE.plusHours(1), NINE.plusHours(2), "cancelled");
+    create(1L, NINE.plusHours(2), NINE.plusHours(3), "SCHEDULED");
+
+    try (Cursor<Appointment> cursor = store.streamAppointmentsByProvider(1L, NINE,
+        NINE.plusHours(2), "CANCELLED")) {
+      List<Long> ids = new ArrayList<>();
+      cursor.forEach(row -> ids.add(row.getAppointmentId()));
+      assertEquals(List.of(2L), ids);
+    }
+  }
+
+  @Test
+  void testBulkCancelAndDelete() {
+    create(1L, NINE, NINE.plusHours(1), "SCHEDULED");
+    create(1L, NINE.plusHours(1), NINE.plusHours(2), "BLOCKED");
+    create(1L, NINE.plusDays(1), NINE.plusDays(1).plusHours(1), "SCHEDULED");
+
+    assertEquals(List.of(1L), store.lockCancellableAppointmentIds(1L, NINE, NINE.plusDays(1),
+        "scheduled"));
+    assertEquals(1, store.cancelAppointmentsInRange(1L, NINE, NINE.plusDays(1), "SCHEDULED"));
+    assertEquals(0, store.cancelAppointmentsInRange(1L, NINE, NINE.plusDays(1), "SCHEDULED"));
+    assertEquals("cancelled", store.getAppointment(1L).getStatus());
+
+    assertEquals(List.of(1L, 2L), store.lockAppointmentIdsInRange(1L, NINE, NINE.plusDays(1),
+        null));
+    assertEquals(2, store.deleteAppointmentsInRange(1L, NINE, NINE.plusDays(1), null));
+    assertEquals(1, store.getAppointmentsByProviderId(1L).size());
+    assertEquals(1, store.deleteBlock(3L));
+    assertEquals(0, store.deleteBlock(3L));
+  }
+
+  private Long create(Long providerId, LocalDateTime start, LocalDateTime end, String status) {
+    Appointment appointment = appointment(providerId, start, end, status);
+    store.createAppointment(appointment);
+    return appointment.getAppointmentId();
+  }
+
+  private static Appointment appointment(Long providerId, LocalDateTime start,
+      LocalDateTime end, String status) {
+    Appointment appointment = new Appointment();
+    appointment.setProviderId(providerId);
+    appointment.setUserId(2L);
+    appointment.setStartDateTime(start);
+    appointment.setEndDateTime(end);
+    appointment.setStatus(status);
+    return appointment;
+  }
+}
@@ -0,0 +1,119 @@
+package org.dljl.storage.memory;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.dljl.entity.Appointment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Crash recovery of the durable memory tables: a child JVM books appointments from several
+ * threads, with a snapshot every second, and is killed in the middle of it. Every booking it
+ * acknowledged must survive.
+ */
+public class MemoryJournalCrashIt {
+
+  private static final int WRITERS = 4;
+  private static final int ACKNOWLEDGED_BEFORE_KILL = 5000;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void testKeepsAcknowledgedWritesWhenKilled() throws Exception {
+    Process process = new ProcessBuilder(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-cp", System.getProperty("java.class.path"),
+        MemoryJournalCrashIt.class.getName(), directory.toString())
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+    List<Long> acknowledged = new ArrayList<>();
+    try (BufferedReader out = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      while (acknowledged.size() < ACKNOWLEDGED_BEFORE_KILL) {
+        acknowledged.add(Long.parseLong(out.readLine()));
+      }
+      // SIGKILL, the writers are stopped wherever they are
+      process.destroyForcibly();
+    }
+    assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+
+    MemoryTables tables = tables(directory, 0);
+    tables.open();
+    MemoryAppointmentStore store = new MemoryAppointmentStore();
+    ReflectionTestUtils.setField(store, "tables", tables);
+    long lastId = 0;
+    for (Long id : acknowledged) {
+      assertNotNull(store.getAppointment(id), "Lost acknowledged appointment " + id);
+      lastId = Math.max(lastId, id);
+    }
+    Appointment next = appointment(1L, 0);
+    store.createAppointment(next);
+    assertTrue(next.getAppointmentId() > lastId);
+    tables.close();
+  }
+
+  /**
+   * Book appointments until killed, printing the id of every booking once it returns.
+   *
+   * @param args the journal directory
+   * @throws Exception if the tables cannot be opened
+   */
+  public static void main(String[] args) throws Exception {
+    MemoryTables tables = tables(Paths.get(args[0]), 1);
+    tables.open();
+    MemoryAppointmentStore store = new MemoryAppointmentStore();
+    ReflectionTestUtils.setField(store, "tables", tables);
+    PrintStream out = System.out;
+    List<Thread> writers = new ArrayList<>();
+    for (int writer = 0; writer < WRITERS; writer++) {
+      long providerId = writer + 1;
+      writers.add(new Thread(() -> {
+        for (int i = 0; ; i++) {
+          Appointment appointment = appointment(providerId, i);
+          store.createAppointment(appointment);
+          synchronized (out) {
+            out.println(appointment.getAppointmentId());
+            out.flush();
+          }
+        }
+      }));
+    }
+    writers.forEach(Thread::start);
+    for (Thread thread : writers) {
+      thread.join();
+    }
+  }
+
+  private static MemoryTables tables(Path directory, long snapshotIntervalSeconds) {
+    MemoryTables tables = new MemoryTables();
+    ReflectionTestUtils.setField(tables, "journalDir", directory.toString());
+    // Small segments, so that the kill can also land in a roll
+    ReflectionTestUtils.setField(tables, "segmentBytes", 1 << 16);
+    ReflectionTestUtils.setField(tables, "snapshotIntervalSeconds", snapshotIntervalSeconds);
+    return tables;
+  }
+
+  private static Appointment appointment(long providerId, int index) {
+    LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(30L * index);
+    Appointment appointment = new Appointment();
+    appointment.setProviderId(providerId);
+    appointment.setUserId(1L);
+    appointment.setStartDateTime(start);
+    appointment.setEndDateTime(start.plusMinutes(30));
+    appointment.setStatus("SCHEDULED");
+    return appointment;
+  }
+}
@@ -0,0 +1,224 @@
+package org.dljl.storage.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.dljl.dto.UpdateAppointmentDto;
+import org.dljl.entity.Appointment;
+import org.dljl.entity.RecurringBlock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * The type Memory journal test. A crash is simulated by closing the journal without the snapshot
+ * of a clean shutdown, so everything acknowledged is on disk and nothing else is written.
+ */
+public class MemoryJournalTest {
+
+  private static final LocalDateTime NINE = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+  @TempDir
+  Path directory;
+
+  private MemoryTables tables;
+  private MemoryAppointmentStore store;
+  private MemoryRecurringBlockStore recurringBlockStore;
+
+  @AfterEach
+  void tearDown() {
+    crash();
+  }
+
+  @Test
+  void testReplaysEveryChangeAfterCrash() {
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    Long moved = create(NINE);
+    Long cancelled = create(NINE.plusHours(1));
+    Long deleted = create(NINE.plusHours(2));
+    UpdateAppointmentDto update = new UpdateAppointmentDto();
+    update.setAppointmentId(moved);
+    update.setStartDateTime(NINE.plusHours(3));
+    update.setEndDateTime(NINE.plusHours(4));
+    update.setComments("moved");
+    assertEquals(1, store.updateAppointment(update, NINE, NINE.plusMinutes(30), "SCHEDULED"));
+    assertEquals(1, store.cancelAppointment(cancelled));
+    assertEquals(1, store.deleteBlock(deleted));
+    Long rule = createRecurringBlock();
+    assertEquals(1, recurringBlockStore.updateExcludedDates(rule, "2024-03-15,2024-03-18"));
+    assertEquals(1, recurringBlockStore.deleteRecurringBlock(createRecurringBlock()));
+
+    crash();
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+
+    Appointment updated = store.getAppointment(moved);
+    assertEquals(NINE.plusHours(3), updated.getStartDateTime());
+    assertEquals("moved", updated.getComments());
+    assertEquals("cancelled", store.getAppointment(cancelled).getStatus());
+    assertNull(store.getAppointment(deleted));
+    assertEquals(LocalTime.NOON, recurringBlockStore.getRecurringBlock(rule).getStartTime());
+    assertEquals("2024-03-15,2024-03-18",
+        recurringBlockStore.getRecurringBlock(rule).getExcludedDates());
+    assertEquals(1, recurringBlockStore.getRecurringBlocksByProviderId(1L).size());
+    // Like AUTO_INCREMENT, the id of the deleted last row is not handed out again
+    assertEquals(deleted + 1, create(NINE.plusHours(5)));
+  }
+
+  @Test
+  void testSnapshotDropsCoveredSegments() throws IOException {
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    for (int i = 0; i < 200; i++) {
+      create(NINE.plusHours(i));
+    }
+    assertTrue(files("journal-").size() > 1);
+
+    tables.snapshot();
+    assertEquals(1, files("journal-").size());
+    assertEquals(1, files("snapshot-").size());
+    Long early = create(NINE.minusHours(1));
+    store.cancelAppointment(1L);
+    crash();
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+
+    List<Appointment> recovered = store.getAppointmentsByProviderId(1L);
+    assertEquals(200, recovered.size());
+    assertEquals(early, recovered.get(0).getAppointmentId());
+    assertEquals("cancelled", store.getAppointment(1L).getStatus());
+
+    // A clean shutdown leaves nothing to replay
+    tables.close();
+    tables = null;
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    assertEquals(200, store.getAppointmentsByProviderId(1L).size());
+    assertEquals(202L, create(NINE.plusDays(30)));
+  }
+
+  @Test
+  void testStopsAtTornRecord() throws IOException {
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    create(NINE);
+    create(NINE.plusHours(1));
+    crash();
+    // A record cut short by the crash: its length promises more than its checksum covers
+    Path segment = files("journal-").get(0);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE,
+        StandardOpenOption.READ)) {
+      int end = end(channel);
+      ByteBuffer torn = ByteBuffer.allocate(12).putInt(60).putInt(0x12345678).putInt(7);
+      channel.write(torn.flip(), end);
+    }
+    // And a snapshot that was never renamed into place
+    Files.write(directory.resolve("snapshot-00000000000000000009.bin.tmp"), new byte[] {1, 2});
+
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    assertEquals(2, store.getAppointmentsByProviderId(1L).size());
+    assertEquals(3L, create(NINE.plusHours(2)));
+    crash();
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    assertEquals(3, store.getAppointmentsByProviderId(1L).size());
+  }
+
+  @Test
+  void testRejectsMissingRecords() throws IOException {
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    create(NINE);
+    crash();
+    open(MemoryJournal.MIN_SEGMENT_BYTES);
+    create(NINE.plusHours(1));
+    crash();
+    Files.delete(files("journal-").get(0));
+
+    MemoryTables damaged = tables(MemoryJournal.MIN_SEGMENT_BYTES);
+    assertThrows(IllegalStateException.class, damaged::open);
+  }
+
+  private void open(int segmentBytes) {
+    tables = tables(segmentBytes);
+    try {
+      tables.open();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    store = new MemoryAppointmentStore();
+    ReflectionTestUtils.setField(store, "tables", tables);
+    recurringBlockStore = new MemoryRecurringBlockStore();
+    ReflectionTestUtils.setField(recurringBlockStore, "tables", tables);
+  }
+
+  private MemoryTables tables(int segmentBytes) {
+    MemoryTables opened = new MemoryTables();
+    ReflectionTestUtils.setField(opened, "journalDir", directory.toString());
+    ReflectionTestUtils.setField(opened, "segmentBytes", segmentBytes);
+    ReflectionTestUtils.setField(opened, "snapshotIntervalSeconds", 0L);
+    return opened;
+  }
+
+  private void crash() {
+    if (tables != null) {
+      ((MemoryJournal) ReflectionTestUtils.getField(tables, "journal")).close();
+      tables = null;
+    }
+  }
+
+  private Long create(LocalDateTime start) {
+    Appointment appointment = new Appointment();
+    appointment.setProviderId(1L);
+    appointment.setUserId(2L);
+    appointment.setStartDateTime(start);
+    appointment.setEndDateTime(start.plusMinutes(30));
+    appointment.setStatus("SCHEDULED");
+    store.createAppointment(appointment);
+    return appointment.getAppointmentId();
+  }
+
+  private Long createRecurringBlock() {
+    RecurringBlock rule = new RecurringBlock();
+    rule.setProviderId(1L);
+    rule.setStartTime(LocalTime.NOON);
+    rule.setEndTime(LocalTime.of(13, 0));
+    rule.setStartDate(LocalDate.of(2024, 3, 1));
+    rule.setEndDate(LocalDate.of(2024, 3, 31));
+    rule.setWeekdayMask(0b11111);
+    rule.setExcludedDates("2024-03-15");
+    recurringBlockStore.createRecurringBlock(rule);
+    return rule.getRecurringBlockId();
+  }
+
+  private List<Path> files(String prefix) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.getFileName().toString().startsWith(prefix))
+          .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  /** Gets the offset after the last record of a segment. */
+  private static int end(FileChannel channel) throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(4);
+    int offset = 12;
+    while (true) {
+      channel.read(length.clear(), offset);
+      int recordLength = length.getInt(0);
+      if (recordLength == 0) {
+        return offset;
+      }
+      offset += 8 + recordLength;
+    }
+  }
+}
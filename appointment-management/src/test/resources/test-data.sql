@@ -1,14 +1,5 @@
-CREATE TABLE IF NOT EXISTS appointments (
-                                            appointment_id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                                            provider_id BIGINT NOT NULL,
-                                            user_id BIGINT,
-                                            start_date_time DATETIME NOT NULL,
-                                            end_date_time DATETIME NOT NULL,
-                                            status VARCHAR(50),
-    service_type VARCHAR(100),
-    comments VARCHAR(100)
-    );
-
+-- The schema is created by the Flyway migrations in db/migration
+DELETE FROM recurring_blocks;
 DELETE FROM appointments;
 INSERT INTO appointments (
     appointment_id, provider_id, user_id, start_date_time, end_date_time, status, service_type, comments